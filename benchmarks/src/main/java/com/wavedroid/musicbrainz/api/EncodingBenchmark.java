@@ -0,0 +1,102 @@
+package com.wavedroid.musicbrainz.api;
+
+import com.wavedroid.musicbrainz.bench.Fixtures;
+import com.wavedroid.musicbrainz.model.Release;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Encoding the response bodies of {@link AlbumResource} in each {@link Encoding}, then compressing
+ * them like the gzip filter does (level 6, raw deflate). The payload sizes are printed once per
+ * trial, next to the timings.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EncodingBenchmark {
+
+    @Param({"JSON", "SMILE", "CBOR"})
+    private Encoding encoding;
+
+    @Param({"identity", "gzip", "deflate"})
+    private String compression;
+
+    @Param({"100"})
+    private int rows;
+
+    private final Deflater deflater = new Deflater(6, true);
+    private List<Release> listing;
+    private Map<String, Object> release;
+
+    @Setup
+    public void setUp() {
+        List<Release> releases = Fixtures.releases(rows);
+        listing = AlbumResource.joinTags(releases, Fixtures.tags(releases));
+        release = AlbumResource.releaseWithTracklist(releases.get(0).withCover(
+                "http://coverartarchive.org/release/0/1-250.jpg", Fixtures.tags(releases).subList(0, 3)),
+                Fixtures.tracks(12));
+    }
+
+    @TearDown
+    public void printSizes() throws IOException {
+        System.out.printf("%n%s/%s, %d rows: listing %d bytes, release %d bytes%n",
+                encoding, compression, rows, listing().length, release().length);
+        deflater.end();
+    }
+
+    @Benchmark
+    public byte[] listing() throws IOException {
+        return encode(listing);
+    }
+
+    @Benchmark
+    public byte[] release() throws IOException {
+        return encode(release);
+    }
+
+    private byte[] encode(Object value) throws IOException {
+        byte[] body = encoding.encode(value);
+        if (compression.equals("identity")) {
+            return body;
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(body.length);
+        try (OutputStream out = compress(bytes)) {
+            out.write(body);
+        }
+        return bytes.toByteArray();
+    }
+
+    private OutputStream compress(OutputStream out) throws IOException {
+        if (compression.equals("gzip")) {
+            return new GZIPOutputStream(out);
+        }
+        deflater.reset();
+        return new DeflaterOutputStream(out, deflater);
+    }
+}
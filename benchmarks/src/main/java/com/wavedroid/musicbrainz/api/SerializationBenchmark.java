@@ -0,0 +1,63 @@
+package com.wavedroid.musicbrainz.api;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.wavedroid.musicbrainz.bench.Fixtures;
+import com.wavedroid.musicbrainz.model.Release;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encoding the response bodies of {@link AlbumResource}: a tagged listing page and a single release
+ * with its tracklist, both with a plain {@link ObjectMapper} like the resource uses.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SerializationBenchmark {
+
+    @Param({"10", "100"})
+    private int rows;
+
+    private final ObjectMapper om = new ObjectMapper();
+    private List<Release> listing;
+    private Map<String, Object> release;
+
+    @Setup
+    public void setUp() {
+        List<Release> releases = Fixtures.releases(rows);
+        listing = AlbumResource.joinTags(releases, Fixtures.tags(releases));
+        release = AlbumResource.releaseWithTracklist(releases.get(0).withCover(
+                "http://coverartarchive.org/release/0/1-250.jpg", Fixtures.tags(releases).subList(0, 3)),
+                Fixtures.tracks(12));
+    }
+
+    @Benchmark
+    public byte[] listing() throws JsonProcessingException {
+        return om.writeValueAsBytes(listing);
+    }
+
+    @Benchmark
+    public byte[] release() throws JsonProcessingException {
+        return om.writeValueAsBytes(release);
+    }
+}
@@ -0,0 +1,52 @@
+package com.wavedroid.musicbrainz.api;
+
+import com.wavedroid.musicbrainz.bench.Fixtures;
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Tag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joining a listing page with the top tags of its release groups, as done for every listing
+ * response once the tags are fetched.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TagJoinBenchmark {
+
+    @Param({"10", "100"})
+    private int rows;
+
+    private List<Release> releases;
+    private List<Tag> tags;
+
+    @Setup
+    public void setUp() {
+        releases = Fixtures.releases(rows);
+        tags = Fixtures.tags(releases);
+    }
+
+    @Benchmark
+    public List<Release> joinTags() {
+        return AlbumResource.joinTags(releases, tags);
+    }
+}
@@ -0,0 +1,26 @@
+package com.wavedroid.musicbrainz.bench;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the benchmarks like the stock JMH launcher does, and always with the GC profiler, so every
+ * report carries the allocation rate per operation next to the timings.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public final class BenchmarkMain {
+
+    private BenchmarkMain() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        new Runner(new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
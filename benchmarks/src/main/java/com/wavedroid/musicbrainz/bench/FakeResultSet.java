@@ -0,0 +1,99 @@
+package com.wavedroid.musicbrainz.bench;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLFeatureNotSupportedException;
+
+/**
+ * In-memory, forward-only {@link ResultSet} over fixed rows, answering the accessors the row
+ * mappers use. It is {@link #rewind() rewound} instead of recreated, so a benchmark only pays for
+ * walking and mapping the rows.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public final class FakeResultSet implements InvocationHandler {
+
+    private final String[] labels;
+    private final Object[][] rows;
+    private final ResultSet resultSet;
+    private final ResultSetMetaData metaData;
+    private int row;
+    private boolean wasNull;
+
+    public FakeResultSet(String[] labels, Object[][] rows) {
+        this.labels = labels;
+        this.rows = rows;
+        this.resultSet = (ResultSet) Proxy.newProxyInstance(ResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, this);
+        this.metaData = (ResultSetMetaData) Proxy.newProxyInstance(ResultSetMetaData.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, this::metaData);
+        rewind();
+    }
+
+    public ResultSet resultSet() {
+        return resultSet;
+    }
+
+    public ResultSetMetaData metaData() {
+        return metaData;
+    }
+
+    public void rewind() {
+        row = -1;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "next":
+                return ++row < rows.length;
+            case "wasNull":
+                return wasNull;
+            case "getMetaData":
+                return metaData;
+            case "close":
+                return null;
+            case "getObject":
+                return value(args);
+            case "getString":
+                Object string = value(args);
+                return string == null ? null : string.toString();
+            case "getInt":
+                Object integer = value(args);
+                return integer == null ? 0 : ((Number) integer).intValue();
+            case "getLong":
+                Object number = value(args);
+                return number == null ? 0L : ((Number) number).longValue();
+            case "getFloat":
+                Object real = value(args);
+                return real == null ? 0f : ((Number) real).floatValue();
+            default:
+                throw new SQLFeatureNotSupportedException(method.getName());
+        }
+    }
+
+    private Object value(Object[] args) throws SQLFeatureNotSupportedException {
+        if (!(args[0] instanceof Integer)) {
+            throw new SQLFeatureNotSupportedException("Columns are only read by index");
+        }
+        Object value = rows[row][(Integer) args[0] - 1];
+        wasNull = value == null;
+        return value;
+    }
+
+    private Object metaData(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "getColumnCount":
+                return labels.length;
+            case "getColumnLabel":
+            case "getColumnName":
+                return labels[(Integer) args[0] - 1];
+            default:
+                throw new SQLFeatureNotSupportedException(method.getName());
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.wavedroid.musicbrainz.bench;
+
+import com.google.common.io.ByteStreams;
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Tag;
+import com.wavedroid.musicbrainz.model.Track;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+/**
+ * Synthetic, reproducible data shaped like what the queries return: a listing page of release
+ * groups, a tracklist, their tags and a recorded coverartarchive.org response. Row values have the
+ * types the Postgres driver hands out, {@link UUID} included.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public final class Fixtures {
+
+    public static final String[] RELEASE_COLUMNS = {"year", "month", "artist", "release_id", "release_name",
+            "total_tracks", "artist_id", "release_group_id", "release_mbid", "release_group_mbid", "is_studio_album"};
+
+    public static final String[] TRACK_COLUMNS = {"track_id", "title", "length", "position", "disc_number"};
+
+    private static final String[] WORDS = {"Blue", "Night", "Echo", "Paper", "Silver", "Garden", "Motion",
+            "Static", "Winter", "Glass", "Harbour", "Signal", "Velvet", "Orbit", "Lantern", "Hollow"};
+
+    private static final String[] TAGS = {"rock", "electronic", "jazz", "hip hop", "folk", "ambient",
+            "post-punk", "shoegaze", "soul", "indie pop"};
+
+    private Fixtures() {
+    }
+
+    public static Object[][] releaseRows(int count) {
+        Random random = new Random(42);
+        Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new Object[]{
+                    1960 + random.nextInt(60),
+                    i % 7 == 0 ? null : 1 + random.nextInt(12),
+                    name(random, 2),
+                    (long) 100000 + i,
+                    name(random, 3),
+                    (long) 6 + random.nextInt(14),
+                    (long) 5000 + random.nextInt(50),
+                    (long) 200000 + i,
+                    uuid(random),
+                    uuid(random),
+                    random.nextInt(3) == 0 ? 1 : null};
+        }
+        return rows;
+    }
+
+    public static Object[][] trackRows(int count) {
+        Random random = new Random(42);
+        Object[][] rows = new Object[count][];
+        for (int i = 0; i < count; i++) {
+            rows[i] = new Object[]{
+                    (long) 300000 + i,
+                    name(random, 2 + random.nextInt(3)),
+                    i % 11 == 0 ? null : 90000 + random.nextInt(300000),
+                    i % 12 + 1,
+                    i / 12 + 1};
+        }
+        return rows;
+    }
+
+    public static List<Release> releases(int count) {
+        List<Release> releases = new ArrayList<>(count);
+        for (Object[] row : releaseRows(count)) {
+            releases.add(new Release((Integer) row[0], (Integer) row[1], (String) row[2], (Long) row[3],
+                    (String) row[4], (Long) row[5], (Long) row[6], (Long) row[7], (UUID) row[8], (UUID) row[9],
+                    (Integer) row[10]));
+        }
+        return releases;
+    }
+
+    public static List<Track> tracks(int count) {
+        List<Track> tracks = new ArrayList<>(count);
+        for (Object[] row : trackRows(count)) {
+            tracks.add(new Track((Long) row[0], (String) row[1], (Integer) row[2], (Integer) row[3], (Integer) row[4]));
+        }
+        return tracks;
+    }
+
+    /**
+     * @return the top tag of four out of five releases, in no particular order
+     */
+    public static List<Tag> tags(List<Release> releases) {
+        Random random = new Random(42);
+        List<Tag> tags = new ArrayList<>(releases.size());
+        for (int i = releases.size() - 1; i >= 0; i--) {
+            if (i % 5 != 0) {
+                tags.add(new Tag(releases.get(i).getReleaseGroupId(), TAGS[random.nextInt(TAGS.length)]));
+            }
+        }
+        return tags;
+    }
+
+    public static byte[] coverArtJson() {
+        try (InputStream is = Fixtures.class.getResourceAsStream("/cover-art.json")) {
+            return ByteStreams.toByteArray(is);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String name(Random random, int words) {
+        StringBuilder name = new StringBuilder();
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                name.append(' ');
+            }
+            name.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        return name.toString();
+    }
+
+    private static UUID uuid(Random random) {
+        return new UUID(random.nextLong(), random.nextLong());
+    }
+}
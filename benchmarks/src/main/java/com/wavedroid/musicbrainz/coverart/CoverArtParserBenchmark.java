@@ -0,0 +1,44 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import com.wavedroid.musicbrainz.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracting the small thumbnail from a recorded coverartarchive.org response.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CoverArtParserBenchmark {
+
+    private byte[] response;
+
+    @Setup
+    public void setUp() {
+        response = Fixtures.coverArtJson();
+    }
+
+    @Benchmark
+    public String parseSmallThumbnail() throws IOException {
+        return CoverArtParser.parseSmallThumbnail(new ByteArrayInputStream(response));
+    }
+}
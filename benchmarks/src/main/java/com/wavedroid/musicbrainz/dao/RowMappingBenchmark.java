@@ -0,0 +1,72 @@
+package com.wavedroid.musicbrainz.dao;
+
+import com.wavedroid.musicbrainz.bench.FakeResultSet;
+import com.wavedroid.musicbrainz.bench.Fixtures;
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Track;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Mapping a page of rows the way {@link MusicbrainzDao} does: one mapper per result set, built
+ * from its metadata, then one entity per row.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RowMappingBenchmark {
+
+    @Param({"10", "100"})
+    private int rows;
+
+    private FakeResultSet releases;
+    private FakeResultSet tracks;
+
+    @Setup
+    public void setUp() {
+        releases = new FakeResultSet(Fixtures.RELEASE_COLUMNS, Fixtures.releaseRows(rows));
+        tracks = new FakeResultSet(Fixtures.TRACK_COLUMNS, Fixtures.trackRows(rows));
+    }
+
+    @Benchmark
+    public List<Release> releases() throws SQLException {
+        return map(releases, ReleaseMapper::new);
+    }
+
+    @Benchmark
+    public List<Track> tracks() throws SQLException {
+        return map(tracks, TrackMapper::new);
+    }
+
+    private <T> List<T> map(FakeResultSet fixture, RowMapper.Factory<T> factory) throws SQLException {
+        fixture.rewind();
+        ResultSet rs = fixture.resultSet();
+        RowMapper<T> mapper = factory.create(rs.getMetaData());
+        List<T> entities = new ArrayList<>();
+        while (rs.next()) {
+            entities.add(mapper.map(rs));
+        }
+        return entities;
+    }
+}
@@ -0,0 +1,48 @@
+#!/usr/bin/env bash
+#
+# Runs the load test against a throwaway local Postgres holding a synthetic MusicBrainz subset.
+#
+#   SCALE=10000 loadtest/run.sh --rate=200 --duration=120 --baseline=loadtest/baselines/default.json
+#
+# SCALE is the number of artists (default 10000); every scale gets its own data directory under
+# target/, which is created and loaded on first use and reused afterwards. PG_BIN points at the
+# Postgres binaries (default: pg_config --bindir) and PG_PORT picks the port (default 15432).
+# Options are passed on to the harness, see LoadTestOptions. The server artifact has to be
+# installed first (mvn install in the project root).
+
+set -euo pipefail
+
+cd "$(dirname "$0")"
+SCALE=${SCALE:-10000}
+PG_PORT=${PG_PORT:-15432}
+PG_BIN=${PG_BIN:-$(pg_config --bindir)}
+DATA=target/pgdata-$SCALE
+
+psql() {
+    "$PG_BIN/psql" -X -q -v ON_ERROR_STOP=1 -h localhost -p "$PG_PORT" "$@"
+}
+
+if [ ! -d "$DATA" ]; then
+    mkdir -p target
+    "$PG_BIN/initdb" -D "$DATA" -U postgres -A trust -E UTF8 > target/initdb.log
+fi
+"$PG_BIN/pg_ctl" -D "$DATA" -o "-p $PG_PORT -c fsync=off -c shared_buffers=256MB" -l target/postgres.log -w start
+trap '"$PG_BIN/pg_ctl" -D "$DATA" -m fast -w stop' EXIT
+
+if [ ! -f "$DATA/loaded" ]; then
+    echo "Loading the synthetic data set, scale $SCALE"
+    psql -U postgres -d postgres <<'SQL'
+DROP DATABASE IF EXISTS musicbrainz_db;
+DROP USER IF EXISTS musicbrainz;
+CREATE USER musicbrainz PASSWORD 'musicbrainz';
+CREATE DATABASE musicbrainz_db OWNER musicbrainz ENCODING 'UTF8' TEMPLATE template0;
+SQL
+    psql -U musicbrainz -d musicbrainz_db -f sql/schema.sql
+    psql -U musicbrainz -d musicbrainz_db -v scale="$SCALE" -f sql/data.sql
+    psql -U musicbrainz -d musicbrainz_db -f sql/indexes.sql
+    touch "$DATA/loaded"
+fi
+
+[ -f target/loadtest.jar ] || mvn -B -q package
+java -jar target/loadtest.jar --config=loadtest.yml \
+    --db-url="jdbc:postgresql://localhost:$PG_PORT/musicbrainz_db" "$@"
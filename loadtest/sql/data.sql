@@ -0,0 +1,100 @@
+-- Synthetic, reproducible MusicBrainz subset. Run with psql -v scale=N: N artists with on average
+-- 4.5 release groups each, 1-3 releases per release group, 1-2 media per release and 8-14 tracks
+-- per medium. Every artist credit has a single artist and shares its id. Per-row random counts
+-- mention a column of the outer row ("+ id * 0") so that they are drawn again for every row.
+
+SELECT setseed(0.42);
+
+CREATE FUNCTION pg_temp.word() RETURNS TEXT AS $$
+SELECT (ARRAY[
+  'Blue', 'Night', 'Echo', 'Paper', 'Silver', 'Garden', 'Motion', 'Static', 'Winter', 'Glass', 'Harbour',
+  'Signal', 'Velvet', 'Orbit', 'Lantern', 'Hollow', 'Crystal', 'River', 'Golden', 'Shadow', 'Electric',
+  'Northern', 'Burning', 'Quiet', 'Wild', 'Broken', 'Neon', 'Desert', 'Ocean', 'Iron', 'Summer', 'Falling',
+  'Black', 'White', 'Red', 'Forest', 'Mountain', 'Ghost', 'Heart', 'Fire', 'Rain', 'Stone', 'Light', 'Dark',
+  'Sun', 'Moon', 'Star', 'City', 'Machine', 'Dream', 'Wave', 'Storm', 'Future', 'Empire', 'Street', 'Club',
+  'Kids', 'Sisters', 'Brothers', 'Band', 'Orchestra', 'Collective', 'Society', 'Project'])[1 + floor(random() * 64)::INT]
+$$ LANGUAGE SQL VOLATILE;
+
+INSERT INTO artist (id, gid, name)
+SELECT i, md5('artist-' || i)::UUID, pg_temp.word() || ' ' || pg_temp.word()
+FROM generate_series(1, :scale) AS i;
+
+INSERT INTO artist_credit_name (artist_credit, position, artist, name)
+SELECT id, 0, id, name
+FROM artist;
+
+INSERT INTO release_group (gid, name, artist_credit, type)
+SELECT md5('release-group-' || a.id || '-' || n)::UUID,
+  CASE WHEN random() < 0.5 THEN pg_temp.word() ELSE pg_temp.word() || ' ' || pg_temp.word() END,
+  a.id,
+  CASE WHEN random() < 0.6 THEN 1 WHEN random() < 0.6 THEN 2 ELSE 3 END
+FROM artist a, generate_series(1, 1 + floor(random() * 8)::INT + a.id * 0) AS n
+ORDER BY a.id, n;
+
+INSERT INTO release_group_meta (id, first_release_date_year, first_release_date_month, first_release_date_day)
+SELECT id, 1960 + floor(random() * 56)::INT,
+  CASE WHEN random() < 0.8 THEN 1 + floor(random() * 12)::INT END,
+  CASE WHEN random() < 0.6 THEN 1 + floor(random() * 28)::INT END
+FROM release_group;
+
+-- Compilations, live albums and the like: kept out of the studio album listings.
+INSERT INTO release_group_secondary_type_join (release_group, secondary_type)
+SELECT id, 1 + floor(random() * 6)::INT
+FROM release_group
+WHERE random() < 0.1;
+
+INSERT INTO release (gid, name, artist_credit, release_group)
+SELECT md5('release-' || r.id || '-' || n)::UUID, r.name, r.artist_credit, r.id
+FROM release_group r, generate_series(1, 1 + floor(random() * 3)::INT + r.id * 0) AS n
+ORDER BY r.id, n;
+
+UPDATE release_group_meta m
+SET release_count = c.releases
+FROM (SELECT release_group, count(*) AS releases FROM release GROUP BY release_group) AS c
+WHERE c.release_group = m.id;
+
+INSERT INTO release_event (release, date_year, date_month, date_day, country)
+SELECT rel.id, m.first_release_date_year + floor(random() * 3)::INT,
+  CASE WHEN random() < 0.8 THEN 1 + floor(random() * 12)::INT END,
+  CASE WHEN random() < 0.6 THEN 1 + floor(random() * 28)::INT END,
+  1 + floor(random() * 250)::INT
+FROM release rel
+  INNER JOIN release_group_meta m ON m.id = rel.release_group;
+
+INSERT INTO medium (release, position, format, track_count)
+SELECT rel.id, n, 1, 8 + floor(random() * 7)::INT
+FROM release rel, generate_series(1, CASE WHEN random() < 0.8 THEN 1 ELSE 2 END + rel.id * 0) AS n
+ORDER BY rel.id, n;
+
+INSERT INTO track (gid, medium, position, number, name, artist_credit, length)
+SELECT md5('track-' || md.id || '-' || n)::UUID, md.id, n AS position, n::TEXT AS number,
+  pg_temp.word() || ' ' || pg_temp.word(), rel.artist_credit,
+  CASE WHEN random() < 0.95 THEN 90000 + floor(random() * 300000)::INT END
+FROM medium md
+  INNER JOIN release rel ON rel.id = md.release,
+  generate_series(1, md.track_count) AS n
+ORDER BY md.id, n;
+
+INSERT INTO tag (name)
+SELECT unnest(ARRAY[
+  'rock', 'electronic', 'jazz', 'hip hop', 'folk', 'ambient', 'post-punk', 'shoegaze', 'soul', 'indie pop',
+  'metal', 'techno', 'house', 'blues', 'country', 'classical', 'punk', 'reggae', 'funk', 'synth-pop',
+  'dream pop', 'krautrock', 'trip hop', 'new wave', 'drum and bass', 'garage rock', 'psychedelic rock',
+  'singer-songwriter', 'experimental', 'noise', 'downtempo', 'dub', 'gospel', 'latin', 'afrobeat', 'grunge',
+  'britpop', 'emo', 'hardcore', 'idm']);
+
+INSERT INTO release_group_tag (release_group, tag, count)
+SELECT DISTINCT ON (r.id, t) r.id, t, 1 + floor(random() * 20)::INT
+FROM release_group r, generate_series(1, floor(random() * 4)::INT + r.id * 0) AS n,
+  LATERAL (SELECT 1 + floor(random() * 40)::INT + n * 0 AS t) AS pick
+ORDER BY r.id, t;
+
+UPDATE tag t
+SET ref_count = c.release_groups
+FROM (SELECT tag, count(*) AS release_groups FROM release_group_tag GROUP BY tag) AS c
+WHERE c.tag = t.id;
+
+UPDATE artist SET ts_name = to_tsvector('mb_simple', name);
+UPDATE release_group SET ts_name = to_tsvector('mb_simple', name);
+
+SELECT setval('artist_id_seq', (SELECT max(id) FROM artist));
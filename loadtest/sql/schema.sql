@@ -0,0 +1,97 @@
+-- The subset of the MusicBrainz schema the service queries, with the indexes the live database has.
+-- Column names and types follow the MusicBrainz schema; unused columns are left out.
+
+CREATE TEXT SEARCH CONFIGURATION mb_simple (COPY = simple);
+
+CREATE TABLE artist (
+  id      SERIAL PRIMARY KEY,
+  gid     UUID         NOT NULL,
+  name    VARCHAR      NOT NULL,
+  ts_name TSVECTOR
+);
+
+CREATE TABLE artist_credit_name (
+  artist_credit INTEGER  NOT NULL,
+  position      SMALLINT NOT NULL,
+  artist        INTEGER  NOT NULL REFERENCES artist (id),
+  name          VARCHAR  NOT NULL,
+  join_phrase   TEXT     NOT NULL DEFAULT '',
+  PRIMARY KEY (artist_credit, position)
+);
+
+CREATE TABLE release_group (
+  id            SERIAL PRIMARY KEY,
+  gid           UUID        NOT NULL,
+  name          VARCHAR     NOT NULL,
+  artist_credit INTEGER     NOT NULL,
+  type          INTEGER,
+  last_updated  TIMESTAMP WITH TIME ZONE DEFAULT now(),
+  ts_name       TSVECTOR
+);
+
+CREATE TABLE release_group_meta (
+  id                        INTEGER PRIMARY KEY REFERENCES release_group (id),
+  release_count             INTEGER NOT NULL DEFAULT 0,
+  first_release_date_year   SMALLINT,
+  first_release_date_month  SMALLINT,
+  first_release_date_day    SMALLINT
+);
+
+CREATE TABLE release_group_secondary_type_join (
+  release_group  INTEGER NOT NULL REFERENCES release_group (id),
+  secondary_type INTEGER NOT NULL,
+  created        TIMESTAMP WITH TIME ZONE NOT NULL DEFAULT now(),
+  PRIMARY KEY (release_group, secondary_type)
+);
+
+CREATE TABLE release (
+  id            SERIAL PRIMARY KEY,
+  gid           UUID    NOT NULL,
+  name          VARCHAR NOT NULL,
+  artist_credit INTEGER NOT NULL,
+  release_group INTEGER NOT NULL REFERENCES release_group (id),
+  last_updated  TIMESTAMP WITH TIME ZONE DEFAULT now()
+);
+
+CREATE TABLE release_event (
+  release    INTEGER NOT NULL REFERENCES release (id),
+  date_year  SMALLINT,
+  date_month SMALLINT,
+  date_day   SMALLINT,
+  country    INTEGER
+);
+
+CREATE TABLE medium (
+  id           SERIAL PRIMARY KEY,
+  release      INTEGER  NOT NULL REFERENCES release (id),
+  position     INTEGER  NOT NULL,
+  format       INTEGER,
+  name         VARCHAR  NOT NULL DEFAULT '',
+  track_count  INTEGER  NOT NULL DEFAULT 0,
+  last_updated TIMESTAMP WITH TIME ZONE DEFAULT now()
+);
+
+CREATE TABLE track (
+  id            SERIAL PRIMARY KEY,
+  gid           UUID    NOT NULL,
+  medium        INTEGER NOT NULL REFERENCES medium (id),
+  position      INTEGER NOT NULL,
+  number        TEXT    NOT NULL,
+  name          VARCHAR NOT NULL,
+  artist_credit INTEGER NOT NULL,
+  length        INTEGER
+);
+
+CREATE TABLE tag (
+  id        SERIAL PRIMARY KEY,
+  name      VARCHAR NOT NULL,
+  ref_count INTEGER NOT NULL DEFAULT 0
+);
+
+CREATE TABLE release_group_tag (
+  release_group INTEGER NOT NULL REFERENCES release_group (id),
+  tag           INTEGER NOT NULL REFERENCES tag (id),
+  count         INTEGER NOT NULL,
+  last_updated  TIMESTAMP WITH TIME ZONE DEFAULT now(),
+  PRIMARY KEY (release_group, tag)
+);
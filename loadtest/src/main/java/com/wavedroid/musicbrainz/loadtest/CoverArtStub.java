@@ -0,0 +1,72 @@
+package com.wavedroid.musicbrainz.loadtest;
+
+import com.google.common.io.ByteStreams;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local stand-in for coverartarchive.org. Release groups get a recorded response with their MBID
+ * filled in, or a 404 for the configured share of them, decided by the MBID so that a release
+ * group keeps its answer; every response is delayed by a fixed latency, without tying up a thread.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class CoverArtStub {
+
+    private static final String PREFIX = "/release-group/";
+
+    private final HttpServer server;
+    private final ScheduledExecutorService delays = Executors.newScheduledThreadPool(2);
+    private final String template;
+    private final long latencyMillis;
+    private final double hitRatio;
+
+    CoverArtStub(long latencyMillis, double hitRatio) throws IOException {
+        this.latencyMillis = latencyMillis;
+        this.hitRatio = hitRatio;
+        try (InputStream is = CoverArtStub.class.getResourceAsStream("/cover-art.json")) {
+            this.template = new String(ByteStreams.toByteArray(is), StandardCharsets.UTF_8);
+        }
+        this.server = HttpServer.create(new InetSocketAddress("localhost", 0), 1024);
+        server.createContext("/", this::handle);
+        server.setExecutor(Executors.newFixedThreadPool(4));
+    }
+
+    void start() {
+        server.start();
+    }
+
+    String getBaseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    private void handle(HttpExchange exchange) {
+        String path = exchange.getRequestURI().getPath();
+        String mbid = path.startsWith(PREFIX) ? path.substring(PREFIX.length()) : "";
+        boolean hit = !mbid.isEmpty() && (mbid.hashCode() & Integer.MAX_VALUE) % 1000 < hitRatio * 1000;
+        byte[] body = hit ? template.replace("{{mbid}}", mbid).getBytes(StandardCharsets.UTF_8) : new byte[0];
+        delays.schedule(() -> respond(exchange, hit ? 200 : 404, body), latencyMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private static void respond(HttpExchange exchange, int status, byte[] body) {
+        try {
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(status, body.length == 0 ? -1 : body.length);
+            try (OutputStream os = exchange.getResponseBody()) {
+                os.write(body);
+            }
+        } catch (IOException e) {
+            exchange.close();
+        }
+    }
+}
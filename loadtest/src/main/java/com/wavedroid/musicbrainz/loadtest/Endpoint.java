@@ -0,0 +1,103 @@
+package com.wavedroid.musicbrainz.loadtest;
+
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.entity.ContentType;
+import org.apache.http.entity.StringEntity;
+
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Random;
+
+/**
+ * The {@code /release/*} endpoints the load is spread over, each turning a random sampled target
+ * into a request. Listings ask for all releases half of the time and for studio albums otherwise.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+enum Endpoint {
+
+    MBID("mbid") {
+        @Override
+        HttpUriRequest request(String baseUrl, Targets targets, Random random, int batchSize) {
+            return new HttpGet(baseUrl + "/release/mbid/" + targets.releaseGroupMbid(random));
+        }
+    },
+    ID("id") {
+        @Override
+        HttpUriRequest request(String baseUrl, Targets targets, Random random, int batchSize) {
+            return new HttpGet(baseUrl + "/release/id/" + targets.releaseGroupId(random));
+        }
+    },
+    ARTIST_ID("artistId") {
+        @Override
+        HttpUriRequest request(String baseUrl, Targets targets, Random random, int batchSize) {
+            return new HttpGet(baseUrl + "/release/artistId/" + targets.artistId(random) + all(random));
+        }
+    },
+    ARTIST_NAME("artistName") {
+        @Override
+        HttpUriRequest request(String baseUrl, Targets targets, Random random, int batchSize) {
+            return new HttpGet(baseUrl + "/release/artistName/" + encode(targets.artistName(random)) + all(random));
+        }
+    },
+    NAME("name") {
+        @Override
+        HttpUriRequest request(String baseUrl, Targets targets, Random random, int batchSize) {
+            return new HttpGet(baseUrl + "/release/name/" + encode(targets.releaseGroupName(random)) + all(random));
+        }
+    },
+    BATCH("batch") {
+        @Override
+        HttpUriRequest request(String baseUrl, Targets targets, Random random, int batchSize) {
+            StringBuilder mbids = new StringBuilder();
+            StringBuilder ids = new StringBuilder();
+            for (int i = 0; i < batchSize; i++) {
+                if (i % 2 == 0) {
+                    mbids.append(mbids.length() == 0 ? "" : ",").append('"').append(targets.releaseGroupMbid(random)).append('"');
+                } else {
+                    ids.append(ids.length() == 0 ? "" : ",").append(targets.releaseGroupId(random));
+                }
+            }
+            HttpPost post = new HttpPost(baseUrl + "/release/batch");
+            post.setEntity(new StringEntity("{\"mbids\":[" + mbids + "],\"ids\":[" + ids + "]}",
+                    ContentType.APPLICATION_JSON));
+            return post;
+        }
+    };
+
+    private final String name;
+
+    Endpoint(String name) {
+        this.name = name;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    abstract HttpUriRequest request(String baseUrl, Targets targets, Random random, int batchSize);
+
+    static Endpoint byName(String name) {
+        for (Endpoint endpoint : values()) {
+            if (endpoint.name.equals(name)) {
+                return endpoint;
+            }
+        }
+        throw new IllegalArgumentException("Unknown endpoint " + name);
+    }
+
+    private static String all(Random random) {
+        return random.nextBoolean() ? "?all=true" : "";
+    }
+
+    private static String encode(String text) {
+        try {
+            return URLEncoder.encode(text, "UTF-8").replace("+", "%20");
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.wavedroid.musicbrainz.loadtest;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SynchronizedHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Outcome of the recorded requests to one endpoint. Latencies are taken from the moment a request
+ * was due to start, not from when it was sent, so that a stalled server cannot hide its queueing
+ * delay from the percentiles.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class EndpointStats {
+
+    private static final long MAX_LATENCY_MICROS = TimeUnit.MINUTES.toMicros(2);
+
+    private final Histogram latencies = new SynchronizedHistogram(MAX_LATENCY_MICROS, 3);
+    private final AtomicLong succeeded = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    void succeeded(long latencyNanos) {
+        succeeded.incrementAndGet();
+        record(latencyNanos);
+    }
+
+    /**
+     * An error status, a connection failure or a timeout; still counts towards the latencies.
+     */
+    void failed(long latencyNanos) {
+        failed.incrementAndGet();
+        record(latencyNanos);
+    }
+
+    /**
+     * The request was due while too many were in flight and was never sent.
+     */
+    void dropped() {
+        dropped.incrementAndGet();
+    }
+
+    long getSucceeded() {
+        return succeeded.get();
+    }
+
+    long getFailed() {
+        return failed.get();
+    }
+
+    long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return latency at the given percentile in milliseconds
+     */
+    double percentileMillis(double percentile) {
+        return latencies.getValueAtPercentile(percentile) / 1000.0;
+    }
+
+    double maxMillis() {
+        return latencies.getMaxValue() / 1000.0;
+    }
+
+    private void record(long latencyNanos) {
+        latencies.recordValue(Math.min(TimeUnit.NANOSECONDS.toMicros(latencyNanos), MAX_LATENCY_MICROS));
+    }
+}
@@ -0,0 +1,158 @@
+package com.wavedroid.musicbrainz.loadtest;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpUriRequest;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.util.EntityUtils;
+
+import java.io.IOException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Open-loop load: requests are started on a schedule set by the target rate, whether or not the
+ * earlier ones have completed, so a slow server sees the queue build up as it would in production
+ * instead of the generator backing off. Requests are sent without blocking; only the ones started
+ * after the warmup are recorded.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class LoadGenerator {
+
+    private static final long DRAIN_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final String baseUrl;
+    private final Targets targets;
+    private final LoadTestOptions options;
+    private final Endpoint[] endpoints;
+    private final int[] cumulativeWeights;
+
+    LoadGenerator(String baseUrl, Targets targets, LoadTestOptions options) {
+        this.baseUrl = baseUrl;
+        this.targets = targets;
+        this.options = options;
+        this.endpoints = new Endpoint[options.mix.size()];
+        this.cumulativeWeights = new int[options.mix.size()];
+        int i = 0;
+        int total = 0;
+        for (Map.Entry<Endpoint, Integer> weight : options.mix.entrySet()) {
+            total += weight.getValue();
+            endpoints[i] = weight.getKey();
+            cumulativeWeights[i++] = total;
+        }
+        if (total <= 0) {
+            throw new IllegalArgumentException("The request mix has no weight");
+        }
+    }
+
+    Map<Endpoint, EndpointStats> run() throws IOException {
+        Map<Endpoint, EndpointStats> stats = new EnumMap<>(Endpoint.class);
+        for (Endpoint endpoint : endpoints) {
+            stats.put(endpoint, new EndpointStats());
+        }
+        AtomicInteger inFlight = new AtomicInteger();
+        Random random = new Random(42);
+        long intervalNanos = (long) (TimeUnit.SECONDS.toNanos(1) / options.rate);
+        int timeoutMillis = (int) TimeUnit.SECONDS.toMillis(30);
+
+        try (CloseableHttpAsyncClient client = HttpAsyncClients.custom()
+                .setMaxConnTotal(options.maxInFlight)
+                .setMaxConnPerRoute(options.maxInFlight)
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectTimeout(timeoutMillis)
+                        .setSocketTimeout(timeoutMillis)
+                        .build())
+                .build()) {
+            client.start();
+            long start = System.nanoTime();
+            long recordFrom = start + TimeUnit.SECONDS.toNanos(options.warmupSeconds);
+            long end = recordFrom + TimeUnit.SECONDS.toNanos(options.durationSeconds);
+            for (long due = start; due < end; due += nextInterval(random, intervalNanos)) {
+                long wait = due - System.nanoTime();
+                if (wait > 0) {
+                    LockSupport.parkNanos(wait);
+                }
+                Endpoint endpoint = pick(random);
+                EndpointStats endpointStats = due >= recordFrom ? stats.get(endpoint) : null;
+                if (inFlight.get() >= options.maxInFlight) {
+                    if (endpointStats != null) {
+                        endpointStats.dropped();
+                    }
+                    continue;
+                }
+                inFlight.incrementAndGet();
+                HttpUriRequest request = endpoint.request(baseUrl, targets, random, options.batchSize);
+                client.execute(request, new Recorder(due, endpointStats, inFlight));
+            }
+            long drainDeadline = System.nanoTime() + DRAIN_TIMEOUT_NANOS;
+            while (inFlight.get() > 0 && System.nanoTime() < drainDeadline) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(10));
+            }
+        }
+        return stats;
+    }
+
+    private long nextInterval(Random random, long intervalNanos) {
+        return options.poisson ? (long) (-Math.log(1 - random.nextDouble()) * intervalNanos) : intervalNanos;
+    }
+
+    private Endpoint pick(Random random) {
+        int value = random.nextInt(cumulativeWeights[cumulativeWeights.length - 1]);
+        int i = 0;
+        while (value >= cumulativeWeights[i]) {
+            i++;
+        }
+        return endpoints[i];
+    }
+
+    private static final class Recorder implements FutureCallback<HttpResponse> {
+
+        private final long due;
+        private final EndpointStats stats;
+        private final AtomicInteger inFlight;
+
+        private Recorder(long due, EndpointStats stats, AtomicInteger inFlight) {
+            this.due = due;
+            this.stats = stats;
+            this.inFlight = inFlight;
+        }
+
+        @Override
+        public void completed(HttpResponse response) {
+            EntityUtils.consumeQuietly(response.getEntity());
+            int status = response.getStatusLine().getStatusCode();
+            done(status >= 200 && status < 300);
+        }
+
+        @Override
+        public void failed(Exception e) {
+            done(false);
+        }
+
+        @Override
+        public void cancelled() {
+            done(false);
+        }
+
+        private void done(boolean success) {
+            long latency = System.nanoTime() - due;
+            inFlight.decrementAndGet();
+            if (stats == null) {
+                return;
+            }
+            if (success) {
+                stats.succeeded(latency);
+            } else {
+                stats.failed(latency);
+            }
+        }
+    }
+}
@@ -0,0 +1,81 @@
+package com.wavedroid.musicbrainz.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.yaml.YAMLFactory;
+import com.wavedroid.musicbrainz.MBServer;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end load test: stubs coverartarchive.org, runs {@link MBServer} in this JVM against the
+ * given database, drives an open-loop request mix across the {@code /release/*} endpoints and
+ * reports throughput and latency percentiles per endpoint. See {@link LoadTestOptions} for the
+ * command line and {@code run.sh} for a database to run against.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public final class LoadTest {
+
+    private static final long STARTUP_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+    private LoadTest() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+
+        CoverArtStub coverArt = new CoverArtStub(options.coverArtLatencyMillis, options.coverArtHitRatio);
+        coverArt.start();
+
+        System.setProperty("dw.database.url", options.dbUrl);
+        System.setProperty("dw.database.user", options.dbUser);
+        System.setProperty("dw.database.password", options.dbPassword);
+        System.setProperty("dw.coverArt.baseUrl", coverArt.getBaseUrl());
+        new MBServer().run("server", options.config);
+        String baseUrl = "http://localhost:" + applicationPort(options.config);
+        awaitStartup(baseUrl);
+
+        Targets targets = Targets.sample(options.dbUrl, options.dbUser, options.dbPassword);
+        System.out.printf("Running %s req/s for %ss after a %ss warmup%n",
+                options.rate, options.durationSeconds, options.warmupSeconds);
+        Map<Endpoint, EndpointStats> stats = new LoadGenerator(baseUrl, targets, options).run();
+
+        Report report = new Report(options, stats);
+        report.print(System.out);
+        report.write(new File(options.out));
+        System.out.println("Results written to " + options.out);
+        if (options.baseline != null) {
+            report.compare(new File(options.baseline), System.out);
+        }
+        System.exit(0);
+    }
+
+    private static int applicationPort(String config) throws IOException {
+        return new ObjectMapper(new YAMLFactory()).readTree(new File(config))
+                .path("server").path("applicationConnectors").path(0).path("port").asInt(8080);
+    }
+
+    /**
+     * Waits until the application connector answers; any status will do.
+     */
+    private static void awaitStartup(String baseUrl) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + STARTUP_TIMEOUT_MILLIS;
+        while (System.currentTimeMillis() < deadline) {
+            try {
+                HttpURLConnection connection = (HttpURLConnection) new URL(baseUrl + "/release/id/0").openConnection();
+                connection.getResponseCode();
+                connection.disconnect();
+                return;
+            } catch (IOException e) {
+                Thread.sleep(200);
+            }
+        }
+        throw new IllegalStateException("MBServer did not start within " + STARTUP_TIMEOUT_MILLIS + " ms");
+    }
+}
@@ -0,0 +1,133 @@
+package com.wavedroid.musicbrainz.loadtest;
+
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Command line of {@link LoadTest}, given as {@code --name=value}:
+ * <ul>
+ * <li>{@code config}: server configuration to run {@code MBServer} with (default {@code loadtest.yml})</li>
+ * <li>{@code db-url}, {@code db-user}, {@code db-password}: database to serve from and sample targets of</li>
+ * <li>{@code rate}: requests per second started regardless of how many are still in flight (default 100)</li>
+ * <li>{@code arrivals}: {@code uniform} or {@code poisson} spacing of the requests (default poisson)</li>
+ * <li>{@code warmup}, {@code duration}: seconds of unrecorded and recorded load (default 10 and 60)</li>
+ * <li>{@code mix}: relative weights of the endpoints, e.g. {@code mbid:40,id:20,batch:5}</li>
+ * <li>{@code batch-size}: MBIDs plus ids per batch request (default 20)</li>
+ * <li>{@code max-in-flight}: requests in flight beyond which new ones are counted as dropped (default 5000)</li>
+ * <li>{@code cover-latency}, {@code cover-hit-ratio}: behaviour of the coverartarchive.org stub
+ * (default 50 ms and 0.7)</li>
+ * <li>{@code out}: where to write the results (default {@code target/loadtest-<time>.json})</li>
+ * <li>{@code baseline}: earlier results to compare with</li>
+ * </ul>
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class LoadTestOptions {
+
+    String config = "loadtest.yml";
+    String dbUrl = "jdbc:postgresql://localhost:15432/musicbrainz_db";
+    String dbUser = "musicbrainz";
+    String dbPassword = "musicbrainz";
+    double rate = 100;
+    boolean poisson = true;
+    int warmupSeconds = 10;
+    int durationSeconds = 60;
+    Map<Endpoint, Integer> mix = defaultMix();
+    int batchSize = 20;
+    int maxInFlight = 5000;
+    int coverArtLatencyMillis = 50;
+    double coverArtHitRatio = 0.7;
+    String out = "target/loadtest-" + System.currentTimeMillis() + ".json";
+    String baseline;
+
+    static LoadTestOptions parse(String[] args) {
+        LoadTestOptions options = new LoadTestOptions();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (!arg.startsWith("--") || eq < 0) {
+                throw new IllegalArgumentException("Expected --name=value, got " + arg);
+            }
+            String value = arg.substring(eq + 1);
+            switch (arg.substring(2, eq)) {
+                case "config":
+                    options.config = value;
+                    break;
+                case "db-url":
+                    options.dbUrl = value;
+                    break;
+                case "db-user":
+                    options.dbUser = value;
+                    break;
+                case "db-password":
+                    options.dbPassword = value;
+                    break;
+                case "rate":
+                    options.rate = Double.parseDouble(value);
+                    break;
+                case "arrivals":
+                    if (!value.equals("uniform") && !value.equals("poisson")) {
+                        throw new IllegalArgumentException("Unknown arrivals " + value);
+                    }
+                    options.poisson = value.equals("poisson");
+                    break;
+                case "warmup":
+                    options.warmupSeconds = Integer.parseInt(value);
+                    break;
+                case "duration":
+                    options.durationSeconds = Integer.parseInt(value);
+                    break;
+                case "mix":
+                    options.mix = parseMix(value);
+                    break;
+                case "batch-size":
+                    options.batchSize = Integer.parseInt(value);
+                    break;
+                case "max-in-flight":
+                    options.maxInFlight = Integer.parseInt(value);
+                    break;
+                case "cover-latency":
+                    options.coverArtLatencyMillis = Integer.parseInt(value);
+                    break;
+                case "cover-hit-ratio":
+                    options.coverArtHitRatio = Double.parseDouble(value);
+                    break;
+                case "out":
+                    options.out = value;
+                    break;
+                case "baseline":
+                    options.baseline = value;
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + arg);
+            }
+        }
+        if (options.rate <= 0 || options.durationSeconds <= 0) {
+            throw new IllegalArgumentException("rate and duration must be positive");
+        }
+        return options;
+    }
+
+    private static Map<Endpoint, Integer> defaultMix() {
+        Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+        mix.put(Endpoint.MBID, 40);
+        mix.put(Endpoint.ID, 15);
+        mix.put(Endpoint.ARTIST_ID, 15);
+        mix.put(Endpoint.ARTIST_NAME, 10);
+        mix.put(Endpoint.NAME, 10);
+        mix.put(Endpoint.BATCH, 10);
+        return mix;
+    }
+
+    private static Map<Endpoint, Integer> parseMix(String value) {
+        Map<Endpoint, Integer> mix = new EnumMap<>(Endpoint.class);
+        for (String part : value.split(",")) {
+            String[] weight = part.split(":");
+            if (weight.length != 2) {
+                throw new IllegalArgumentException("Expected endpoint:weight, got " + part);
+            }
+            mix.put(Endpoint.byName(weight[0].trim()), Integer.parseInt(weight[1].trim()));
+        }
+        return mix;
+    }
+}
@@ -0,0 +1,105 @@
+package com.wavedroid.musicbrainz.loadtest;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Per-endpoint throughput and latency percentiles of a run, printed as a table and saved as JSON
+ * so that a later run can be compared against it as a baseline.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class Report {
+
+    private static final ObjectMapper om = new ObjectMapper().enable(SerializationFeature.INDENT_OUTPUT);
+
+    private static final String[] METRICS = {"throughput", "p50", "p99", "p999"};
+
+    private final Map<String, Object> result = new LinkedHashMap<>();
+
+    Report(LoadTestOptions options, Map<Endpoint, EndpointStats> stats) {
+        result.put("rate", options.rate);
+        result.put("arrivals", options.poisson ? "poisson" : "uniform");
+        result.put("durationSeconds", options.durationSeconds);
+        result.put("batchSize", options.batchSize);
+        Map<String, Object> endpoints = new LinkedHashMap<>();
+        for (Map.Entry<Endpoint, EndpointStats> entry : stats.entrySet()) {
+            EndpointStats endpoint = entry.getValue();
+            Map<String, Object> values = new LinkedHashMap<>();
+            values.put("weight", options.mix.get(entry.getKey()));
+            values.put("succeeded", endpoint.getSucceeded());
+            values.put("failed", endpoint.getFailed());
+            values.put("dropped", endpoint.getDropped());
+            values.put("throughput", round((double) endpoint.getSucceeded() / options.durationSeconds));
+            values.put("p50", round(endpoint.percentileMillis(50)));
+            values.put("p99", round(endpoint.percentileMillis(99)));
+            values.put("p999", round(endpoint.percentileMillis(99.9)));
+            values.put("max", round(endpoint.maxMillis()));
+            endpoints.put(entry.getKey().getName(), values);
+        }
+        result.put("endpoints", endpoints);
+    }
+
+    void print(PrintStream out) {
+        out.printf("%-12s %10s %8s %8s %12s %10s %10s %10s %10s%n",
+                "endpoint", "succeeded", "failed", "dropped", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms");
+        JsonNode endpoints = om.valueToTree(result).path("endpoints");
+        for (Iterator<Map.Entry<String, JsonNode>> it = endpoints.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> endpoint = it.next();
+            JsonNode values = endpoint.getValue();
+            out.printf("%-12s %10d %8d %8d %12.1f %10.2f %10.2f %10.2f %10.2f%n", endpoint.getKey(),
+                    values.path("succeeded").asLong(), values.path("failed").asLong(), values.path("dropped").asLong(),
+                    values.path("throughput").asDouble(), values.path("p50").asDouble(), values.path("p99").asDouble(),
+                    values.path("p999").asDouble(), values.path("max").asDouble());
+        }
+    }
+
+    void write(File file) throws IOException {
+        File dir = file.getAbsoluteFile().getParentFile();
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create " + dir);
+        }
+        om.writeValue(file, result);
+    }
+
+    /**
+     * Prints the change of every metric against the baseline, in percent; positive is better for
+     * throughput and worse for the latencies.
+     */
+    void compare(File baselineFile, PrintStream out) throws IOException {
+        JsonNode baseline = om.readTree(baselineFile);
+        if (baseline.path("rate").asDouble() != (Double) result.get("rate")) {
+            out.printf("Baseline ran at %s req/s, this run at %s req/s%n", baseline.path("rate"), result.get("rate"));
+        }
+        out.printf("%-12s %30s %30s %30s %30s%n", "vs baseline", "req/s", "p50 ms", "p99 ms", "p999 ms");
+        JsonNode endpoints = om.valueToTree(result).path("endpoints");
+        for (Iterator<Map.Entry<String, JsonNode>> it = endpoints.fields(); it.hasNext(); ) {
+            Map.Entry<String, JsonNode> endpoint = it.next();
+            JsonNode before = baseline.path("endpoints").path(endpoint.getKey());
+            if (before.isMissingNode()) {
+                continue;
+            }
+            StringBuilder line = new StringBuilder(String.format("%-12s", endpoint.getKey()));
+            for (String metric : METRICS) {
+                double was = before.path(metric).asDouble();
+                double is = endpoint.getValue().path(metric).asDouble();
+                line.append(String.format(" %9.2f -> %-9.2f", was, is))
+                        .append(was == 0 ? "       " : String.format(" %+5.0f%%", (is - was) * 100 / was));
+            }
+            out.println(line);
+        }
+    }
+
+    private static double round(double value) {
+        return Math.round(value * 100) / 100.0;
+    }
+}
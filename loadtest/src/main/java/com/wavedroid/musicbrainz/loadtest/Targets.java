@@ -0,0 +1,82 @@
+package com.wavedroid.musicbrainz.loadtest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Ids, MBIDs and names sampled from the database, so that requests hit data that exists and the
+ * load is spread over the whole data set instead of a few hot rows.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class Targets {
+
+    private static final int SAMPLE_SIZE = 10000;
+
+    private final List<Long> artistIds = new ArrayList<>();
+    private final List<String> artistNames = new ArrayList<>();
+    private final List<Long> releaseGroupIds = new ArrayList<>();
+    private final List<String> releaseGroupMbids = new ArrayList<>();
+    private final List<String> releaseGroupNames = new ArrayList<>();
+
+    static Targets sample(String url, String user, String password) throws SQLException {
+        Targets targets = new Targets();
+        try (Connection conn = DriverManager.getConnection(url, user, password)) {
+            try (PreparedStatement ps = conn.prepareStatement("SELECT id, name FROM artist ORDER BY random() LIMIT ?")) {
+                ps.setInt(1, SAMPLE_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        targets.artistIds.add(rs.getLong(1));
+                        targets.artistNames.add(rs.getString(2));
+                    }
+                }
+            }
+            try (PreparedStatement ps = conn.prepareStatement(
+                    "SELECT id, gid, name FROM release_group ORDER BY random() LIMIT ?")) {
+                ps.setInt(1, SAMPLE_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        targets.releaseGroupIds.add(rs.getLong(1));
+                        targets.releaseGroupMbids.add(rs.getString(2));
+                        targets.releaseGroupNames.add(rs.getString(3));
+                    }
+                }
+            }
+        }
+        if (targets.artistIds.isEmpty() || targets.releaseGroupIds.isEmpty()) {
+            throw new IllegalStateException("No artists or release groups in " + url);
+        }
+        return targets;
+    }
+
+    long artistId(Random random) {
+        return pick(artistIds, random);
+    }
+
+    String artistName(Random random) {
+        return pick(artistNames, random);
+    }
+
+    long releaseGroupId(Random random) {
+        return pick(releaseGroupIds, random);
+    }
+
+    String releaseGroupMbid(Random random) {
+        return pick(releaseGroupMbids, random);
+    }
+
+    String releaseGroupName(Random random) {
+        return pick(releaseGroupNames, random);
+    }
+
+    private static <T> T pick(List<T> values, Random random) {
+        return values.get(random.nextInt(values.size()));
+    }
+}
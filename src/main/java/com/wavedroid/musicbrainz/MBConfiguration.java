@@ -0,0 +1,325 @@
+package com.wavedroid.musicbrainz;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wavedroid.musicbrainz.cache.HttpCachingConfiguration;
+import com.wavedroid.musicbrainz.cache.ResponseCacheConfiguration;
+import com.wavedroid.musicbrainz.concurrent.BulkheadConfiguration;
+import com.wavedroid.musicbrainz.coverart.CoverArtConfiguration;
+import com.wavedroid.musicbrainz.dao.SlowQueryConfiguration;
+import com.wavedroid.musicbrainz.export.ExportConfiguration;
+import com.wavedroid.musicbrainz.replicas.ReadReplicasConfiguration;
+import com.wavedroid.musicbrainz.search.SearchIndexConfiguration;
+import com.wavedroid.musicbrainz.snapshot.SnapshotConfiguration;
+import com.wavedroid.musicbrainz.suggest.SuggestConfiguration;
+import com.wavedroid.musicbrainz.summary.ReleaseSummaryConfiguration;
+import com.wavedroid.musicbrainz.tags.TagDictionaryConfiguration;
+import io.dropwizard.Configuration;
+import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.util.Duration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class MBConfiguration extends Configuration {
+
+    @Valid
+    @NotNull
+    private DataSourceFactory database = new DataSourceFactory();
+
+    @Valid
+    @NotNull
+    private CoverArtConfiguration coverArt = new CoverArtConfiguration();
+
+    @Valid
+    @NotNull
+    private ResponseCacheConfiguration responseCache = new ResponseCacheConfiguration();
+
+    @Valid
+    @NotNull
+    private HttpCachingConfiguration httpCaching = new HttpCachingConfiguration();
+
+    @Valid
+    @NotNull
+    private ReleaseSummaryConfiguration releaseSummary = new ReleaseSummaryConfiguration();
+
+    @Valid
+    @NotNull
+    private SearchIndexConfiguration searchIndex = new SearchIndexConfiguration();
+
+    @Valid
+    @NotNull
+    private SuggestConfiguration suggest = new SuggestConfiguration();
+
+    @Valid
+    @NotNull
+    private TagDictionaryConfiguration tagDictionary = new TagDictionaryConfiguration();
+
+    @Valid
+    @NotNull
+    private SlowQueryConfiguration slowQueries = new SlowQueryConfiguration();
+
+    @Valid
+    @NotNull
+    private ReadReplicasConfiguration readReplicas = new ReadReplicasConfiguration();
+
+    @Valid
+    @NotNull
+    private SnapshotConfiguration snapshot = new SnapshotConfiguration();
+
+    @Valid
+    @NotNull
+    private ExportConfiguration export = new ExportConfiguration();
+
+    @Valid
+    @NotNull
+    private BulkheadConfiguration databaseBulkhead = new BulkheadConfiguration();
+
+    @NotNull
+    private Duration lookupDeadline = Duration.seconds(2);
+
+    private boolean streamResponses = false;
+
+    @Min(1)
+    private int fetchSize = 100;
+
+    @Min(0)
+    private int statementCacheSize = 64;
+
+    private boolean inlineTags = true;
+
+    @Min(0)
+    private int maxTags = 10;
+
+    private boolean coalesceRequests = true;
+
+    @JsonProperty("database")
+    public DataSourceFactory getDataSourceFactory() {
+        return database;
+    }
+
+    @JsonProperty("database")
+    public void setDataSourceFactory(DataSourceFactory database) {
+        this.database = database;
+    }
+
+    @JsonProperty("coverArt")
+    public CoverArtConfiguration getCoverArtConfiguration() {
+        return coverArt;
+    }
+
+    @JsonProperty("coverArt")
+    public void setCoverArtConfiguration(CoverArtConfiguration coverArt) {
+        this.coverArt = coverArt;
+    }
+
+    @JsonProperty("responseCache")
+    public ResponseCacheConfiguration getResponseCacheConfiguration() {
+        return responseCache;
+    }
+
+    @JsonProperty("responseCache")
+    public void setResponseCacheConfiguration(ResponseCacheConfiguration responseCache) {
+        this.responseCache = responseCache;
+    }
+
+    @JsonProperty("httpCaching")
+    public HttpCachingConfiguration getHttpCachingConfiguration() {
+        return httpCaching;
+    }
+
+    @JsonProperty("httpCaching")
+    public void setHttpCachingConfiguration(HttpCachingConfiguration httpCaching) {
+        this.httpCaching = httpCaching;
+    }
+
+    /**
+     * Whether responses are written straight from a database cursor instead of being built in memory.
+     */
+    @JsonProperty
+    public boolean isStreamResponses() {
+        return streamResponses;
+    }
+
+    @JsonProperty
+    public void setStreamResponses(boolean streamResponses) {
+        this.streamResponses = streamResponses;
+    }
+
+    /**
+     * Rows fetched per cursor round trip when streaming; also the size of a tag lookup chunk.
+     */
+    @JsonProperty
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    @JsonProperty
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Prepared statements kept open per pooled connection, so that repeated queries stay
+     * server-side prepared; {@code 0} disables the cache.
+     */
+    @JsonProperty
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    @JsonProperty
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    /**
+     * Whether listings fetch the top tags of their releases in the release query itself, rather
+     * than in a second query joined in afterwards.
+     */
+    @JsonProperty
+    public boolean isInlineTags() {
+        return inlineTags;
+    }
+
+    @JsonProperty
+    public void setInlineTags(boolean inlineTags) {
+        this.inlineTags = inlineTags;
+    }
+
+    /**
+     * The most tags per release a listing may ask for with its {@code tags} parameter.
+     */
+    @JsonProperty
+    public int getMaxTags() {
+        return maxTags;
+    }
+
+    @JsonProperty
+    public void setMaxTags(int maxTags) {
+        this.maxTags = maxTags;
+    }
+
+    /**
+     * Whether identical database and cover art lookups running at the same time share one execution.
+     */
+    @JsonProperty
+    public boolean isCoalesceRequests() {
+        return coalesceRequests;
+    }
+
+    @JsonProperty
+    public void setCoalesceRequests(boolean coalesceRequests) {
+        this.coalesceRequests = coalesceRequests;
+    }
+
+    /**
+     * Pool running the database work of the release endpoints, the independent steps of a lookup in parallel.
+     */
+    @JsonProperty
+    public BulkheadConfiguration getDatabaseBulkhead() {
+        return databaseBulkhead;
+    }
+
+    @JsonProperty
+    public void setDatabaseBulkhead(BulkheadConfiguration databaseBulkhead) {
+        this.databaseBulkhead = databaseBulkhead;
+    }
+
+    /**
+     * Overall time budget of a release lookup; steps still running then are left out of the response.
+     */
+    @JsonProperty
+    public Duration getLookupDeadline() {
+        return lookupDeadline;
+    }
+
+    @JsonProperty
+    public void setLookupDeadline(Duration lookupDeadline) {
+        this.lookupDeadline = lookupDeadline;
+    }
+
+    @JsonProperty("releaseSummary")
+    public ReleaseSummaryConfiguration getReleaseSummaryConfiguration() {
+        return releaseSummary;
+    }
+
+    @JsonProperty("releaseSummary")
+    public void setReleaseSummaryConfiguration(ReleaseSummaryConfiguration releaseSummary) {
+        this.releaseSummary = releaseSummary;
+    }
+
+    @JsonProperty("searchIndex")
+    public SearchIndexConfiguration getSearchIndexConfiguration() {
+        return searchIndex;
+    }
+
+    @JsonProperty("searchIndex")
+    public void setSearchIndexConfiguration(SearchIndexConfiguration searchIndex) {
+        this.searchIndex = searchIndex;
+    }
+
+    @JsonProperty("suggest")
+    public SuggestConfiguration getSuggestConfiguration() {
+        return suggest;
+    }
+
+    @JsonProperty("suggest")
+    public void setSuggestConfiguration(SuggestConfiguration suggest) {
+        this.suggest = suggest;
+    }
+
+    @JsonProperty("slowQueries")
+    public SlowQueryConfiguration getSlowQueryConfiguration() {
+        return slowQueries;
+    }
+
+    @JsonProperty("slowQueries")
+    public void setSlowQueryConfiguration(SlowQueryConfiguration slowQueries) {
+        this.slowQueries = slowQueries;
+    }
+
+    @JsonProperty("readReplicas")
+    public ReadReplicasConfiguration getReadReplicasConfiguration() {
+        return readReplicas;
+    }
+
+    @JsonProperty("readReplicas")
+    public void setReadReplicasConfiguration(ReadReplicasConfiguration readReplicas) {
+        this.readReplicas = readReplicas;
+    }
+
+    @JsonProperty("tagDictionary")
+    public TagDictionaryConfiguration getTagDictionaryConfiguration() {
+        return tagDictionary;
+    }
+
+    @JsonProperty("tagDictionary")
+    public void setTagDictionaryConfiguration(TagDictionaryConfiguration tagDictionary) {
+        this.tagDictionary = tagDictionary;
+    }
+
+    @JsonProperty("snapshot")
+    public SnapshotConfiguration getSnapshotConfiguration() {
+        return snapshot;
+    }
+
+    @JsonProperty("snapshot")
+    public void setSnapshotConfiguration(SnapshotConfiguration snapshot) {
+        this.snapshot = snapshot;
+    }
+
+    @JsonProperty("export")
+    public ExportConfiguration getExportConfiguration() {
+        return export;
+    }
+
+    @JsonProperty("export")
+    public void setExportConfiguration(ExportConfiguration export) {
+        this.export = export;
+    }
+}
@@ -1,22 +1,206 @@
 package com.wavedroid.musicbrainz;
 
 import com.wavedroid.musicbrainz.api.AlbumResource;
+import com.wavedroid.musicbrainz.cache.CompressedETagFilter;
+import com.wavedroid.musicbrainz.cache.DataVersion;
+import com.wavedroid.musicbrainz.cache.HttpCaching;
+import com.wavedroid.musicbrainz.cache.PurgeResponseCacheTask;
+import com.wavedroid.musicbrainz.cache.ResponseCache;
+import com.wavedroid.musicbrainz.concurrent.Bulkhead;
+import com.wavedroid.musicbrainz.coverart.CoverArtClient;
+import com.wavedroid.musicbrainz.dao.MusicbrainzDao;
+import com.wavedroid.musicbrainz.dao.SlowQueriesTask;
+import com.wavedroid.musicbrainz.dao.SlowQueryLog;
+import com.wavedroid.musicbrainz.export.ExportConfiguration;
+import com.wavedroid.musicbrainz.export.ExportResource;
+import com.wavedroid.musicbrainz.replicas.ReadReplicasConfiguration;
+import com.wavedroid.musicbrainz.replicas.ReplicaRouter;
+import com.wavedroid.musicbrainz.search.NameIndex;
+import com.wavedroid.musicbrainz.search.RebuildSearchIndexTask;
+import com.wavedroid.musicbrainz.snapshot.ExportSnapshotTask;
+import com.wavedroid.musicbrainz.snapshot.OfflineFeature;
+import com.wavedroid.musicbrainz.snapshot.ReleaseSnapshot;
+import com.wavedroid.musicbrainz.snapshot.SnapshotConfiguration;
+import com.wavedroid.musicbrainz.snapshot.SnapshotExporter;
+import com.wavedroid.musicbrainz.suggest.SuggestIndex;
+import com.wavedroid.musicbrainz.suggest.SuggestResource;
+import com.wavedroid.musicbrainz.summary.RefreshReleaseSummaryTask;
+import com.wavedroid.musicbrainz.summary.ReleaseSummary;
+import com.wavedroid.musicbrainz.tags.RefreshTagDictionaryTask;
+import com.wavedroid.musicbrainz.tags.TagDictionary;
 import io.dropwizard.Application;
-import io.dropwizard.Configuration;
+import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.db.ManagedDataSource;
 import io.dropwizard.setup.Environment;
+import org.apache.tomcat.jdbc.pool.DataSourceProxy;
+
+import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.function.Supplier;
 
 /**
  * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
  * @version $Id$
  */
-public class MBServer extends Application<Configuration> {
+public class MBServer extends Application<MBConfiguration> {
 
     public static void main(String[] args) throws Exception {
         new MBServer().run(args);
     }
 
     @Override
-    public void run(Configuration configuration, Environment environment) throws Exception {
-        environment.jersey().register(new AlbumResource());
+    public void run(MBConfiguration configuration, Environment environment) throws Exception {
+        SnapshotConfiguration snapshotConfiguration = configuration.getSnapshotConfiguration();
+        boolean offline = snapshotConfiguration.isOffline();
+
+        ManagedDataSource dataSource = null;
+        if (!offline) {
+            dataSource = buildDataSource(configuration.getDataSourceFactory(), "musicbrainz", configuration, environment);
+            environment.lifecycle().manage(dataSource);
+        }
+
+        DataSource reads = dataSource;
+        List<DataSource> primaryOnly = Collections.singletonList(dataSource);
+        Supplier<List<DataSource>> readSources = () -> primaryOnly;
+        ReadReplicasConfiguration readReplicas = configuration.getReadReplicasConfiguration();
+        if (!offline && readReplicas.isEnabled()) {
+            List<ManagedDataSource> replicas = new ArrayList<>();
+            for (int i = 0; i < readReplicas.getReplicas().size(); i++) {
+                replicas.add(buildDataSource(readReplicas.getReplicas().get(i), "musicbrainz-replica-" + i,
+                        configuration, environment));
+            }
+            ReplicaRouter router = new ReplicaRouter(dataSource, replicas, readReplicas,
+                    environment.lifecycle().scheduledExecutorService("replica-health-%d").build(), environment.metrics());
+            environment.lifecycle().manage(router);
+            environment.healthChecks().register("read-replicas", router.healthCheck());
+            reads = router;
+            readSources = router::getReadSources;
+        }
+
+        CoverArtClient coverArtClient = new CoverArtClient(configuration.getCoverArtConfiguration(), environment.metrics(),
+                configuration.isCoalesceRequests(),
+                configuration.getCoverArtConfiguration().getBulkhead().build(environment, "cover-art-bulkhead"),
+                environment.lifecycle().scheduledExecutorService("cover-art-timeout-%d").build());
+        environment.lifecycle().manage(coverArtClient);
+
+        ReleaseSummary summary = null;
+        if (!offline && configuration.getReleaseSummaryConfiguration().isEnabled()) {
+            summary = new ReleaseSummary(dataSource, configuration.getReleaseSummaryConfiguration(),
+                    environment.lifecycle().scheduledExecutorService("release-summary-%d").build(), environment.metrics());
+            environment.lifecycle().manage(summary);
+            environment.admin().addTask(new RefreshReleaseSummaryTask(summary));
+        }
+
+        TagDictionary tagDictionary = null;
+        if (!offline && configuration.getTagDictionaryConfiguration().isEnabled()) {
+            tagDictionary = new TagDictionary(dataSource, configuration.getTagDictionaryConfiguration(),
+                    environment.lifecycle().scheduledExecutorService("tag-dictionary-%d").build(), environment.metrics());
+            environment.lifecycle().manage(tagDictionary);
+            environment.admin().addTask(new RefreshTagDictionaryTask(tagDictionary));
+        }
+
+        SlowQueryLog slowQueryLog = null;
+        if (!offline && configuration.getSlowQueryConfiguration().isEnabled()) {
+            slowQueryLog = new SlowQueryLog(reads, configuration.getSlowQueryConfiguration(),
+                    environment.lifecycle().executorService("slow-query-explain-%d")
+                            .minThreads(1).maxThreads(1)
+                            .workQueue(new ArrayBlockingQueue<>(4))
+                            .rejectedExecutionHandler(new ThreadPoolExecutor.DiscardPolicy())
+                            .build(),
+                    environment.metrics());
+            environment.admin().addTask(new SlowQueriesTask(slowQueryLog));
+        }
+
+        ResponseCache responseCache = new ResponseCache(configuration.getResponseCacheConfiguration(), environment.metrics());
+        environment.admin().addTask(new PurgeResponseCacheTask(responseCache));
+
+        ReleaseSnapshot snapshot = null;
+        if (offline) {
+            snapshot = new ReleaseSnapshot(snapshotConfiguration,
+                    environment.lifecycle().scheduledExecutorService("release-snapshot-%d").build(),
+                    () -> responseCache.purge(""), environment.metrics());
+            environment.lifecycle().manage(snapshot);
+            environment.jersey().register(new OfflineFeature());
+        } else if (snapshotConfiguration.isEnabled()) {
+            SnapshotExporter exporter = new SnapshotExporter(new MusicbrainzDao(reads, environment.metrics(),
+                    configuration.getFetchSize(), summary, null, tagDictionary, null, false), snapshotConfiguration,
+                    environment.lifecycle().scheduledExecutorService("snapshot-export-%d").build(), environment.metrics());
+            environment.lifecycle().manage(exporter);
+            environment.admin().addTask(new ExportSnapshotTask(exporter));
+        }
+
+        MusicbrainzDao dao = new MusicbrainzDao(reads, environment.metrics(), configuration.getFetchSize(), summary,
+                slowQueryLog, tagDictionary, snapshot, configuration.isCoalesceRequests());
+
+        DataVersion dataVersion = null;
+        if (configuration.getHttpCachingConfiguration().isEnabled()) {
+            ScheduledExecutorService executor = environment.lifecycle().scheduledExecutorService("data-version-%d").build();
+            dataVersion = offline
+                    ? new DataVersion(snapshot::getVersion, configuration.getHttpCachingConfiguration(), executor,
+                            () -> responseCache.purge(""), environment.metrics())
+                    : new DataVersion(readSources, configuration.getHttpCachingConfiguration(), executor,
+                            () -> responseCache.purge(""), environment.metrics());
+            environment.lifecycle().manage(dataVersion);
+        }
+        HttpCaching httpCaching = new HttpCaching(configuration.getHttpCachingConfiguration(), dataVersion,
+                environment.metrics());
+        environment.jersey().register(new CompressedETagFilter());
+
+        NameIndex nameIndex = null;
+        if (!offline && configuration.getSearchIndexConfiguration().isEnabled()) {
+            nameIndex = new NameIndex(dataSource, configuration.getSearchIndexConfiguration(),
+                    environment.lifecycle().scheduledExecutorService("search-index-%d").build(), environment.metrics());
+            environment.lifecycle().manage(nameIndex);
+            environment.admin().addTask(new RebuildSearchIndexTask(nameIndex));
+        }
+
+        if (!offline && configuration.getSuggestConfiguration().isEnabled()) {
+            SuggestIndex suggestIndex = new SuggestIndex(dataSource, configuration.getSuggestConfiguration(),
+                    environment.lifecycle().scheduledExecutorService("suggest-index-%d").build(), environment.metrics());
+            environment.lifecycle().manage(suggestIndex);
+            environment.jersey().register(new SuggestResource(suggestIndex, configuration.getSuggestConfiguration().getMaxLimit()));
+        }
+
+        Bulkhead databaseBulkhead = configuration.getDatabaseBulkhead().build(environment, "database-bulkhead");
+
+        environment.jersey().register(new AlbumResource(dao, coverArtClient, responseCache, httpCaching,
+                configuration.isStreamResponses(), configuration.getFetchSize(), databaseBulkhead,
+                environment.lifecycle().scheduledExecutorService("lookup-deadline-%d").build(),
+                configuration.getLookupDeadline(), environment.metrics(), nameIndex,
+                configuration.isInlineTags(), configuration.getMaxTags()));
+
+        ExportConfiguration export = configuration.getExportConfiguration();
+        if (!offline && export.isEnabled()) {
+            environment.jersey().register(new ExportResource(dao, export,
+                    export.getBulkhead().build(environment, "export-bulkhead"), configuration.getMaxTags(),
+                    environment.metrics()));
+        }
+    }
+
+    /**
+     * Builds a connection pool keeping the configured number of prepared statements per connection.
+     * The statement cache is added to the interceptors configured for the pool, unless they already
+     * have one of their own.
+     */
+    private static ManagedDataSource buildDataSource(DataSourceFactory factory, String name, MBConfiguration configuration,
+                                                     Environment environment) {
+        ManagedDataSource dataSource = factory.build(environment.metrics(), name);
+        if (configuration.getStatementCacheSize() > 0 && dataSource instanceof DataSourceProxy) {
+            DataSourceProxy pool = (DataSourceProxy) dataSource;
+            String interceptors = pool.getJdbcInterceptors();
+            if (interceptors == null || !interceptors.contains("StatementCache")) {
+                String statementCache = "StatementCache(prepared=true,callable=false,max="
+                        + configuration.getStatementCacheSize() + ")";
+                pool.setJdbcInterceptors(interceptors == null || interceptors.trim().isEmpty()
+                        ? statementCache
+                        : interceptors + ";" + statementCache);
+            }
+        }
+        return dataSource;
     }
 }
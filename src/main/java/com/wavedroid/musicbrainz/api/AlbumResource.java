@@ -1,203 +1,788 @@
 package com.wavedroid.musicbrainz.api;
 
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
 import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 import com.google.common.base.Optional;
-import com.google.common.collect.Iterables;
-import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
+import com.wavedroid.musicbrainz.cache.DataVersion;
+import com.wavedroid.musicbrainz.cache.HttpCaching;
+import com.wavedroid.musicbrainz.cache.ResponseCache;
+import com.wavedroid.musicbrainz.concurrent.Bulkhead;
+import com.wavedroid.musicbrainz.concurrent.BulkheadFullException;
+import com.wavedroid.musicbrainz.coverart.CoverArtClient;
 import com.wavedroid.musicbrainz.dao.MusicbrainzDao;
-import org.apache.http.HttpEntity;
-import org.apache.http.HttpResponse;
-import org.apache.http.client.HttpClient;
-import org.apache.http.client.methods.HttpGet;
-import org.apache.http.impl.client.HttpClientBuilder;
-import org.apache.http.impl.client.LaxRedirectStrategy;
+import com.wavedroid.musicbrainz.dao.NameFilter;
+import com.wavedroid.musicbrainz.dao.Page;
+import com.wavedroid.musicbrainz.dao.PageToken;
+import com.wavedroid.musicbrainz.dao.RowHandler;
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Tag;
+import com.wavedroid.musicbrainz.model.Track;
+import com.wavedroid.musicbrainz.search.NameIndex;
+import com.wavedroid.musicbrainz.search.NameMatches;
+import com.wavedroid.musicbrainz.snapshot.ServedOffline;
+import io.dropwizard.util.Duration;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.Consumes;
 import javax.ws.rs.GET;
+import javax.ws.rs.InternalServerErrorException;
+import javax.ws.rs.POST;
 import javax.ws.rs.Path;
 import javax.ws.rs.PathParam;
 import javax.ws.rs.Produces;
 import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Context;
 import javax.ws.rs.core.MediaType;
-import java.io.BufferedReader;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
 import java.io.IOException;
-import java.io.InputStream;
-import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.io.UnsupportedEncodingException;
 import java.net.URLDecoder;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
-import java.util.function.Consumer;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
+ * Release endpoints. They are asynchronous: a request thread only parses the request and answers
+ * from the response cache, and the database work runs on the database {@link Bulkhead}, which
+ * answers {@code 503} with a {@code Retry-After} header when it is saturated. Conditional GETs
+ * whose validators still match are answered {@code 304} before any of that.
+ *
  * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
  * @version $Id$
  */
 @Path("/release")
-@Produces(MediaType.APPLICATION_JSON)
+@Produces({MediaType.APPLICATION_JSON, Encoding.SMILE_TYPE, Encoding.CBOR_TYPE})
 public class AlbumResource {
 
     private static final Logger LOGGER = LoggerFactory.getLogger(AlbumResource.class);
 
-    private static final ObjectMapper om = new ObjectMapper();
+    private static final String DID_YOU_MEAN = "X-Did-You-Mean";
+
+    /**
+     * Release query that hands its rows to a {@link RowHandler} instead of collecting them.
+     */
+    @FunctionalInterface
+    private interface ReleaseSource {
+        void stream(RowHandler<Release> handler) throws SQLException;
+    }
+
+    /**
+     * Keyset-paginated release query; returns the token of the following page.
+     */
+    @FunctionalInterface
+    private interface ReleasePageSource {
+        PageToken stream(RowHandler<Release> handler) throws SQLException;
+    }
+
+    private final MusicbrainzDao dao;
+    private final CoverArtClient coverArtClient;
+    private final ResponseCache responseCache;
+    private final HttpCaching httpCaching;
+    private final boolean streamResponses;
+    private final int chunkSize;
+    private final Bulkhead database;
+    private final ScheduledExecutorService deadlines;
+    private final long lookupDeadlineNanos;
+    private final Meter partialLookups;
+    private final Timer coverFetch;
+    private final Timer tagJoin;
+    private final Timer serialize;
+    private final NameIndex nameIndex;
+    private final boolean inlineTags;
+    private final int maxTags;
+
+    /**
+     * @param httpCaching validators and {@code Cache-Control} of the responses
+     * @param database   bulkhead running the database work of the requests
+     * @param deadlines  executor ending the lookups that miss their deadline
+     * @param nameIndex  index to resolve name searches with, or {@code null} to leave them to the database
+     * @param inlineTags whether listings fetch their tags in the release query rather than in a second one
+     * @param maxTags    the most tags per release a listing may ask for
+     */
+    public AlbumResource(MusicbrainzDao dao, CoverArtClient coverArtClient, ResponseCache responseCache,
+                         HttpCaching httpCaching, boolean streamResponses, int chunkSize, Bulkhead database,
+                         ScheduledExecutorService deadlines, Duration lookupDeadline, MetricRegistry metrics,
+                         NameIndex nameIndex, boolean inlineTags, int maxTags) {
+        this.dao = dao;
+        this.nameIndex = nameIndex;
+        this.inlineTags = inlineTags;
+        this.maxTags = maxTags;
+        this.coverArtClient = coverArtClient;
+        this.responseCache = responseCache;
+        this.httpCaching = httpCaching;
+        this.streamResponses = streamResponses;
+        this.chunkSize = chunkSize;
+        this.database = database;
+        this.deadlines = deadlines;
+        this.lookupDeadlineNanos = lookupDeadline.toNanoseconds();
+        this.partialLookups = metrics.meter(MetricRegistry.name(AlbumResource.class, "partial-lookups"));
+        this.coverFetch = metrics.timer(MetricRegistry.name(AlbumResource.class, "stages", "cover-fetch"));
+        this.tagJoin = metrics.timer(MetricRegistry.name(AlbumResource.class, "stages", "tag-join"));
+        this.serialize = metrics.timer(MetricRegistry.name(AlbumResource.class, "stages", "serialize"));
+    }
 
     @GET
     @Timed
     @Path("/artistName/{artist}")
-    public String releasesByArtists(@PathParam("artist") String artistName, @QueryParam("all") Optional<Boolean> all, @QueryParam("page") Optional<Integer> page) {
-        List<Map<String, Object>> map = withTags(MusicbrainzDao.getReleasesByArtists(decodeUrlParameter(artistName, "artist"), all.or(false), page.or(0)));
-        try {
-            return om.writeValueAsString(map);
-        } catch (JsonProcessingException e) {
-            LOGGER.error("Error processing JSON", e);
-            return "";
+    public void releasesByArtists(@PathParam("artist") String artistName, @QueryParam("all") Optional<Boolean> all, @QueryParam("page") Optional<Integer> page, @QueryParam("cursor") String cursor, @QueryParam("tags") Optional<Integer> tags, @Context Request request, @Suspended AsyncResponse response) {
+        String artistText = decodeUrlParameter(artistName, "artist");
+        int tagLimit = tagLimit(tags);
+        int queryTags = queryTags(tagLimit);
+        Encoding encoding = Encoding.negotiate(request);
+        if (cursor != null) {
+            PageToken after = decodeCursor(cursor);
+            String key = ResponseCache.key("artistName", ResponseCache.normalize(artistText), all.or(false), tagLimit, "cursor", cursor, encoding);
+            if (notModified(request, response, "artistName", key)) {
+                return;
+            }
+            DataVersion.Stamp stamp = httpCaching.stamp();
+            NameMatches matches = search(NameIndex.Kind.ARTIST, artistText);
+            NameFilter artist = toFilter(artistText, matches);
+            respond(response, withCorrection(matches, ok(encoding, "artistName", key, stamp, cached("artistName", key, stamp, streamResponses
+                    ? out -> streamReleasePage(out, encoding, tagLimit, handler -> dao.streamReleasesByArtists(artist, all.or(false), queryTags, after, handler))
+                    : out -> writeReleasePage(out, encoding, tagLimit, dao.getReleasesByArtists(artist, all.or(false), queryTags, after))))));
+            return;
+        }
+        String key = ResponseCache.key("artistName", ResponseCache.normalize(artistText), all.or(false), tagLimit, page.or(0), encoding);
+        if (notModified(request, response, "artistName", key)) {
+            return;
         }
+        DataVersion.Stamp stamp = httpCaching.stamp();
+        NameMatches matches = search(NameIndex.Kind.ARTIST, artistText);
+        NameFilter artist = toFilter(artistText, matches);
+        respond(response, withCorrection(matches, ok(encoding, "artistName", key, stamp, cached("artistName", key, stamp, streamResponses
+                ? out -> streamReleases(out, encoding, tagLimit, handler -> dao.streamReleasesByArtists(artist, all.or(false), queryTags, page.or(0), handler))
+                : out -> out.write(encode(encoding, withTags(dao.getReleasesByArtists(artist, all.or(false), queryTags, page.or(0)), tagLimit)))))));
     }
 
     @GET
     @Timed
     @Path("/artistId/{artistId}")
-    public String releasesByArtists(@PathParam("artistId") long artistId, @QueryParam("all") Optional<Boolean> all, @QueryParam("page") Optional<Integer> page) {
-        List<Map<String, Object>> map = withTags(MusicbrainzDao.getReleasesByArtist(artistId, all.or(false), page.or(0)));
-        try {
-            return om.writeValueAsString(map);
-        } catch (JsonProcessingException e) {
-            LOGGER.error("Error processing JSON", e);
-            return "";
+    public void releasesByArtists(@PathParam("artistId") long artistId, @QueryParam("all") Optional<Boolean> all, @QueryParam("page") Optional<Integer> page, @QueryParam("cursor") String cursor, @QueryParam("tags") Optional<Integer> tags, @Context Request request, @Suspended AsyncResponse response) {
+        int tagLimit = tagLimit(tags);
+        int queryTags = queryTags(tagLimit);
+        Encoding encoding = Encoding.negotiate(request);
+        if (cursor != null) {
+            PageToken after = decodeCursor(cursor);
+            String key = ResponseCache.key("artistId", artistId, all.or(false), tagLimit, "cursor", cursor, encoding);
+            if (notModified(request, response, "artistId", key)) {
+                return;
+            }
+            DataVersion.Stamp stamp = httpCaching.stamp();
+            respond(response, ok(encoding, "artistId", key, stamp, cached("artistId", key, stamp, streamResponses
+                    ? out -> streamReleasePage(out, encoding, tagLimit, handler -> dao.streamReleasesByArtist(artistId, all.or(false), queryTags, after, handler))
+                    : out -> writeReleasePage(out, encoding, tagLimit, dao.getReleasesByArtist(artistId, all.or(false), queryTags, after)))).build());
+            return;
+        }
+        String key = ResponseCache.key("artistId", artistId, all.or(false), tagLimit, page.or(0), encoding);
+        if (notModified(request, response, "artistId", key)) {
+            return;
         }
+        DataVersion.Stamp stamp = httpCaching.stamp();
+        respond(response, ok(encoding, "artistId", key, stamp, cached("artistId", key, stamp, streamResponses
+                ? out -> streamReleases(out, encoding, tagLimit, handler -> dao.streamReleasesByArtist(artistId, all.or(false), queryTags, page.or(0), handler))
+                : out -> out.write(encode(encoding, withTags(dao.getReleasesByArtist(artistId, all.or(false), queryTags, page.or(0)), tagLimit))))).build());
     }
 
     @GET
     @Timed
     @Path("/id/{id}")
-    public String releaseById(@PathParam("id") long id) {
-        Map<String, Object> releaseMap = MusicbrainzDao.getReleaseById(id);
-        List<Map<String, Object>> tracklist = MusicbrainzDao.getTracklist(id, 0);
-        Map<String, Object> map = Maps.newHashMap();
-        map.put("release", releaseMap);
-        map.put("tracklist", tracklist);
-        try {
-            return om.writeValueAsString(map);
-        } catch (JsonProcessingException e) {
-            LOGGER.error("Error processing JSON", e);
-            return "";
+    @ServedOffline
+    public void releaseById(@PathParam("id") long id, @Context Request request, @Suspended AsyncResponse response) {
+        Encoding encoding = Encoding.negotiate(request);
+        String key = ResponseCache.key("id", id, encoding);
+        if (notModified(request, response, "id", key)) {
+            return;
         }
+        DataVersion.Stamp stamp = httpCaching.stamp();
+        MusicbrainzDao dao = this.dao.pinned();
+        respond(response, ok(encoding, "id", key, stamp, cached("id", key, stamp,
+                out -> writeRelease(out, encoding, dao, dao.getReleaseById(id), id))).build());
     }
 
     @GET
     @Timed
     @Path("/mbid/{mbid}")
-    public String releaseById(@PathParam("mbid") String mbid) {
-        Map<String, Object> releaseMap = MusicbrainzDao.getReleaseByMbid(mbid);
-        Long releaseGroupId = getReleaseGroupId(releaseMap);
-        Long releaseId = getReleaseId(releaseMap);
-        releaseMap.put("image", getCover(mbid));
-        releaseMap.put("genre", MusicbrainzDao.getTags(Lists.newArrayList(releaseGroupId), 1));
-        List<Map<String, Object>> tracklist = MusicbrainzDao.getTracklist(releaseId, 0);
-        Map<String, Object> map = Maps.newHashMap();
-        map.put("release", releaseMap);
-        map.put("tracklist", tracklist);
-        try {
-            return om.writeValueAsString(map);
-        } catch (JsonProcessingException e) {
-            LOGGER.error("Error processing JSON", e);
-            return "";
+    @ServedOffline
+    public void releaseById(@PathParam("mbid") String mbid, @Context Request request, @Suspended AsyncResponse response) {
+        Encoding encoding = Encoding.negotiate(request);
+        String key = ResponseCache.key("mbid", mbid.toLowerCase(Locale.ROOT), encoding);
+        if (notModified(request, response, "mbid", key)) {
+            return;
         }
+        DataVersion.Stamp stamp = httpCaching.stamp();
+        byte[] cached = responseCache.lookup("mbid", key);
+        if (cached != null) {
+            response.resume(ok(encoding, "mbid", key, stamp, output(cached)).build());
+            return;
+        }
+        long deadline = System.nanoTime() + lookupDeadlineNanos;
+        MusicbrainzDao dao = this.dao.pinned();
+        CompletableFuture<String> image = thumbnail(mbid);
+        required(database.supply(() -> dao.getReleaseByMbid(mbid)), deadline, "release " + mbid).thenCompose(release -> {
+            if (release == null) {
+                image.cancel(true);
+                byte[] body = encode(encoding, releaseWithTracklist(Collections.emptyMap(), Collections.emptyList()));
+                putIfCurrent("mbid", key, stamp, body);
+                return CompletableFuture.completedFuture(ok(encoding, "mbid", key, stamp, output(body)).build());
+            }
+            CompletableFuture<List<Tag>> genre = optional(database.supply(
+                    () -> dao.getTags(Collections.singletonList(release.getReleaseGroupId()), 1)), deadline);
+            CompletableFuture<List<Track>> tracklist = optional(database.supply(
+                    () -> dao.getTracklist(release.getReleaseId(), 0)), deadline);
+            CompletableFuture<String> thumbnail = optional(image, deadline);
+            return CompletableFuture.allOf(genre, tracklist, thumbnail).thenApply(done -> {
+                List<Tag> tags = genre.join();
+                List<Track> tracks = tracklist.join();
+                String url = thumbnail.join();
+                boolean complete = true;
+                if (tags == null || tracks == null || url == null) {
+                    partialLookups.mark();
+                    complete = false;
+                }
+                byte[] body = encode(encoding, releaseWithTracklist(
+                        release.withCover(url == null ? "" : url, tags == null ? Collections.emptyList() : tags),
+                        tracks == null ? Collections.emptyList() : tracks));
+                if (!complete) {
+                    return Response.ok(output(body), encoding.getMediaType()).build();
+                }
+                putIfCurrent("mbid", key, stamp, body);
+                return ok(encoding, "mbid", key, stamp, output(body)).build();
+            });
+        }).whenComplete((body, e) -> resume(response, body, e));
     }
 
     @GET
     @Timed
     @Path("/name/{name}")
-    public String releaseByName(@PathParam("name") String name, @QueryParam("all") Optional<Boolean> all) {
-        List<Map<String, Object>> map = withTags(MusicbrainzDao.getReleasesByName(decodeUrlParameter(name, "name"), all.or(false), 0));
-        try {
-            return om.writeValueAsString(map);
-        } catch (JsonProcessingException e) {
-            LOGGER.error("Error processing JSON", e);
-            return "";
+    public void releaseByName(@PathParam("name") String name, @QueryParam("all") Optional<Boolean> all, @QueryParam("cursor") String cursor, @QueryParam("tags") Optional<Integer> tags, @Context Request request, @Suspended AsyncResponse response) {
+        String releaseName = decodeUrlParameter(name, "name");
+        int tagLimit = tagLimit(tags);
+        int queryTags = queryTags(tagLimit);
+        Encoding encoding = Encoding.negotiate(request);
+        if (cursor != null) {
+            PageToken after = decodeCursor(cursor);
+            String key = ResponseCache.key("name", ResponseCache.normalize(releaseName), all.or(false), tagLimit, "cursor", cursor, encoding);
+            if (notModified(request, response, "name", key)) {
+                return;
+            }
+            DataVersion.Stamp stamp = httpCaching.stamp();
+            NameMatches matches = search(NameIndex.Kind.RELEASE_GROUP, releaseName);
+            NameFilter filter = toFilter(releaseName, matches);
+            respond(response, withCorrection(matches, ok(encoding, "name", key, stamp, cached("name", key, stamp, streamResponses
+                    ? out -> streamReleasePage(out, encoding, tagLimit, handler -> dao.streamReleasesByName(filter, all.or(false), queryTags, after, handler))
+                    : out -> writeReleasePage(out, encoding, tagLimit, dao.getReleasesByName(filter, all.or(false), queryTags, after))))));
+            return;
+        }
+        String key = ResponseCache.key("name", ResponseCache.normalize(releaseName), all.or(false), tagLimit, encoding);
+        if (notModified(request, response, "name", key)) {
+            return;
         }
+        DataVersion.Stamp stamp = httpCaching.stamp();
+        NameMatches matches = search(NameIndex.Kind.RELEASE_GROUP, releaseName);
+        NameFilter filter = toFilter(releaseName, matches);
+        respond(response, withCorrection(matches, ok(encoding, "name", key, stamp, cached("name", key, stamp, streamResponses
+                ? out -> streamReleases(out, encoding, tagLimit, handler -> dao.streamReleasesByName(filter, all.or(false), queryTags, 0, handler))
+                : out -> out.write(encode(encoding, withTags(dao.getReleasesByName(filter, all.or(false), queryTags, 0), tagLimit)))))));
+    }
+
+    /**
+     * @return the number of tags per release asked for, one by default
+     */
+    private int tagLimit(Optional<Integer> tags) {
+        int limit = tags.or(1);
+        if (limit < 0 || limit > maxTags) {
+            throw new BadRequestException("tags must be between 0 and " + maxTags);
+        }
+        return limit;
+    }
 
+    /**
+     * @return the number of tags the release query itself is to fetch
+     */
+    private int queryTags(int tagLimit) {
+        return inlineTags ? tagLimit : 0;
     }
 
-    private Long getReleaseGroupId(Map<String, Object> input) {
-        return Long.parseLong(String.valueOf(input.get("release_group_id")));
+    /**
+     * @return matches from the name index, or {@code null} to leave the search to the database
+     */
+    private NameMatches search(NameIndex.Kind kind, String text) {
+        return nameIndex == null ? null : nameIndex.search(kind, text);
     }
 
-    private Long getReleaseId(Map<String, Object> input) {
-        return Long.parseLong(String.valueOf(input.get("release_id")));
+    private static NameFilter toFilter(String text, NameMatches matches) {
+        return matches == null ? NameFilter.text(text) : NameFilter.ids(matches.getIds(), matches.getScores());
     }
 
-    private static final String COVER_ART_URL = "http://coverartarchive.org/release-group/%s";
+    /**
+     * Tells the client in a header when the listing is for a corrected spelling of its query.
+     */
+    private static Response withCorrection(NameMatches matches, Response.ResponseBuilder response) {
+        if (matches != null && matches.getCorrection() != null) {
+            response.header(DID_YOU_MEAN, matches.getCorrection());
+        }
+        return response.build();
+    }
 
-    private static String getCover(String mbid) {
-        String url = String.format(COVER_ART_URL, mbid);
+    /**
+     * Resolves many releases with a fixed number of set-based queries: the releases first, then
+     * their tags and tracklists in parallel. Each item has the shape of the {@code /mbid} or
+     * {@code /id} response and is keyed by the MBID or id it was requested with.
+     */
+    @POST
+    @Timed
+    @Path("/batch")
+    @ServedOffline
+    @Consumes(MediaType.APPLICATION_JSON)
+    public void releasesByBatch(@Valid @NotNull BatchRequest request, @Context Request context, @Suspended AsyncResponse response) {
+        if (request.getMbids().size() + request.getIds().size() > BatchRequest.MAX_ITEMS) {
+            throw new BadRequestException("At most " + BatchRequest.MAX_ITEMS + " mbids and ids per batch");
+        }
+        Encoding encoding = Encoding.negotiate(context);
+        long deadline = System.nanoTime() + lookupDeadlineNanos;
+        Map<String, UUID> mbids = new LinkedHashMap<>();
+        Map<UUID, CompletableFuture<String>> images = new HashMap<>();
+        for (String mbid : request.getMbids()) {
+            UUID uuid = parseMbid(mbid);
+            mbids.put(mbid, uuid);
+            if (uuid != null && !images.containsKey(uuid)) {
+                images.put(uuid, thumbnail(uuid.toString()));
+            }
+        }
+        Set<Long> ids = new LinkedHashSet<>(request.getIds());
+        MusicbrainzDao dao = this.dao.pinned();
 
-        HttpClient client = HttpClientBuilder.create().setRedirectStrategy(new LaxRedirectStrategy()).build();
-        HttpGet httpGet = new HttpGet(url);
-        HttpResponse httpResponse;
-        try {
-            httpResponse = client.execute(httpGet);
-        } catch (IOException e) {
-            return "";
+        CompletableFuture<Map<UUID, Release>> releasesByMbid = images.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.emptyMap())
+                : required(database.supply(() -> dao.getReleasesByMbids(images.keySet())), deadline, "batch releases");
+        CompletableFuture<Map<Long, Release>> releasesById = ids.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.emptyMap())
+                : required(database.supply(() -> dao.getReleasesByIds(ids)), deadline, "batch releases");
+        CompletableFuture.allOf(releasesByMbid, releasesById)
+                .thenCompose(done -> batch(dao, encoding, mbids, images, ids, releasesByMbid.join(), releasesById.join(),
+                        deadline))
+                .thenApply(body -> Response.ok(output(body), encoding.getMediaType()).build())
+                .whenComplete((body, e) -> resume(response, body, e));
+    }
+
+    /**
+     * Second step of a batch, once its releases are known: looks up their tags and tracklists,
+     * waits for their thumbnails and puts the response together.
+     */
+    private CompletableFuture<byte[]> batch(MusicbrainzDao dao, Encoding encoding, Map<String, UUID> mbids,
+                                            Map<UUID, CompletableFuture<String>> images, Set<Long> ids,
+                                            Map<UUID, Release> byMbid, Map<Long, Release> byId, long deadline) {
+        List<Long> releaseGroupIds = new ArrayList<>();
+        Set<Long> releaseIds = new HashSet<>(ids);
+        for (Release release : byMbid.values()) {
+            releaseGroupIds.add(release.getReleaseGroupId());
+            releaseIds.add(release.getReleaseId());
+        }
+        CompletableFuture<List<Tag>> genre = releaseGroupIds.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.emptyList())
+                : optional(database.supply(() -> dao.getTags(releaseGroupIds, 1)), deadline);
+        CompletableFuture<Map<Long, List<Track>>> tracklists = releaseIds.isEmpty()
+                ? CompletableFuture.completedFuture(Collections.emptyMap())
+                : optional(database.supply(() -> dao.getTracklists(releaseIds)), deadline);
+        Map<UUID, CompletableFuture<String>> thumbnails = new HashMap<>();
+        List<CompletableFuture<?>> steps = new ArrayList<>(Arrays.asList(genre, tracklists));
+        for (Map.Entry<UUID, CompletableFuture<String>> image : images.entrySet()) {
+            if (byMbid.containsKey(image.getKey())) {
+                CompletableFuture<String> thumbnail = optional(image.getValue(), deadline);
+                thumbnails.put(image.getKey(), thumbnail);
+                steps.add(thumbnail);
+            } else {
+                image.getValue().cancel(true);
+            }
         }
-        HttpEntity entity = httpResponse.getEntity();
-        InputStream is;
+
+        return CompletableFuture.allOf(steps.toArray(new CompletableFuture<?>[steps.size()])).thenApply(done -> {
+            List<Tag> tags = genre.join();
+            Map<Long, List<Track>> tracks = tracklists.join();
+            boolean complete = tags != null && tracks != null;
+            if (tags == null) {
+                tags = Collections.emptyList();
+            }
+            if (tracks == null) {
+                tracks = Collections.emptyMap();
+            }
+            Map<Long, List<Tag>> tagsByReleaseGroup = new HashMap<>();
+            for (Tag tag : tags) {
+                tagsByReleaseGroup.computeIfAbsent(tag.getReleaseGroupId(), id -> new ArrayList<>()).add(tag);
+            }
+
+            Map<String, Object> result = new LinkedHashMap<>();
+            for (Map.Entry<String, UUID> entry : mbids.entrySet()) {
+                Release release = entry.getValue() == null ? null : byMbid.get(entry.getValue());
+                if (release == null) {
+                    result.put(entry.getKey(), releaseWithTracklist(Collections.emptyMap(), Collections.emptyList()));
+                    continue;
+                }
+                String image = thumbnails.get(entry.getValue()).join();
+                complete &= image != null;
+                result.put(entry.getKey(), releaseWithTracklist(
+                        release.withCover(image == null ? "" : image,
+                                tagsByReleaseGroup.getOrDefault(release.getReleaseGroupId(), Collections.emptyList())),
+                        tracks.getOrDefault(release.getReleaseId(), Collections.emptyList())));
+            }
+            for (Long id : ids) {
+                Release release = byId.get(id);
+                result.put(String.valueOf(id), releaseWithTracklist(release == null ? Collections.emptyMap() : release,
+                        release == null ? Collections.emptyList() : tracks.getOrDefault(id, Collections.emptyList())));
+            }
+            if (!complete) {
+                partialLookups.mark();
+            }
+            return encode(encoding, result);
+        });
+    }
+
+    private static UUID parseMbid(String mbid) {
         try {
-            is = entity.getContent();
-        } catch (IOException e) {
-            return "";
+            return UUID.fromString(mbid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    static Map<String, Object> releaseWithTracklist(Object release, List<Track> tracklist) {
+        Map<String, Object> map = Maps.newHashMap();
+        map.put("release", release);
+        map.put("tracklist", tracklist);
+        return map;
+    }
+
+    /**
+     * Sends the response. Writing its body is what runs the queries, so that happens on the
+     * database bulkhead, unless the body comes from the response cache.
+     */
+    private void respond(AsyncResponse async, Response response) {
+        if (ResponseCache.isCached((StreamingOutput) response.getEntity())) {
+            async.resume(response);
+            return;
         }
+        database.execute(() -> async.resume(response), rejected -> async.resume(unavailable(rejected)));
+    }
 
-        BufferedReader br = new BufferedReader(new InputStreamReader(is));
-        StringBuilder sb = new StringBuilder();
-        br.lines().forEach(new Consumer<String>() {
-            @Override
-            public void accept(String s) {
-                sb.append(s);
+    /**
+     * Answers a conditional request whose validators still match with {@code 304}.
+     *
+     * @return whether the request has been answered
+     */
+    private boolean notModified(Request request, AsyncResponse async, String endpoint, String key) {
+        Response.ResponseBuilder notModified = httpCaching.evaluate(request, endpoint, key);
+        if (notModified == null) {
+            return false;
+        }
+        async.resume(notModified.build());
+        return true;
+    }
+
+    /**
+     * @return a full response carrying the validators of the response with the key
+     */
+    private Response.ResponseBuilder ok(Encoding encoding, String endpoint, String key, DataVersion.Stamp stamp,
+                                        StreamingOutput output) {
+        return httpCaching.validators(Response.ok(output, encoding.getMediaType()), endpoint, key, stamp);
+    }
+
+    /**
+     * @return the cached body of the response with the key, or the loader's output, cached once
+     * written if the data version is still the stamped one
+     */
+    private StreamingOutput cached(String endpoint, String key, DataVersion.Stamp stamp, StreamingOutput loader) {
+        return responseCache.get(endpoint, key, () -> httpCaching.isCurrent(stamp), loader);
+    }
+
+    private void putIfCurrent(String endpoint, String key, DataVersion.Stamp stamp, byte[] body) {
+        if (httpCaching.isCurrent(stamp)) {
+            responseCache.put(endpoint, key, body);
+        }
+    }
+
+    private static void resume(AsyncResponse async, Response response, Throwable failure) {
+        if (failure != null) {
+            async.resume(unwrap(failure));
+        } else {
+            async.resume(response);
+        }
+    }
+
+    private static StreamingOutput output(byte[] body) {
+        return out -> out.write(body);
+    }
+
+    private static ServiceUnavailableException unavailable(BulkheadFullException rejected) {
+        return new ServiceUnavailableException("Too many concurrent lookups", rejected.getRetryAfterSeconds());
+    }
+
+    /**
+     * Bounds a step the response cannot do without: the returned future fails with {@code 503}
+     * if the step misses the deadline or is rejected, and with the step's own failure otherwise, which
+     * is logged and answered with {@code 500}.
+     */
+    private <T> CompletableFuture<T> required(CompletableFuture<T> step, long deadline, String what) {
+        CompletableFuture<T> required = new CompletableFuture<>();
+        withDeadline(step, deadline).whenComplete((value, e) -> {
+            if (e == null) {
+                required.complete(value);
+                return;
+            }
+            Throwable cause = unwrap(e);
+            if (cause instanceof TimeoutException) {
+                required.completeExceptionally(new ServiceUnavailableException("Timed out looking up " + what));
+            } else if (cause instanceof BulkheadFullException) {
+                required.completeExceptionally(unavailable((BulkheadFullException) cause));
+            } else {
+                required.completeExceptionally(cause);
             }
         });
-        TypeReference<HashMap<String, Object>> typeRef = new TypeReference<HashMap<String, Object>>() {
-        };
-        Map<String, Object> map;
+        return required;
+    }
+
+    /**
+     * Bounds an optional step; the returned future completes with {@code null} if the step fails,
+     * is rejected or misses the deadline.
+     */
+    private <T> CompletableFuture<T> optional(CompletableFuture<T> step, long deadline) {
+        return withDeadline(step, deadline).handle((value, e) -> e == null ? value : null);
+    }
+
+    /**
+     * @return future of the step's outcome, failed with a {@link TimeoutException} if the step is
+     * still running at the deadline. The step is then cancelled, which skips it if it is still
+     * queued on its bulkhead; a query already running on {@code database.supply} runs to the end
+     * and keeps its connection and worker until it does.
+     */
+    private <T> CompletableFuture<T> withDeadline(CompletableFuture<T> step, long deadline) {
+        CompletableFuture<T> bounded = new CompletableFuture<>();
+        ScheduledFuture<?> timeout = deadlines.schedule(() -> {
+            if (bounded.completeExceptionally(new TimeoutException())) {
+                step.cancel(true);
+            }
+        }, deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+        step.whenComplete((value, e) -> {
+            timeout.cancel(false);
+            if (e == null) {
+                bounded.complete(value);
+            } else {
+                bounded.completeExceptionally(e);
+            }
+        });
+        return bounded;
+    }
+
+    private static Throwable unwrap(Throwable e) {
+        return e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+    }
+
+    /**
+     * Writes {@code {"release": .., "tracklist": [..]}}; a missing release is written as an empty object.
+     */
+    private void writeRelease(OutputStream out, Encoding encoding, MusicbrainzDao dao, Release release, long releaseId)
+            throws IOException {
+        Object releaseValue = release == null ? Collections.emptyMap() : release;
+        if (!streamResponses || release == null) {
+            out.write(encode(encoding, releaseWithTracklist(releaseValue,
+                    release == null ? Collections.emptyList() : dao.getTracklist(releaseId, 0))));
+            return;
+        }
+        try (JsonGenerator generator = encoding.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeObjectField("release", releaseValue);
+            generator.writeArrayFieldStart("tracklist");
+            try {
+                dao.streamTracklist(releaseId, 0, track -> write(generator, track));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            } catch (SQLException e) {
+                LOGGER.error("Error streaming tracklist", e);
+                throw new IOException("Error streaming tracklist", e);
+            }
+            generator.writeEndArray();
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes a release listing as an array straight from the database cursor. Rows are
+     * enriched with their tags a chunk at a time, looked up on the cursor's connection.
+     */
+    private void streamReleases(OutputStream out, Encoding encoding, int tags, ReleaseSource source) throws IOException {
+        try (JsonGenerator generator = encoding.createGenerator(out)) {
+            generator.writeStartArray();
+            streamChunks(generator, tags, handler -> {
+                source.stream(handler);
+                return null;
+            });
+            generator.writeEndArray();
+        }
+    }
+
+    /**
+     * Streaming counterpart of {@link #writeReleasePage}; the token goes last, once the page is known.
+     */
+    private void streamReleasePage(OutputStream out, Encoding encoding, int tags, ReleasePageSource source) throws IOException {
+        try (JsonGenerator generator = encoding.createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeArrayFieldStart("releases");
+            PageToken next = streamChunks(generator, tags, source);
+            generator.writeEndArray();
+            generator.writeStringField("next", next == null ? null : next.encode());
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes {@code {"releases": [..], "next": token}}, where {@code next} is {@code null} on the last page.
+     */
+    private void writeReleasePage(OutputStream out, Encoding encoding, int tags, Page<Release> page) throws IOException {
+        Map<String, Object> map = Maps.newLinkedHashMap();
+        map.put("releases", withTags(page.getItems(), tags));
+        map.put("next", page.getNext() == null ? null : page.getNext().encode());
+        out.write(encode(encoding, map));
+    }
+
+    private PageToken streamChunks(JsonGenerator generator, int tags, ReleasePageSource source) throws IOException {
+        List<Release> chunk = new ArrayList<>(chunkSize);
+        try {
+            PageToken next = source.stream(release -> {
+                chunk.add(release);
+                if (chunk.size() >= chunkSize) {
+                    writeChunk(generator, chunk, tags);
+                }
+            });
+            writeChunk(generator, chunk, tags);
+            return next;
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (SQLException e) {
+            LOGGER.error("Error streaming query results", e);
+            throw new IOException("Error streaming query results", e);
+        }
+    }
+
+    private void writeChunk(JsonGenerator generator, List<Release> chunk, int tags) {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        for (Release release : withTags(chunk, tags)) {
+            write(generator, release);
+        }
+        chunk.clear();
+    }
+
+    private static void write(JsonGenerator generator, Object row) {
         try {
-            map = om.readValue(sb.toString(), typeRef);
+            generator.writeObject(row);
         } catch (IOException e) {
-            return "";
+            throw new UncheckedIOException(e);
         }
-        if (map == null || map.isEmpty()) {
-            return "";
+    }
+
+    /**
+     * Looks up a thumbnail, timing the lookup until it completes, cache hits included.
+     */
+    private CompletableFuture<String> thumbnail(String releaseGroupMbid) {
+        Timer.Context timer = coverFetch.time();
+        CompletableFuture<String> image = coverArtClient.getThumbnailAsync(releaseGroupMbid);
+        image.whenComplete((url, e) -> timer.stop());
+        return image;
+    }
+
+    /**
+     * @throws InternalServerErrorException if the value cannot be encoded, so that no empty body is
+     *                                      answered or cached in its place
+     */
+    private byte[] encode(Encoding encoding, Object value) {
+        try (Timer.Context ignored = serialize.time()) {
+            return encoding.encode(value);
+        } catch (JsonProcessingException e) {
+            LOGGER.error("Error encoding response", e);
+            throw new InternalServerErrorException("Error encoding response", e);
+        }
+    }
+
+    /**
+     * Adds up to {@code limit} tags to each release with a second query, unless the release query
+     * already fetched them.
+     */
+    private List<Release> withTags(List<Release> releases, int limit) {
+        if (releases.isEmpty() || inlineTags || limit == 0) {
+            return releases;
         }
-        @SuppressWarnings("unchecked") List<Map<String, Object>> images = (List<Map<String, Object>>) map.get("images");
-        @SuppressWarnings("Convert2Diamond") Map<String, Object> firstImage = Iterables.getFirst(images, new HashMap<String, Object>());
-        @SuppressWarnings({"unchecked", "ConstantConditions"}) Map<String, Object> thumbnails = (Map<String, Object>) firstImage.get("thumbnails");
-        if (thumbnails == null) {
-            return "";
+        List<Long> releaseGroupIds = new ArrayList<>(releases.size());
+        for (Release release : releases) {
+            releaseGroupIds.add(release.getReleaseGroupId());
+        }
+        List<Tag> tags = dao.getTags(releaseGroupIds, limit);
+        try (Timer.Context ignored = tagJoin.time()) {
+            return joinTags(releases, tags);
         }
-        return (String) thumbnails.get("small");
     }
 
-    private List<Map<String, Object>> withTags(List<Map<String, Object>> map) {
-        List<Long> releaseGroupIds = Lists.transform(map, this::getReleaseGroupId);
-        List<Map<String, Object>> tagsList = MusicbrainzDao.getTags(releaseGroupIds, 1);
-        final Map<String, Map<String, Object>> tagsMap = Maps.newHashMap();
-        for (Map<String, Object> m : tagsList) {
-            tagsMap.put(String.valueOf(getReleaseGroupId(m)), m);
+    /**
+     * @param releaseTags tags of the releases, each release group's in order
+     * @return the releases, each carrying its tags if it has any
+     */
+    static List<Release> joinTags(List<Release> releases, List<Tag> releaseTags) {
+        Map<Long, List<String>> tags = new HashMap<>();
+        for (Tag tag : releaseTags) {
+            tags.computeIfAbsent(tag.getReleaseGroupId(), id -> new ArrayList<>(1)).add(tag.getName());
+        }
+        List<Release> joined = new ArrayList<>(releases.size());
+        for (Release release : releases) {
+            List<String> releaseGroupTags = tags.get(release.getReleaseGroupId());
+            joined.add(releaseGroupTags == null ? release : release.withTags(releaseGroupTags));
+        }
+        return joined;
+    }
+
+    /**
+     * @return {@code null} for an empty cursor, which asks for the first page
+     */
+    private static PageToken decodeCursor(String cursor) {
+        if (cursor.isEmpty()) {
+            return null;
+        }
+        try {
+            return PageToken.decode(cursor);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor " + cursor, e);
         }
-        return Lists.newArrayList(Lists.transform(map, (Map<String, Object> input) -> {
-            Map<String, Object> joined = Maps.newHashMap();
-            joined.putAll(input);
-            Map<String, Object> tag = tagsMap.get(String.valueOf(getReleaseGroupId(input)));
-            if (tag != null) {
-                joined.putAll(tag);
-            }
-            return joined;
-        }));
     }
 
     private static String decodeUrlParameter(String paramValue, String paramName) {
@@ -0,0 +1,47 @@
+package com.wavedroid.musicbrainz.api;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+import javax.validation.constraints.NotNull;
+import javax.validation.constraints.Size;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Body of {@code POST /release/batch}: release group MBIDs and ids to look up in one go.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class BatchRequest {
+
+    static final int MAX_ITEMS = 100;
+
+    @NotNull
+    @Size(max = MAX_ITEMS)
+    private List<String> mbids = new ArrayList<>();
+
+    @NotNull
+    @Size(max = MAX_ITEMS)
+    private List<Long> ids = new ArrayList<>();
+
+    @JsonProperty
+    public List<String> getMbids() {
+        return mbids;
+    }
+
+    @JsonProperty
+    public void setMbids(List<String> mbids) {
+        this.mbids = mbids;
+    }
+
+    @JsonProperty
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    @JsonProperty
+    public void setIds(List<Long> ids) {
+        this.ids = ids;
+    }
+}
@@ -0,0 +1,76 @@
+package com.wavedroid.musicbrainz.api;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.dataformat.cbor.CBORFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+import javax.ws.rs.NotAcceptableException;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Variant;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Encodings a response body can be sent in, all of the same data model: JSON, and the binary
+ * Smile and CBOR, which are smaller and cheaper to parse. The client picks one with its
+ * {@code Accept} header; JSON is the default.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public enum Encoding {
+
+    JSON(MediaType.APPLICATION_JSON, new JsonFactory()),
+    SMILE(Encoding.SMILE_TYPE, new SmileFactory()),
+    CBOR(Encoding.CBOR_TYPE, new CBORFactory());
+
+    public static final String SMILE_TYPE = "application/x-jackson-smile";
+    public static final String CBOR_TYPE = "application/cbor";
+
+    private static final List<Variant> VARIANTS = Variant.mediaTypes(
+            MediaType.APPLICATION_JSON_TYPE, MediaType.valueOf(SMILE_TYPE), MediaType.valueOf(CBOR_TYPE)).build();
+
+    private final MediaType mediaType;
+    private final ObjectMapper om;
+
+    Encoding(String mediaType, JsonFactory factory) {
+        this.mediaType = MediaType.valueOf(mediaType);
+        this.om = new ObjectMapper(factory);
+    }
+
+    /**
+     * Picks the encoding the request accepts best; the response then varies by {@code Accept}.
+     */
+    public static Encoding negotiate(Request request) {
+        Variant variant = request.selectVariant(VARIANTS);
+        if (variant == null) {
+            throw new NotAcceptableException();
+        }
+        for (Encoding encoding : values()) {
+            if (encoding.mediaType.equals(variant.getMediaType())) {
+                return encoding;
+            }
+        }
+        throw new NotAcceptableException();
+    }
+
+    public MediaType getMediaType() {
+        return mediaType;
+    }
+
+    public byte[] encode(Object value) throws JsonProcessingException {
+        return om.writeValueAsBytes(value);
+    }
+
+    /**
+     * @return generator writing to the stream without closing it
+     */
+    public JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return om.getFactory().createGenerator(out).disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+}
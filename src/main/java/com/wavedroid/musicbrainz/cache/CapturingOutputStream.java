@@ -0,0 +1,53 @@
+package com.wavedroid.musicbrainz.cache;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Passes everything through to the wrapped stream and keeps a copy of it, up to a limit.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+class CapturingOutputStream extends FilterOutputStream {
+
+    private final int limit;
+    private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+    CapturingOutputStream(OutputStream out, int limit) {
+        super(out);
+        this.limit = limit;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        out.write(b);
+        capture(new byte[]{(byte) b}, 0, 1);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        out.write(b, off, len);
+        capture(b, off, len);
+    }
+
+    /**
+     * @return everything written so far, or {@code null} if the limit has been exceeded
+     */
+    byte[] captured() {
+        return copy == null ? null : copy.toByteArray();
+    }
+
+    private void capture(byte[] b, int off, int len) {
+        if (copy == null) {
+            return;
+        }
+        if (copy.size() + len > limit) {
+            copy = null;
+            return;
+        }
+        copy.write(b, off, len);
+    }
+}
@@ -0,0 +1,36 @@
+package com.wavedroid.musicbrainz.cache;
+
+import javax.ws.rs.container.ContainerRequestContext;
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.PreMatching;
+import javax.ws.rs.core.HttpHeaders;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * The gzip filter keeps a compressed body's {@code ETag} strong by appending the coding to it, as
+ * in {@code "abc--gzip"}. This strips it from {@code If-None-Match} again, so that such tags match
+ * the ones {@link HttpCaching} computes.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@PreMatching
+public class CompressedETagFilter implements ContainerRequestFilter {
+
+    private static final Pattern CODING = Pattern.compile("--(gzip|deflate)\"");
+
+    @Override
+    public void filter(ContainerRequestContext request) {
+        List<String> tags = request.getHeaders().get(HttpHeaders.IF_NONE_MATCH);
+        if (tags == null) {
+            return;
+        }
+        List<String> stripped = new ArrayList<>(tags.size());
+        for (String tag : tags) {
+            stripped.add(CODING.matcher(tag).replaceAll("\""));
+        }
+        request.getHeaders().put(HttpHeaders.IF_NONE_MATCH, stripped);
+    }
+}
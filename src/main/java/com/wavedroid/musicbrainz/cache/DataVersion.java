@@ -0,0 +1,190 @@
+package com.wavedroid.musicbrainz.cache;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Version of the MusicBrainz data, polled from the database; with replication it is the sequence
+ * of the last replication packet applied, and served from a snapshot it is the snapshot's. Every
+ * response the service gives for a request stays the same while the version does, which is what
+ * its HTTP validators are derived from.
+ * <p>
+ * The version is polled from every data source reads go to, so with read replicas from each
+ * replica in rotation. It only moves on once they all agree; while they do not, the current stamp
+ * is unsettled, since a response may be read from a replica that is behind it.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class DataVersion implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DataVersion.class);
+
+    /**
+     * A version and when it was first seen, to the second as HTTP dates go. A stamp is replaced
+     * whenever the version changes or settles, so comparing stamps by identity tells whether it did.
+     */
+    public static final class Stamp {
+        private final String version;
+        private final long seenAt;
+        private final boolean settled;
+
+        private Stamp(String version, long seenAt, boolean settled) {
+            this.version = version;
+            this.seenAt = seenAt;
+            this.settled = settled;
+        }
+
+        public String getVersion() {
+            return version;
+        }
+
+        public long getSeenAt() {
+            return seenAt;
+        }
+
+        /**
+         * @return whether every data source read from is at this version; responses built while
+         * it is not are neither cached nor validated
+         */
+        public boolean isSettled() {
+            return settled;
+        }
+    }
+
+    /**
+     * The data sources read from are at different versions.
+     */
+    private static final class VersionsDiffer extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        private VersionsDiffer(String first, String other) {
+            super(first + " and " + other);
+        }
+    }
+
+    private final Callable<String> source;
+    private final HttpCachingConfiguration configuration;
+    private final ScheduledExecutorService executor;
+    private final Runnable onChange;
+
+    private volatile Stamp current;
+    private boolean failing;
+
+    private final Meter changes;
+
+    /**
+     * @param readSources the data sources reads currently go to
+     * @param onChange    run after the version changed, e.g. to drop cached responses of the previous one
+     */
+    public DataVersion(Supplier<List<DataSource>> readSources, HttpCachingConfiguration configuration,
+                       ScheduledExecutorService executor, Runnable onChange, MetricRegistry metrics) {
+        this(() -> query(readSources.get(), configuration.getVersionQuery()), configuration, executor, onChange,
+                metrics);
+    }
+
+    /**
+     * @param source gives the version, or {@code null} to keep the current one
+     */
+    public DataVersion(Callable<String> source, HttpCachingConfiguration configuration,
+                       ScheduledExecutorService executor, Runnable onChange, MetricRegistry metrics) {
+        this.source = source;
+        this.configuration = configuration;
+        this.executor = executor;
+        this.onChange = onChange;
+        long now = System.currentTimeMillis() / 1000 * 1000;
+        this.current = new Stamp("started-" + now, now, true);
+        this.changes = metrics.meter(MetricRegistry.name(DataVersion.class, "changes"));
+    }
+
+    @Override
+    public void start() {
+        poll(false);
+        long interval = configuration.getPollInterval().toMilliseconds();
+        executor.scheduleWithFixedDelay(() -> poll(true), interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    public Stamp current() {
+        return current;
+    }
+
+    /**
+     * @param notify whether a change is to be announced, which it need not be before requests are served
+     */
+    private void poll(boolean notify) {
+        String version;
+        try {
+            version = source.call();
+            failing = false;
+        } catch (VersionsDiffer e) {
+            failing = false;
+            if (current.settled) {
+                LOGGER.info("Read sources are at different versions ({}), caching suspended", e.getMessage());
+                current = new Stamp(current.version, current.seenAt, false);
+            }
+            return;
+        } catch (Exception e) {
+            if (!failing) {
+                LOGGER.warn("Could not read the data version, keeping {}: {}", current.version, e.toString());
+                failing = true;
+            }
+            return;
+        }
+        if (version == null) {
+            return;
+        }
+        if (version.equals(current.version)) {
+            if (!current.settled) {
+                LOGGER.info("Read sources are back at version {}", version);
+                current = new Stamp(current.version, current.seenAt, true);
+            }
+            return;
+        }
+        current = new Stamp(version, System.currentTimeMillis() / 1000 * 1000, true);
+        if (notify) {
+            LOGGER.info("Data version changed to {}", version);
+            changes.mark();
+            onChange.run();
+        }
+    }
+
+    private static String query(List<DataSource> dataSources, String versionQuery) throws SQLException, VersionsDiffer {
+        String version = null;
+        for (int i = 0; i < dataSources.size(); i++) {
+            String other = query(dataSources.get(i), versionQuery);
+            if (i == 0) {
+                version = other;
+            } else if (!Objects.equals(version, other)) {
+                throw new VersionsDiffer(version, other);
+            }
+        }
+        return version;
+    }
+
+    private static String query(DataSource dataSource, String versionQuery) throws SQLException {
+        try (Connection conn = dataSource.getConnection();
+             Statement st = conn.createStatement();
+             ResultSet rs = st.executeQuery(versionQuery)) {
+            return rs.next() ? rs.getString(1) : null;
+        }
+    }
+}
@@ -0,0 +1,112 @@
+package com.wavedroid.musicbrainz.cache;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.hash.Hashing;
+
+import javax.ws.rs.core.EntityTag;
+import javax.ws.rs.core.HttpHeaders;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * HTTP validators of the responses. A response is determined by its request and the
+ * {@link DataVersion}, so its strong {@code ETag} is a hash of the two and its
+ * {@code Last-Modified} the time the version was first seen. Conditional requests are therefore
+ * answered before any database work or serialization. {@code not-modified} counts the {@code 304}s
+ * per endpoint.
+ * <p>
+ * A response is stamped with the version when its request starts. If the version has changed by
+ * the time the response is sent or cached, or was not settled to begin with, it gets no validators
+ * and is not cached, as it may have been read from data of another version.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class HttpCaching {
+
+    private final HttpCachingConfiguration configuration;
+    private final DataVersion version;
+    private final MetricRegistry metrics;
+    private final ConcurrentMap<String, Meter> notModified = new ConcurrentHashMap<>();
+
+    /**
+     * @param version version of the data, or {@code null} to send no validators
+     */
+    public HttpCaching(HttpCachingConfiguration configuration, DataVersion version, MetricRegistry metrics) {
+        this.configuration = configuration;
+        this.version = version;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Evaluates the request's {@code If-None-Match} and {@code If-Modified-Since} headers against
+     * the validators the response would get.
+     *
+     * @param key key of the response, as built for the {@link ResponseCache}
+     * @return a {@code 304} response to send instead, or {@code null} to send the full response
+     */
+    public Response.ResponseBuilder evaluate(Request request, String endpoint, String key) {
+        if (version == null) {
+            return null;
+        }
+        DataVersion.Stamp stamp = version.current();
+        if (!stamp.isSettled()) {
+            return null;
+        }
+        Response.ResponseBuilder response = request.evaluatePreconditions(new Date(stamp.getSeenAt()), tag(stamp, key));
+        if (response == null) {
+            return null;
+        }
+        notModified.computeIfAbsent(endpoint,
+                e -> metrics.meter(MetricRegistry.name(HttpCaching.class, e, "not-modified"))).mark();
+        return validators(response, endpoint, stamp, key);
+    }
+
+    /**
+     * @return the version a response started now is built from, to be handed to
+     * {@link #validators} and {@link #isCurrent}; {@code null} without versioning
+     */
+    public DataVersion.Stamp stamp() {
+        return version == null ? null : version.current();
+    }
+
+    /**
+     * @return whether a response built from the stamped version may be cached and validated, that
+     * is the version was settled and has not changed since
+     */
+    public boolean isCurrent(DataVersion.Stamp stamp) {
+        return version == null || stamp.isSettled() && version.current() == stamp;
+    }
+
+    /**
+     * Adds the validators and the endpoint's {@code Cache-Control} to a full response, unless the
+     * stamped version is no longer current.
+     */
+    public Response.ResponseBuilder validators(Response.ResponseBuilder response, String endpoint, String key,
+                                               DataVersion.Stamp stamp) {
+        return isCurrent(stamp) && version != null ? validators(response, endpoint, stamp, key) : response;
+    }
+
+    private Response.ResponseBuilder validators(Response.ResponseBuilder response, String endpoint,
+                                                DataVersion.Stamp stamp, String key) {
+        response.tag(tag(stamp, key)).lastModified(new Date(stamp.getSeenAt()));
+        String cacheControl = configuration.getCacheControl(endpoint);
+        if (!cacheControl.isEmpty()) {
+            response.header(HttpHeaders.CACHE_CONTROL, cacheControl);
+        }
+        return response;
+    }
+
+    private static EntityTag tag(DataVersion.Stamp stamp, String key) {
+        return new EntityTag(Hashing.murmur3_128().newHasher()
+                .putString(stamp.getVersion(), StandardCharsets.UTF_8)
+                .putByte((byte) 0)
+                .putString(key, StandardCharsets.UTF_8)
+                .hash().toString());
+    }
+}
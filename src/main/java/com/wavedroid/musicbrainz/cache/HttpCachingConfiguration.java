@@ -0,0 +1,96 @@
+package com.wavedroid.musicbrainz.cache;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.NotNull;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of the HTTP validators and {@code Cache-Control} headers of the release endpoints.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class HttpCachingConfiguration {
+
+    private boolean enabled = true;
+
+    @NotEmpty
+    private String versionQuery = "SELECT current_replication_sequence FROM replication_control";
+
+    @NotNull
+    private Duration pollInterval = Duration.minutes(1);
+
+    @NotNull
+    private String defaultCacheControl = "public, max-age=300";
+
+    @NotNull
+    private Map<String, String> cacheControl = new HashMap<>();
+
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Query returning the version of the data, which changes whenever the data does. The default
+     * reads the replication sequence of a MusicBrainz mirror; a database without one can use e.g.
+     * {@code SELECT max(last_updated) FROM release_group}. While it fails, the startup time is used.
+     */
+    @JsonProperty
+    public String getVersionQuery() {
+        return versionQuery;
+    }
+
+    @JsonProperty
+    public void setVersionQuery(String versionQuery) {
+        this.versionQuery = versionQuery;
+    }
+
+    @JsonProperty
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    @JsonProperty
+    public void setPollInterval(Duration pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+
+    @JsonProperty
+    public String getDefaultCacheControl() {
+        return defaultCacheControl;
+    }
+
+    @JsonProperty
+    public void setDefaultCacheControl(String defaultCacheControl) {
+        this.defaultCacheControl = defaultCacheControl;
+    }
+
+    /**
+     * Per-endpoint {@code Cache-Control} overrides, keyed by endpoint name ({@code artistName}, {@code mbid}, ...);
+     * an empty value sends none.
+     */
+    @JsonProperty
+    public Map<String, String> getCacheControl() {
+        return cacheControl;
+    }
+
+    @JsonProperty
+    public void setCacheControl(Map<String, String> cacheControl) {
+        this.cacheControl = cacheControl;
+    }
+
+    public String getCacheControl(String endpoint) {
+        String endpointCacheControl = cacheControl.get(endpoint);
+        return endpointCacheControl == null ? defaultCacheControl : endpointCacheControl;
+    }
+}
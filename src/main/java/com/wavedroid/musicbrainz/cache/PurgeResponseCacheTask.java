@@ -0,0 +1,36 @@
+package com.wavedroid.musicbrainz.cache;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+/**
+ * Admin task dropping cached responses: {@code POST /tasks/purge-response-cache?prefix=artistName:}.
+ * Without a prefix the whole cache is purged.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class PurgeResponseCacheTask extends Task {
+
+    private final ResponseCache responseCache;
+
+    public PurgeResponseCacheTask(ResponseCache responseCache) {
+        super("purge-response-cache");
+        this.responseCache = responseCache;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        int purged = 0;
+        if (parameters.containsKey("prefix")) {
+            for (String prefix : parameters.get("prefix")) {
+                purged += responseCache.purge(prefix);
+            }
+        } else {
+            purged = responseCache.purge("");
+        }
+        output.println("Purged " + purged + " cached responses");
+    }
+}
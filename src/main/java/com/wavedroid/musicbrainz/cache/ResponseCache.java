@@ -0,0 +1,195 @@
+package com.wavedroid.musicbrainz.cache;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.RatioGauge;
+import com.google.common.base.Joiner;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Byte-weighted cache of serialized response bodies keyed by endpoint and normalized request
+ * parameters, so that a hit skips both the database and JSON serialization.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ResponseCache {
+
+    private static final Joiner KEY_JOINER = Joiner.on('|').useForNull("");
+
+    private static final class Entry {
+        private final byte[] body;
+        private final long expiresAt;
+
+        private Entry(byte[] body, long expiresAt) {
+            this.body = body;
+            this.expiresAt = expiresAt;
+        }
+    }
+
+    /**
+     * Output of a hit, which only copies bytes.
+     */
+    private static final class CachedBody implements StreamingOutput {
+        private final byte[] body;
+
+        private CachedBody(byte[] body) {
+            this.body = body;
+        }
+
+        @Override
+        public void write(OutputStream out) throws IOException {
+            out.write(body);
+        }
+    }
+
+    private static final class EndpointMetrics {
+        private final Meter hits;
+        private final Meter misses;
+
+        private EndpointMetrics(Meter hits, Meter misses) {
+            this.hits = hits;
+            this.misses = misses;
+        }
+    }
+
+    private final ResponseCacheConfiguration configuration;
+    private final int maxEntryBytes;
+    private final Cache<String, Entry> cache;
+    private final MetricRegistry metrics;
+    private final ConcurrentMap<String, EndpointMetrics> endpointMetrics = new ConcurrentHashMap<>();
+
+    public ResponseCache(ResponseCacheConfiguration configuration, MetricRegistry metrics) {
+        this.configuration = configuration;
+        this.metrics = metrics;
+        this.maxEntryBytes = (int) Math.min(configuration.getMaxEntrySize().toBytes(), Integer.MAX_VALUE);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(configuration.getMaxSize().toBytes())
+                .weigher((String key, Entry entry) -> key.length() * 2 + entry.body.length)
+                .recordStats()
+                .build();
+        metrics.register(MetricRegistry.name(ResponseCache.class, "evictions"),
+                (Gauge<Long>) () -> cache.stats().evictionCount());
+        metrics.register(MetricRegistry.name(ResponseCache.class, "size"),
+                (Gauge<Long>) cache::size);
+    }
+
+    /**
+     * Builds a cache key from the endpoint name and the request parameters.
+     */
+    public static String key(String endpoint, Object... params) {
+        return endpoint + ':' + KEY_JOINER.join(params);
+    }
+
+    /**
+     * Normalizes a free text search parameter; Postgres full text search ignores case and
+     * repeated whitespace, so such variations share one entry.
+     */
+    public static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ROOT);
+    }
+
+    /**
+     * Returns the cached body for the key or serves the request with the loader. The loader's
+     * output is captured on its way to the client and cached once it has been written completely,
+     * if {@code current} still holds then; empty bodies, which signal a serialization failure, and
+     * bodies larger than the configured entry size are not cached.
+     *
+     * @param current whether the data the body was read from is still current, see
+     *                {@link HttpCaching#isCurrent}
+     */
+    public StreamingOutput get(String endpoint, String key, BooleanSupplier current, StreamingOutput loader) {
+        if (!configuration.isEnabled()) {
+            return loader;
+        }
+        EndpointMetrics endpointMetrics = metricsOf(endpoint);
+        long now = System.currentTimeMillis();
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.expiresAt > now) {
+            endpointMetrics.hits.mark();
+            return new CachedBody(entry.body);
+        }
+        endpointMetrics.misses.mark();
+        return out -> {
+            CapturingOutputStream capturing = new CapturingOutputStream(out, maxEntryBytes);
+            loader.write(capturing);
+            byte[] body = capturing.captured();
+            if (body != null && body.length > 0 && current.getAsBoolean()) {
+                cache.put(key, new Entry(body, now + configuration.getTtl(endpoint).toMilliseconds()));
+            }
+        };
+    }
+
+    /**
+     * @return whether the output returned by {@link #get} is a cached body, whose writing costs
+     * no database or serialization work
+     */
+    public static boolean isCached(StreamingOutput output) {
+        return output instanceof CachedBody;
+    }
+
+    /**
+     * Looks the key up without a loader, for endpoints that decide themselves whether a body is
+     * complete enough to be cached.
+     *
+     * @return the cached body, or {@code null} on a miss
+     */
+    public byte[] lookup(String endpoint, String key) {
+        if (!configuration.isEnabled()) {
+            return null;
+        }
+        EndpointMetrics endpointMetrics = metricsOf(endpoint);
+        Entry entry = cache.getIfPresent(key);
+        if (entry != null && entry.expiresAt > System.currentTimeMillis()) {
+            endpointMetrics.hits.mark();
+            return entry.body;
+        }
+        endpointMetrics.misses.mark();
+        return null;
+    }
+
+    public void put(String endpoint, String key, byte[] body) {
+        if (configuration.isEnabled() && body.length > 0 && body.length <= maxEntryBytes) {
+            cache.put(key, new Entry(body, System.currentTimeMillis() + configuration.getTtl(endpoint).toMilliseconds()));
+        }
+    }
+
+    /**
+     * Drops every entry whose key starts with the prefix.
+     *
+     * @return number of purged entries
+     */
+    public int purge(String prefix) {
+        int purged = 0;
+        for (String key : cache.asMap().keySet()) {
+            if (key.startsWith(prefix) && cache.asMap().remove(key) != null) {
+                purged++;
+            }
+        }
+        return purged;
+    }
+
+    private EndpointMetrics metricsOf(String endpoint) {
+        return endpointMetrics.computeIfAbsent(endpoint, e -> {
+            Meter hits = metrics.meter(MetricRegistry.name(ResponseCache.class, e, "hits"));
+            Meter misses = metrics.meter(MetricRegistry.name(ResponseCache.class, e, "misses"));
+            metrics.register(MetricRegistry.name(ResponseCache.class, e, "hit-ratio"), new RatioGauge() {
+                @Override
+                protected Ratio getRatio() {
+                    return Ratio.of(hits.getCount(), hits.getCount() + misses.getCount());
+                }
+            });
+            return new EndpointMetrics(hits, misses);
+        });
+    }
+}
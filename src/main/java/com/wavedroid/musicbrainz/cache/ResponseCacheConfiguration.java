@@ -0,0 +1,96 @@
+package com.wavedroid.musicbrainz.cache;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import io.dropwizard.util.Size;
+
+import javax.validation.constraints.NotNull;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings of the serialized response cache.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ResponseCacheConfiguration {
+
+    private boolean enabled = true;
+
+    @NotNull
+    private Size maxSize = Size.megabytes(64);
+
+    @NotNull
+    private Size maxEntrySize = Size.megabytes(1);
+
+    @NotNull
+    private Duration defaultTtl = Duration.minutes(10);
+
+    @NotNull
+    private Map<String, Duration> ttl = new HashMap<>();
+
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Total size of the cached response bodies.
+     */
+    @JsonProperty
+    public Size getMaxSize() {
+        return maxSize;
+    }
+
+    @JsonProperty
+    public void setMaxSize(Size maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Largest single response body that is cached.
+     */
+    @JsonProperty
+    public Size getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    @JsonProperty
+    public void setMaxEntrySize(Size maxEntrySize) {
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    @JsonProperty
+    public Duration getDefaultTtl() {
+        return defaultTtl;
+    }
+
+    @JsonProperty
+    public void setDefaultTtl(Duration defaultTtl) {
+        this.defaultTtl = defaultTtl;
+    }
+
+    /**
+     * Per-endpoint ttl overrides, keyed by endpoint name ({@code artistName}, {@code mbid}, ...).
+     */
+    @JsonProperty
+    public Map<String, Duration> getTtl() {
+        return ttl;
+    }
+
+    @JsonProperty
+    public void setTtl(Map<String, Duration> ttl) {
+        this.ttl = ttl;
+    }
+
+    public Duration getTtl(String endpoint) {
+        Duration endpointTtl = ttl.get(endpoint);
+        return endpointTtl == null ? defaultTtl : endpointTtl;
+    }
+}
@@ -0,0 +1,103 @@
+package com.wavedroid.musicbrainz.concurrent;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.InstrumentedExecutorService;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.util.Duration;
+
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+/**
+ * Bounded pool for one kind of blocking work, so that when that work slows down it can only tie up
+ * its own threads and queue. A saturated bulkhead rejects right away instead of queueing without
+ * end: when its queue is full, and when a task waited for a worker longer than allowed. Besides
+ * the pool metrics it reports {@code queue-depth}, {@code queue-wait}, {@code rejected} (queue full)
+ * and {@code shed} (waited too long).
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class Bulkhead {
+
+    private final String name;
+    private final ExecutorService executor;
+    private final long maxQueueWaitNanos;
+
+    private final Timer queueWait;
+    private final Meter rejected;
+    private final Meter shed;
+
+    public Bulkhead(String name, ExecutorService executor, Queue<Runnable> queue, Duration maxQueueWait,
+                    MetricRegistry metrics) {
+        this.name = name;
+        this.executor = new InstrumentedExecutorService(executor, metrics, name);
+        this.maxQueueWaitNanos = maxQueueWait.toNanoseconds();
+        this.queueWait = metrics.timer(MetricRegistry.name(name, "queue-wait"));
+        this.rejected = metrics.meter(MetricRegistry.name(name, "rejected"));
+        this.shed = metrics.meter(MetricRegistry.name(name, "shed"));
+        metrics.register(MetricRegistry.name(name, "queue-depth"), (Gauge<Integer>) queue::size);
+    }
+
+    /**
+     * Runs the task on a worker. If the bulkhead is saturated the task is dropped and the rejection
+     * handed to {@code onRejected} instead: in the calling thread when the queue is full, or on the
+     * worker when the task waited for it too long.
+     */
+    public void execute(Runnable task, Consumer<BulkheadFullException> onRejected) {
+        long queuedAt = System.nanoTime();
+        try {
+            executor.execute(() -> {
+                long waited = System.nanoTime() - queuedAt;
+                queueWait.update(waited, TimeUnit.NANOSECONDS);
+                if (waited > maxQueueWaitNanos) {
+                    shed.mark();
+                    onRejected.accept(new BulkheadFullException(name + " task waited "
+                            + TimeUnit.NANOSECONDS.toMillis(waited) + " ms for a worker", retryAfterSeconds()));
+                    return;
+                }
+                task.run();
+            });
+        } catch (RejectedExecutionException e) {
+            rejected.mark();
+            onRejected.accept(new BulkheadFullException(name + " queue is full", retryAfterSeconds()));
+        }
+    }
+
+    /**
+     * Runs the task on a worker; it is skipped if the returned future is cancelled while queued.
+     *
+     * @return future of the task's result, failed with a {@link BulkheadFullException} if the
+     * bulkhead rejected it
+     */
+    public <T> CompletableFuture<T> supply(Supplier<T> task) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                result.complete(task.get());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, result::completeExceptionally);
+        return result;
+    }
+
+    /**
+     * @return seconds a rejected caller should wait before trying again: how long tasks have
+     * recently been waiting for a worker, rounded up, and at least one
+     */
+    public long retryAfterSeconds() {
+        double waitNanos = queueWait.getSnapshot().get95thPercentile();
+        return Math.max(1, (long) Math.ceil(waitNanos / TimeUnit.SECONDS.toNanos(1)));
+    }
+}
@@ -0,0 +1,78 @@
+package com.wavedroid.musicbrainz.concurrent;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.setup.Environment;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+
+/**
+ * Settings of a {@link Bulkhead}: a fixed-size worker pool with a bounded queue. Tasks submitted
+ * to a full pool, or that waited in the queue longer than {@code maxQueueWait}, are rejected
+ * instead of piling up.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class BulkheadConfiguration {
+
+    @Min(1)
+    private int threads = 16;
+
+    @Min(1)
+    private int queueSize = 256;
+
+    @NotNull
+    private Duration maxQueueWait = Duration.seconds(1);
+
+    @JsonProperty
+    public int getThreads() {
+        return threads;
+    }
+
+    @JsonProperty
+    public void setThreads(int threads) {
+        this.threads = threads;
+    }
+
+    @JsonProperty
+    public int getQueueSize() {
+        return queueSize;
+    }
+
+    @JsonProperty
+    public void setQueueSize(int queueSize) {
+        this.queueSize = queueSize;
+    }
+
+    /**
+     * How long a task may wait for a worker; one that waited longer is rejected when it gets one,
+     * since its caller has most likely given up on it by then.
+     */
+    @JsonProperty
+    public Duration getMaxQueueWait() {
+        return maxQueueWait;
+    }
+
+    @JsonProperty
+    public void setMaxQueueWait(Duration maxQueueWait) {
+        this.maxQueueWait = maxQueueWait;
+    }
+
+    /**
+     * Builds the bulkhead, ties its pool to the application lifecycle and instruments it under the given name.
+     */
+    public Bulkhead build(Environment environment, String name) {
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(queueSize);
+        ExecutorService executor = environment.lifecycle().executorService(name + "-%d")
+                .minThreads(threads)
+                .maxThreads(threads)
+                .workQueue(queue)
+                .build();
+        return new Bulkhead(name, executor, queue, maxQueueWait, environment.metrics());
+    }
+}
@@ -0,0 +1,25 @@
+package com.wavedroid.musicbrainz.concurrent;
+
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * A task turned away by a saturated {@link Bulkhead}, with a hint of when to try again.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class BulkheadFullException extends RejectedExecutionException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final long retryAfterSeconds;
+
+    public BulkheadFullException(String message, long retryAfterSeconds) {
+        super(message);
+        this.retryAfterSeconds = retryAfterSeconds;
+    }
+
+    public long getRetryAfterSeconds() {
+        return retryAfterSeconds;
+    }
+}
@@ -0,0 +1,107 @@
+package com.wavedroid.musicbrainz.concurrent;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+/**
+ * Collapses concurrent loads of the same key into one: the first caller runs the load, callers
+ * asking for the key while it is in flight wait for it and share its result, or its failure.
+ * Nothing is kept once the load completes, so this only absorbs bursts of identical requests and
+ * never serves stale results. Shared results must not be modified by the callers.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SingleFlight<K, V> {
+
+    private final ConcurrentMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+    private final Meter executions;
+    private final Meter coalesced;
+
+    /**
+     * @param name prefix of the {@code executions}, {@code coalesced} and {@code in-flight} metrics
+     */
+    public SingleFlight(MetricRegistry metrics, String name) {
+        this.executions = metrics.meter(MetricRegistry.name(name, "executions"));
+        this.coalesced = metrics.meter(MetricRegistry.name(name, "coalesced"));
+        metrics.register(MetricRegistry.name(name, "in-flight"), (Gauge<Integer>) inFlight::size);
+    }
+
+    /**
+     * Runs the load in the calling thread, or waits for the one in flight for the same key.
+     */
+    public V call(K key, Supplier<V> load) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.mark();
+            try {
+                return leader.join();
+            } catch (CompletionException e) {
+                throw unwrap(e);
+            }
+        }
+        executions.mark();
+        try {
+            V value = load.get();
+            flight.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            flight.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+        }
+    }
+
+    /**
+     * Starts the asynchronous load, or joins the one in flight for the same key. Every caller gets
+     * a future of its own, so that one of them giving up and cancelling it leaves the load and the
+     * other callers alone.
+     */
+    public CompletableFuture<V> callAsync(K key, Supplier<CompletableFuture<V>> load) {
+        CompletableFuture<V> flight = new CompletableFuture<>();
+        CompletableFuture<V> leader = inFlight.putIfAbsent(key, flight);
+        if (leader != null) {
+            coalesced.mark();
+            return leader.thenApply(value -> value);
+        }
+        executions.mark();
+        CompletableFuture<V> loading;
+        try {
+            loading = load.get();
+        } catch (RuntimeException | Error e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+            throw e;
+        }
+        loading.whenComplete((value, e) -> {
+            inFlight.remove(key, flight);
+            if (e != null) {
+                flight.completeExceptionally(e);
+            } else {
+                flight.complete(value);
+            }
+        });
+        return flight.thenApply(value -> value);
+    }
+
+    private static RuntimeException unwrap(CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause;
+        }
+        if (cause instanceof Error) {
+            throw (Error) cause;
+        }
+        return e;
+    }
+}
@@ -0,0 +1,18 @@
+package com.wavedroid.musicbrainz.coverart;
+
+/**
+ * Thumbnail url of a release group together with the time it stops being valid.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class CachedCoverArt {
+
+    final String url;
+    final long expiresAt;
+
+    CachedCoverArt(String url, long expiresAt) {
+        this.url = url;
+        this.expiresAt = expiresAt;
+    }
+}
@@ -0,0 +1,69 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Consecutive-failure circuit breaker. While open every call is refused; once the open period
+ * has elapsed a single trial call is let through and its outcome closes or re-opens the circuit.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class CircuitBreaker {
+
+    public enum State {CLOSED, OPEN, HALF_OPEN}
+
+    private final int failureThreshold;
+    private final long openNanos;
+
+    private final AtomicInteger failures = new AtomicInteger();
+    private final AtomicLong openedAt = new AtomicLong();
+    private final AtomicBoolean open = new AtomicBoolean();
+    private final AtomicBoolean trialInFlight = new AtomicBoolean();
+
+    public CircuitBreaker(int failureThreshold, long openDuration, TimeUnit unit) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = unit.toNanos(openDuration);
+    }
+
+    public boolean allowRequest() {
+        if (!open.get()) {
+            return true;
+        }
+        return System.nanoTime() - openedAt.get() >= openNanos && trialInFlight.compareAndSet(false, true);
+    }
+
+    public void onSuccess() {
+        failures.set(0);
+        open.set(false);
+        trialInFlight.set(false);
+    }
+
+    public void onFailure() {
+        if (trialInFlight.get() || failures.incrementAndGet() >= failureThreshold) {
+            openedAt.set(System.nanoTime());
+            open.set(true);
+            trialInFlight.set(false);
+        }
+    }
+
+    /**
+     * Gives up a call without an outcome. The circuit stays as it is, except that a trial call
+     * being given up lets the next one through.
+     */
+    public void onCancelled() {
+        if (open.get()) {
+            trialInFlight.set(false);
+        }
+    }
+
+    public State getState() {
+        if (!open.get()) {
+            return State.CLOSED;
+        }
+        return System.nanoTime() - openedAt.get() >= openNanos ? State.HALF_OPEN : State.OPEN;
+    }
+}
@@ -0,0 +1,118 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Two-tier cache of release group MBID to small thumbnail url: an in-heap LRU in front of an
+ * optional {@link DiskCoverArtStore}, so that entries survive restarts. Release groups without
+ * cover art are cached as an empty url with their own, shorter lifetime.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class CoverArtCache implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoverArtCache.class);
+
+    private final long ttlMillis;
+    private final long negativeTtlMillis;
+    private final Cache<UUID, CachedCoverArt> memory;
+    private final DiskCoverArtStore disk;
+
+    private final Meter hits;
+    private final Meter negativeHits;
+    private final Meter misses;
+    private final Meter diskHits;
+
+    public CoverArtCache(CoverArtCacheConfiguration configuration, MetricRegistry metrics) throws IOException {
+        this.ttlMillis = configuration.getTtl().toMilliseconds();
+        this.negativeTtlMillis = configuration.getNegativeTtl().toMilliseconds();
+        this.memory = CacheBuilder.newBuilder()
+                .maximumSize(configuration.getMaxEntries())
+                .recordStats()
+                .build();
+        this.disk = configuration.getFile() == null ? null
+                : new DiskCoverArtStore(configuration.getFile(), configuration.getDiskSlots());
+
+        this.hits = metrics.meter(MetricRegistry.name(CoverArtCache.class, "hits"));
+        this.negativeHits = metrics.meter(MetricRegistry.name(CoverArtCache.class, "negative-hits"));
+        this.misses = metrics.meter(MetricRegistry.name(CoverArtCache.class, "misses"));
+        this.diskHits = metrics.meter(MetricRegistry.name(CoverArtCache.class, "disk-hits"));
+        metrics.register(MetricRegistry.name(CoverArtCache.class, "evictions"),
+                (Gauge<Long>) () -> memory.stats().evictionCount());
+        metrics.register(MetricRegistry.name(CoverArtCache.class, "size"),
+                (Gauge<Long>) memory::size);
+    }
+
+    /**
+     * @return the cached url, {@code ""} for a release group known to have no cover art, or
+     * {@code null} if the MBID has to be looked up
+     */
+    public String get(String mbid) {
+        UUID key = parse(mbid);
+        if (key == null) {
+            return null;
+        }
+        long now = System.currentTimeMillis();
+        CachedCoverArt entry = memory.getIfPresent(key);
+        if (entry != null && entry.expiresAt <= now) {
+            memory.invalidate(key);
+            entry = null;
+        }
+        if (entry == null && disk != null) {
+            entry = disk.get(key, now);
+            if (entry != null) {
+                diskHits.mark();
+                memory.put(key, entry);
+            }
+        }
+        if (entry == null) {
+            misses.mark();
+            return null;
+        }
+        (entry.url.isEmpty() ? negativeHits : hits).mark();
+        return entry.url;
+    }
+
+    /**
+     * Remembers the lookup result; an empty url is cached with the negative ttl.
+     */
+    public void put(String mbid, String url) {
+        UUID key = parse(mbid);
+        if (key == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        long expiresAt = now + (url.isEmpty() ? negativeTtlMillis : ttlMillis);
+        memory.put(key, new CachedCoverArt(url, expiresAt));
+        if (disk != null) {
+            disk.put(key, url, expiresAt, now);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (disk != null) {
+            disk.close();
+        }
+    }
+
+    private static UUID parse(String mbid) {
+        try {
+            return UUID.fromString(mbid);
+        } catch (IllegalArgumentException e) {
+            LOGGER.debug("Not caching cover art of malformed mbid {}", mbid);
+            return null;
+        }
+    }
+}
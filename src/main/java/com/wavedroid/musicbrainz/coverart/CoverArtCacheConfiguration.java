@@ -0,0 +1,103 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Settings of the release group MBID to thumbnail url cache.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class CoverArtCacheConfiguration {
+
+    private boolean enabled = true;
+
+    @Min(1)
+    private long maxEntries = 100_000;
+
+    @NotNull
+    private Duration ttl = Duration.days(7);
+
+    @NotNull
+    private Duration negativeTtl = Duration.hours(6);
+
+    private String file;
+
+    @Min(1024)
+    @Max(DiskCoverArtStore.MAX_SLOTS)
+    private int diskSlots = 1 << 20;
+
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Capacity of the in-heap tier.
+     */
+    @JsonProperty
+    public long getMaxEntries() {
+        return maxEntries;
+    }
+
+    @JsonProperty
+    public void setMaxEntries(long maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    @JsonProperty
+    public Duration getTtl() {
+        return ttl;
+    }
+
+    @JsonProperty
+    public void setTtl(Duration ttl) {
+        this.ttl = ttl;
+    }
+
+    /**
+     * Lifetime of a release group without cover art (404 or empty {@code images}).
+     */
+    @JsonProperty
+    public Duration getNegativeTtl() {
+        return negativeTtl;
+    }
+
+    @JsonProperty
+    public void setNegativeTtl(Duration negativeTtl) {
+        this.negativeTtl = negativeTtl;
+    }
+
+    /**
+     * Path of the on-disk tier; when not set only the in-heap tier is used.
+     */
+    @JsonProperty
+    public String getFile() {
+        return file;
+    }
+
+    @JsonProperty
+    public void setFile(String file) {
+        this.file = file;
+    }
+
+    @JsonProperty
+    public int getDiskSlots() {
+        return diskSlots;
+    }
+
+    @JsonProperty
+    public void setDiskSlots(int diskSlots) {
+        this.diskSlots = diskSlots;
+    }
+}
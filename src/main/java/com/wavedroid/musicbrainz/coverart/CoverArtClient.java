@@ -0,0 +1,273 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.wavedroid.musicbrainz.concurrent.Bulkhead;
+import com.wavedroid.musicbrainz.concurrent.SingleFlight;
+import io.dropwizard.lifecycle.Managed;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.concurrent.FutureCallback;
+import org.apache.http.impl.client.LaxRedirectStrategy;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.apache.http.impl.nio.conn.PoolingNHttpClientConnectionManager;
+import org.apache.http.impl.nio.reactor.DefaultConnectingIOReactor;
+import org.apache.http.impl.nio.reactor.IOReactorConfig;
+import org.apache.http.nio.reactor.IOReactorException;
+import org.apache.http.util.EntityUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Application-wide, non-blocking coverartarchive.org client. Connections are pooled and kept alive,
+ * every lookup is bounded by connect/socket timeouts and the request timeout, and a circuit breaker
+ * answers straight away while the upstream is failing; a lookup its caller cancels counts as
+ * neither a failure nor a success. Requests are sent and their responses parsed on a
+ * {@link Bulkhead} of their own, off the I/O threads. A lookup that found no cover art answers with
+ * an empty url, one that could not tell (failed, short-circuited, turned away by the bulkhead) with
+ * {@code null}. Results, including the absence of cover art, are kept in a {@link CoverArtCache}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class CoverArtClient implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(CoverArtClient.class);
+
+    private final String baseUrl;
+    private final long requestTimeoutMillis;
+    private final CloseableHttpAsyncClient client;
+    private final CircuitBreaker circuitBreaker;
+    private final CoverArtCache cache;
+    private final SingleFlight<String, String> lookups;
+    private final Bulkhead bulkhead;
+    private final ScheduledExecutorService timeouts;
+
+    private final Timer requests;
+    private final Meter failures;
+    private final Meter shortCircuited;
+    private final Meter rejected;
+
+    /**
+     * @param coalesce whether concurrent lookups of the same release group share one request
+     * @param bulkhead bulkhead sending the requests and handling their responses
+     * @param timeouts executor abandoning the requests that outlive the request timeout
+     */
+    public CoverArtClient(CoverArtConfiguration configuration, MetricRegistry metrics, boolean coalesce,
+                          Bulkhead bulkhead, ScheduledExecutorService timeouts) throws IOException {
+        this.bulkhead = bulkhead;
+        this.timeouts = timeouts;
+        this.baseUrl = configuration.getBaseUrl().replaceAll("/+$", "");
+        this.requestTimeoutMillis = configuration.getRequestTimeout().toMilliseconds();
+        this.circuitBreaker = new CircuitBreaker(configuration.getFailureThreshold(),
+                configuration.getOpenDuration().getQuantity(), configuration.getOpenDuration().getUnit());
+        this.cache = configuration.getCache().isEnabled() ? new CoverArtCache(configuration.getCache(), metrics) : null;
+        this.lookups = coalesce
+                ? new SingleFlight<>(metrics, MetricRegistry.name(CoverArtClient.class, "single-flight"))
+                : null;
+
+        int connectTimeout = (int) configuration.getConnectTimeout().toMilliseconds();
+        int socketTimeout = (int) configuration.getSocketTimeout().toMilliseconds();
+        PoolingNHttpClientConnectionManager connectionManager;
+        try {
+            connectionManager = new PoolingNHttpClientConnectionManager(new DefaultConnectingIOReactor(IOReactorConfig.custom()
+                    .setConnectTimeout(connectTimeout)
+                    .setSoTimeout(socketTimeout)
+                    .setSoKeepAlive(true)
+                    .build()));
+        } catch (IOReactorException e) {
+            throw new IllegalStateException("Unable to create cover art I/O reactor", e);
+        }
+        connectionManager.setMaxTotal(configuration.getMaxConnections());
+        connectionManager.setDefaultMaxPerRoute(configuration.getMaxConnections());
+
+        this.client = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setRedirectStrategy(new LaxRedirectStrategy())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(connectTimeout)
+                        .setConnectTimeout(connectTimeout)
+                        .setSocketTimeout(socketTimeout)
+                        .build())
+                .build();
+
+        this.requests = metrics.timer(MetricRegistry.name(CoverArtClient.class, "requests"));
+        this.failures = metrics.meter(MetricRegistry.name(CoverArtClient.class, "failures"));
+        this.shortCircuited = metrics.meter(MetricRegistry.name(CoverArtClient.class, "short-circuited"));
+        this.rejected = metrics.meter(MetricRegistry.name(CoverArtClient.class, "rejected"));
+        metrics.register(MetricRegistry.name(CoverArtClient.class, "circuit-state"),
+                (Gauge<String>) () -> circuitBreaker.getState().name());
+    }
+
+    @Override
+    public void start() {
+        client.start();
+    }
+
+    @Override
+    public void stop() throws IOException {
+        client.close();
+        if (cache != null) {
+            cache.close();
+        }
+    }
+
+    /**
+     * Looks up the small thumbnail of the given release group's front cover.
+     *
+     * @return future completed with the thumbnail url, with an empty string if there is none, or
+     * with {@code null} if the lookup failed; it never completes exceptionally
+     */
+    public CompletableFuture<String> getThumbnailAsync(String releaseGroupMbid) {
+        String cached = cache == null ? null : cache.get(releaseGroupMbid);
+        if (cached != null) {
+            return CompletableFuture.completedFuture(cached);
+        }
+        if (lookups == null) {
+            return fetch(releaseGroupMbid);
+        }
+        return lookups.callAsync(releaseGroupMbid, () -> fetch(releaseGroupMbid));
+    }
+
+    private CompletableFuture<String> fetch(String releaseGroupMbid) {
+        CompletableFuture<String> result = new CompletableFuture<>();
+        bulkhead.execute(() -> send(releaseGroupMbid, result), e -> {
+            rejected.mark();
+            result.complete(null);
+        });
+        return result;
+    }
+
+    private void send(String releaseGroupMbid, CompletableFuture<String> result) {
+        if (result.isDone()) {
+            return;
+        }
+        HttpGet httpGet;
+        try {
+            httpGet = new HttpGet(baseUrl + "/release-group/" + releaseGroupMbid);
+        } catch (IllegalArgumentException e) {
+            result.complete("");
+            return;
+        }
+        if (!circuitBreaker.allowRequest()) {
+            shortCircuited.mark();
+            result.complete(null);
+            return;
+        }
+
+        Timer.Context timer = requests.time();
+        Future<HttpResponse> request = client.execute(httpGet, new FutureCallback<HttpResponse>() {
+            @Override
+            public void completed(HttpResponse response) {
+                timer.stop();
+                bulkhead.execute(() -> handle(response), e -> {
+                    rejected.mark();
+                    EntityUtils.consumeQuietly(response.getEntity());
+                    circuitBreaker.onCancelled();
+                    result.complete(null);
+                });
+            }
+
+            private void handle(HttpResponse response) {
+                int status = response.getStatusLine().getStatusCode();
+                if (status >= HttpStatus.SC_INTERNAL_SERVER_ERROR) {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                    fail("status " + status);
+                    return;
+                }
+                circuitBreaker.onSuccess();
+                if (status != HttpStatus.SC_OK || response.getEntity() == null) {
+                    EntityUtils.consumeQuietly(response.getEntity());
+                    if (status == HttpStatus.SC_NOT_FOUND) {
+                        remember("");
+                        result.complete("");
+                    } else {
+                        result.complete(status == HttpStatus.SC_OK ? "" : null);
+                    }
+                    return;
+                }
+                try (InputStream is = response.getEntity().getContent()) {
+                    String url = CoverArtParser.parseSmallThumbnail(is);
+                    remember(url);
+                    result.complete(url);
+                } catch (IOException e) {
+                    LOGGER.warn("Error parsing cover art of " + releaseGroupMbid, e);
+                    result.complete(null);
+                }
+            }
+
+            @Override
+            public void failed(Exception e) {
+                timer.stop();
+                fail(e.toString());
+            }
+
+            @Override
+            public void cancelled() {
+                timer.stop();
+                circuitBreaker.onCancelled();
+                result.complete(null);
+            }
+
+            private void remember(String url) {
+                if (cache != null) {
+                    cache.put(releaseGroupMbid, url);
+                }
+            }
+
+            private void fail(String reason) {
+                LOGGER.debug("Cover art lookup of {} failed: {}", releaseGroupMbid, reason);
+                failures.mark();
+                circuitBreaker.onFailure();
+                result.complete(null);
+            }
+        });
+        ScheduledFuture<?> timeout = timeouts.schedule(() -> {
+            if (!result.isDone()) {
+                LOGGER.debug("Cover art lookup of {} timed out", releaseGroupMbid);
+                failures.mark();
+                circuitBreaker.onFailure();
+                result.complete(null);
+            }
+        }, requestTimeoutMillis, TimeUnit.MILLISECONDS);
+        result.whenComplete((url, e) -> {
+            timeout.cancel(false);
+            request.cancel(true);
+        });
+    }
+
+    /**
+     * Blocking variant of {@link #getThumbnailAsync(String)} bounded by the configured request timeout.
+     *
+     * @return the thumbnail url, an empty string if there is none, or {@code null} if the lookup failed
+     */
+    public String getThumbnail(String releaseGroupMbid) {
+        CompletableFuture<String> future = getThumbnailAsync(releaseGroupMbid);
+        try {
+            return future.get(requestTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        } catch (ExecutionException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,150 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wavedroid.musicbrainz.concurrent.BulkheadConfiguration;
+import io.dropwizard.util.Duration;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Settings of the shared coverartarchive.org client.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class CoverArtConfiguration {
+
+    @NotEmpty
+    private String baseUrl = "http://coverartarchive.org";
+
+    @NotNull
+    private Duration connectTimeout = Duration.milliseconds(500);
+
+    @NotNull
+    private Duration socketTimeout = Duration.seconds(1);
+
+    @NotNull
+    private Duration requestTimeout = Duration.milliseconds(1500);
+
+    @Min(1)
+    private int maxConnections = 64;
+
+    @Min(1)
+    private int failureThreshold = 5;
+
+    @NotNull
+    private Duration openDuration = Duration.seconds(30);
+
+    @Valid
+    @NotNull
+    private CoverArtCacheConfiguration cache = new CoverArtCacheConfiguration();
+
+    @Valid
+    @NotNull
+    private BulkheadConfiguration bulkhead = new BulkheadConfiguration();
+
+    @JsonProperty
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    @JsonProperty
+    public void setBaseUrl(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
+
+    @JsonProperty
+    public Duration getConnectTimeout() {
+        return connectTimeout;
+    }
+
+    @JsonProperty
+    public void setConnectTimeout(Duration connectTimeout) {
+        this.connectTimeout = connectTimeout;
+    }
+
+    @JsonProperty
+    public Duration getSocketTimeout() {
+        return socketTimeout;
+    }
+
+    @JsonProperty
+    public void setSocketTimeout(Duration socketTimeout) {
+        this.socketTimeout = socketTimeout;
+    }
+
+    /**
+     * Overall deadline for one lookup, redirects included; a lookup missing it counts as failed.
+     */
+    @JsonProperty
+    public Duration getRequestTimeout() {
+        return requestTimeout;
+    }
+
+    @JsonProperty
+    public void setRequestTimeout(Duration requestTimeout) {
+        this.requestTimeout = requestTimeout;
+    }
+
+    @JsonProperty
+    public int getMaxConnections() {
+        return maxConnections;
+    }
+
+    @JsonProperty
+    public void setMaxConnections(int maxConnections) {
+        this.maxConnections = maxConnections;
+    }
+
+    /**
+     * Consecutive failures after which the circuit opens.
+     */
+    @JsonProperty
+    public int getFailureThreshold() {
+        return failureThreshold;
+    }
+
+    @JsonProperty
+    public void setFailureThreshold(int failureThreshold) {
+        this.failureThreshold = failureThreshold;
+    }
+
+    /**
+     * How long an open circuit short-circuits lookups before a trial request is let through.
+     */
+    @JsonProperty
+    public Duration getOpenDuration() {
+        return openDuration;
+    }
+
+    @JsonProperty
+    public void setOpenDuration(Duration openDuration) {
+        this.openDuration = openDuration;
+    }
+
+    @JsonProperty
+    public CoverArtCacheConfiguration getCache() {
+        return cache;
+    }
+
+    @JsonProperty
+    public void setCache(CoverArtCacheConfiguration cache) {
+        this.cache = cache;
+    }
+
+    /**
+     * Pool sending the requests and handling their responses.
+     */
+    @JsonProperty
+    public BulkheadConfiguration getBulkhead() {
+        return bulkhead;
+    }
+
+    @JsonProperty
+    public void setBulkhead(BulkheadConfiguration bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+}
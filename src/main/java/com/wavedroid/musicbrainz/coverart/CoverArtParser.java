@@ -0,0 +1,63 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streaming reader of coverartarchive.org responses. Only {@code images[0].thumbnails.small} is of
+ * interest, so the document is walked token by token and reading stops as soon as it is found.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public final class CoverArtParser {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private CoverArtParser() {
+    }
+
+    /**
+     * @return the small thumbnail url, or an empty string if the document has none
+     */
+    public static String parseSmallThumbnail(InputStream is) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(is)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                return "";
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.getCurrentName();
+                JsonToken value = parser.nextToken();
+                if ("images".equals(field) && value == JsonToken.START_ARRAY) {
+                    return parser.nextToken() == JsonToken.START_OBJECT ? parseImage(parser) : "";
+                }
+                parser.skipChildren();
+            }
+            return "";
+        }
+    }
+
+    private static String parseImage(JsonParser parser) throws IOException {
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.getCurrentName();
+            JsonToken value = parser.nextToken();
+            if ("thumbnails".equals(field) && value == JsonToken.START_OBJECT) {
+                while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                    String size = parser.getCurrentName();
+                    JsonToken url = parser.nextToken();
+                    if ("small".equals(size) && url == JsonToken.VALUE_STRING) {
+                        return parser.getText();
+                    }
+                    parser.skipChildren();
+                }
+                return "";
+            }
+            parser.skipChildren();
+        }
+        return "";
+    }
+}
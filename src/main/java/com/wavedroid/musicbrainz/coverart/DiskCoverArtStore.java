@@ -0,0 +1,179 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.UUID;
+
+/**
+ * Memory-mapped, fixed-size hash table of release group MBID to thumbnail url. Every slot takes
+ * {@value #SLOT_SIZE} bytes (state, url length, the two halves of the UUID, expiry time and the url
+ * itself) and collisions are resolved by bounded linear probing. Slots are never emptied, only
+ * overwritten, which keeps probe chains intact; expired slots are reused by later insertions.
+ * Urls that do not fit into a slot are simply not persisted.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+class DiskCoverArtStore implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(DiskCoverArtStore.class);
+
+    static final int SLOT_SIZE = 128;
+    static final int MAX_SLOTS = (Integer.MAX_VALUE - SLOT_SIZE) / SLOT_SIZE;
+
+    private static final int MAGIC = 0x4d42_4341; // "MBCA"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = SLOT_SIZE;
+
+    private static final int STATE_OFFSET = 0;
+    private static final int LENGTH_OFFSET = 2;
+    private static final int MSB_OFFSET = 8;
+    private static final int LSB_OFFSET = 16;
+    private static final int EXPIRES_OFFSET = 24;
+    private static final int URL_OFFSET = 32;
+    static final int MAX_URL_BYTES = SLOT_SIZE - URL_OFFSET;
+
+    private static final byte EMPTY = 0;
+    private static final byte USED = 1;
+    private static final int MAX_PROBES = 32;
+
+    private final RandomAccessFile file;
+    private final MappedByteBuffer buffer;
+    private final int slots;
+
+    DiskCoverArtStore(String path, int slots) throws IOException {
+        this.file = new RandomAccessFile(path, "rw");
+        long size = HEADER_SIZE + (long) slots * SLOT_SIZE;
+        boolean fresh = file.length() != size;
+        if (fresh) {
+            file.setLength(0);
+            file.setLength(size);
+        }
+        this.buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+        this.slots = slots;
+        if (fresh || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION || buffer.getInt(8) != slots) {
+            if (!fresh) {
+                LOGGER.warn("Cover art store {} has an unexpected layout, starting empty", path);
+                for (int i = 0; i < slots; i++) {
+                    buffer.put(slotOffset(i) + STATE_OFFSET, EMPTY);
+                }
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, slots);
+        }
+    }
+
+    /**
+     * @return the cached url ({@code ""} for a known miss) or {@code null} if absent, expired or
+     * unreadable
+     */
+    synchronized CachedCoverArt get(UUID mbid, long now) {
+        int slot = find(mbid);
+        if (slot < 0) {
+            return null;
+        }
+        int offset = slotOffset(slot);
+        long expiresAt = buffer.getLong(offset + EXPIRES_OFFSET);
+        if (expiresAt <= now) {
+            return null;
+        }
+        int length = buffer.getShort(offset + LENGTH_OFFSET);
+        if (length < 0 || length > MAX_URL_BYTES) {
+            LOGGER.warn("Cover art store slot {} has a url length of {}, ignoring it", slot, length);
+            return null;
+        }
+        byte[] url = new byte[length];
+        for (int i = 0; i < url.length; i++) {
+            url[i] = buffer.get(offset + URL_OFFSET + i);
+        }
+        return new CachedCoverArt(new String(url, StandardCharsets.UTF_8), expiresAt);
+    }
+
+    /**
+     * @return {@code false} if the url is too long or no free slot was found within the probe limit
+     */
+    synchronized boolean put(UUID mbid, String url, long expiresAt, long now) {
+        byte[] bytes = url.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length > MAX_URL_BYTES) {
+            return false;
+        }
+        int reusable = -1;
+        int target = -1;
+        int slot = index(mbid);
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) % slots) {
+            int offset = slotOffset(slot);
+            if (buffer.get(offset + STATE_OFFSET) == EMPTY) {
+                target = reusable >= 0 ? reusable : slot;
+                break;
+            }
+            if (matches(offset, mbid)) {
+                target = slot;
+                break;
+            }
+            if (reusable < 0 && buffer.getLong(offset + EXPIRES_OFFSET) <= now) {
+                reusable = slot;
+            }
+        }
+        if (target < 0) {
+            target = reusable;
+        }
+        if (target < 0) {
+            return false;
+        }
+        int offset = slotOffset(target);
+        buffer.putLong(offset + MSB_OFFSET, mbid.getMostSignificantBits());
+        buffer.putLong(offset + LSB_OFFSET, mbid.getLeastSignificantBits());
+        buffer.putLong(offset + EXPIRES_OFFSET, expiresAt);
+        buffer.putShort(offset + LENGTH_OFFSET, (short) bytes.length);
+        for (int i = 0; i < bytes.length; i++) {
+            buffer.put(offset + URL_OFFSET + i, bytes[i]);
+        }
+        buffer.put(offset + STATE_OFFSET, USED);
+        return true;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        buffer.force();
+        file.close();
+    }
+
+    private int find(UUID mbid) {
+        int slot = index(mbid);
+        for (int probe = 0; probe < MAX_PROBES; probe++, slot = (slot + 1) % slots) {
+            int offset = slotOffset(slot);
+            if (buffer.get(offset + STATE_OFFSET) == EMPTY) {
+                return -1;
+            }
+            if (matches(offset, mbid)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean matches(int offset, UUID mbid) {
+        return buffer.getLong(offset + MSB_OFFSET) == mbid.getMostSignificantBits()
+                && buffer.getLong(offset + LSB_OFFSET) == mbid.getLeastSignificantBits();
+    }
+
+    private int index(UUID mbid) {
+        long h = mbid.getMostSignificantBits() ^ mbid.getLeastSignificantBits();
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        return (int) ((h & Long.MAX_VALUE) % slots);
+    }
+
+    private static int slotOffset(int slot) {
+        return HEADER_SIZE + slot * SLOT_SIZE;
+    }
+}
@@ -0,0 +1,82 @@
+package com.wavedroid.musicbrainz.dao;
+
+import java.sql.Array;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Column positions of a result set by lower-cased label, plus null-aware readers.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class Columns {
+
+    static final int ABSENT = 0;
+
+    private final Map<String, Integer> indices = new HashMap<>();
+
+    Columns(ResultSetMetaData metaData) throws SQLException {
+        for (int i = metaData.getColumnCount(); i >= 1; i--) {
+            indices.put(metaData.getColumnLabel(i).toLowerCase(Locale.ROOT), i);
+        }
+    }
+
+    /**
+     * @return 1-based index of the column, or {@link #ABSENT}
+     */
+    int optional(String column) {
+        Integer index = indices.get(column);
+        return index == null ? ABSENT : index;
+    }
+
+    int required(String column) throws SQLException {
+        int index = optional(column);
+        if (index == ABSENT) {
+            throw new SQLException("Column " + column + " is missing from the result set");
+        }
+        return index;
+    }
+
+    static Integer getInteger(ResultSet rs, int index) throws SQLException {
+        if (index == ABSENT) {
+            return null;
+        }
+        int value = rs.getInt(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    static Long getLong(ResultSet rs, int index) throws SQLException {
+        if (index == ABSENT) {
+            return null;
+        }
+        long value = rs.getLong(index);
+        return rs.wasNull() ? null : value;
+    }
+
+    /**
+     * @return the elements of a text array column, or {@code null} if it is absent or null
+     */
+    static List<String> getStrings(ResultSet rs, int index) throws SQLException {
+        if (index == ABSENT) {
+            return null;
+        }
+        Array array = rs.getArray(index);
+        return array == null ? null : Arrays.asList((String[]) array.getArray());
+    }
+
+    static UUID getUuid(ResultSet rs, int index) throws SQLException {
+        Object value = rs.getObject(index);
+        if (value == null || value instanceof UUID) {
+            return (UUID) value;
+        }
+        return UUID.fromString(value.toString());
+    }
+}
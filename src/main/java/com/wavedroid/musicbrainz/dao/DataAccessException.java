@@ -0,0 +1,20 @@
+package com.wavedroid.musicbrainz.dao;
+
+import java.sql.SQLException;
+
+/**
+ * A lookup of {@link MusicbrainzDao} that failed, as opposed to one that found nothing. It is not
+ * caught on its way out, so the request fails with {@code 500} and its body is neither cached nor
+ * given validators.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class DataAccessException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    public DataAccessException(String message, SQLException cause) {
+        super(message, cause);
+    }
+}
@@ -1,39 +1,116 @@
 package com.wavedroid.musicbrainz.dao;
 
-import com.google.common.collect.Maps;
-import org.postgresql.ds.PGSimpleDataSource;
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
+import com.codahale.metrics.Histogram;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.wavedroid.musicbrainz.concurrent.SingleFlight;
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Tag;
+import com.wavedroid.musicbrainz.model.Track;
+import com.wavedroid.musicbrainz.snapshot.ReleaseSnapshot;
+import com.wavedroid.musicbrainz.summary.ReleaseSummary;
+import com.wavedroid.musicbrainz.tags.TagDictionary;
 
+import javax.sql.DataSource;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.ResultSetMetaData;
 import java.sql.SQLException;
+import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Optional;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
 
 /**
+ * Release, tag and tracklist lookups. A lookup finding nothing returns {@code null} or an empty
+ * result; one the database fails throws a {@link DataAccessException}.
+ * <p>
+ * Lookups made by the row handler of a streaming query, e.g. the tags of a chunk of its rows, run
+ * on the streaming query's connection rather than borrowing a second one, so that a burst of
+ * streams cannot take the whole pool and then wait on it.
+ *
  * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
  * @version $Id$
  */
 public class MusicbrainzDao {
 
-    private static final Logger LOGGER = LoggerFactory.getLogger(MusicbrainzDao.class);
     private static final int PAGE_SIZE = 100;
+    private static final int EXPORT_FETCH_SIZE = 10000;
 
-    private final PGSimpleDataSource dataSource;
+    private final DataSource dataSource;
+    private final int fetchSize;
+    private final ReleaseSummary summary;
+    private final Timer acquireTimer;
+    private final MetricRegistry metrics;
+    private final ConcurrentMap<String, QueryMetrics> queryMetrics = new ConcurrentHashMap<>();
+    private final SlowQueryLog slowQueryLog;
+    private final TagDictionary tagDictionary;
+    private final ReleaseSnapshot snapshot;
+    private final SingleFlight<List<Object>, Object> singleFlight;
+    private final ThreadLocal<Connection> streaming = new ThreadLocal<>();
 
-    private static final String ENVVAR_DB_URL = "MBZ_DB_URL";
-    private static final String ENVVAR_DB_USER = "MBZ_DB_USER";
-    private static final String ENVVAR_DB_PASSWORD = "MBZ_DB_PASSWORD";
+    /*
+     * Name matches the listings by artist and release name are built on, with their rank: found
+     * by Postgres full-text search, or given as ids ranked by the search index.
+     */
+    private static final String ARTIST_TEXT_MATCHES = "(\n" +
+            "  SELECT\n" +
+            "    name,\n" +
+            "    id,\n" +
+            "    ts_rank_cd(ts_name, plainto_tsquery('mb_simple', ?), 2) rank\n" +
+            "  FROM artist\n" +
+            "  WHERE ts_name @@ plainto_tsquery('mb_simple', ?)\n" +
+            ")";
 
-    private static final MusicbrainzDao INSTANCE = new MusicbrainzDao();
+    private static final String ARTIST_ID_MATCHES = "(\n" +
+            "  SELECT\n" +
+            "    a.name,\n" +
+            "    a.id,\n" +
+            "    hits.rank\n" +
+            "  FROM (SELECT unnest(CAST(? AS INTEGER[])) AS id, unnest(CAST(? AS REAL[])) AS rank) AS hits\n" +
+            "    INNER JOIN artist a ON a.id = hits.id\n" +
+            ")";
 
-    private static final String RELEASES_BY_ARTISTS = "SELECT\n" +
+    private static final String RELEASE_GROUP_TEXT_MATCHES = "(\n" +
+            "  SELECT\n" +
+            "    name,\n" +
+            "    type,\n" +
+            "    id,\n" +
+            "    gid,\n" +
+            "    artist_credit,\n" +
+            "    ts_rank_cd(ts_name, plainto_tsquery('mb_simple', ?), 2) rank\n" +
+            "  FROM release_group\n" +
+            "  WHERE ts_name @@ plainto_tsquery('mb_simple', ?)\n" +
+            ")";
+
+    private static final String RELEASE_GROUP_ID_MATCHES = "(\n" +
+            "  SELECT\n" +
+            "    rg.name,\n" +
+            "    rg.type,\n" +
+            "    rg.id,\n" +
+            "    rg.gid,\n" +
+            "    rg.artist_credit,\n" +
+            "    hits.rank\n" +
+            "  FROM (SELECT unnest(CAST(? AS INTEGER[])) AS id, unnest(CAST(? AS REAL[])) AS rank) AS hits\n" +
+            "    INNER JOIN release_group rg ON rg.id = hits.id\n" +
+            ")";
+
+    /*
+     * The total tracks of a release are the track counts of its mediums summed once, as in the
+     * release summary. The joined rows repeat every medium for each release event, and a release
+     * has at most one event per country, so the sums are taken per release and country.
+     */
+    private static final String RELEASES_BY_ARTISTS_SELECT = "SELECT\n" +
             "  rg_year  AS year,\n" +
             "  rg_month AS month,\n" +
             "  artist,\n" +
@@ -43,6 +120,7 @@ public class MusicbrainzDao {
             "  release_group_id,\n" +
             "  release_mbid,\n" +
             "  release_group_mbid,\n" +
+            "  rank,\n" +
             "  CASE WHEN " +
             "       (tbl2.type = 1\n" +
             "           AND NOT exists(SELECT 1\n" +
@@ -54,7 +132,7 @@ public class MusicbrainzDao {
             "FROM (\n" +
             "       SELECT DISTINCT ON (release_group_id)\n" +
             "         sum(track_count)\n" +
-            "         OVER (PARTITION BY release_id) total_tracks,\n" +
+            "         OVER (PARTITION BY release_id, country) total_tracks,\n" +
             "         *\n" +
             "       FROM (\n" +
             "              SELECT\n" +
@@ -74,14 +152,7 @@ public class MusicbrainzDao {
             "                m.first_release_date_year  AS rg_year,\n" +
             "                m.first_release_date_month AS rg_month,\n" +
             "                a.rank                     AS rank\n" +
-            "              FROM\n" +
-            "                (SELECT\n" +
-            "                   name,\n" +
-            "                   id,\n" +
-            "                   ts_rank_cd(ts_name, plainto_tsquery('mb_simple', ?), 2) rank\n" +
-            "                 FROM artist\n" +
-            "                 WHERE ts_name @@ plainto_tsquery('mb_simple', ?)\n" +
-            "                ) AS a\n" +
+            "              FROM %1$s AS a\n" +
             "                INNER JOIN artist_credit_name c ON a.id = c.artist\n" +
             "                INNER JOIN release_group r ON c.artist_credit = r.artist_credit\n" +
             "                INNER JOIN release_group_meta m ON m.id = r.id\n" +
@@ -94,8 +165,7 @@ public class MusicbrainzDao {
             "                                                    WHERE j.release_group = r.id))\n" +
             "                                           OR ?)\n" +
             "            )\n" +
-            "         AS tbl ORDER BY release_group_id, year ASC) AS tbl2\n" +
-            "ORDER BY rank DESC, year, month\n";
+            "         AS tbl ORDER BY release_group_id, year ASC) AS tbl2\n";
 
     private static final String RELEASE_BY_ID = "SELECT\n" +
             "  rg_year  AS year,\n" +
@@ -110,7 +180,7 @@ public class MusicbrainzDao {
             "FROM (\n" +
             "       SELECT DISTINCT ON (release_group_id)\n" +
             "         sum(track_count)\n" +
-            "         OVER (PARTITION BY release_id) total_tracks,\n" +
+            "         OVER (PARTITION BY release_id, country) total_tracks,\n" +
             "         *\n" +
             "       FROM (\n" +
             "              SELECT\n" +
@@ -138,7 +208,7 @@ public class MusicbrainzDao {
             "                INNER JOIN medium ON medium.release = rel.id\n" +
             "              WHERE r.id = ?\n" +
             "            )\n" +
-            "         AS tbl) AS tbl2\n" +
+            "         AS tbl ORDER BY release_group_id, year ASC) AS tbl2\n" +
             "ORDER BY artist, rg_year, rg_month\n";
 
     private static final String RELEASE_BY_MBID = "SELECT\n" +
@@ -157,7 +227,8 @@ public class MusicbrainzDao {
             "              SELECT\n" +
             "                r.type,\n" +
             "                re.country,\n" +
-            "                medium.track_count         AS total_tracks,\n" +
+            "                sum(medium.track_count)\n" +
+            "                OVER (PARTITION BY rel.id, re.country) AS total_tracks,\n" +
             "                medium.id                  AS medium_id,\n" +
             "                r.id                       AS release_group_id,\n" +
             "                rel.id                     AS release_id,\n" +
@@ -194,7 +265,7 @@ public class MusicbrainzDao {
             "         ) AS tbl2\n" +
             "ORDER BY artist, rg_year, rg_month";
 
-    private static final String RELEASE_BY_NAME = "SELECT\n" +
+    private static final String RELEASE_BY_NAME_SELECT = "SELECT\n" +
             "  rg_year  AS year,\n" +
             "  rg_month AS month,\n" +
             "  artist,\n" +
@@ -204,6 +275,7 @@ public class MusicbrainzDao {
             "  release_group_id,\n" +
             "  release_mbid,\n" +
             "  release_group_mbid,\n" +
+            "  rank,\n" +
             "  CASE WHEN " +
             "       (tbl2.type = 1\n" +
             "           AND NOT exists(SELECT 1\n" +
@@ -215,7 +287,7 @@ public class MusicbrainzDao {
             "FROM (\n" +
             "       SELECT DISTINCT ON (release_group_id)\n" +
             "         sum(track_count)\n" +
-            "         OVER (PARTITION BY release_id) total_tracks,\n" +
+            "         OVER (PARTITION BY release_id, country) total_tracks,\n" +
             "         *\n" +
             "       FROM (\n" +
             "              SELECT\n" +
@@ -235,18 +307,7 @@ public class MusicbrainzDao {
             "                m.first_release_date_year  AS rg_year,\n" +
             "                m.first_release_date_month AS rg_month,\n" +
             "                r.rank                     AS rank\n" +
-            "              FROM\n" +
-            "                (SELECT\n" +
-            "                   name,\n" +
-            "                   type,\n" +
-            "                   id,\n" +
-            "                   gid,\n" +
-            "                   artist_credit,\n" +
-            "                   ts_rank_cd(ts_name, plainto_tsquery('mb_simple', ?), 2) rank\n" +
-            "                 FROM release_group\n" +
-            "                 WHERE ts_name @@ plainto_tsquery('mb_simple', ?)\n" +
-            "                 ORDER BY rank DESC\n" +
-            "                ) AS r\n" +
+            "              FROM %2$s AS r\n" +
             "                INNER JOIN artist_credit_name c ON r.artist_credit = c.artist_credit\n" +
             "                INNER JOIN artist a ON a.id = c.artist_credit\n" +
             "                INNER JOIN release_group_meta m ON m.id = r.id\n" +
@@ -259,10 +320,9 @@ public class MusicbrainzDao {
             "                                                    WHERE j.release_group = r.id))\n" +
             "                                           OR ?)\n" +
             "            )\n" +
-            "         AS tbl ORDER BY release_group_id, year ASC) AS tbl2\n" +
-            "ORDER BY rank DESC, year, month\n";
+            "         AS tbl ORDER BY release_group_id, year ASC) AS tbl2\n";
 
-    private static final String RELEASE_BY_ARTIST = "SELECT\n" +
+    private static final String RELEASE_BY_ARTIST_SELECT = "SELECT\n" +
             "  rg_year  AS year,\n" +
             "  rg_month AS month,\n" +
             "  artist,\n" +
@@ -283,7 +343,7 @@ public class MusicbrainzDao {
             "FROM (\n" +
             "       SELECT DISTINCT ON (release_group_id)\n" +
             "         sum(track_count)\n" +
-            "         OVER (PARTITION BY release_id) total_tracks,\n" +
+            "         OVER (PARTITION BY release_id, country) total_tracks,\n" +
             "         *\n" +
             "       FROM (\n" +
             "              SELECT\n" +
@@ -317,10 +377,16 @@ public class MusicbrainzDao {
             "                                           OR ?)\n" +
 
             "            )\n" +
-            "         AS tbl ORDER BY release_group_id, year ASC) AS tbl2\n" +
-            "ORDER BY year, month ";
+            "         AS tbl ORDER BY release_group_id, year ASC) AS tbl2\n";
 
-    private static final String TRACKLIST_BY_RELEASE_ID = "SELECT\n" +
+    /*
+     * The listing by artist id with the release id of every release group, for exports
+     * fetching their tracklists.
+     */
+    private static final String RELEASE_BY_ARTIST_WITH_ID_SELECT = RELEASE_BY_ARTIST_SELECT.replace(
+            "  release_group_id,\n  release_mbid,\n", "  release_group_id,\n  release_id,\n  release_mbid,\n");
+
+    private static final Query TRACKLIST_BY_RELEASE_ID = new Query("tracklist-by-release-id", "SELECT\n" +
             "  t.id             AS track_id,\n" +
             "  t.name           AS title,\n" +
             "  t.length         AS length,\n" +
@@ -345,9 +411,9 @@ public class MusicbrainzDao {
             "                INNER JOIN medium m ON m.release = rel.id\n" +
             "              WHERE rel.id = ?) AS tbl) AS tbl2\n" +
             "  INNER JOIN track t ON t.medium = medium_id\n" +
-            "ORDER BY disc_number, t.position \n";
+            "ORDER BY disc_number, t.position \n");
 
-    private static final String TRACKLIST_BY_RELEASE_MBID = "SELECT\n" +
+    private static final Query TRACKLIST_BY_RELEASE_MBID = new Query("tracklist-by-release-mbid", "SELECT\n" +
       "  t.id                     AS track_id,\n" +
       "  t.name                   AS title,\n" +
       "  t.length                 AS length,\n" +
@@ -365,9 +431,9 @@ public class MusicbrainzDao {
       "     ) AS tbl\n" +
       "  INNER JOIN medium m ON m.release = tbl.release_id\n" +
       "  INNER JOIN track t ON t.medium = m.id\n" +
-      "ORDER BY disc_number, t.position\n";
+      "ORDER BY disc_number, t.position\n");
 
-    private static final String TAGS_BY_RELEASE_GROUPS = "" +
+    private static final Query TAGS_BY_RELEASE_GROUPS = new Query("tags-by-release-groups", "" +
             "SELECT\n" +
             "  release_group_id,\n" +
             "  tag\n" +
@@ -377,160 +443,859 @@ public class MusicbrainzDao {
             "         name                   AS tag,\n" +
             "         row_number()\n" +
             "         OVER (PARTITION BY release_group\n" +
-            "           ORDER BY count DESC) AS row_number\n" +
+            "           ORDER BY count DESC, name) AS row_number\n" +
             "       FROM release_group_tag rt\n" +
             "         LEFT OUTER JOIN tag tag ON rt.tag = tag.id\n" +
             "       WHERE release_group = ANY (?)\n" +
             "     ) AS t\n" +
-            "WHERE t.row_number <= ?\n";
+            "WHERE t.row_number <= ?\n" +
+            "ORDER BY release_group_id, row_number\n");
 
-    private MusicbrainzDao() {
-        try {
-            dataSource = new PGSimpleDataSource();
+    /*
+     * Set-based variants of the single-release queries, for batch lookups: one round trip
+     * whatever the number of keys.
+     */
+    private static final String RELEASES_BY_IDS = RELEASE_BY_ID.replace("WHERE r.id = ?", "WHERE r.id = ANY (?)");
 
-            Map<String, String> env = System.getenv();
+    private static final String RELEASES_BY_MBIDS = RELEASE_BY_MBID.replace("WHERE r.gid = CAST(? AS UUID)",
+            "WHERE r.gid = ANY (CAST(? AS UUID[]))");
 
-            dataSource.setUrl(env.getOrDefault(ENVVAR_DB_URL, "jdbc:postgresql://localhost:5433/musicbrainz_db"));
-            dataSource.setUser(env.getOrDefault(ENVVAR_DB_USER, "musicbrainz"));
-            dataSource.setPassword(env.getOrDefault(ENVVAR_DB_PASSWORD, "musicbrainz"));
-            dataSource.getConnection();
-        } catch (SQLException e) {
-            throw new RuntimeException("FATAL: Unable to connect to musicbrainz database.", e);
+    /*
+     * The MBID lookup over every release group, by id, for exports.
+     */
+    private static final String ALL_RELEASES = RELEASE_BY_MBID.replace("              WHERE r.gid = CAST(? AS UUID)\n", "")
+            .replace("ORDER BY artist, rg_year, rg_month", "ORDER BY release_group_id");
+
+    private static final Query TRACKLISTS_BY_RELEASE_IDS = new Query("tracklists-by-release-ids", "SELECT\n" +
+            "  tbl2.release_id  AS release_id,\n" +
+            "  t.id             AS track_id,\n" +
+            "  t.name           AS title,\n" +
+            "  t.length         AS length,\n" +
+            "  t.position       AS position,\n" +
+            "  tbl2.disc_number AS disc_number\n" +
+            "FROM (\n" +
+            "       SELECT DISTINCT ON (release_id)\n" +
+            "         *\n" +
+            "       FROM (\n" +
+            "              SELECT\n" +
+            "                m.id          AS medium_id,\n" +
+            "                m.position    AS disc_number,\n" +
+            "                rel.id        AS release_id\n" +
+            "              FROM artist a\n" +
+            "                INNER JOIN artist_credit_name c ON a.id = c.artist\n" +
+            "                INNER JOIN release_group r ON c.artist_credit = r.artist_credit\n" +
+            "                INNER JOIN release rel ON rel.release_group = r.id\n" +
+            "                INNER JOIN medium m ON m.release = rel.id\n" +
+            "              WHERE rel.id = ANY (?)) AS tbl) AS tbl2\n" +
+            "  INNER JOIN track t ON t.medium = medium_id\n" +
+            "ORDER BY release_id, disc_number, t.position\n");
+
+    /*
+     * Pages after the first of the listings by release name and by artist id. The key is made of
+     * release group columns only, the same on every row of a release group, so it applies to the
+     * joined rows before DISTINCT ON picks a release, and the release groups before the key are
+     * never expanded into their releases and mediums.
+     */
+    private static final String LIVE_LISTING_END = "            )\n" +
+            "         AS tbl ORDER BY release_group_id, year ASC) AS tbl2\n";
+
+    private static final String RELEASE_BY_NAME_AFTER_SELECT = RELEASE_BY_NAME_SELECT.replace(LIVE_LISTING_END,
+            "              WHERE (-r.rank,\n" +
+            "                     COALESCE(m.first_release_date_year, 32767),\n" +
+            "                     COALESCE(m.first_release_date_month, 13),\n" +
+            "                     r.id) > (?, ?, ?, ?)\n" +
+            LIVE_LISTING_END);
+
+    private static final String RELEASE_BY_ARTIST_AFTER_SELECT = RELEASE_BY_ARTIST_SELECT.replace(LIVE_LISTING_END,
+            "                AND (COALESCE(m.first_release_date_year, 32767),\n" +
+            "                     COALESCE(m.first_release_date_month, 13),\n" +
+            "                     r.id) > (?, ?, ?)\n" +
+            LIVE_LISTING_END);
+
+    private static final ReleaseQueries LIVE = new ReleaseQueries("live",
+            String.format(RELEASES_BY_ARTISTS_SELECT, ARTIST_TEXT_MATCHES, RELEASE_GROUP_TEXT_MATCHES),
+            String.format(RELEASE_BY_NAME_SELECT, ARTIST_TEXT_MATCHES, RELEASE_GROUP_TEXT_MATCHES),
+            String.format(RELEASE_BY_NAME_AFTER_SELECT, ARTIST_TEXT_MATCHES, RELEASE_GROUP_TEXT_MATCHES),
+            RELEASE_BY_ARTIST_SELECT, RELEASE_BY_ARTIST_AFTER_SELECT, RELEASE_BY_ARTIST_WITH_ID_SELECT,
+            RELEASE_BY_ID, RELEASE_BY_MBID, RELEASES_BY_IDS, RELEASES_BY_MBIDS, ALL_RELEASES);
+
+    private static final ReleaseQueries LIVE_INDEXED = new ReleaseQueries("live-indexed",
+            String.format(RELEASES_BY_ARTISTS_SELECT, ARTIST_ID_MATCHES, RELEASE_GROUP_ID_MATCHES),
+            String.format(RELEASE_BY_NAME_SELECT, ARTIST_ID_MATCHES, RELEASE_GROUP_ID_MATCHES),
+            String.format(RELEASE_BY_NAME_AFTER_SELECT, ARTIST_ID_MATCHES, RELEASE_GROUP_ID_MATCHES),
+            RELEASE_BY_ARTIST_SELECT, RELEASE_BY_ARTIST_AFTER_SELECT, RELEASE_BY_ARTIST_WITH_ID_SELECT,
+            RELEASE_BY_ID, RELEASE_BY_MBID, RELEASES_BY_IDS, RELEASES_BY_MBIDS, ALL_RELEASES);
+
+    /*
+     * The same queries over the release summary: index lookups by release group, MBID and artist
+     * credit instead of deriving the chosen release on every call.
+     */
+    private static final String SUMMARY_COLUMNS = "" +
+            "  s.rg_year          AS year,\n" +
+            "  s.rg_month         AS month,\n" +
+            "  s.release_name,\n" +
+            "  s.total_tracks,\n" +
+            "  s.release_group_id,\n" +
+            "  s.release_mbid,\n" +
+            "  s.release_group_mbid,\n";
+
+    private static final String SUMMARY_RELEASES_BY_ARTISTS_SELECT = "SELECT * FROM (\n" +
+            "SELECT DISTINCT ON (s.release_group_id)\n" +
+            SUMMARY_COLUMNS +
+            "  a.name             AS artist,\n" +
+            "  a.id               AS artist_id,\n" +
+            "  a.rank,\n" +
+            "  s.is_studio_album\n" +
+            "FROM %1$s AS a\n" +
+            "  INNER JOIN artist_credit_name c ON c.artist = a.id\n" +
+            "  INNER JOIN " + ReleaseSummary.TABLE + " s ON s.artist_credit = c.artist_credit\n" +
+            "WHERE s.is_studio_album = 1 OR ?\n" +
+            "ORDER BY s.release_group_id, a.rank DESC) AS tbl2\n";
+
+    private static final String SUMMARY_RELEASE_BY_NAME_SELECT = "SELECT\n" +
+            SUMMARY_COLUMNS +
+            "  s.artist,\n" +
+            "  s.artist_id,\n" +
+            "  r.rank,\n" +
+            "  s.is_studio_album\n" +
+            "FROM %2$s AS r\n" +
+            "  INNER JOIN " + ReleaseSummary.TABLE + " s ON s.release_group_id = r.id\n" +
+            "WHERE s.is_studio_album = 1 OR ?\n";
+
+    private static final String SUMMARY_RELEASE_BY_ARTIST_SELECT = "SELECT * FROM (\n" +
+            "SELECT DISTINCT ON (s.release_group_id)\n" +
+            SUMMARY_COLUMNS +
+            "  a.name             AS artist,\n" +
+            "  a.id               AS artist_id,\n" +
+            "  s.is_studio_album\n" +
+            "FROM artist_credit_name c\n" +
+            "  INNER JOIN artist a ON a.id = c.artist\n" +
+            "  INNER JOIN " + ReleaseSummary.TABLE + " s ON s.artist_credit = c.artist_credit\n" +
+            "WHERE c.artist = ?\n" +
+            "  AND (s.is_studio_album = 1 OR ?)\n" +
+            "ORDER BY s.release_group_id) AS tbl2\n";
+
+    /*
+     * Pages after the first of the listing by artist id. The artist's credits are made distinct
+     * before the summary is joined to them rather than after, so the key condition applies to
+     * the summary rows themselves and becomes a range of the (artist_credit, seek key) index per
+     * credit.
+     */
+    private static final String SUMMARY_RELEASE_BY_ARTIST_AFTER_SELECT = "SELECT\n" +
+            SUMMARY_COLUMNS +
+            "  a.name             AS artist,\n" +
+            "  a.id               AS artist_id,\n" +
+            "  s.is_studio_album\n" +
+            "FROM artist a\n" +
+            "  INNER JOIN (SELECT DISTINCT artist, artist_credit FROM artist_credit_name) c ON c.artist = a.id\n" +
+            "  INNER JOIN " + ReleaseSummary.TABLE + " s ON s.artist_credit = c.artist_credit\n" +
+            "WHERE a.id = ?\n" +
+            "  AND (s.is_studio_album = 1 OR ?)\n" +
+            "  AND (COALESCE(s.rg_year, 32767), COALESCE(s.rg_month, 13), s.release_group_id) > (?, ?, ?)\n";
+
+    private static final String SUMMARY_RELEASE_BY_ARTIST_WITH_ID_SELECT = SUMMARY_RELEASE_BY_ARTIST_SELECT.replace(
+            "  s.release_mbid,\n", "  s.release_id,\n  s.release_mbid,\n");
+
+    private static final String SUMMARY_RELEASE_SELECT = "SELECT\n" +
+            SUMMARY_COLUMNS +
+            "  s.artist,\n" +
+            "  s.artist_id\n" +
+            "FROM " + ReleaseSummary.TABLE + " s\n";
+
+    private static final String SUMMARY_RELEASE_WITH_ID_SELECT = "SELECT\n" +
+            SUMMARY_COLUMNS +
+            "  s.artist,\n" +
+            "  s.artist_id,\n" +
+            "  s.release_id\n" +
+            "FROM " + ReleaseSummary.TABLE + " s\n";
+
+    private static final ReleaseQueries SUMMARY = new ReleaseQueries("summary",
+            String.format(SUMMARY_RELEASES_BY_ARTISTS_SELECT, ARTIST_TEXT_MATCHES, RELEASE_GROUP_TEXT_MATCHES),
+            String.format(SUMMARY_RELEASE_BY_NAME_SELECT, ARTIST_TEXT_MATCHES, RELEASE_GROUP_TEXT_MATCHES),
+            null,
+            SUMMARY_RELEASE_BY_ARTIST_SELECT,
+            SUMMARY_RELEASE_BY_ARTIST_AFTER_SELECT,
+            SUMMARY_RELEASE_BY_ARTIST_WITH_ID_SELECT,
+            SUMMARY_RELEASE_SELECT + "WHERE s.release_group_id = ?\n",
+            SUMMARY_RELEASE_WITH_ID_SELECT + "WHERE s.release_group_mbid = CAST(? AS UUID)\n",
+            SUMMARY_RELEASE_SELECT + "WHERE s.release_group_id = ANY (?)\n",
+            SUMMARY_RELEASE_WITH_ID_SELECT + "WHERE s.release_group_mbid = ANY (CAST(? AS UUID[]))\n",
+            SUMMARY_RELEASE_WITH_ID_SELECT + "ORDER BY s.release_group_id\n");
+
+    private static final ReleaseQueries SUMMARY_INDEXED = new ReleaseQueries("summary-indexed",
+            String.format(SUMMARY_RELEASES_BY_ARTISTS_SELECT, ARTIST_ID_MATCHES, RELEASE_GROUP_ID_MATCHES),
+            String.format(SUMMARY_RELEASE_BY_NAME_SELECT, ARTIST_ID_MATCHES, RELEASE_GROUP_ID_MATCHES),
+            null,
+            SUMMARY_RELEASE_BY_ARTIST_SELECT,
+            SUMMARY_RELEASE_BY_ARTIST_AFTER_SELECT,
+            SUMMARY_RELEASE_BY_ARTIST_WITH_ID_SELECT,
+            SUMMARY_RELEASE_SELECT + "WHERE s.release_group_id = ?\n",
+            SUMMARY_RELEASE_WITH_ID_SELECT + "WHERE s.release_group_mbid = CAST(? AS UUID)\n",
+            SUMMARY_RELEASE_SELECT + "WHERE s.release_group_id = ANY (?)\n",
+            SUMMARY_RELEASE_WITH_ID_SELECT + "WHERE s.release_group_mbid = ANY (CAST(? AS UUID[]))\n",
+            SUMMARY_RELEASE_WITH_ID_SELECT + "ORDER BY s.release_group_id\n");
+
+    /**
+     * @param summary release summary to answer release queries from once it is ready, or
+     *                {@code null} to always query the MusicBrainz tables
+     * @param slowQueryLog  log to report slow queries to, or {@code null}
+     * @param tagDictionary tag dictionary to answer tag lookups from once it is ready, or {@code null}
+     * @param snapshot      snapshot to answer every lookup by id and MBID from, with no database behind
+     *                      it, or {@code null}
+     * @param coalesce      whether identical lookups running at the same time share one query
+     */
+    public MusicbrainzDao(DataSource dataSource, MetricRegistry metrics, int fetchSize, ReleaseSummary summary,
+                          SlowQueryLog slowQueryLog, TagDictionary tagDictionary, ReleaseSnapshot snapshot,
+                          boolean coalesce) {
+        this.dataSource = dataSource;
+        this.slowQueryLog = slowQueryLog;
+        this.tagDictionary = tagDictionary;
+        this.snapshot = snapshot;
+        this.fetchSize = fetchSize;
+        this.summary = summary;
+        this.acquireTimer = metrics.timer(MetricRegistry.name(MusicbrainzDao.class, "connection-acquire"));
+        this.metrics = metrics;
+        this.singleFlight = coalesce
+                ? new SingleFlight<>(metrics, MetricRegistry.name(MusicbrainzDao.class, "single-flight"))
+                : null;
+    }
+
+    private MusicbrainzDao(MusicbrainzDao dao, ReleaseSnapshot snapshot) {
+        this.dataSource = dao.dataSource;
+        this.slowQueryLog = dao.slowQueryLog;
+        this.tagDictionary = dao.tagDictionary;
+        this.snapshot = snapshot;
+        this.fetchSize = dao.fetchSize;
+        this.summary = dao.summary;
+        this.acquireTimer = dao.acquireTimer;
+        this.metrics = dao.metrics;
+        this.singleFlight = dao.singleFlight;
+    }
+
+    /**
+     * @return lookups answered from the snapshot generation in use now, whatever replaces it
+     * meanwhile; the same lookups when there is no snapshot
+     */
+    public MusicbrainzDao pinned() {
+        return snapshot == null ? this : new MusicbrainzDao(this, snapshot.pin());
+    }
+
+    /**
+     * The listings take the number of top tags to fetch with each release; with {@code 0} the
+     * releases come without tags.
+     */
+    public List<Release> getReleasesByArtists(NameFilter artist, boolean all, int tags, int page) {
+        return coalesce(() -> {
+            int queryTags = queryTags(tags);
+            if (artist.isEmpty()) {
+                return new ArrayList<>();
+            }
+            return queryForList(queries(artist).byArtists(all, queryTags > 0), page, releaseMapper(tags), params(queryTags, artist));
+        }, "releases-by-artists", Arrays.asList(artist.toParams()), all, tags, page);
+    }
+
+    /**
+     * @return the release, or {@code null} if there is none with this id
+     */
+    public Release getReleaseById(long id) {
+        if (snapshot != null) {
+            return snapshot.getReleaseById(id);
         }
+        return coalesce(() -> queryForFirst(queries().byId, ReleaseMapper::new, id), "release-by-id", id);
     }
 
-    public static List<Map<String, Object>> getReleasesByArtists(String artist, boolean all, int page) {
-        return getEntitiesFromResultSet(getResultSet(RELEASES_BY_ARTISTS, page, artist, artist, all).orElse(null));
+    /**
+     * @return the release, or {@code null} if there is none with this release group MBID
+     */
+    public Release getReleaseByMbid(String mbid) {
+        if (snapshot != null) {
+            return snapshot.getReleaseByMbid(mbid);
+        }
+        if (!isUuid(mbid)) {
+            return null;
+        }
+        return coalesce(() -> queryForFirst(queries().byMbid, ReleaseMapper::new, mbid), "release-by-mbid", mbid);
     }
 
-    public static Map<String, Object> getReleaseById(long id) {
-        try {
-            Optional<ResultSet> rs = getResultSet(RELEASE_BY_ID, 0, id);
-            if (rs.isPresent()) {
-                if (rs.get().next()) {
-                    return getEntityFromResultSet(rs.get());
-                } else {
-                    return Maps.newHashMap();
+    public List<Release> getReleasesByName(NameFilter name, boolean all, int tags, int page) {
+        return coalesce(() -> {
+            int queryTags = queryTags(tags);
+            if (name.isEmpty()) {
+                return new ArrayList<>();
+            }
+            return queryForList(queries(name).byName(all, queryTags > 0), page, releaseMapper(tags), params(queryTags, name));
+        }, "releases-by-name", Arrays.asList(name.toParams()), all, tags, page);
+    }
+
+    public List<Release> getReleasesByArtist(long artistId, boolean all, int tags, int page) {
+        return coalesce(() -> {
+            int queryTags = queryTags(tags);
+            return queryForList(queries().byArtist(all, queryTags > 0), page, releaseMapper(tags), params(queryTags, artistId));
+        }, "releases-by-artist", artistId, all, tags, page);
+    }
+
+    public List<Track> getTracklist(long releaseId, int page) {
+        if (snapshot != null) {
+            return snapshot.getTracklist(releaseId, PAGE_SIZE * page, PAGE_SIZE);
+        }
+        return coalesce(() -> queryForList(TRACKLIST_BY_RELEASE_ID, page, TrackMapper::new, releaseId),
+                "tracklist-by-id", releaseId, page);
+    }
+
+    public List<Track> getTracklist(String mbid, int page) {
+        if (snapshot != null) {
+            Release release = snapshot.getReleaseByMbid(mbid);
+            return release == null ? new ArrayList<>()
+                    : snapshot.getTracklist(release.getReleaseId(), PAGE_SIZE * page, PAGE_SIZE);
+        }
+        if (!isUuid(mbid)) {
+            return new ArrayList<>();
+        }
+        return coalesce(() -> queryForList(TRACKLIST_BY_RELEASE_MBID, page, TrackMapper::new, mbid),
+                "tracklist-by-mbid", mbid, page);
+    }
+
+    /**
+     * @return the top tags of each release group, most used first
+     */
+    public List<Tag> getTags(List<Long> releaseGroupIds, int limit) {
+        if (snapshot != null) {
+            return snapshot.getTags(releaseGroupIds, limit);
+        }
+        if (tagDictionary != null && tagDictionary.covers(limit)) {
+            return tagDictionary.getTags(releaseGroupIds, limit);
+        }
+        return coalesce(() -> queryForList(TAGS_BY_RELEASE_GROUPS, 0, TagMapper::new, releaseGroupIds, limit),
+                "tags", new ArrayList<>(releaseGroupIds), limit);
+    }
+
+    /**
+     * @return releases keyed by release group id; ids without a release are left out
+     */
+    public Map<Long, Release> getReleasesByIds(Collection<Long> ids) {
+        if (snapshot != null) {
+            Map<Long, Release> releases = new HashMap<>();
+            for (Long id : ids) {
+                Release release = snapshot.getReleaseById(id);
+                if (release != null) {
+                    releases.put(id, release);
                 }
             }
-        } catch (SQLException e) {
-            LOGGER.error("Error querying release by id", e);
+            return releases;
         }
-        return Maps.newHashMap();
+        List<Long> params = new ArrayList<>(ids);
+        return coalesce(() -> {
+            Map<Long, Release> releases = new HashMap<>();
+            queryAll(queries().byIds, ReleaseMapper::new, release -> releases.put(release.getReleaseGroupId(), release),
+                    params);
+            return releases;
+        }, "releases-by-ids", params);
     }
 
-    public static Map<String, Object> getReleaseByMbid(String mbid) {
-        try {
-            Optional<ResultSet> rs = getResultSet(RELEASE_BY_MBID, 0, mbid);
-            if (rs.isPresent()) {
-                if (rs.get().next()) {
-                    return getEntityFromResultSet(rs.get());
-                } else {
-                    return Maps.newHashMap();
+    /**
+     * @return releases keyed by release group MBID; MBIDs without a release are left out
+     */
+    public Map<UUID, Release> getReleasesByMbids(Collection<UUID> mbids) {
+        if (snapshot != null) {
+            Map<UUID, Release> releases = new HashMap<>();
+            for (UUID mbid : mbids) {
+                Release release = snapshot.getReleaseByMbid(mbid);
+                if (release != null) {
+                    releases.put(mbid, release);
                 }
             }
-        } catch (SQLException e) {
-            LOGGER.error("Error querying release by mbid", e);
+            return releases;
+        }
+        List<String> params = new ArrayList<>(mbids.size());
+        for (UUID mbid : mbids) {
+            params.add(mbid.toString());
+        }
+        return coalesce(() -> {
+            Map<UUID, Release> releases = new HashMap<>();
+            queryAll(queries().byMbids, ReleaseMapper::new, release -> releases.put(release.getReleaseGroupMbid(), release),
+                    params);
+            return releases;
+        }, "releases-by-mbids", params);
+    }
+
+    /**
+     * @return tracklists keyed by release id, in the order of {@link #getTracklist(long, int)}
+     */
+    public Map<Long, List<Track>> getTracklists(Collection<Long> releaseIds) {
+        if (snapshot != null) {
+            Map<Long, List<Track>> tracklists = new HashMap<>();
+            for (Long releaseId : releaseIds) {
+                List<Track> tracks = snapshot.getTracklist(releaseId, 0, Integer.MAX_VALUE);
+                if (!tracks.isEmpty()) {
+                    tracklists.put(releaseId, tracks);
+                }
+            }
+            return tracklists;
+        }
+        List<Long> params = new ArrayList<>(releaseIds);
+        return coalesce(() -> {
+            Map<Long, List<Track>> tracklists = new HashMap<>();
+            queryAll(TRACKLISTS_BY_RELEASE_IDS, MusicbrainzDao::tracklistRowMapper,
+                    row -> tracklists.computeIfAbsent(row.getKey(), id -> new ArrayList<>()).add(row.getValue()),
+                    params);
+            return tracklists;
+        }, "tracklists", params);
+    }
+
+    /**
+     * Streams every release group with its release id, as looked up by MBID, through a
+     * server-side cursor. Only meant for exports: it reads the whole release summary, or
+     * summarizes the whole of MusicBrainz.
+     */
+    public void streamAllReleases(RowHandler<Release> handler) throws SQLException {
+        streamAllReleases(EXPORT_FETCH_SIZE, handler);
+    }
+
+    /**
+     * @param fetchSize rows the cursor reads per round trip
+     */
+    public void streamAllReleases(int fetchSize, RowHandler<Release> handler) throws SQLException {
+        execute(queries().all, false, fetchSize, ReleaseMapper::new, handler);
+    }
+
+    /**
+     * Streams the whole listing by artist id, without tags but with the release id of every
+     * release group, through a server-side cursor reading {@code fetchSize} rows per round trip.
+     */
+    public void streamAllReleasesByArtist(long artistId, boolean all, int fetchSize, RowHandler<Release> handler) throws SQLException {
+        execute(queries().byArtistWithIds(all), false, fetchSize, ReleaseMapper::new, handler, artistId);
+    }
+
+    /**
+     * Streams the tracklists of {@link #getTracklists(Collection)}, as release id and track rows,
+     * release by release.
+     */
+    public void streamTracklists(Collection<Long> releaseIds, RowHandler<Map.Entry<Long, Track>> handler) throws SQLException {
+        execute(TRACKLISTS_BY_RELEASE_IDS, false, EXPORT_FETCH_SIZE, MusicbrainzDao::tracklistRowMapper, handler,
+                new ArrayList<>(releaseIds));
+    }
+
+    /**
+     * Streams the tags of {@link #getTags(List, int)}, without capping their number at a page.
+     */
+    public void streamTags(List<Long> releaseGroupIds, int limit, RowHandler<Tag> handler) throws SQLException {
+        if (tagDictionary != null && tagDictionary.covers(limit)) {
+            for (Tag tag : tagDictionary.getTags(releaseGroupIds, limit)) {
+                handler.handle(tag);
+            }
+            return;
         }
-        return Maps.newHashMap();
+        execute(TAGS_BY_RELEASE_GROUPS, false, 0, TagMapper::new, handler, releaseGroupIds, limit);
     }
 
-    public static List<Map<String, Object>> getReleasesByName(String name, boolean all, int page) {
-        return getEntitiesFromResultSet(getResultSet(RELEASE_BY_NAME, page, name, name, all).orElse(null));
+    public void streamReleasesByArtists(NameFilter artist, boolean all, int tags, int page, RowHandler<Release> handler) throws SQLException {
+        int queryTags = queryTags(tags);
+        if (!artist.isEmpty()) {
+            query(queries(artist).byArtists(all, queryTags > 0), page, fetchSize, releaseMapper(tags), handler, params(queryTags, artist));
+        }
     }
 
-    public static List<Map<String, Object>> getReleasesByArtist(long artistId, boolean all, int page) {
-        return getEntitiesFromResultSet(getResultSet(RELEASE_BY_ARTIST, page, artistId, all).orElse(null));
+    public void streamReleasesByName(NameFilter name, boolean all, int tags, int page, RowHandler<Release> handler) throws SQLException {
+        int queryTags = queryTags(tags);
+        if (!name.isEmpty()) {
+            query(queries(name).byName(all, queryTags > 0), page, fetchSize, releaseMapper(tags), handler, params(queryTags, name));
+        }
     }
 
-    public static List<Map<String, Object>> getTracklist(long releaseId, int page) {
-        return getEntitiesFromResultSet(getResultSet(TRACKLIST_BY_RELEASE_ID, page, releaseId).orElse(null));
+    public void streamReleasesByArtist(long artistId, boolean all, int tags, int page, RowHandler<Release> handler) throws SQLException {
+        int queryTags = queryTags(tags);
+        query(queries().byArtist(all, queryTags > 0), page, fetchSize, releaseMapper(tags), handler, params(queryTags, artistId));
     }
 
-    public static List<Map<String, Object>> getTracklist(String mbid, int page) {
-        return getEntitiesFromResultSet(getResultSet(TRACKLIST_BY_RELEASE_MBID, page, mbid).orElse(null));
+    public void streamTracklist(long releaseId, int page, RowHandler<Track> handler) throws SQLException {
+        if (snapshot != null) {
+            for (Track track : snapshot.getTracklist(releaseId, PAGE_SIZE * page, PAGE_SIZE)) {
+                handler.handle(track);
+            }
+            return;
+        }
+        query(TRACKLIST_BY_RELEASE_ID, page, fetchSize, TrackMapper::new, handler, releaseId);
+    }
+
+    public Page<Release> getReleasesByArtists(NameFilter artist, boolean all, int tags, PageToken after) {
+        return coalesce(() -> {
+            int queryTags = queryTags(tags);
+            List<Release> releases = new ArrayList<>();
+            if (artist.isEmpty()) {
+                return new Page<>(releases, null);
+            }
+            PageToken next = seekForList(releases::add, releaseMapper(tags), after, true,
+                    queries(artist).byArtists(all, queryTags > 0, after != null), params(queryTags, artist));
+            return new Page<>(releases, next);
+        }, "releases-by-artists-after", Arrays.asList(artist.toParams()), all, tags, after == null ? null : after.encode());
     }
 
-    public static List<Map<String, Object>> getTags(List<Long> releaseGroupIds, int limit) {
-        return getEntitiesFromResultSet(getResultSet(TAGS_BY_RELEASE_GROUPS, 0, releaseGroupIds, limit).orElse(null));
+    public Page<Release> getReleasesByName(NameFilter name, boolean all, int tags, PageToken after) {
+        return coalesce(() -> {
+            int queryTags = queryTags(tags);
+            List<Release> releases = new ArrayList<>();
+            if (name.isEmpty()) {
+                return new Page<>(releases, null);
+            }
+            PageToken next = seekForList(releases::add, releaseMapper(tags), after, true,
+                    queries(name).byName(all, queryTags > 0, after != null), params(queryTags, name));
+            return new Page<>(releases, next);
+        }, "releases-by-name-after", Arrays.asList(name.toParams()), all, tags, after == null ? null : after.encode());
+    }
+
+    public Page<Release> getReleasesByArtist(long artistId, boolean all, int tags, PageToken after) {
+        return coalesce(() -> {
+            int queryTags = queryTags(tags);
+            List<Release> releases = new ArrayList<>();
+            PageToken next = seekForList(releases::add, releaseMapper(tags), after, false,
+                    queries().byArtist(all, queryTags > 0, after != null), params(queryTags, artistId));
+            return new Page<>(releases, next);
+        }, "releases-by-artist-after", artistId, all, tags, after == null ? null : after.encode());
+    }
+
+    /**
+     * @return token of the following page, {@code null} on the last page
+     */
+    public PageToken streamReleasesByArtists(NameFilter artist, boolean all, int tags, PageToken after, RowHandler<Release> handler) throws SQLException {
+        int queryTags = queryTags(tags);
+        if (artist.isEmpty()) {
+            return null;
+        }
+        return seek(queries(artist).byArtists(all, queryTags > 0, after != null), true, after, fetchSize,
+                releaseMapper(tags), handler, params(queryTags, artist));
     }
 
-    private static Optional<Connection> getConnection() {
+    /**
+     * @return token of the following page, {@code null} on the last page
+     */
+    public PageToken streamReleasesByName(NameFilter name, boolean all, int tags, PageToken after, RowHandler<Release> handler) throws SQLException {
+        int queryTags = queryTags(tags);
+        if (name.isEmpty()) {
+            return null;
+        }
+        return seek(queries(name).byName(all, queryTags > 0, after != null), true, after, fetchSize,
+                releaseMapper(tags), handler, params(queryTags, name));
+    }
+
+    /**
+     * @return token of the following page, {@code null} on the last page
+     */
+    public PageToken streamReleasesByArtist(long artistId, boolean all, int tags, PageToken after, RowHandler<Release> handler) throws SQLException {
+        int queryTags = queryTags(tags);
+        return seek(queries().byArtist(all, queryTags > 0, after != null), false, after, fetchSize,
+                releaseMapper(tags), handler, params(queryTags, artistId));
+    }
+
+    /**
+     * Runs the lookup, or waits for the identical one already running and shares its result, so
+     * that a burst of equal requests costs one query. The key must name the lookup and hold every
+     * argument its result depends on.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T coalesce(Supplier<T> lookup, Object... key) {
+        if (singleFlight == null) {
+            return lookup.get();
+        }
+        return (T) singleFlight.call(Arrays.asList(key), lookup::get);
+    }
+
+    /**
+     * @return whether the text is an MBID in its canonical form; Postgres rejects a cast of most
+     * anything else
+     */
+    private static boolean isUuid(String mbid) {
         try {
-            return Optional.of(INSTANCE.dataSource.getConnection());
+            return UUID.fromString(mbid).toString().equalsIgnoreCase(mbid);
+        } catch (IllegalArgumentException e) {
+            return false;
+        }
+    }
+
+    private static RowMapper<Map.Entry<Long, Track>> tracklistRowMapper(ResultSetMetaData metaData) throws SQLException {
+        RowMapper<Track> trackMapper = new TrackMapper(metaData);
+        int releaseId = new Columns(metaData).required("release_id");
+        return rs -> new SimpleImmutableEntry<>(rs.getLong(releaseId), trackMapper.map(rs));
+    }
+
+    private ReleaseQueries queries() {
+        return summary != null && summary.isReady() ? SUMMARY : LIVE;
+    }
+
+    private ReleaseQueries queries(NameFilter filter) {
+        if (filter.isIndexed()) {
+            return summary != null && summary.isReady() ? SUMMARY_INDEXED : LIVE_INDEXED;
+        }
+        return queries();
+    }
+
+    private static Object[] params(int tags, NameFilter filter) {
+        return params(tags, filter.toParams());
+    }
+
+    /**
+     * @return the number of tags a listing query is to fetch itself: none when they are taken
+     * from the tag dictionary instead
+     */
+    private int queryTags(int tags) {
+        return tagDictionary != null && tagDictionary.covers(tags) ? 0 : tags;
+    }
+
+    /**
+     * @return mapper of listing rows, adding their tags from the tag dictionary unless the query
+     * fetches them
+     */
+    private RowMapper.Factory<Release> releaseMapper(int tags) {
+        if (queryTags(tags) == tags) {
+            return ReleaseMapper::new;
+        }
+        return metaData -> {
+            RowMapper<Release> releaseMapper = new ReleaseMapper(metaData);
+            return rs -> {
+                Release release = releaseMapper.map(rs);
+                return release.withTags(tagDictionary.getTags(release.getReleaseGroupId(), tags));
+            };
+        };
+    }
+
+    /**
+     * @return the listing parameters, preceded by the tag limit of a tagged listing
+     */
+    private static Object[] params(int tags, Object... params) {
+        if (tags <= 0) {
+            return params;
+        }
+        Object[] tagged = new Object[params.length + 1];
+        tagged[0] = tags;
+        System.arraycopy(params, 0, tagged, 1, params.length);
+        return tagged;
+    }
+
+    private static PreparedStatement prepare(Connection conn, String sql, QueryMetrics queryMetrics) throws SQLException {
+        try (Timer.Context ignored = queryMetrics.prepare.time()) {
+            return conn.prepareStatement(sql);
+        }
+    }
+
+    private QueryMetrics queryMetrics(Query query, boolean paged) {
+        String name = paged ? query.name + ".paged" : query.name;
+        return queryMetrics.computeIfAbsent(name, n -> new QueryMetrics(metrics, n));
+    }
+
+    /**
+     * Metrics of one query variant. The timers cover handing out the statement, which is where a
+     * statement cache miss pays for parsing, executing it up to the first rows, which includes
+     * planning unless the statement is server-side prepared, fetching the rows and, as part of
+     * that, mapping them.
+     */
+    private static final class QueryMetrics {
+        private final String name;
+        private final Timer prepare;
+        private final Timer execute;
+        private final Timer fetch;
+        private final Timer map;
+        private final Histogram rows;
+        private final Meter errors;
+
+        private QueryMetrics(MetricRegistry metrics, String name) {
+            this.name = name;
+            this.prepare = metrics.timer(MetricRegistry.name(MusicbrainzDao.class, "queries", name, "prepare"));
+            this.execute = metrics.timer(MetricRegistry.name(MusicbrainzDao.class, "queries", name, "execute"));
+            this.fetch = metrics.timer(MetricRegistry.name(MusicbrainzDao.class, "queries", name, "fetch"));
+            this.map = metrics.timer(MetricRegistry.name(MusicbrainzDao.class, "queries", name, "map"));
+            this.rows = metrics.histogram(MetricRegistry.name(MusicbrainzDao.class, "queries", name, "rows"));
+            this.errors = metrics.meter(MetricRegistry.name(MusicbrainzDao.class, "queries", name, "errors"));
+        }
+    }
+
+    private Connection getConnection() throws SQLException {
+        try (Timer.Context ignored = acquireTimer.time()) {
+            return dataSource.getConnection();
+        }
+    }
+
+    /**
+     * @throws DataAccessException if the query fails
+     */
+    private <T> List<T> queryForList(Query query, int page, RowMapper.Factory<T> mapper, Object... params) {
+        List<T> entities = new ArrayList<>();
+        try {
+            query(query, page, 0, mapper, entities::add, params);
         } catch (SQLException e) {
-            LOGGER.error("Failed to connect to musicbrainz database.");
-            return Optional.empty();
-        }
-    }
-
-    private static Optional<ResultSet> getResultSet(String query, int page, Object... params) {
-        Optional<Connection> optionalConn = getConnection();
-        if (optionalConn.isPresent()) {
-            Connection conn = optionalConn.get();
-            try {
-                PreparedStatement ps = conn.prepareStatement(query + " limit ? offset ? ");
-                int index = 0;
-                for (Object param : params) {
-                    index++;
-                    if (param instanceof String) {
-                        ps.setString(index, (String) param);
-                    }
-                    if (param instanceof Integer) {
-                        ps.setInt(index, (Integer) param);
-                    }
-                    if (param instanceof Long) {
-                        ps.setLong(index, (Long) param);
-                    }
-                    if (param instanceof List) {
-                        ps.setArray(index, conn.createArrayOf("integer", ((List) param).toArray()));
-                    }
-                    if (param instanceof Boolean) {
-                        ps.setBoolean(index, (Boolean) param);
-                    }
-                }
-                ps.setInt(++index, PAGE_SIZE);
-                ps.setInt(++index, PAGE_SIZE * page);
-                return Optional.of(ps.executeQuery());
-            } catch (SQLException e) {
-                LOGGER.error("Error executing query", e);
-                return Optional.empty();
-            } finally {
-                try {
-                    conn.close();
-                } catch (SQLException ignored) {
-                }
-            }
-        } else {
-            return Optional.empty();
+            throw new DataAccessException("Error executing query " + query, e);
+        }
+        return entities;
+    }
+
+    /**
+     * Runs an unpaged query; only meant for queries whose row count is bounded by their parameters.
+     *
+     * @throws DataAccessException if the query fails
+     */
+    private <T> void queryAll(Query query, RowMapper.Factory<T> mapper, RowHandler<T> handler, Object... params) {
+        try {
+            execute(query, false, 0, mapper, handler, params);
+        } catch (SQLException e) {
+            throw new DataAccessException("Error executing query " + query, e);
+        }
+    }
+
+    private <T> T queryForFirst(Query query, RowMapper.Factory<T> mapper, Object... params) {
+        List<T> entities = queryForList(query, 0, mapper, params);
+        return entities.isEmpty() ? null : entities.get(0);
+    }
+
+    private PageToken seekForList(RowHandler<Release> handler, RowMapper.Factory<Release> mapper, PageToken after,
+                                  boolean ranked, Query query, Object... params) {
+        try {
+            return seek(query, ranked, after, 0, mapper, handler, params);
+        } catch (SQLException e) {
+            throw new DataAccessException("Error executing query " + query, e);
         }
     }
 
-    private static List<Map<String, Object>> getEntitiesFromResultSet(ResultSet resultSet) {
-        ArrayList<Map<String, Object>> entities = new ArrayList<>();
-        if (resultSet == null) {
-            return entities;
+    /**
+     * Runs one page of a keyset listing and remembers the sort key of its last row.
+     */
+    private PageToken seek(Query query, boolean ranked, PageToken after, int fetchSize, RowMapper.Factory<Release> mapper,
+                           RowHandler<Release> handler, Object... params) throws SQLException {
+        Object[] allParams = params;
+        if (after != null) {
+            Object[] key = after.toParams(ranked);
+            allParams = Arrays.copyOf(params, params.length + key.length);
+            System.arraycopy(key, 0, allParams, params.length, key.length);
         }
+        SeekKey last = new SeekKey();
+        query(query, 0, fetchSize, metaData -> {
+            RowMapper<Release> releaseMapper = mapper.create(metaData);
+            Columns columns = new Columns(metaData);
+            int rank = columns.optional("seek_rank");
+            int year = columns.required("seek_year");
+            int month = columns.required("seek_month");
+            return rs -> {
+                Release release = releaseMapper.map(rs);
+                last.rank = rank == Columns.ABSENT ? 0 : rs.getFloat(rank);
+                last.year = rs.getInt(year);
+                last.month = rs.getInt(month);
+                last.releaseGroupId = release.getReleaseGroupId();
+                last.rows++;
+                return release;
+            };
+        }, handler, allParams);
+        return last.rows < PAGE_SIZE ? null : new PageToken(last.rank, last.year, last.month, last.releaseGroupId);
+    }
+
+    private static final class SeekKey {
+        private float rank;
+        private int year;
+        private int month;
+        private long releaseGroupId;
+        private int rows;
+    }
+
+    /**
+     * Runs the query with {@value #PAGE_SIZE} rows of the given page.
+     */
+    private <T> void query(Query query, int page, int fetchSize, RowMapper.Factory<T> mapper, RowHandler<T> handler,
+                           Object... params) throws SQLException {
+        Object[] pagedParams = Arrays.copyOf(params, params.length + 2);
+        pagedParams[params.length] = PAGE_SIZE;
+        pagedParams[params.length + 1] = PAGE_SIZE * page;
+        execute(query, true, fetchSize, mapper, handler, pagedParams);
+    }
+
+    /**
+     * Runs the query and hands every mapped row to the handler while the connection is still
+     * open. A positive fetch size reads the rows through a server-side cursor, which Postgres only
+     * uses inside a transaction, so autocommit is switched off for the duration of the query.
+     * Queries the handler runs share the connection, and the transaction of its cursor. The time
+     * spent in the handler, e.g. writing to a client, is not counted towards a slow query.
+     */
+    private <T> void execute(Query query, boolean paged, int fetchSize, RowMapper.Factory<T> mapper,
+                             RowHandler<T> handler, Object... params) throws SQLException {
+        QueryMetrics queryMetrics = queryMetrics(query, paged);
+        long started = System.nanoTime();
+        long handling = 0;
+        int rows = 0;
+        Connection outer = streaming.get();
+        Connection conn = outer != null ? outer : getConnection();
         try {
-            while (resultSet.next()) {
-                entities.add(getEntityFromResultSet(resultSet));
+            if (outer == null) {
+                streaming.set(conn);
+            }
+            boolean cursor = fetchSize > 0;
+            boolean transaction = cursor && conn.getAutoCommit();
+            if (transaction) {
+                conn.setAutoCommit(false);
+            }
+            try (PreparedStatement ps = prepare(conn, query.sql(paged), queryMetrics)) {
+                bind(conn, ps, params);
+                ps.setFetchSize(cursor ? fetchSize : 0);
+                Timer.Context executeTimer = queryMetrics.execute.time();
+                try (ResultSet rs = ps.executeQuery()) {
+                    executeTimer.stop();
+                    try (Timer.Context ignored = queryMetrics.fetch.time()) {
+                        RowMapper<T> rowMapper = mapper.create(rs.getMetaData());
+                        long mapping = 0;
+                        while (rs.next()) {
+                            long mapStarted = System.nanoTime();
+                            T row = rowMapper.map(rs);
+                            long handleStarted = System.nanoTime();
+                            mapping += handleStarted - mapStarted;
+                            handler.handle(row);
+                            handling += System.nanoTime() - handleStarted;
+                            rows++;
+                        }
+                        queryMetrics.map.update(mapping, TimeUnit.NANOSECONDS);
+                    }
+                }
+            } finally {
+                if (transaction) {
+                    conn.rollback();
+                    conn.setAutoCommit(true);
+                }
             }
         } catch (SQLException e) {
-            LOGGER.error("Error processing resultSet", e);
+            queryMetrics.errors.mark();
+            throw e;
+        } finally {
+            if (outer == null) {
+                streaming.remove();
+                conn.close();
+            }
+        }
+        queryMetrics.rows.update(rows);
+        if (slowQueryLog != null) {
+            slowQueryLog.record(queryMetrics.name, query.sql(paged), params,
+                    System.nanoTime() - started - handling, rows);
         }
-        return entities;
     }
 
-    private static Map<String, Object> getEntityFromResultSet(ResultSet resultSet) throws SQLException {
-        ResultSetMetaData metaData = resultSet.getMetaData();
-        int columnCount = metaData.getColumnCount();
-        Map<String, Object> resultsMap = new HashMap<>();
-        for (int i = 1; i <= columnCount; ++i) {
-            String columnName = metaData.getColumnName(i).toLowerCase();
-            Object object = resultSet.getObject(i);
-            resultsMap.put(columnName, object);
+    static void bind(Connection conn, PreparedStatement ps, Object... params) throws SQLException {
+        int index = 0;
+        for (Object param : params) {
+            index++;
+            if (param instanceof String) {
+                ps.setString(index, (String) param);
+            }
+            if (param instanceof Integer) {
+                ps.setInt(index, (Integer) param);
+            }
+            if (param instanceof Long) {
+                ps.setLong(index, (Long) param);
+            }
+            if (param instanceof List) {
+                List<?> list = (List<?>) param;
+                Object first = list.isEmpty() ? null : list.get(0);
+                String type = first instanceof String ? "text" : first instanceof Float ? "float4" : "integer";
+                ps.setArray(index, conn.createArrayOf(type, list.toArray()));
+            }
+            if (param instanceof Boolean) {
+                ps.setBoolean(index, (Boolean) param);
+            }
+            if (param instanceof Float) {
+                ps.setFloat(index, (Float) param);
+            }
         }
-        return resultsMap;
     }
 
 }
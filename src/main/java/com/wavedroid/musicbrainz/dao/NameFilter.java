@@ -0,0 +1,56 @@
+package com.wavedroid.musicbrainz.dao;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * What the name listings match: a text for Postgres full-text search, or the artist or release
+ * group ids already found by the search index, each with its rank.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public final class NameFilter {
+
+    private final String text;
+    private final List<Long> ids;
+    private final List<Float> ranks;
+
+    private NameFilter(String text, List<Long> ids, List<Float> ranks) {
+        this.text = text;
+        this.ids = ids;
+        this.ranks = ranks;
+    }
+
+    public static NameFilter text(String text) {
+        return new NameFilter(text, null, null);
+    }
+
+    /**
+     * @param ranks rank of every id, higher is better
+     */
+    public static NameFilter ids(List<Long> ids, List<Float> ranks) {
+        if (ids.size() != ranks.size()) {
+            throw new IllegalArgumentException("Expected one rank per id");
+        }
+        return new NameFilter(null, Collections.unmodifiableList(ids), Collections.unmodifiableList(ranks));
+    }
+
+    boolean isIndexed() {
+        return ids != null;
+    }
+
+    /**
+     * @return whether the filter is known to match nothing, without asking the database
+     */
+    boolean isEmpty() {
+        return ids != null && ids.isEmpty();
+    }
+
+    /**
+     * @return the two parameters of the match subquery
+     */
+    Object[] toParams() {
+        return ids != null ? new Object[]{ids, ranks} : new Object[]{text, text};
+    }
+}
@@ -0,0 +1,31 @@
+package com.wavedroid.musicbrainz.dao;
+
+import java.util.List;
+
+/**
+ * One page of a keyset-paginated listing.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public final class Page<T> {
+
+    private final List<T> items;
+    private final PageToken next;
+
+    public Page(List<T> items, PageToken next) {
+        this.items = items;
+        this.next = next;
+    }
+
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return token of the following page, {@code null} on the last page
+     */
+    public PageToken getNext() {
+        return next;
+    }
+}
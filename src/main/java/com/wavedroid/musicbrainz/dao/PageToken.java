@@ -0,0 +1,65 @@
+package com.wavedroid.musicbrainz.dao;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Base64;
+
+/**
+ * Sort key of the last row of a listing page, handed to clients as an opaque continuation token
+ * and used to seek to the next page instead of skipping rows with OFFSET.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public final class PageToken {
+
+    private static final byte VERSION = 1;
+    private static final int LENGTH = 1 + 4 + 4 + 4 + 8;
+
+    private final float rank;
+    private final int year;
+    private final int month;
+    private final long releaseGroupId;
+
+    PageToken(float rank, int year, int month, long releaseGroupId) {
+        this.rank = rank;
+        this.year = year;
+        this.month = month;
+        this.releaseGroupId = releaseGroupId;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the token is malformed
+     */
+    public static PageToken decode(String token) {
+        ByteBuffer buffer = ByteBuffer.wrap(Base64.getUrlDecoder().decode(token));
+        try {
+            if (buffer.remaining() != LENGTH || buffer.get() != VERSION) {
+                throw new IllegalArgumentException("Unsupported page token " + token);
+            }
+            return new PageToken(buffer.getFloat(), buffer.getInt(), buffer.getInt(), buffer.getLong());
+        } catch (BufferUnderflowException e) {
+            throw new IllegalArgumentException("Malformed page token " + token, e);
+        }
+    }
+
+    public String encode() {
+        ByteBuffer buffer = ByteBuffer.allocate(LENGTH);
+        buffer.put(VERSION).putFloat(rank).putInt(year).putInt(month).putLong(releaseGroupId);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(buffer.array());
+    }
+
+    /**
+     * @return bind parameters of the seek predicate, rank first for ranked listings
+     */
+    Object[] toParams(boolean ranked) {
+        return ranked
+                ? new Object[]{rank, year, month, releaseGroupId}
+                : new Object[]{year, month, releaseGroupId};
+    }
+
+    @Override
+    public String toString() {
+        return encode();
+    }
+}
@@ -0,0 +1,42 @@
+package com.wavedroid.musicbrainz.dao;
+
+/**
+ * A named SQL statement of {@link MusicbrainzDao}. The paged variant is built once up front, so
+ * that every execution hands the driver the very same text and the pooled statement cache can
+ * reuse the statement, server-side prepared, across requests. The name identifies the variant in
+ * the per-query metrics.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class Query {
+
+    static final String PAGING = " limit ? offset ? ";
+
+    final String name;
+    private final String sql;
+    private final String pagedSql;
+
+    Query(String name, String sql) {
+        this(name, sql, sql + PAGING);
+    }
+
+    /**
+     * For statements that are not paged by appending {@link #PAGING}; the paged variant must
+     * still take the limit and offset as its last parameters.
+     */
+    Query(String name, String sql, String pagedSql) {
+        this.name = name;
+        this.sql = sql;
+        this.pagedSql = pagedSql;
+    }
+
+    String sql(boolean paged) {
+        return paged ? pagedSql : sql;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
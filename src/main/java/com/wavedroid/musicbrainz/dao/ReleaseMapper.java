@@ -0,0 +1,60 @@
+package com.wavedroid.musicbrainz.dao;
+
+import com.wavedroid.musicbrainz.model.Release;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ReleaseMapper implements RowMapper<Release> {
+
+    private final int year;
+    private final int month;
+    private final int artist;
+    private final int releaseId;
+    private final int releaseName;
+    private final int totalTracks;
+    private final int artistId;
+    private final int releaseGroupId;
+    private final int releaseMbid;
+    private final int releaseGroupMbid;
+    private final int studioAlbum;
+    private final int tags;
+
+    public ReleaseMapper(ResultSetMetaData metaData) throws SQLException {
+        Columns columns = new Columns(metaData);
+        year = columns.required("year");
+        month = columns.required("month");
+        artist = columns.required("artist");
+        releaseId = columns.optional("release_id");
+        releaseName = columns.required("release_name");
+        totalTracks = columns.required("total_tracks");
+        artistId = columns.required("artist_id");
+        releaseGroupId = columns.required("release_group_id");
+        releaseMbid = columns.required("release_mbid");
+        releaseGroupMbid = columns.required("release_group_mbid");
+        studioAlbum = columns.optional("is_studio_album");
+        tags = columns.optional("tags");
+    }
+
+    @Override
+    public Release map(ResultSet rs) throws SQLException {
+        return new Release(
+                Columns.getInteger(rs, year),
+                Columns.getInteger(rs, month),
+                rs.getString(artist),
+                Columns.getLong(rs, releaseId),
+                rs.getString(releaseName),
+                rs.getLong(totalTracks),
+                rs.getLong(artistId),
+                rs.getLong(releaseGroupId),
+                Columns.getUuid(rs, releaseMbid),
+                Columns.getUuid(rs, releaseGroupMbid),
+                Columns.getInteger(rs, studioAlbum),
+                Columns.getStrings(rs, tags));
+    }
+}
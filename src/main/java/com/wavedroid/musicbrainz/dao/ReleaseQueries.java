@@ -0,0 +1,213 @@
+package com.wavedroid.musicbrainz.dao;
+
+/**
+ * The release queries of {@link MusicbrainzDao} over one data source: the live MusicBrainz tables
+ * or the precomputed release summary. The listing queries are given as bare selects and get their
+ * ordering and keyset variants here, so every source sorts and pages the same way. All variants
+ * take their parameters in the same order.
+ * <p>
+ * The listings are specialized on the studio albums only / all releases switch: the selects carry
+ * it as a trailing {@code OR ?} of their release filter, which is replaced by a constant in each
+ * variant. The planner folds the constant away, so the studio variant keeps its filter and the
+ * other drops it, instead of one generic plan that has to serve both.
+ * <p>
+ * Each listing also comes tagged: the page is wrapped in a select adding the top tags of every
+ * release group as a {@code tags} array, so the rows arrive enriched in one round trip. The tag
+ * limit is then the first parameter, ahead of those of the listing.
+ * <p>
+ * The keyset variants apply the key to the result of the listing select, outside the
+ * {@code DISTINCT ON} and window functions the selects derive their rows with, where the planner
+ * cannot push it down: they still compute every row before the key, and only spare the client
+ * the shifting pages of {@code OFFSET}. A source can therefore give the pages after the first of
+ * the listings by release name and by artist id as selects applying the key to their own rows,
+ * which is exact as long as every row of a release group carries the same key. It is not for the
+ * listing by artist name, whose rank is that of whichever matched artist the select keeps for a
+ * release group, so that listing is always keyed outside.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class ReleaseQueries {
+
+    private static final String ALL_PARAM = "OR ?";
+
+    private static final String TAGGED_SELECT = "SELECT\n" +
+            "  ARRAY(SELECT tag.name\n" +
+            "        FROM release_group_tag rt\n" +
+            "          INNER JOIN tag ON tag.id = rt.tag\n" +
+            "        WHERE rt.release_group = listed.release_group_id\n" +
+            "        ORDER BY rt.count DESC, tag.name\n" +
+            "        LIMIT ?) AS tags,\n" +
+            "  listed.*\n" +
+            "FROM (";
+
+    private final Query[] byArtists;
+    private final Query[] byArtistsFirst;
+    private final Query[] byArtistsAfter;
+    private final Query[] byName;
+    private final Query[] byNameFirst;
+    private final Query[] byNameAfter;
+    private final Query[] byArtist;
+    private final Query[] byArtistFirst;
+    private final Query[] byArtistAfter;
+    private final Query[] byArtistWithIds;
+    final Query byId;
+    final Query byMbid;
+    final Query byIds;
+    final Query byMbids;
+    final Query all;
+
+    /**
+     * @param source          prefix of the query names
+     * @param byArtistsSelect ranked listing by artist name: {@code (artist, artist, all)}
+     * @param byNameSelect    ranked listing by release name: {@code (name, name, all)}
+     * @param byNameAfterSelect the same listing past a key, applying it itself:
+     *                        {@code (name, name, all, -rank, year, month, releaseGroupId)}; or
+     *                        {@code null} to apply the key to {@code byNameSelect}
+     * @param byArtistSelect  listing by artist id: {@code (artistId, all)}
+     * @param byArtistAfterSelect the same listing past a key, applying it itself:
+     *                        {@code (artistId, all, year, month, releaseGroupId)}; or {@code null}
+     *                        to apply the key to {@code byArtistSelect}
+     * @param byArtistWithIdsSelect the same listing with the release id of every row
+     * @param byId            single release group by id
+     * @param byMbid          single release group by MBID, with its release id
+     * @param byIds           release groups by an array of ids
+     * @param byMbids         release groups by a text array of MBIDs, with their release ids
+     * @param all             every release group, with its release id, as by MBID
+     */
+    ReleaseQueries(String source, String byArtistsSelect, String byNameSelect, String byNameAfterSelect,
+                   String byArtistSelect, String byArtistAfterSelect, String byArtistWithIdsSelect,
+                   String byId, String byMbid, String byIds, String byMbids, String all) {
+        this.byArtists = listing(source + ".by-artists", byArtistsSelect,
+                "ORDER BY rank DESC, year, month, release_group_id\n");
+        this.byArtistsFirst = seekQueries(source + ".by-artists.first", byArtistsSelect, true, false);
+        this.byArtistsAfter = seekQueries(source + ".by-artists.after", byArtistsSelect, true, true);
+        this.byName = listing(source + ".by-name", byNameSelect,
+                "ORDER BY rank DESC, year, month, release_group_id\n");
+        this.byNameFirst = seekQueries(source + ".by-name.first", byNameSelect, true, false);
+        this.byNameAfter = afterQueries(source + ".by-name.after", byNameSelect, byNameAfterSelect, true);
+        this.byArtist = listing(source + ".by-artist", byArtistSelect, "ORDER BY year, month, release_group_id\n");
+        this.byArtistFirst = seekQueries(source + ".by-artist.first", byArtistSelect, false, false);
+        this.byArtistAfter = afterQueries(source + ".by-artist.after", byArtistSelect, byArtistAfterSelect, false);
+        this.byArtistWithIds = new Query[]{
+                new Query(source + ".by-artist.with-ids.studio",
+                        specialize(byArtistWithIdsSelect, false) + "ORDER BY year, month, release_group_id\n"),
+                new Query(source + ".by-artist.with-ids.all",
+                        specialize(byArtistWithIdsSelect, true) + "ORDER BY year, month, release_group_id\n")};
+        this.byId = new Query(source + ".by-id", byId);
+        this.byMbid = new Query(source + ".by-mbid", byMbid);
+        this.byIds = new Query(source + ".by-ids", byIds);
+        this.byMbids = new Query(source + ".by-mbids", byMbids);
+        this.all = new Query(source + ".all", all);
+    }
+
+    /**
+     * The listing variants no longer take the {@code all} parameter; the tagged ones take the tag
+     * limit first.
+     */
+    Query byArtists(boolean all, boolean tagged) {
+        return byArtists[variant(all, tagged)];
+    }
+
+    Query byArtists(boolean all, boolean tagged, boolean after) {
+        return (after ? byArtistsAfter : byArtistsFirst)[variant(all, tagged)];
+    }
+
+    Query byName(boolean all, boolean tagged) {
+        return byName[variant(all, tagged)];
+    }
+
+    Query byName(boolean all, boolean tagged, boolean after) {
+        return (after ? byNameAfter : byNameFirst)[variant(all, tagged)];
+    }
+
+    Query byArtist(boolean all, boolean tagged) {
+        return byArtist[variant(all, tagged)];
+    }
+
+    Query byArtist(boolean all, boolean tagged, boolean after) {
+        return (after ? byArtistAfter : byArtistFirst)[variant(all, tagged)];
+    }
+
+    /**
+     * The unpaged, untagged listing by artist id with release ids, for exports; it takes
+     * {@code (artistId)} only.
+     */
+    Query byArtistWithIds(boolean all) {
+        return byArtistWithIds[all ? 1 : 0];
+    }
+
+    private static int variant(boolean all, boolean tagged) {
+        return (all ? 1 : 0) + (tagged ? 2 : 0);
+    }
+
+    private static Query[] listing(String name, String select, String orderBy) {
+        return variants(name, specialize(select, false) + orderBy, specialize(select, true) + orderBy, orderBy);
+    }
+
+    private static Query[] seekQueries(String name, String select, boolean ranked, boolean after) {
+        return variants(name, seekQuery(specialize(select, false), ranked, after),
+                seekQuery(specialize(select, true), ranked, after), seekOrder(ranked));
+    }
+
+    /**
+     * The keyset variants past a key: applied by the after-select itself when there is one, so
+     * that they only need to be ordered, or else to the result of the listing select.
+     */
+    private static Query[] afterQueries(String name, String select, String afterSelect, boolean ranked) {
+        return afterSelect == null
+                ? seekQueries(name, select, ranked, true)
+                : seekQueries(name, afterSelect, ranked, false);
+    }
+
+    private static Query[] variants(String name, String studio, String all, String orderBy) {
+        return new Query[]{
+                new Query(name + ".studio", studio),
+                new Query(name + ".all", all),
+                tagged(name + ".studio.tagged", studio, orderBy),
+                tagged(name + ".all.tagged", all, orderBy)};
+    }
+
+    /**
+     * Wraps a listing so that every row carries its top tags. The listing is paged inside the
+     * wrapper, and its order restored outside, where a page is only a handful of rows to sort.
+     */
+    private static Query tagged(String name, String sql, String orderBy) {
+        return new Query(name,
+                TAGGED_SELECT + sql + ") AS listed\n" + orderBy,
+                TAGGED_SELECT + sql + Query.PAGING + ") AS listed\n" + orderBy);
+    }
+
+    private static String specialize(String select, boolean all) {
+        if (select.indexOf(ALL_PARAM) != select.lastIndexOf(ALL_PARAM) || !select.contains(ALL_PARAM)) {
+            throw new IllegalArgumentException("Listing select must have exactly one '" + ALL_PARAM + "'");
+        }
+        return select.replace(ALL_PARAM, all ? "OR TRUE" : "OR FALSE");
+    }
+
+    /**
+     * Wraps a listing query for keyset pagination. The sort key is made total by the release group
+     * id, and missing years and months are replaced by values sorting after every real one, which
+     * is where {@code NULLS LAST} puts them in the offset-paginated queries.
+     */
+    private static String seekQuery(String select, boolean ranked, boolean after) {
+        String key = seekKey(ranked);
+        return "SELECT * FROM (\n" +
+                "  SELECT *,\n" +
+                (ranked ? "    -rank                 AS seek_rank,\n" : "") +
+                "    COALESCE(year, 32767) AS seek_year,\n" +
+                "    COALESCE(month, 13)   AS seek_month\n" +
+                "  FROM (" + select + ") AS base\n" +
+                ") AS page\n" +
+                (after ? "WHERE (" + key + ") > (" + (ranked ? "?, " : "") + "?, ?, ?)\n" : "") +
+                seekOrder(ranked);
+    }
+
+    private static String seekKey(boolean ranked) {
+        return (ranked ? "seek_rank, " : "") + "seek_year, seek_month, release_group_id";
+    }
+
+    private static String seekOrder(boolean ranked) {
+        return "ORDER BY " + seekKey(ranked) + "\n";
+    }
+}
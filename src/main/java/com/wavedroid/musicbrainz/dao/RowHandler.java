@@ -0,0 +1,15 @@
+package com.wavedroid.musicbrainz.dao;
+
+import java.sql.SQLException;
+
+/**
+ * Callback receiving query results one row at a time, while the underlying cursor is open.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@FunctionalInterface
+public interface RowHandler<T> {
+
+    void handle(T row) throws SQLException;
+}
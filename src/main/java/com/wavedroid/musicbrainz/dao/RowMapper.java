@@ -0,0 +1,23 @@
+package com.wavedroid.musicbrainz.dao;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * Maps the current row of a result set to a typed value. A mapper is created once per query from
+ * the result set metadata, so column lookups are not repeated for every row.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@FunctionalInterface
+public interface RowMapper<T> {
+
+    T map(ResultSet resultSet) throws SQLException;
+
+    @FunctionalInterface
+    interface Factory<T> {
+        RowMapper<T> create(ResultSetMetaData metaData) throws SQLException;
+    }
+}
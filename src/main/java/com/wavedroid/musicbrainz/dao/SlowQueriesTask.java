@@ -0,0 +1,41 @@
+package com.wavedroid.musicbrainz.dao;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+import java.util.List;
+
+/**
+ * Admin task listing the most recent slow queries, newest first, with their parameters and any
+ * captured plan: {@code POST /tasks/slow-queries}. With {@code clear=true} the list is emptied
+ * afterwards.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SlowQueriesTask extends Task {
+
+    private final SlowQueryLog log;
+
+    public SlowQueriesTask(SlowQueryLog log) {
+        super("slow-queries");
+        this.log = log;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        List<SlowQueryLog.Entry> entries = log.entries();
+        output.println(entries.size() + " slow queries");
+        for (SlowQueryLog.Entry entry : entries) {
+            output.println();
+            output.println(entry);
+            if (entry.getPlan() != null) {
+                output.println(entry.getPlan());
+            }
+        }
+        if (parameters.get("clear").contains("true")) {
+            log.clear();
+        }
+    }
+}
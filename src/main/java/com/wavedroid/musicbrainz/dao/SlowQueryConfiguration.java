@@ -0,0 +1,109 @@
+package com.wavedroid.musicbrainz.dao;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Settings of the slow query log.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SlowQueryConfiguration {
+
+    private boolean enabled = true;
+
+    @NotNull
+    private Duration threshold = Duration.milliseconds(250);
+
+    @NotNull
+    private Duration explainThreshold = Duration.seconds(1);
+
+    @NotNull
+    private Duration explainInterval = Duration.minutes(10);
+
+    @NotNull
+    private Duration explainTimeout = Duration.seconds(10);
+
+    @Min(1)
+    private int maxEntries = 100;
+
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Execution time from which a query is logged, rows fetched included.
+     */
+    @JsonProperty
+    public Duration getThreshold() {
+        return threshold;
+    }
+
+    @JsonProperty
+    public void setThreshold(Duration threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Execution time from which the plan of a slow query is captured with
+     * {@code EXPLAIN (ANALYZE, BUFFERS)}, which runs the query once more.
+     */
+    @JsonProperty
+    public Duration getExplainThreshold() {
+        return explainThreshold;
+    }
+
+    @JsonProperty
+    public void setExplainThreshold(Duration explainThreshold) {
+        this.explainThreshold = explainThreshold;
+    }
+
+    /**
+     * Minimum time between two plan captures of the same query variant.
+     */
+    @JsonProperty
+    public Duration getExplainInterval() {
+        return explainInterval;
+    }
+
+    @JsonProperty
+    public void setExplainInterval(Duration explainInterval) {
+        this.explainInterval = explainInterval;
+    }
+
+    /**
+     * Statement timeout of a plan capture.
+     */
+    @JsonProperty
+    public Duration getExplainTimeout() {
+        return explainTimeout;
+    }
+
+    @JsonProperty
+    public void setExplainTimeout(Duration explainTimeout) {
+        this.explainTimeout = explainTimeout;
+    }
+
+    /**
+     * Number of most recent slow queries kept for the {@code slow-queries} admin task.
+     */
+    @JsonProperty
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @JsonProperty
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+}
@@ -0,0 +1,204 @@
+package com.wavedroid.musicbrainz.dao;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.text.SimpleDateFormat;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps the most recent queries of {@link MusicbrainzDao} that took longer than the configured
+ * threshold, with the parameters they were run with. For the slowest ones the plan is captured by
+ * running them once more under {@code EXPLAIN (ANALYZE, BUFFERS)} on a separate connection, in the
+ * background and at most once per query variant and interval, so that a burst of slow requests
+ * does not double the load on the database.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SlowQueryLog {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SlowQueryLog.class);
+
+    private static final int MAX_LIST_ITEMS = 10;
+
+    private final DataSource dataSource;
+    private final ExecutorService explainExecutor;
+    private final long thresholdNanos;
+    private final long explainThresholdNanos;
+    private final long explainIntervalNanos;
+    private final long explainTimeoutMillis;
+    private final int maxEntries;
+
+    private final Deque<Entry> entries = new ArrayDeque<>();
+    private final ConcurrentMap<String, Long> lastExplained = new ConcurrentHashMap<>();
+
+    private final Meter slowQueries;
+    private final Meter explains;
+
+    /**
+     * @param explainExecutor executor running the plan captures; it should have a bounded queue
+     *                        discarding what does not fit
+     */
+    public SlowQueryLog(DataSource dataSource, SlowQueryConfiguration configuration, ExecutorService explainExecutor,
+                        MetricRegistry metrics) {
+        this.dataSource = dataSource;
+        this.explainExecutor = explainExecutor;
+        this.thresholdNanos = configuration.getThreshold().toNanoseconds();
+        this.explainThresholdNanos = configuration.getExplainThreshold().toNanoseconds();
+        this.explainIntervalNanos = configuration.getExplainInterval().toNanoseconds();
+        this.explainTimeoutMillis = configuration.getExplainTimeout().toMilliseconds();
+        this.maxEntries = configuration.getMaxEntries();
+        this.slowQueries = metrics.meter(MetricRegistry.name(SlowQueryLog.class, "slow-queries"));
+        this.explains = metrics.meter(MetricRegistry.name(SlowQueryLog.class, "explains"));
+    }
+
+    /**
+     * Records an executed query if it was slow.
+     *
+     * @param name         query variant
+     * @param elapsedNanos time from acquiring the connection to the last row handled
+     * @param rows         number of rows fetched
+     */
+    void record(String name, String sql, Object[] params, long elapsedNanos, int rows) {
+        if (elapsedNanos < thresholdNanos) {
+            return;
+        }
+        slowQueries.mark();
+        Entry entry = new Entry(System.currentTimeMillis(), name, render(params),
+                TimeUnit.NANOSECONDS.toMillis(elapsedNanos), rows);
+        LOGGER.warn("Slow query {}", entry);
+        synchronized (entries) {
+            if (entries.size() == maxEntries) {
+                entries.removeLast();
+            }
+            entries.addFirst(entry);
+        }
+        if (elapsedNanos >= explainThresholdNanos && claimExplain(name)) {
+            try {
+                explainExecutor.execute(() -> explain(entry, sql, params));
+            } catch (RejectedExecutionException e) {
+                LOGGER.debug("Plan capture of {} rejected", name);
+            }
+        }
+    }
+
+    /**
+     * @return the recorded slow queries, newest first
+     */
+    public List<Entry> entries() {
+        synchronized (entries) {
+            return new ArrayList<>(entries);
+        }
+    }
+
+    public void clear() {
+        synchronized (entries) {
+            entries.clear();
+        }
+        lastExplained.clear();
+    }
+
+    private boolean claimExplain(String name) {
+        long now = System.nanoTime();
+        Long last = lastExplained.get(name);
+        if (last == null) {
+            return lastExplained.putIfAbsent(name, now) == null;
+        }
+        return now - last >= explainIntervalNanos && lastExplained.replace(name, last, now);
+    }
+
+    private void explain(Entry entry, String sql, Object[] params) {
+        explains.mark();
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                try (Statement st = conn.createStatement()) {
+                    st.execute("SET LOCAL statement_timeout = " + explainTimeoutMillis);
+                }
+                StringBuilder plan = new StringBuilder();
+                try (PreparedStatement ps = conn.prepareStatement("EXPLAIN (ANALYZE, BUFFERS) " + sql)) {
+                    MusicbrainzDao.bind(conn, ps, params);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            plan.append(rs.getString(1)).append('\n');
+                        }
+                    }
+                }
+                entry.plan = plan.toString();
+                LOGGER.warn("Plan of slow query {}:\n{}", entry.name, entry.plan);
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        } catch (SQLException e) {
+            LOGGER.warn("Error capturing the plan of " + entry.name, e);
+        }
+    }
+
+    private static String render(Object[] params) {
+        List<String> rendered = new ArrayList<>(params.length);
+        for (Object param : params) {
+            if (param instanceof List && ((List<?>) param).size() > MAX_LIST_ITEMS) {
+                List<?> list = (List<?>) param;
+                rendered.add(list.subList(0, MAX_LIST_ITEMS).toString().replaceFirst("]$", "")
+                        + ", ... " + (list.size() - MAX_LIST_ITEMS) + " more]");
+            } else if (param instanceof String) {
+                rendered.add("'" + param + "'");
+            } else {
+                rendered.add(String.valueOf(param));
+            }
+        }
+        return rendered.toString();
+    }
+
+    /**
+     * A slow query execution.
+     */
+    public static final class Entry {
+        private final long time;
+        private final String name;
+        private final String params;
+        private final long elapsedMillis;
+        private final int rows;
+        private volatile String plan;
+
+        private Entry(long time, String name, String params, long elapsedMillis, int rows) {
+            this.time = time;
+            this.name = name;
+            this.params = params;
+            this.elapsedMillis = elapsedMillis;
+            this.rows = rows;
+        }
+
+        /**
+         * @return the captured plan, or {@code null} if none has been captured (yet)
+         */
+        public String getPlan() {
+            return plan;
+        }
+
+        @Override
+        public String toString() {
+            return new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(time)) + " " + name
+                    + " " + elapsedMillis + "ms " + rows + " rows params=" + params;
+        }
+    }
+}
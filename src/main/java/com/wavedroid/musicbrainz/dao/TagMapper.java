@@ -0,0 +1,28 @@
+package com.wavedroid.musicbrainz.dao;
+
+import com.wavedroid.musicbrainz.model.Tag;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class TagMapper implements RowMapper<Tag> {
+
+    private final int releaseGroupId;
+    private final int tag;
+
+    public TagMapper(ResultSetMetaData metaData) throws SQLException {
+        Columns columns = new Columns(metaData);
+        releaseGroupId = columns.required("release_group_id");
+        tag = columns.required("tag");
+    }
+
+    @Override
+    public Tag map(ResultSet rs) throws SQLException {
+        return new Tag(rs.getLong(releaseGroupId), rs.getString(tag));
+    }
+}
@@ -0,0 +1,39 @@
+package com.wavedroid.musicbrainz.dao;
+
+import com.wavedroid.musicbrainz.model.Track;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+
+/**
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class TrackMapper implements RowMapper<Track> {
+
+    private final int trackId;
+    private final int title;
+    private final int length;
+    private final int position;
+    private final int discNumber;
+
+    public TrackMapper(ResultSetMetaData metaData) throws SQLException {
+        Columns columns = new Columns(metaData);
+        trackId = columns.required("track_id");
+        title = columns.required("title");
+        length = columns.required("length");
+        position = columns.required("position");
+        discNumber = columns.required("disc_number");
+    }
+
+    @Override
+    public Track map(ResultSet rs) throws SQLException {
+        return new Track(
+                rs.getLong(trackId),
+                rs.getString(title),
+                Columns.getInteger(rs, length),
+                rs.getInt(position),
+                rs.getInt(discNumber));
+    }
+}
@@ -0,0 +1,79 @@
+package com.wavedroid.musicbrainz.export;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import com.wavedroid.musicbrainz.concurrent.BulkheadConfiguration;
+
+import javax.validation.Valid;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Settings of the {@code /export} endpoints.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ExportConfiguration {
+
+    private boolean enabled = true;
+
+    @Min(1)
+    private int fetchSize = 1000;
+
+    @Min(1)
+    private int chunkSize = 500;
+
+    @Valid
+    @NotNull
+    private BulkheadConfiguration bulkhead = new BulkheadConfiguration();
+
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Rows the cursor of an export reads per round trip, and so the most it holds ahead of a
+     * client reading slowly.
+     */
+    @JsonProperty
+    public int getFetchSize() {
+        return fetchSize;
+    }
+
+    @JsonProperty
+    public void setFetchSize(int fetchSize) {
+        this.fetchSize = fetchSize;
+    }
+
+    /**
+     * Release groups whose tags, and tracklists, are fetched with one query.
+     */
+    @JsonProperty
+    public int getChunkSize() {
+        return chunkSize;
+    }
+
+    @JsonProperty
+    public void setChunkSize(int chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Pool running the exports, each on one worker for as long as its client keeps reading.
+     */
+    @JsonProperty
+    public BulkheadConfiguration getBulkhead() {
+        return bulkhead;
+    }
+
+    @JsonProperty
+    public void setBulkhead(BulkheadConfiguration bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+}
@@ -0,0 +1,205 @@
+package com.wavedroid.musicbrainz.export;
+
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.codahale.metrics.annotation.Timed;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.base.Optional;
+import com.wavedroid.musicbrainz.api.Encoding;
+import com.wavedroid.musicbrainz.concurrent.Bulkhead;
+import com.wavedroid.musicbrainz.dao.MusicbrainzDao;
+import com.wavedroid.musicbrainz.dao.RowHandler;
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Track;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.ws.rs.BadRequestException;
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.PathParam;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.container.AsyncResponse;
+import javax.ws.rs.container.Suspended;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Bulk exports as newline-delimited JSON, one release group per line, read in one pass through a
+ * server-side cursor instead of page by page:
+ * <ul>
+ * <li>{@code /export/artistId/{artistId}?all=true} the discography of an artist, in the order of
+ * {@code /release/artistId}</li>
+ * <li>{@code /export/releases} every release group, by id</li>
+ * </ul>
+ * Lines carry the release id and, as in the listings, up to {@code tags} tags (one by default).
+ * With {@code tracklists=true} a line is {@code {"release": .., "tracklist": [..]}} instead.
+ * <p>
+ * The rows are written as the cursor reads them; tags and tracklists are fetched a chunk of rows
+ * at a time. A client reading slowly blocks the writes, and with them the cursor, so an export
+ * holds no more than a fetch and a chunk of rows whatever its size. Exports run on their own
+ * bulkhead, which answers {@code 503} when it is saturated. An export failing midway breaks the
+ * response off, so that clients can tell it from a complete one.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@Path("/export")
+@Produces(ExportResource.NDJSON_TYPE)
+public class ExportResource {
+
+    public static final String NDJSON_TYPE = "application/x-ndjson";
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ExportResource.class);
+
+    /**
+     * Release query that hands its rows to a {@link RowHandler} instead of collecting them.
+     */
+    @FunctionalInterface
+    private interface ReleaseSource {
+        void stream(RowHandler<Release> handler) throws SQLException;
+    }
+
+    private final MusicbrainzDao dao;
+    private final Bulkhead bulkhead;
+    private final int fetchSize;
+    private final int chunkSize;
+    private final int maxTags;
+
+    private final Timer exports;
+    private final Meter exportedReleases;
+
+    /**
+     * @param maxTags the most tags per release an export may ask for
+     */
+    public ExportResource(MusicbrainzDao dao, ExportConfiguration configuration, Bulkhead bulkhead, int maxTags,
+                          MetricRegistry metrics) {
+        this.dao = dao;
+        this.bulkhead = bulkhead;
+        this.fetchSize = configuration.getFetchSize();
+        this.chunkSize = configuration.getChunkSize();
+        this.maxTags = maxTags;
+        this.exports = metrics.timer(MetricRegistry.name(ExportResource.class, "exports"));
+        this.exportedReleases = metrics.meter(MetricRegistry.name(ExportResource.class, "exported-releases"));
+    }
+
+    @GET
+    @Timed
+    @Path("/artistId/{artistId}")
+    public void releasesByArtist(@PathParam("artistId") long artistId, @QueryParam("all") Optional<Boolean> all,
+                                 @QueryParam("tags") Optional<Integer> tags,
+                                 @QueryParam("tracklists") Optional<Boolean> tracklists,
+                                 @Suspended AsyncResponse response) {
+        export(response, tagLimit(tags), tracklists.or(false),
+                handler -> dao.streamAllReleasesByArtist(artistId, all.or(false), fetchSize, handler));
+    }
+
+    @GET
+    @Timed
+    @Path("/releases")
+    public void releases(@QueryParam("tags") Optional<Integer> tags,
+                         @QueryParam("tracklists") Optional<Boolean> tracklists,
+                         @Suspended AsyncResponse response) {
+        export(response, tagLimit(tags), tracklists.or(false), handler -> dao.streamAllReleases(fetchSize, handler));
+    }
+
+    /**
+     * Sends the export from a worker of the bulkhead, which writes the body as the query runs.
+     */
+    private void export(AsyncResponse async, int tags, boolean tracklists, ReleaseSource source) {
+        Response response = Response.ok((StreamingOutput) out -> write(out, tags, tracklists, source), NDJSON_TYPE)
+                .build();
+        bulkhead.execute(() -> async.resume(response), rejected -> async.resume(
+                new ServiceUnavailableException("Too many concurrent exports", rejected.getRetryAfterSeconds())));
+    }
+
+    private void write(OutputStream out, int tags, boolean tracklists, ReleaseSource source) throws IOException {
+        try (Timer.Context ignored = exports.time();
+             JsonGenerator generator = Encoding.JSON.createGenerator(out)) {
+            generator.setRootValueSeparator(null);
+            List<Release> chunk = new ArrayList<>(chunkSize);
+            source.stream(release -> {
+                chunk.add(release);
+                if (chunk.size() >= chunkSize) {
+                    writeChunk(generator, chunk, tags, tracklists);
+                }
+            });
+            writeChunk(generator, chunk, tags, tracklists);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        } catch (SQLException e) {
+            LOGGER.error("Error exporting releases", e);
+            throw new IOException("Error exporting releases", e);
+        }
+    }
+
+    /**
+     * Writes the rows with their tags and tracklists, fetched for the whole chunk at once, and
+     * flushes them to the client.
+     */
+    private void writeChunk(JsonGenerator generator, List<Release> chunk, int tags, boolean tracklists)
+            throws SQLException {
+        if (chunk.isEmpty()) {
+            return;
+        }
+        Map<Long, List<String>> tagsByReleaseGroup = new HashMap<>();
+        if (tags > 0) {
+            List<Long> releaseGroupIds = new ArrayList<>(chunk.size());
+            for (Release release : chunk) {
+                releaseGroupIds.add(release.getReleaseGroupId());
+            }
+            dao.streamTags(releaseGroupIds, tags, tag -> tagsByReleaseGroup
+                    .computeIfAbsent(tag.getReleaseGroupId(), id -> new ArrayList<>(tags)).add(tag.getName()));
+        }
+        Map<Long, List<Track>> tracksByRelease = new HashMap<>();
+        if (tracklists) {
+            List<Long> releaseIds = new ArrayList<>(chunk.size());
+            for (Release release : chunk) {
+                releaseIds.add(release.getReleaseId());
+            }
+            dao.streamTracklists(releaseIds, row -> tracksByRelease
+                    .computeIfAbsent(row.getKey(), id -> new ArrayList<>()).add(row.getValue()));
+        }
+        try {
+            for (Release release : chunk) {
+                List<String> releaseTags = tagsByReleaseGroup.get(release.getReleaseGroupId());
+                Release line = releaseTags == null ? release : release.withTags(releaseTags);
+                if (tracklists) {
+                    Map<String, Object> map = new LinkedHashMap<>();
+                    map.put("release", line);
+                    map.put("tracklist", tracksByRelease.getOrDefault(release.getReleaseId(), Collections.emptyList()));
+                    generator.writeObject(map);
+                } else {
+                    generator.writeObject(line);
+                }
+                generator.writeRaw('\n');
+            }
+            generator.flush();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        exportedReleases.mark(chunk.size());
+        chunk.clear();
+    }
+
+    private int tagLimit(Optional<Integer> tags) {
+        int limit = tags.or(1);
+        if (limit < 0 || limit > maxTags) {
+            throw new BadRequestException("tags must be between 0 and " + maxTags);
+        }
+        return limit;
+    }
+}
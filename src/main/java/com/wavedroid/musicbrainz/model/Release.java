@@ -0,0 +1,159 @@
+package com.wavedroid.musicbrainz.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Release group together with the release chosen to represent it. Columns that only some queries
+ * select ({@code release_id}, {@code is_studio_album}) and the enrichments (tags, cover image,
+ * genre) are {@code null} when absent and are then left out of the JSON.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@JsonSerialize(using = ReleaseSerializer.class)
+public final class Release {
+
+    private final Integer year;
+    private final Integer month;
+    private final String artist;
+    private final Long releaseId;
+    private final String releaseName;
+    private final long totalTracks;
+    private final long artistId;
+    private final long releaseGroupId;
+    private final UUID releaseMbid;
+    private final UUID releaseGroupMbid;
+    private final Integer studioAlbum;
+
+    private final List<String> tags;
+    private final String image;
+    private final List<Tag> genre;
+
+    public Release(Integer year, Integer month, String artist, Long releaseId, String releaseName, long totalTracks,
+                   long artistId, long releaseGroupId, UUID releaseMbid, UUID releaseGroupMbid, Integer studioAlbum) {
+        this(year, month, artist, releaseId, releaseName, totalTracks, artistId, releaseGroupId, releaseMbid,
+                releaseGroupMbid, studioAlbum, null, null, null);
+    }
+
+    /**
+     * @param tags top tags of the release group, most used first
+     */
+    public Release(Integer year, Integer month, String artist, Long releaseId, String releaseName, long totalTracks,
+                   long artistId, long releaseGroupId, UUID releaseMbid, UUID releaseGroupMbid, Integer studioAlbum,
+                   List<String> tags) {
+        this(year, month, artist, releaseId, releaseName, totalTracks, artistId, releaseGroupId, releaseMbid,
+                releaseGroupMbid, studioAlbum, tags, null, null);
+    }
+
+    private Release(Integer year, Integer month, String artist, Long releaseId, String releaseName, long totalTracks,
+                    long artistId, long releaseGroupId, UUID releaseMbid, UUID releaseGroupMbid, Integer studioAlbum,
+                    List<String> tags, String image, List<Tag> genre) {
+        this.year = year;
+        this.month = month;
+        this.artist = artist;
+        this.releaseId = releaseId;
+        this.releaseName = releaseName;
+        this.totalTracks = totalTracks;
+        this.artistId = artistId;
+        this.releaseGroupId = releaseGroupId;
+        this.releaseMbid = releaseMbid;
+        this.releaseGroupMbid = releaseGroupMbid;
+        this.studioAlbum = studioAlbum;
+        this.tags = tags;
+        this.image = image;
+        this.genre = genre;
+    }
+
+    /**
+     * @return copy of this release carrying its top tag
+     */
+    public Release withTag(String tag) {
+        return withTags(Collections.singletonList(tag));
+    }
+
+    /**
+     * @return copy of this release carrying its top tags, most used first
+     */
+    public Release withTags(List<String> tags) {
+        return new Release(year, month, artist, releaseId, releaseName, totalTracks, artistId, releaseGroupId,
+                releaseMbid, releaseGroupMbid, studioAlbum, tags, image, genre);
+    }
+
+    /**
+     * @return copy of this release carrying its cover thumbnail and genre tags
+     */
+    public Release withCover(String image, List<Tag> genre) {
+        return new Release(year, month, artist, releaseId, releaseName, totalTracks, artistId, releaseGroupId,
+                releaseMbid, releaseGroupMbid, studioAlbum, tags, image, genre);
+    }
+
+    public Integer getYear() {
+        return year;
+    }
+
+    public Integer getMonth() {
+        return month;
+    }
+
+    public String getArtist() {
+        return artist;
+    }
+
+    public Long getReleaseId() {
+        return releaseId;
+    }
+
+    public String getReleaseName() {
+        return releaseName;
+    }
+
+    public long getTotalTracks() {
+        return totalTracks;
+    }
+
+    public long getArtistId() {
+        return artistId;
+    }
+
+    public long getReleaseGroupId() {
+        return releaseGroupId;
+    }
+
+    public UUID getReleaseMbid() {
+        return releaseMbid;
+    }
+
+    public UUID getReleaseGroupMbid() {
+        return releaseGroupMbid;
+    }
+
+    public Integer getStudioAlbum() {
+        return studioAlbum;
+    }
+
+    /**
+     * @return the top tag, or {@code null} if there is none or tags were not fetched
+     */
+    public String getTag() {
+        return tags == null || tags.isEmpty() ? null : tags.get(0);
+    }
+
+    /**
+     * @return the top tags, most used first, or {@code null} if they were not fetched
+     */
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public String getImage() {
+        return image;
+    }
+
+    public List<Tag> getGenre() {
+        return genre;
+    }
+}
@@ -0,0 +1,80 @@
+package com.wavedroid.musicbrainz.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+import java.util.UUID;
+
+/**
+ * Writes a {@link Release} with the column names of the release queries, leaving out the optional
+ * fields that are not set. The top tag is written as {@code tag}; when more were asked for, all of
+ * them follow as {@code tags}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ReleaseSerializer extends JsonSerializer<Release> {
+
+    @Override
+    public void serialize(Release release, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject();
+        writeNullable(generator, "year", release.getYear());
+        writeNullable(generator, "month", release.getMonth());
+        generator.writeStringField("artist", release.getArtist());
+        if (release.getReleaseId() != null) {
+            generator.writeNumberField("release_id", release.getReleaseId());
+        }
+        generator.writeStringField("release_name", release.getReleaseName());
+        generator.writeNumberField("total_tracks", release.getTotalTracks());
+        generator.writeNumberField("artist_id", release.getArtistId());
+        generator.writeNumberField("release_group_id", release.getReleaseGroupId());
+        writeUuid(generator, "release_mbid", release.getReleaseMbid());
+        writeUuid(generator, "release_group_mbid", release.getReleaseGroupMbid());
+        if (release.getStudioAlbum() != null) {
+            generator.writeNumberField("is_studio_album", release.getStudioAlbum());
+        }
+        if (release.getTag() != null) {
+            generator.writeStringField("tag", release.getTag());
+        }
+        if (release.getTags() != null && release.getTags().size() > 1) {
+            generator.writeFieldName("tags");
+            generator.writeStartArray();
+            for (String tag : release.getTags()) {
+                generator.writeString(tag);
+            }
+            generator.writeEndArray();
+        }
+        if (release.getImage() != null) {
+            generator.writeStringField("image", release.getImage());
+        }
+        if (release.getGenre() != null) {
+            generator.writeFieldName("genre");
+            generator.writeStartArray();
+            for (Tag tag : release.getGenre()) {
+                provider.defaultSerializeValue(tag, generator);
+            }
+            generator.writeEndArray();
+        }
+        generator.writeEndObject();
+    }
+
+    private static void writeNullable(JsonGenerator generator, String field, Integer value) throws IOException {
+        generator.writeFieldName(field);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(value);
+        }
+    }
+
+    private static void writeUuid(JsonGenerator generator, String field, UUID value) throws IOException {
+        generator.writeFieldName(field);
+        if (value == null) {
+            generator.writeNull();
+        } else {
+            generator.writeString(value.toString());
+        }
+    }
+}
@@ -0,0 +1,29 @@
+package com.wavedroid.musicbrainz.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Artist or release group name completing a typed prefix.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@JsonSerialize(using = SuggestionSerializer.class)
+public final class Suggestion {
+
+    private final long id;
+    private final String name;
+
+    public Suggestion(long id, String name) {
+        this.id = id;
+        this.name = name;
+    }
+
+    public long getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,24 @@
+package com.wavedroid.musicbrainz.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link Suggestion} as {@code {"id": .., "name": ..}}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SuggestionSerializer extends JsonSerializer<Suggestion> {
+
+    @Override
+    public void serialize(Suggestion suggestion, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("id", suggestion.getId());
+        generator.writeStringField("name", suggestion.getName());
+        generator.writeEndObject();
+    }
+}
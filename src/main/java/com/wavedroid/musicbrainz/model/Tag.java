@@ -0,0 +1,29 @@
+package com.wavedroid.musicbrainz.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Tag of a release group.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@JsonSerialize(using = TagSerializer.class)
+public final class Tag {
+
+    private final long releaseGroupId;
+    private final String name;
+
+    public Tag(long releaseGroupId, String name) {
+        this.releaseGroupId = releaseGroupId;
+        this.name = name;
+    }
+
+    public long getReleaseGroupId() {
+        return releaseGroupId;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
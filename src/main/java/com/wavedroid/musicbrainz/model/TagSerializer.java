@@ -0,0 +1,24 @@
+package com.wavedroid.musicbrainz.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link Tag} as {@code {"release_group_id": .., "tag": ..}}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class TagSerializer extends JsonSerializer<Tag> {
+
+    @Override
+    public void serialize(Tag tag, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("release_group_id", tag.getReleaseGroupId());
+        generator.writeStringField("tag", tag.getName());
+        generator.writeEndObject();
+    }
+}
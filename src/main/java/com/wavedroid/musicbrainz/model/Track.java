@@ -0,0 +1,50 @@
+package com.wavedroid.musicbrainz.model;
+
+import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+
+/**
+ * Track of a release's tracklist.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@JsonSerialize(using = TrackSerializer.class)
+public final class Track {
+
+    private final long trackId;
+    private final String title;
+    private final Integer length;
+    private final int position;
+    private final int discNumber;
+
+    public Track(long trackId, String title, Integer length, int position, int discNumber) {
+        this.trackId = trackId;
+        this.title = title;
+        this.length = length;
+        this.position = position;
+        this.discNumber = discNumber;
+    }
+
+    public long getTrackId() {
+        return trackId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return length in milliseconds, {@code null} if unknown
+     */
+    public Integer getLength() {
+        return length;
+    }
+
+    public int getPosition() {
+        return position;
+    }
+
+    public int getDiscNumber() {
+        return discNumber;
+    }
+}
@@ -0,0 +1,32 @@
+package com.wavedroid.musicbrainz.model;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializer;
+import com.fasterxml.jackson.databind.SerializerProvider;
+
+import java.io.IOException;
+
+/**
+ * Writes a {@link Track} with the column names of the tracklist queries.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class TrackSerializer extends JsonSerializer<Track> {
+
+    @Override
+    public void serialize(Track track, JsonGenerator generator, SerializerProvider provider) throws IOException {
+        generator.writeStartObject();
+        generator.writeNumberField("track_id", track.getTrackId());
+        generator.writeStringField("title", track.getTitle());
+        generator.writeFieldName("length");
+        if (track.getLength() == null) {
+            generator.writeNull();
+        } else {
+            generator.writeNumber(track.getLength());
+        }
+        generator.writeNumberField("position", track.getPosition());
+        generator.writeNumberField("disc_number", track.getDiscNumber());
+        generator.writeEndObject();
+    }
+}
@@ -0,0 +1,129 @@
+package com.wavedroid.musicbrainz.replicas;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.util.Duration;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.Valid;
+import javax.validation.constraints.NotNull;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Settings of the read replicas the release queries are spread over.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ReadReplicasConfiguration {
+
+    private boolean enabled = false;
+
+    @Valid
+    @NotNull
+    private List<DataSourceFactory> replicas = new ArrayList<>();
+
+    @NotNull
+    private ReplicaRouter.Policy policy = ReplicaRouter.Policy.LEAST_OUTSTANDING;
+
+    @NotNull
+    private Duration healthCheckInterval = Duration.seconds(5);
+
+    @NotNull
+    private Duration healthCheckTimeout = Duration.seconds(2);
+
+    @NotNull
+    private Duration maxLag = Duration.seconds(30);
+
+    @NotEmpty
+    private String lagQuery = "SELECT CASE WHEN pg_is_in_recovery()" +
+            " THEN COALESCE(EXTRACT(EPOCH FROM now() - pg_last_xact_replay_timestamp()), 0) ELSE 0 END";
+
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Connection pools of the replicas, one per node.
+     */
+    @JsonProperty
+    public List<DataSourceFactory> getReplicas() {
+        return replicas;
+    }
+
+    @JsonProperty
+    public void setReplicas(List<DataSourceFactory> replicas) {
+        this.replicas = replicas;
+    }
+
+    /**
+     * How a connection picks its replica among the healthy ones.
+     */
+    @JsonProperty
+    public ReplicaRouter.Policy getPolicy() {
+        return policy;
+    }
+
+    @JsonProperty
+    public void setPolicy(ReplicaRouter.Policy policy) {
+        this.policy = policy;
+    }
+
+    @JsonProperty
+    public Duration getHealthCheckInterval() {
+        return healthCheckInterval;
+    }
+
+    @JsonProperty
+    public void setHealthCheckInterval(Duration healthCheckInterval) {
+        this.healthCheckInterval = healthCheckInterval;
+    }
+
+    /**
+     * Longest a health check query may run before the replica counts as failed.
+     */
+    @JsonProperty
+    public Duration getHealthCheckTimeout() {
+        return healthCheckTimeout;
+    }
+
+    @JsonProperty
+    public void setHealthCheckTimeout(Duration healthCheckTimeout) {
+        this.healthCheckTimeout = healthCheckTimeout;
+    }
+
+    /**
+     * Replication lag beyond which a replica is taken out of rotation until it catches up.
+     */
+    @JsonProperty
+    public Duration getMaxLag() {
+        return maxLag;
+    }
+
+    @JsonProperty
+    public void setMaxLag(Duration maxLag) {
+        this.maxLag = maxLag;
+    }
+
+    /**
+     * Query returning the replication lag of a replica in seconds. The default suits streaming
+     * replicas; MusicBrainz mirrors fed by replication packets can use
+     * {@code SELECT EXTRACT(EPOCH FROM now() - last_replication_date) FROM replication_control}.
+     */
+    @JsonProperty
+    public String getLagQuery() {
+        return lagQuery;
+    }
+
+    @JsonProperty
+    public void setLagQuery(String lagQuery) {
+        this.lagQuery = lagQuery;
+    }
+}
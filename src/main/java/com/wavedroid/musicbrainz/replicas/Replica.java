@@ -0,0 +1,158 @@
+package com.wavedroid.musicbrainz.replicas;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.db.ManagedDataSource;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One read replica: its connection pool, whether it is in rotation, and its metrics. Connections
+ * handed out are wrapped to count the outstanding ones and to time and count errors of the work
+ * done on them.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class Replica {
+
+    private final String name;
+    private final String url;
+    private final ManagedDataSource dataSource;
+    private final AtomicInteger outstanding = new AtomicInteger();
+
+    private volatile boolean healthy;
+    private volatile double lagSeconds;
+
+    private final Timer requests;
+    private final Meter errors;
+    private final Meter ejections;
+
+    Replica(String name, String url, ManagedDataSource dataSource, MetricRegistry metrics) {
+        this.name = name;
+        this.url = url;
+        this.dataSource = dataSource;
+        this.requests = metrics.timer(MetricRegistry.name(ReplicaRouter.class, name, "requests"));
+        this.errors = metrics.meter(MetricRegistry.name(ReplicaRouter.class, name, "errors"));
+        this.ejections = metrics.meter(MetricRegistry.name(ReplicaRouter.class, name, "ejections"));
+        metrics.register(MetricRegistry.name(ReplicaRouter.class, name, "outstanding"), (Gauge<Integer>) outstanding::get);
+        metrics.register(MetricRegistry.name(ReplicaRouter.class, name, "healthy"), (Gauge<Boolean>) () -> healthy);
+        metrics.register(MetricRegistry.name(ReplicaRouter.class, name, "lag"), (Gauge<Double>) () -> lagSeconds);
+    }
+
+    String getName() {
+        return name;
+    }
+
+    String getUrl() {
+        return url;
+    }
+
+    ManagedDataSource getDataSource() {
+        return dataSource;
+    }
+
+    int getOutstanding() {
+        return outstanding.get();
+    }
+
+    boolean isHealthy() {
+        return healthy;
+    }
+
+    double getLagSeconds() {
+        return lagSeconds;
+    }
+
+    /**
+     * @return whether the replica was healthy before
+     */
+    boolean setHealthy(boolean healthy) {
+        boolean was = this.healthy;
+        this.healthy = healthy;
+        if (was && !healthy) {
+            ejections.mark();
+        }
+        return was;
+    }
+
+    void setLagSeconds(double lagSeconds) {
+        this.lagSeconds = lagSeconds;
+    }
+
+    void markError() {
+        errors.mark();
+    }
+
+    Connection getConnection() throws SQLException {
+        Connection connection;
+        try {
+            connection = dataSource.getConnection();
+        } catch (SQLException e) {
+            errors.mark();
+            throw e;
+        }
+        outstanding.incrementAndGet();
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(),
+                new Class<?>[]{Connection.class}, new ConnectionHandler(connection, requests.time()));
+    }
+
+    /**
+     * Releases the connection's slot when it is closed and counts the errors raised by it and by
+     * its statements.
+     */
+    private final class ConnectionHandler implements InvocationHandler {
+        private final Connection connection;
+        private final Timer.Context timer;
+        private boolean closed;
+
+        private ConnectionHandler(Connection connection, Timer.Context timer) {
+            this.connection = connection;
+            this.timer = timer;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            if (method.getName().equals("close") && !closed) {
+                closed = true;
+                timer.stop();
+                outstanding.decrementAndGet();
+            }
+            Object result = call(connection, method, args);
+            if (result instanceof Statement) {
+                return wrap((Statement) result, method.getReturnType());
+            }
+            return result;
+        }
+
+        private Object wrap(Statement statement, Class<?> type) {
+            return Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{type},
+                    (proxy, method, args) -> call(statement, method, args));
+        }
+
+        private Object call(Object target, Method method, Object[] args) throws Throwable {
+            try {
+                return method.invoke(target, args);
+            } catch (InvocationTargetException e) {
+                if (e.getCause() instanceof SQLException) {
+                    errors.mark();
+                }
+                throw e.getCause();
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + url + ")";
+    }
+}
@@ -0,0 +1,271 @@
+package com.wavedroid.musicbrainz.replicas;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.health.HealthCheck;
+import io.dropwizard.db.ManagedDataSource;
+import io.dropwizard.lifecycle.Managed;
+import org.apache.tomcat.jdbc.pool.PoolExhaustedException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Data source spreading connections over read replicas. Every {@code healthCheckInterval} each
+ * replica is asked for its replication lag: one that fails to answer or lags more than
+ * {@code maxLag} is taken out of rotation, and put back once a check passes again. A replica
+ * failing to connect is taken out straight away and the next one tried; one whose pool is merely
+ * exhausted stays in. While no replica is in rotation, connections come from the primary. The
+ * router starts and stops the replica pools itself, so that a replica down at startup only stays
+ * out of rotation.
+ * <p>
+ * Per replica, {@code requests} times the connections from checkout to close, {@code errors}
+ * counts the errors raised on them, and {@code outstanding}, {@code healthy}, {@code lag} and
+ * {@code ejections} report its state.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ReplicaRouter implements DataSource, Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReplicaRouter.class);
+
+    /**
+     * How a connection picks its replica.
+     */
+    public enum Policy {
+        /** Each replica in turn. */
+        ROUND_ROBIN,
+        /** The replica with the fewest connections checked out, which steers around slow ones. */
+        LEAST_OUTSTANDING
+    }
+
+    private final DataSource primary;
+    private final List<Replica> replicas = new ArrayList<>();
+    private final ReadReplicasConfiguration configuration;
+    private final ScheduledExecutorService executor;
+    private final AtomicInteger next = new AtomicInteger();
+
+    private volatile Replica[] rotation = new Replica[0];
+
+    private final Meter fallbacks;
+
+    /**
+     * @param replicas connection pools of the replicas, in the order of the configuration, not started yet
+     */
+    public ReplicaRouter(DataSource primary, List<ManagedDataSource> replicas, ReadReplicasConfiguration configuration,
+                         ScheduledExecutorService executor, MetricRegistry metrics) {
+        this.primary = primary;
+        this.configuration = configuration;
+        this.executor = executor;
+        for (int i = 0; i < replicas.size(); i++) {
+            this.replicas.add(new Replica("replica-" + i, configuration.getReplicas().get(i).getUrl(),
+                    replicas.get(i), metrics));
+        }
+        this.fallbacks = metrics.meter(MetricRegistry.name(ReplicaRouter.class, "primary-fallbacks"));
+        metrics.register(MetricRegistry.name(ReplicaRouter.class, "in-rotation"), (Gauge<Integer>) () -> rotation.length);
+    }
+
+    /**
+     * Starts the replica pools and checks the replicas once before taking requests, then every
+     * {@code healthCheckInterval}. A pool failing to start is retried by its next health check.
+     */
+    @Override
+    public void start() {
+        for (Replica replica : replicas) {
+            try {
+                replica.getDataSource().start();
+            } catch (Exception e) {
+                LOGGER.warn("Could not start {}: {}", replica, e.toString());
+            }
+        }
+        checkReplicas();
+        long interval = configuration.getHealthCheckInterval().toMilliseconds();
+        executor.scheduleWithFixedDelay(this::checkReplicas, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() throws Exception {
+        for (Replica replica : replicas) {
+            replica.getDataSource().stop();
+        }
+    }
+
+    /**
+     * @return health check reporting whether any replica is in rotation
+     */
+    public HealthCheck healthCheck() {
+        return new HealthCheck() {
+            @Override
+            protected Result check() {
+                Replica[] current = rotation;
+                return current.length > 0
+                        ? Result.healthy(current.length + " of " + replicas.size() + " replicas in rotation")
+                        : Result.unhealthy("No replica in rotation, reading from the primary");
+            }
+        };
+    }
+
+    /**
+     * @return the data sources reads go to right now: the replicas in rotation, or the primary while
+     * none is
+     */
+    public List<DataSource> getReadSources() {
+        Replica[] current = rotation;
+        if (current.length == 0) {
+            return Collections.singletonList(primary);
+        }
+        List<DataSource> sources = new ArrayList<>(current.length);
+        for (Replica replica : current) {
+            sources.add(replica.getDataSource());
+        }
+        return sources;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        Replica replica = choose();
+        while (replica != null) {
+            try {
+                return replica.getConnection();
+            } catch (PoolExhaustedException e) {
+                throw e;
+            } catch (SQLException e) {
+                LOGGER.warn("Taking {} out of rotation: {}", replica, e.toString());
+                eject(replica);
+                replica = choose();
+            }
+        }
+        fallbacks.mark();
+        return primary.getConnection();
+    }
+
+    private Replica choose() {
+        Replica[] current = rotation;
+        if (current.length == 0) {
+            return null;
+        }
+        int start = Math.floorMod(next.getAndIncrement(), current.length);
+        Replica chosen = current[start];
+        if (configuration.getPolicy() == Policy.LEAST_OUTSTANDING) {
+            for (int i = 1; i < current.length; i++) {
+                Replica replica = current[(start + i) % current.length];
+                if (replica.getOutstanding() < chosen.getOutstanding()) {
+                    chosen = replica;
+                }
+            }
+        }
+        return chosen;
+    }
+
+    /**
+     * Runs the health check of every replica and updates the rotation.
+     */
+    void checkReplicas() {
+        double maxLagSeconds = configuration.getMaxLag().toMilliseconds() / 1000.0;
+        for (Replica replica : replicas) {
+            boolean healthy;
+            try {
+                double lag = lagOf(replica);
+                replica.setLagSeconds(lag);
+                healthy = lag <= maxLagSeconds;
+                if (!healthy && replica.isHealthy()) {
+                    LOGGER.warn("Taking {} out of rotation: {}s behind", replica, lag);
+                }
+            } catch (SQLException | RuntimeException e) {
+                replica.markError();
+                healthy = false;
+                if (replica.isHealthy()) {
+                    LOGGER.warn("Taking {} out of rotation: {}", replica, e.toString());
+                }
+            }
+            boolean wasHealthy = replica.setHealthy(healthy);
+            if (healthy && !wasHealthy) {
+                LOGGER.info("Putting {} in rotation", replica);
+            }
+        }
+        updateRotation();
+    }
+
+    private double lagOf(Replica replica) throws SQLException {
+        try (Connection conn = replica.getDataSource().getConnection();
+             Statement st = conn.createStatement()) {
+            st.setQueryTimeout((int) Math.max(1, configuration.getHealthCheckTimeout().toSeconds()));
+            try (ResultSet rs = st.executeQuery(configuration.getLagQuery())) {
+                return rs.next() ? rs.getDouble(1) : 0;
+            }
+        }
+    }
+
+    private void eject(Replica replica) {
+        replica.setHealthy(false);
+        updateRotation();
+    }
+
+    private synchronized void updateRotation() {
+        List<Replica> healthy = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            if (replica.isHealthy()) {
+                healthy.add(replica);
+            }
+        }
+        rotation = healthy.toArray(new Replica[healthy.size()]);
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("Replica connections use the configured credentials");
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return primary.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        primary.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        primary.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return primary.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return primary.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return iface.cast(this);
+        }
+        throw new SQLException("Not a wrapper of " + iface.getName());
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,180 @@
+package com.wavedroid.musicbrainz.search;
+
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.BooleanClause;
+import org.apache.lucene.search.BooleanQuery;
+import org.apache.lucene.search.FieldCache;
+import org.apache.lucene.search.IndexSearcher;
+import org.apache.lucene.search.ScoreDoc;
+import org.apache.lucene.search.TermQuery;
+import org.apache.lucene.search.TopDocs;
+import org.apache.lucene.search.spell.SpellChecker;
+import org.apache.lucene.store.FSDirectory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One built, read-only version of the name index: a Lucene index and a spell checker per kind of
+ * name, all kept in one directory. Searches {@link #acquire()} the generation they use, so that a
+ * rebuilt generation can replace it while they run; the last one out closes it, and deletes its
+ * files once it has been {@link #retire() retired}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+class IndexGeneration implements Closeable {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(IndexGeneration.class);
+
+    static final String ID = "id";
+    static final String NAME = "name";
+
+    private final File directory;
+    private final Map<NameIndex.Kind, Part> parts = new EnumMap<>(NameIndex.Kind.class);
+    private final AtomicInteger refs = new AtomicInteger(1);
+    private volatile boolean retired;
+
+    private static final class Part {
+        private final IndexReader reader;
+        private final IndexSearcher searcher;
+        private final SpellChecker spellChecker;
+        private final int[] ids;
+
+        private Part(IndexReader reader, SpellChecker spellChecker) throws IOException {
+            this.reader = reader;
+            this.searcher = new IndexSearcher(reader);
+            this.spellChecker = spellChecker;
+            this.ids = FieldCache.DEFAULT.getInts(reader, ID);
+        }
+    }
+
+    IndexGeneration(File directory) throws IOException {
+        this.directory = directory;
+        try {
+            for (NameIndex.Kind kind : NameIndex.Kind.values()) {
+                IndexReader reader = IndexReader.open(FSDirectory.open(namesDirectory(directory, kind)), true);
+                SpellChecker spellChecker = new SpellChecker(FSDirectory.open(spellDirectory(directory, kind)));
+                parts.put(kind, new Part(reader, spellChecker));
+            }
+        } catch (IOException e) {
+            close();
+            throw e;
+        }
+    }
+
+    static File namesDirectory(File generation, NameIndex.Kind kind) {
+        return new File(new File(generation, kind.getTable()), "names");
+    }
+
+    static File spellDirectory(File generation, NameIndex.Kind kind) {
+        return new File(new File(generation, kind.getTable()), "spell");
+    }
+
+    File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * @return whether the generation can be used; if so it has to be {@link #release() released}
+     */
+    boolean acquire() {
+        while (true) {
+            int current = refs.get();
+            if (current <= 0) {
+                return false;
+            }
+            if (refs.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void release() {
+        if (refs.decrementAndGet() == 0) {
+            close();
+            if (retired) {
+                delete(directory);
+            }
+        }
+    }
+
+    /**
+     * Drops the reference held since opening; the files go once no search uses the generation.
+     */
+    void retire() {
+        retired = true;
+        release();
+    }
+
+    /**
+     * @return ids of the names containing every term, best match first
+     */
+    NameMatches search(NameIndex.Kind kind, List<String> terms, int maxHits, String correction) throws IOException {
+        Part part = parts.get(kind);
+        BooleanQuery query = new BooleanQuery();
+        for (String term : terms) {
+            query.add(new TermQuery(new Term(NAME, term)), BooleanClause.Occur.MUST);
+        }
+        TopDocs topDocs = part.searcher.search(query, maxHits);
+        List<Long> ids = new ArrayList<>(topDocs.scoreDocs.length);
+        List<Float> scores = new ArrayList<>(topDocs.scoreDocs.length);
+        for (ScoreDoc scoreDoc : topDocs.scoreDocs) {
+            ids.add((long) part.ids[scoreDoc.doc]);
+            scores.add(scoreDoc.score);
+        }
+        return ids.isEmpty() ? NameMatches.NONE : new NameMatches(ids, scores, correction);
+    }
+
+    /**
+     * Replaces every term that is not in the index by its closest known spelling, if any.
+     */
+    List<String> correct(NameIndex.Kind kind, List<String> terms, float accuracy) throws IOException {
+        Part part = parts.get(kind);
+        List<String> corrected = new ArrayList<>(terms.size());
+        for (String term : terms) {
+            if (part.reader.docFreq(new Term(NAME, term)) > 0) {
+                corrected.add(term);
+                continue;
+            }
+            String[] suggestions = part.spellChecker.suggestSimilar(term, 1, part.reader, NAME, true, accuracy);
+            corrected.add(suggestions.length > 0 ? suggestions[0] : term);
+        }
+        return corrected;
+    }
+
+    @Override
+    public void close() {
+        for (Part part : parts.values()) {
+            try {
+                part.searcher.close();
+                part.reader.close();
+                part.spellChecker.close();
+            } catch (IOException e) {
+                LOGGER.warn("Error closing search index " + directory, e);
+            }
+        }
+        parts.clear();
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete() && file.exists()) {
+            LOGGER.warn("Unable to delete {}", file);
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.wavedroid.musicbrainz.search;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.lifecycle.Managed;
+import org.apache.lucene.analysis.Analyzer;
+import org.apache.lucene.analysis.TokenStream;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.analysis.tokenattributes.CharTermAttribute;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.search.spell.LuceneDictionary;
+import org.apache.lucene.search.spell.SpellChecker;
+import org.apache.lucene.store.FSDirectory;
+import org.apache.lucene.util.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local Lucene index of artist and release group names, so that name searches are ranked
+ * in-process and only the matching ids reach the database. Queries match names containing all
+ * of their words; a query without matches is retried with misspelled words replaced by the
+ * spell checker's closest suggestion.
+ * <p>
+ * The index is built from the database into a new generation directory, which then replaces the
+ * current one atomically; the name of the current generation is kept in a file, so that it is
+ * reopened after a restart. Until a generation exists searches return {@code null}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class NameIndex implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(NameIndex.class);
+
+    private static final Version VERSION = Version.LUCENE_33;
+    private static final String CURRENT = "current";
+    private static final String GENERATION_PREFIX = "gen-";
+    private static final int FETCH_SIZE = 10000;
+
+    public enum Kind {
+        ARTIST("artist"),
+        RELEASE_GROUP("release_group");
+
+        private final String table;
+
+        Kind(String table) {
+            this.table = table;
+        }
+
+        String getTable() {
+            return table;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final SearchIndexConfiguration configuration;
+    private final ScheduledExecutorService executor;
+    private final File directory;
+    private final Analyzer analyzer = new StandardAnalyzer(VERSION, Collections.emptySet());
+
+    private volatile IndexGeneration current;
+
+    private final Timer searches;
+    private final Meter corrections;
+    private final Timer rebuilds;
+
+    public NameIndex(DataSource dataSource, SearchIndexConfiguration configuration,
+                     ScheduledExecutorService executor, MetricRegistry metrics) {
+        this.dataSource = dataSource;
+        this.configuration = configuration;
+        this.executor = executor;
+        this.directory = new File(configuration.getDirectory());
+        this.searches = metrics.timer(MetricRegistry.name(NameIndex.class, "searches"));
+        this.corrections = metrics.meter(MetricRegistry.name(NameIndex.class, "corrections"));
+        this.rebuilds = metrics.timer(MetricRegistry.name(NameIndex.class, "rebuilds"));
+        metrics.register(MetricRegistry.name(NameIndex.class, "ready"), (Gauge<Boolean>) () -> current != null);
+    }
+
+    @Override
+    public void start() throws IOException {
+        String generation = readCurrent();
+        if (generation != null) {
+            try {
+                current = new IndexGeneration(new File(directory, generation));
+            } catch (IOException e) {
+                LOGGER.warn("Unable to open search index " + generation + ", rebuilding it", e);
+            }
+        }
+        deleteStaleGenerations(generation);
+        if (current == null) {
+            executor.execute(this::rebuildQuietly);
+        }
+        long interval = configuration.getRebuildInterval().toMilliseconds();
+        executor.scheduleWithFixedDelay(this::rebuildQuietly, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+        IndexGeneration generation = current;
+        current = null;
+        if (generation != null) {
+            generation.release();
+        }
+    }
+
+    /**
+     * @return ids whose names match the query, or {@code null} if the index has not been built yet
+     */
+    public NameMatches search(Kind kind, String query) {
+        IndexGeneration generation = current;
+        if (generation == null || !generation.acquire()) {
+            return null;
+        }
+        try (Timer.Context ignored = searches.time()) {
+            List<String> terms = analyze(query);
+            if (terms.isEmpty()) {
+                return NameMatches.NONE;
+            }
+            NameMatches matches = generation.search(kind, terms, configuration.getMaxHits(), null);
+            if (matches.isEmpty()) {
+                List<String> corrected = generation.correct(kind, terms, configuration.getSpellingAccuracy());
+                if (!corrected.equals(terms)) {
+                    matches = generation.search(kind, corrected, configuration.getMaxHits(), String.join(" ", corrected));
+                    if (!matches.isEmpty()) {
+                        corrections.mark();
+                    }
+                }
+            }
+            return matches;
+        } catch (IOException e) {
+            LOGGER.error("Error searching " + kind + " names for " + query, e);
+            return null;
+        } finally {
+            generation.release();
+        }
+    }
+
+    /**
+     * Builds a new generation from the database and switches searches over to it.
+     *
+     * @return number of indexed names
+     */
+    public synchronized int rebuild() throws IOException, SQLException {
+        File generationDirectory = new File(directory, GENERATION_PREFIX + System.currentTimeMillis());
+        LOGGER.info("Building search index {}", generationDirectory);
+        int names = 0;
+        try (Timer.Context ignored = rebuilds.time()) {
+            for (Kind kind : Kind.values()) {
+                names += build(kind, generationDirectory);
+            }
+            IndexGeneration generation = new IndexGeneration(generationDirectory);
+            writeCurrent(generationDirectory.getName());
+            IndexGeneration previous = current;
+            current = generation;
+            if (previous != null) {
+                previous.retire();
+            }
+        } catch (IOException | SQLException | RuntimeException e) {
+            IndexGeneration.delete(generationDirectory);
+            throw e;
+        }
+        LOGGER.info("Built search index {} with {} names", generationDirectory, names);
+        return names;
+    }
+
+    private void rebuildQuietly() {
+        try {
+            rebuild();
+        } catch (IOException | SQLException | RuntimeException e) {
+            LOGGER.error("Error building search index", e);
+        }
+    }
+
+    private int build(Kind kind, File generationDirectory) throws IOException, SQLException {
+        int names = 0;
+        IndexWriterConfig writerConfig = new IndexWriterConfig(VERSION, analyzer)
+                .setOpenMode(IndexWriterConfig.OpenMode.CREATE);
+        try (FSDirectory namesDirectory = FSDirectory.open(IndexGeneration.namesDirectory(generationDirectory, kind))) {
+            IndexWriter writer = new IndexWriter(namesDirectory, writerConfig);
+            try {
+                Field id = new Field(IndexGeneration.ID, "", Field.Store.NO, Field.Index.NOT_ANALYZED_NO_NORMS);
+                Field name = new Field(IndexGeneration.NAME, "", Field.Store.NO, Field.Index.ANALYZED);
+                Document document = new Document();
+                document.add(id);
+                document.add(name);
+                try (Connection conn = dataSource.getConnection()) {
+                    conn.setAutoCommit(false);
+                    try (PreparedStatement ps = conn.prepareStatement("SELECT id, name FROM " + kind.getTable())) {
+                        ps.setFetchSize(FETCH_SIZE);
+                        try (ResultSet rs = ps.executeQuery()) {
+                            while (rs.next()) {
+                                id.setValue(String.valueOf(rs.getLong(1)));
+                                name.setValue(rs.getString(2));
+                                writer.addDocument(document);
+                                names++;
+                            }
+                        }
+                    } finally {
+                        conn.rollback();
+                        conn.setAutoCommit(true);
+                    }
+                }
+                writer.optimize();
+            } finally {
+                writer.close();
+            }
+
+            try (IndexReader reader = IndexReader.open(namesDirectory, true);
+                 SpellChecker spellChecker = new SpellChecker(FSDirectory.open(IndexGeneration.spellDirectory(generationDirectory, kind)))) {
+                spellChecker.indexDictionary(new LuceneDictionary(reader, IndexGeneration.NAME));
+            }
+        }
+        return names;
+    }
+
+    private List<String> analyze(String text) throws IOException {
+        List<String> terms = new ArrayList<>();
+        TokenStream tokens = analyzer.reusableTokenStream(IndexGeneration.NAME, new StringReader(text));
+        CharTermAttribute term = tokens.addAttribute(CharTermAttribute.class);
+        tokens.reset();
+        while (tokens.incrementToken()) {
+            terms.add(term.toString());
+        }
+        tokens.end();
+        tokens.close();
+        return terms;
+    }
+
+    private String readCurrent() throws IOException {
+        File file = new File(directory, CURRENT);
+        if (!file.isFile()) {
+            return null;
+        }
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+    private void writeCurrent(String generation) throws IOException {
+        File tmp = new File(directory, CURRENT + ".tmp");
+        Files.write(tmp.toPath(), generation.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), new File(directory, CURRENT).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    private void deleteStaleGenerations(String keep) {
+        File[] generations = directory.listFiles((dir, name) -> name.startsWith(GENERATION_PREFIX) && !name.equals(keep));
+        if (generations != null) {
+            for (File generation : generations) {
+                IndexGeneration.delete(generation);
+            }
+        }
+    }
+}
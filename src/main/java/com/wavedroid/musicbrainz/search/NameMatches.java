@@ -0,0 +1,45 @@
+package com.wavedroid.musicbrainz.search;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Ids found by a name search, best first, with their scores.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public final class NameMatches {
+
+    static final NameMatches NONE = new NameMatches(Collections.emptyList(), Collections.emptyList(), null);
+
+    private final List<Long> ids;
+    private final List<Float> scores;
+    private final String correction;
+
+    NameMatches(List<Long> ids, List<Float> scores, String correction) {
+        this.ids = ids;
+        this.scores = scores;
+        this.correction = correction;
+    }
+
+    public List<Long> getIds() {
+        return ids;
+    }
+
+    public List<Float> getScores() {
+        return scores;
+    }
+
+    public boolean isEmpty() {
+        return ids.isEmpty();
+    }
+
+    /**
+     * @return the corrected query these matches were found with, or {@code null} if the query
+     * matched as it was spelled
+     */
+    public String getCorrection() {
+        return correction;
+    }
+}
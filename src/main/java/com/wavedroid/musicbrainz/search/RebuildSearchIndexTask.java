@@ -0,0 +1,27 @@
+package com.wavedroid.musicbrainz.search;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+/**
+ * Admin task rebuilding the name index from the database: {@code POST /tasks/rebuild-search-index}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class RebuildSearchIndexTask extends Task {
+
+    private final NameIndex nameIndex;
+
+    public RebuildSearchIndexTask(NameIndex nameIndex) {
+        super("rebuild-search-index");
+        this.nameIndex = nameIndex;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        output.println("Indexed " + nameIndex.rebuild() + " names");
+    }
+}
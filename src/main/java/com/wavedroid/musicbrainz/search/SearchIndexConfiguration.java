@@ -0,0 +1,94 @@
+package com.wavedroid.musicbrainz.search;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.DecimalMax;
+import javax.validation.constraints.DecimalMin;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Settings of the local artist and release group name index.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SearchIndexConfiguration {
+
+    private boolean enabled = false;
+
+    @NotEmpty
+    private String directory = "search-index";
+
+    @Min(1)
+    private int maxHits = 1000;
+
+    @DecimalMin("0")
+    @DecimalMax("1")
+    private float spellingAccuracy = 0.7f;
+
+    @NotNull
+    private Duration rebuildInterval = Duration.days(1);
+
+    /**
+     * Whether name searches are resolved by the index once it has been built; until then they
+     * are left to Postgres full-text search.
+     */
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    @JsonProperty
+    public String getDirectory() {
+        return directory;
+    }
+
+    @JsonProperty
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Most artists or release groups one search resolves to.
+     */
+    @JsonProperty
+    public int getMaxHits() {
+        return maxHits;
+    }
+
+    @JsonProperty
+    public void setMaxHits(int maxHits) {
+        this.maxHits = maxHits;
+    }
+
+    /**
+     * Minimum similarity of a spelling suggestion to the misspelled word.
+     */
+    @JsonProperty
+    public float getSpellingAccuracy() {
+        return spellingAccuracy;
+    }
+
+    @JsonProperty
+    public void setSpellingAccuracy(float spellingAccuracy) {
+        this.spellingAccuracy = spellingAccuracy;
+    }
+
+    @JsonProperty
+    public Duration getRebuildInterval() {
+        return rebuildInterval;
+    }
+
+    @JsonProperty
+    public void setRebuildInterval(Duration rebuildInterval) {
+        this.rebuildInterval = rebuildInterval;
+    }
+}
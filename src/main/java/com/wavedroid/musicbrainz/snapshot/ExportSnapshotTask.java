@@ -0,0 +1,27 @@
+package com.wavedroid.musicbrainz.snapshot;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+/**
+ * Admin task exporting a new release snapshot: {@code POST /tasks/export-snapshot}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ExportSnapshotTask extends Task {
+
+    private final SnapshotExporter exporter;
+
+    public ExportSnapshotTask(SnapshotExporter exporter) {
+        super("export-snapshot");
+        this.exporter = exporter;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        output.println("Exported " + exporter.export() + " release groups");
+    }
+}
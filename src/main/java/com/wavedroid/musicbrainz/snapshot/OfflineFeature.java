@@ -0,0 +1,32 @@
+package com.wavedroid.musicbrainz.snapshot;
+
+import javax.ws.rs.container.ContainerRequestFilter;
+import javax.ws.rs.container.DynamicFeature;
+import javax.ws.rs.container.ResourceInfo;
+import javax.ws.rs.core.FeatureContext;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Response;
+
+/**
+ * Used when the service runs without a database: every resource method not marked
+ * {@link ServedOffline} answers {@code 503} straight away, instead of failing on the missing
+ * database.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class OfflineFeature implements DynamicFeature {
+
+    private static final ContainerRequestFilter UNAVAILABLE = request -> request.abortWith(
+            Response.status(Response.Status.SERVICE_UNAVAILABLE)
+                    .type(MediaType.TEXT_PLAIN_TYPE)
+                    .entity("Only release lookups by id and MBID are served from the snapshot")
+                    .build());
+
+    @Override
+    public void configure(ResourceInfo resourceInfo, FeatureContext context) {
+        if (!resourceInfo.getResourceMethod().isAnnotationPresent(ServedOffline.class)) {
+            context.register(UNAVAILABLE);
+        }
+    }
+}
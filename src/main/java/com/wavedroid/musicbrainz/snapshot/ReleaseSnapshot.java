@@ -0,0 +1,177 @@
+package com.wavedroid.musicbrainz.snapshot;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Tag;
+import com.wavedroid.musicbrainz.model.Track;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The release groups, their releases, top tags and tracklists as of the last export, served from
+ * memory-mapped files with no database behind them. Opening a snapshot only maps its files, so the
+ * service starts at once and the records take no heap; the page cache holds the ones in use.
+ * <p>
+ * The name of the current generation is kept in a file next to the generations. It is checked
+ * every {@code pollInterval}, and a newer generation replaces the one in use atomically. Every
+ * lookup reads one generation, and the lookups made through {@link #pin()} all read the same one,
+ * so a request making several of them does not mix generations across a swap. The service does
+ * not start without a snapshot.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ReleaseSnapshot implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReleaseSnapshot.class);
+
+    private final SnapshotConfiguration configuration;
+    private final File directory;
+    private final ScheduledExecutorService executor;
+    private final Runnable onSwap;
+
+    private volatile SnapshotGeneration current;
+
+    private final Meter swaps;
+
+    /**
+     * @param onSwap run after switching to a newer generation, e.g. to drop cached responses of the previous one
+     */
+    public ReleaseSnapshot(SnapshotConfiguration configuration, ScheduledExecutorService executor, Runnable onSwap,
+                           MetricRegistry metrics) {
+        this.configuration = configuration;
+        this.directory = new File(configuration.getDirectory());
+        this.executor = executor;
+        this.onSwap = onSwap;
+        this.swaps = metrics.meter(MetricRegistry.name(ReleaseSnapshot.class, "swaps"));
+        metrics.register(MetricRegistry.name(ReleaseSnapshot.class, "release-groups"),
+                (Gauge<Integer>) () -> current == null ? 0 : current.releaseGroups());
+        metrics.register(MetricRegistry.name(ReleaseSnapshot.class, "tracklists"),
+                (Gauge<Integer>) () -> current == null ? 0 : current.tracklists());
+    }
+
+    private ReleaseSnapshot(ReleaseSnapshot snapshot) {
+        this.configuration = snapshot.configuration;
+        this.directory = snapshot.directory;
+        this.executor = snapshot.executor;
+        this.onSwap = snapshot.onSwap;
+        this.swaps = snapshot.swaps;
+        this.current = snapshot.current;
+    }
+
+    @Override
+    public void start() throws IOException {
+        if (!refresh()) {
+            throw new IllegalStateException("No release snapshot in " + directory.getAbsolutePath());
+        }
+        long interval = configuration.getPollInterval().toMilliseconds();
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (IOException | RuntimeException e) {
+                LOGGER.error("Error opening release snapshot, keeping " + current.getName(), e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    /**
+     * Switches lookups over to the current generation unless they already use it.
+     *
+     * @return whether they were switched
+     */
+    public synchronized boolean refresh() throws IOException {
+        String name = SnapshotGeneration.readCurrent(directory);
+        if (name == null || current != null && current.getName().equals(name)) {
+            return false;
+        }
+        SnapshotGeneration generation = new SnapshotGeneration(new File(directory, name));
+        boolean swap = current != null;
+        current = generation;
+        LOGGER.info("Serving release snapshot {} with {} release groups and {} tracklists",
+                name, generation.releaseGroups(), generation.tracklists());
+        if (swap) {
+            swaps.mark();
+            onSwap.run();
+        }
+        return true;
+    }
+
+    /**
+     * @return lookups of the generation in use, which keep reading it after a newer one replaces it
+     */
+    public ReleaseSnapshot pin() {
+        return new ReleaseSnapshot(this);
+    }
+
+    /**
+     * @return name of the generation in use, which changes whenever its data may
+     */
+    public String getVersion() {
+        return current.getName();
+    }
+
+    /**
+     * @return the release without its release id, as the database lookup by id gives it, or
+     * {@code null} if there is none with this id
+     */
+    public Release getReleaseById(long id) {
+        return current.getReleaseById(id, false);
+    }
+
+    /**
+     * @return the release with its release id, or {@code null} if there is none with this release
+     * group MBID
+     */
+    public Release getReleaseByMbid(String mbid) {
+        UUID uuid;
+        try {
+            uuid = UUID.fromString(mbid);
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+        return getReleaseByMbid(uuid);
+    }
+
+    public Release getReleaseByMbid(UUID mbid) {
+        return current.getReleaseByMbid(mbid);
+    }
+
+    /**
+     * @return up to {@code limit} tracks of the release's tracklist from {@code from} on, empty if
+     * the snapshot has none
+     */
+    public List<Track> getTracklist(long releaseId, int from, int limit) {
+        return current.getTracklist(releaseId, from, limit);
+    }
+
+    /**
+     * @return up to {@code limit} tags of each release group, most used first, release group by
+     * release group; no more than were exported
+     */
+    public List<Tag> getTags(Collection<Long> releaseGroupIds, int limit) {
+        SnapshotGeneration generation = current;
+        List<Tag> tags = new ArrayList<>();
+        for (Long releaseGroupId : releaseGroupIds) {
+            for (String name : generation.getTags(releaseGroupId, limit)) {
+                tags.add(new Tag(releaseGroupId, name));
+            }
+        }
+        return tags;
+    }
+}
@@ -0,0 +1,115 @@
+package com.wavedroid.musicbrainz.snapshot;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+import org.hibernate.validator.constraints.NotEmpty;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Settings of the release snapshots: exporting them from the database, and serving from them
+ * without one.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SnapshotConfiguration {
+
+    private boolean enabled = false;
+
+    private boolean offline = false;
+
+    @NotEmpty
+    private String directory = "snapshot";
+
+    @Min(0)
+    @Max(127)
+    private int tagsPerReleaseGroup = 1;
+
+    private Duration exportInterval;
+
+    @NotNull
+    private Duration pollInterval = Duration.minutes(1);
+
+    /**
+     * Whether snapshots are exported from the database, with the {@code export-snapshot} task and
+     * every {@code exportInterval}.
+     */
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Whether the service runs without a database, answering the release lookups by id and MBID
+     * from the current snapshot and every other request with {@code 503}.
+     */
+    @JsonProperty
+    public boolean isOffline() {
+        return offline;
+    }
+
+    @JsonProperty
+    public void setOffline(boolean offline) {
+        this.offline = offline;
+    }
+
+    /**
+     * Directory the snapshots are exported to and served from.
+     */
+    @JsonProperty
+    public String getDirectory() {
+        return directory;
+    }
+
+    @JsonProperty
+    public void setDirectory(String directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Most tags exported per release group, the most used ones.
+     */
+    @JsonProperty
+    public int getTagsPerReleaseGroup() {
+        return tagsPerReleaseGroup;
+    }
+
+    @JsonProperty
+    public void setTagsPerReleaseGroup(int tagsPerReleaseGroup) {
+        this.tagsPerReleaseGroup = tagsPerReleaseGroup;
+    }
+
+    /**
+     * How often a snapshot is exported; unset to only export with the task.
+     */
+    @JsonProperty
+    public Duration getExportInterval() {
+        return exportInterval;
+    }
+
+    @JsonProperty
+    public void setExportInterval(Duration exportInterval) {
+        this.exportInterval = exportInterval;
+    }
+
+    /**
+     * How often an offline service looks for a newer snapshot to switch to.
+     */
+    @JsonProperty
+    public Duration getPollInterval() {
+        return pollInterval;
+    }
+
+    @JsonProperty
+    public void setPollInterval(Duration pollInterval) {
+        this.pollInterval = pollInterval;
+    }
+}
@@ -0,0 +1,172 @@
+package com.wavedroid.musicbrainz.snapshot;
+
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.wavedroid.musicbrainz.dao.MusicbrainzDao;
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Track;
+import io.dropwizard.lifecycle.Managed;
+import io.dropwizard.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Exports the release groups the database lookups by MBID give, with their top tags and tracklists,
+ * into a new snapshot generation. The tracklists looked up by release group id, as
+ * {@code /release/id} does, go along. The release groups are read through one cursor, and their
+ * tags and tracklists fetched {@value #BATCH_SIZE} release groups at a time. Only a complete
+ * generation is made current; the one it replaces is kept for services still switching over, older
+ * ones are deleted.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SnapshotExporter implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotExporter.class);
+
+    private static final int BATCH_SIZE = 1000;
+
+    private final MusicbrainzDao dao;
+    private final SnapshotConfiguration configuration;
+    private final ScheduledExecutorService executor;
+    private final File directory;
+
+    private final Timer exports;
+
+    /**
+     * @param dao DAO reading from the database, not from a snapshot
+     */
+    public SnapshotExporter(MusicbrainzDao dao, SnapshotConfiguration configuration,
+                            ScheduledExecutorService executor, MetricRegistry metrics) {
+        this.dao = dao;
+        this.configuration = configuration;
+        this.executor = executor;
+        this.directory = new File(configuration.getDirectory());
+        this.exports = metrics.timer(MetricRegistry.name(SnapshotExporter.class, "exports"));
+    }
+
+    @Override
+    public void start() {
+        Duration interval = configuration.getExportInterval();
+        if (interval != null) {
+            executor.scheduleWithFixedDelay(() -> {
+                try {
+                    export();
+                } catch (IOException | SQLException | RuntimeException e) {
+                    LOGGER.error("Error exporting release snapshot", e);
+                }
+            }, interval.toMilliseconds(), interval.toMilliseconds(), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    /**
+     * Exports a new generation and makes it the current one.
+     *
+     * @return number of exported release groups
+     */
+    public synchronized int export() throws IOException, SQLException {
+        String previous = SnapshotGeneration.readCurrent(directory);
+        File generationDirectory = new File(directory, SnapshotGeneration.GENERATION_PREFIX + System.currentTimeMillis());
+        LOGGER.info("Exporting release snapshot {}", generationDirectory);
+        int releaseGroups;
+        int tracklists;
+        try (Timer.Context ignored = exports.time();
+             SnapshotWriter writer = new SnapshotWriter(generationDirectory, configuration.getTagsPerReleaseGroup())) {
+            List<Release> batch = new ArrayList<>(BATCH_SIZE);
+            BitSet written = new BitSet();
+            dao.streamAllReleases(release -> {
+                batch.add(release);
+                if (batch.size() == BATCH_SIZE) {
+                    write(writer, batch, written);
+                    batch.clear();
+                }
+            });
+            write(writer, batch, written);
+            writer.finish();
+            releaseGroups = writer.releaseGroups();
+            tracklists = writer.tracklists();
+        } catch (UncheckedIOException e) {
+            SnapshotGeneration.delete(generationDirectory);
+            throw e.getCause();
+        } catch (IOException | SQLException | RuntimeException e) {
+            SnapshotGeneration.delete(generationDirectory);
+            throw e;
+        }
+        SnapshotGeneration.writeCurrent(directory, generationDirectory.getName());
+        deleteStaleGenerations(generationDirectory.getName(), previous);
+        LOGGER.info("Exported release snapshot {} with {} release groups and {} tracklists",
+                generationDirectory, releaseGroups, tracklists);
+        return releaseGroups;
+    }
+
+    /**
+     * @param written ids of the releases whose tracklists were written by the previous batches
+     */
+    private void write(SnapshotWriter writer, List<Release> batch, BitSet written) throws SQLException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        List<Long> releaseGroupIds = new ArrayList<>(batch.size());
+        Set<Long> releaseIds = new HashSet<>();
+        for (Release release : batch) {
+            releaseGroupIds.add(release.getReleaseGroupId());
+            releaseIds.add(release.getReleaseId());
+            releaseIds.add(release.getReleaseGroupId());
+        }
+        Map<Long, List<String>> tags = new HashMap<>();
+        if (configuration.getTagsPerReleaseGroup() > 0) {
+            dao.streamTags(releaseGroupIds, configuration.getTagsPerReleaseGroup(),
+                    tag -> tags.computeIfAbsent(tag.getReleaseGroupId(), id -> new ArrayList<>()).add(tag.getName()));
+        }
+        Map<Long, List<Track>> tracklists = new HashMap<>();
+        dao.streamTracklists(releaseIds,
+                row -> tracklists.computeIfAbsent(row.getKey(), id -> new ArrayList<>()).add(row.getValue()));
+        try {
+            for (Release release : batch) {
+                writer.writeRelease(release.withTags(
+                        tags.getOrDefault(release.getReleaseGroupId(), Collections.emptyList())));
+            }
+            for (Map.Entry<Long, List<Track>> tracklist : tracklists.entrySet()) {
+                int releaseId = tracklist.getKey().intValue();
+                if (!written.get(releaseId)) {
+                    written.set(releaseId);
+                    writer.writeTracklist(releaseId, tracklist.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private void deleteStaleGenerations(String... keep) {
+        List<String> kept = Arrays.asList(keep);
+        File[] generations = directory.listFiles((dir, name) ->
+                name.startsWith(SnapshotGeneration.GENERATION_PREFIX) && !kept.contains(name));
+        if (generations != null) {
+            for (File generation : generations) {
+                SnapshotGeneration.delete(generation);
+            }
+        }
+    }
+}
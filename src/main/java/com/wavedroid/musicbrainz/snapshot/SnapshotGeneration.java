@@ -0,0 +1,287 @@
+package com.wavedroid.musicbrainz.snapshot;
+
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Track;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * One exported, read-only version of the release snapshot: a directory holding two files, each
+ * memory-mapped as a whole, so that opening one costs no reading and the records stay out of the
+ * heap until a lookup decodes them.
+ * <p>
+ * {@value #RELEASES} holds one record per release group, followed by an index of the records by
+ * release group id and one by release group MBID, both sorted for binary search. A record holds the
+ * ids, track count, date and MBIDs at fixed offsets, then the artist name, the release name and the
+ * top tags as length-prefixed UTF-8. {@value #TRACKLISTS} holds the tracklists of the releases,
+ * followed by their index by release id. Offsets are ints, so neither file may exceed 2 GB.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class SnapshotGeneration {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SnapshotGeneration.class);
+
+    static final String RELEASES = "releases";
+    static final String TRACKLISTS = "tracklists";
+    static final String CURRENT = "current";
+    static final String GENERATION_PREFIX = "gen-";
+
+    static final int RELEASES_MAGIC = 0x4d42_5352; // "MBSR"
+    static final int TRACKLISTS_MAGIC = 0x4d42_5354; // "MBST"
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 32;
+
+    static final int COUNT_OFFSET = 8;
+    static final int INDEX_OFFSET = 12;
+    static final int MBID_INDEX_OFFSET = 16;
+
+    static final int ID_ENTRY_SIZE = 8;
+    static final int MBID_ENTRY_SIZE = 20;
+
+    static final int TAG_COUNT_OFFSET = 19;
+    static final int NAMES_OFFSET = 52;
+
+    static final short NO_YEAR = Short.MIN_VALUE;
+    static final byte NO_MONTH = -1;
+    static final int NO_LENGTH = -1;
+
+    private final String name;
+    private final ByteBuffer releases;
+    private final int releaseCount;
+    private final int idIndex;
+    private final int mbidIndex;
+    private final ByteBuffer tracklists;
+    private final int tracklistCount;
+    private final int tracklistIndex;
+
+    SnapshotGeneration(File directory) throws IOException {
+        this.name = directory.getName();
+        this.releases = map(new File(directory, RELEASES), RELEASES_MAGIC);
+        this.releaseCount = releases.getInt(COUNT_OFFSET);
+        this.idIndex = releases.getInt(INDEX_OFFSET);
+        this.mbidIndex = releases.getInt(MBID_INDEX_OFFSET);
+        this.tracklists = map(new File(directory, TRACKLISTS), TRACKLISTS_MAGIC);
+        this.tracklistCount = tracklists.getInt(COUNT_OFFSET);
+        this.tracklistIndex = tracklists.getInt(INDEX_OFFSET);
+    }
+
+    private static ByteBuffer map(File file, int magic) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != magic || buffer.getInt(4) != VERSION) {
+            throw new IOException(file + " is not a release snapshot of version " + VERSION);
+        }
+        return buffer;
+    }
+
+    String getName() {
+        return name;
+    }
+
+    int releaseGroups() {
+        return releaseCount;
+    }
+
+    int tracklists() {
+        return tracklistCount;
+    }
+
+    /**
+     * @param withReleaseId whether the release carries its release id, as found by MBID
+     * @return the release, or {@code null} if the snapshot has no release group with this id
+     */
+    Release getReleaseById(long id, boolean withReleaseId) {
+        int offset = find(releases, idIndex, releaseCount, id);
+        return offset < 0 ? null : readRelease(offset, withReleaseId);
+    }
+
+    /**
+     * @return the release with its release id, or {@code null} if the snapshot has no release
+     * group with this MBID
+     */
+    Release getReleaseByMbid(UUID mbid) {
+        long msb = mbid.getMostSignificantBits();
+        long lsb = mbid.getLeastSignificantBits();
+        int low = 0;
+        int high = releaseCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = mbidIndex + mid * MBID_ENTRY_SIZE;
+            int cmp = Long.compare(releases.getLong(entry), msb);
+            if (cmp == 0) {
+                cmp = Long.compare(releases.getLong(entry + 8), lsb);
+            }
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return readRelease(releases.getInt(entry + 16), true);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return up to {@code limit} tags of the release group, most used first
+     */
+    List<String> getTags(long releaseGroupId, int limit) {
+        int offset = find(releases, idIndex, releaseCount, releaseGroupId);
+        if (offset < 0) {
+            return Collections.emptyList();
+        }
+        ByteBuffer record = at(releases, offset + TAG_COUNT_OFFSET);
+        int count = Math.min(record.get(), limit);
+        seek(record, offset + NAMES_OFFSET);
+        skipString(record);
+        skipString(record);
+        List<String> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tags.add(readString(record));
+        }
+        return tags;
+    }
+
+    /**
+     * @return up to {@code limit} tracks of the release from {@code from} on, empty if the
+     * snapshot has no tracklist of it
+     */
+    List<Track> getTracklist(long releaseId, int from, int limit) {
+        int offset = find(tracklists, tracklistIndex, tracklistCount, releaseId);
+        if (offset < 0) {
+            return new ArrayList<>();
+        }
+        ByteBuffer record = at(tracklists, offset);
+        int count = record.getInt();
+        int to = (int) Math.min(count, (long) from + limit);
+        List<Track> tracks = new ArrayList<>(Math.max(to - from, 0));
+        for (int i = 0; i < to; i++) {
+            int trackId = record.getInt();
+            int length = record.getInt();
+            int position = record.getInt();
+            int discNumber = record.getInt();
+            if (i < from) {
+                skipString(record);
+                continue;
+            }
+            tracks.add(new Track(trackId, readString(record), length == NO_LENGTH ? null : length, position,
+                    discNumber));
+        }
+        return tracks;
+    }
+
+    private Release readRelease(int offset, boolean withReleaseId) {
+        ByteBuffer record = at(releases, offset);
+        int releaseGroupId = record.getInt();
+        int artistId = record.getInt();
+        int releaseId = record.getInt();
+        int totalTracks = record.getInt();
+        short year = record.getShort();
+        byte month = record.get();
+        record.get();
+        UUID releaseMbid = new UUID(record.getLong(), record.getLong());
+        UUID releaseGroupMbid = new UUID(record.getLong(), record.getLong());
+        String artist = readString(record);
+        String releaseName = readString(record);
+        return new Release(year == NO_YEAR ? null : (int) year, month == NO_MONTH ? null : (int) month, artist,
+                withReleaseId ? (long) releaseId : null, releaseName, totalTracks, artistId, releaseGroupId,
+                releaseMbid, releaseGroupMbid, null);
+    }
+
+    /**
+     * @return offset of the record the index maps the id to, or {@code -1} if it has none
+     */
+    private static int find(ByteBuffer buffer, int index, int count, long id) {
+        int low = 0;
+        int high = count - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int entry = index + mid * ID_ENTRY_SIZE;
+            int key = buffer.getInt(entry);
+            if (key < id) {
+                low = mid + 1;
+            } else if (key > id) {
+                high = mid - 1;
+            } else {
+                return buffer.getInt(entry + 4);
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * @return view of the mapped file positioned at the offset, for the lookup to read on its own
+     */
+    private static ByteBuffer at(ByteBuffer buffer, int offset) {
+        ByteBuffer view = buffer.duplicate();
+        seek(view, offset);
+        return view;
+    }
+
+    /**
+     * Positions the buffer through {@link Buffer}, which links on every runtime; the covariant
+     * {@code ByteBuffer.position(int)} of newer JDKs does not exist on Java 8.
+     */
+    private static void seek(ByteBuffer buffer, int offset) {
+        ((Buffer) buffer).position(offset);
+    }
+
+    private static String readString(ByteBuffer record) {
+        byte[] bytes = new byte[record.getInt()];
+        record.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void skipString(ByteBuffer record) {
+        int length = record.getInt();
+        seek(record, record.position() + length);
+    }
+
+    /**
+     * @return name of the current generation, or {@code null} if none was exported yet
+     */
+    static String readCurrent(File directory) throws IOException {
+        File file = new File(directory, CURRENT);
+        if (!file.isFile()) {
+            return null;
+        }
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8).trim();
+    }
+
+    static void writeCurrent(File directory, String generation) throws IOException {
+        File tmp = new File(directory, CURRENT + ".tmp");
+        Files.write(tmp.toPath(), generation.getBytes(StandardCharsets.UTF_8));
+        Files.move(tmp.toPath(), new File(directory, CURRENT).toPath(),
+                StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                delete(child);
+            }
+        }
+        if (!file.delete() && file.exists()) {
+            LOGGER.warn("Unable to delete {}", file);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.wavedroid.musicbrainz.snapshot;
+
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Track;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.UUID;
+import java.util.stream.IntStream;
+
+import static com.wavedroid.musicbrainz.snapshot.SnapshotGeneration.COUNT_OFFSET;
+import static com.wavedroid.musicbrainz.snapshot.SnapshotGeneration.HEADER_SIZE;
+import static com.wavedroid.musicbrainz.snapshot.SnapshotGeneration.INDEX_OFFSET;
+import static com.wavedroid.musicbrainz.snapshot.SnapshotGeneration.MBID_INDEX_OFFSET;
+
+/**
+ * Writes the files of a {@link SnapshotGeneration}. Records are appended as they come, in any
+ * order; their index entries are kept in memory, a few bytes per record, and written sorted after
+ * the records by {@link #finish()}, which then fills in the headers and forces the files to disk.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class SnapshotWriter implements Closeable {
+
+    private final Output releases;
+    private final Output tracklists;
+    private final int tagsPerReleaseGroup;
+
+    private long[] releaseIndex = new long[1024];
+    private long[] mbidMsb = new long[1024];
+    private long[] mbidLsb = new long[1024];
+    private int releaseCount;
+
+    private long[] tracklistIndex = new long[1024];
+    private int tracklistCount;
+
+    /**
+     * One of the files: records and indexes go through a buffered stream, then the header is
+     * written over the placeholder it started with.
+     */
+    private static final class Output implements Closeable {
+        private final File file;
+        private final FileOutputStream stream;
+        private final DataOutputStream out;
+
+        private Output(File file, int magic) throws IOException {
+            this.file = file;
+            this.stream = new FileOutputStream(file);
+            this.out = new DataOutputStream(new BufferedOutputStream(stream, 1 << 16));
+            out.writeInt(magic);
+            out.writeInt(SnapshotGeneration.VERSION);
+            out.write(new byte[HEADER_SIZE - 8]);
+        }
+
+        /**
+         * @return offset the next write goes to
+         */
+        private int offset() throws IOException {
+            int offset = out.size();
+            if (offset == Integer.MAX_VALUE) {
+                throw new IOException(file + " would exceed 2 GB");
+            }
+            return offset;
+        }
+
+        private void writeString(String value) throws IOException {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+
+        private void finish(int... header) throws IOException {
+            offset();
+            out.flush();
+            try (RandomAccessFile file = new RandomAccessFile(this.file, "rw")) {
+                file.seek(COUNT_OFFSET);
+                for (int value : header) {
+                    file.writeInt(value);
+                }
+            }
+            stream.getChannel().force(true);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.close();
+        }
+    }
+
+    SnapshotWriter(File directory, int tagsPerReleaseGroup) throws IOException {
+        if (!directory.mkdirs()) {
+            throw new IOException("Unable to create " + directory);
+        }
+        this.releases = new Output(new File(directory, SnapshotGeneration.RELEASES), SnapshotGeneration.RELEASES_MAGIC);
+        this.tracklists = new Output(new File(directory, SnapshotGeneration.TRACKLISTS), SnapshotGeneration.TRACKLISTS_MAGIC);
+        this.tagsPerReleaseGroup = tagsPerReleaseGroup;
+    }
+
+    /**
+     * Appends the release group with its release id and the top tags it carries.
+     */
+    void writeRelease(Release release) throws IOException {
+        int offset = releases.offset();
+        DataOutputStream out = releases.out;
+        List<String> tags = release.getTags();
+        int tagCount = tags == null ? 0 : Math.min(tags.size(), tagsPerReleaseGroup);
+        out.writeInt((int) release.getReleaseGroupId());
+        out.writeInt((int) release.getArtistId());
+        out.writeInt(release.getReleaseId().intValue());
+        out.writeInt((int) release.getTotalTracks());
+        out.writeShort(release.getYear() == null ? SnapshotGeneration.NO_YEAR : release.getYear());
+        out.writeByte(release.getMonth() == null ? SnapshotGeneration.NO_MONTH : release.getMonth());
+        out.writeByte(tagCount);
+        writeUuid(out, release.getReleaseMbid());
+        writeUuid(out, release.getReleaseGroupMbid());
+        releases.writeString(release.getArtist());
+        releases.writeString(release.getReleaseName());
+        for (int i = 0; i < tagCount; i++) {
+            releases.writeString(tags.get(i));
+        }
+
+        if (releaseCount == releaseIndex.length) {
+            releaseIndex = Arrays.copyOf(releaseIndex, releaseCount * 2);
+            mbidMsb = Arrays.copyOf(mbidMsb, releaseCount * 2);
+            mbidLsb = Arrays.copyOf(mbidLsb, releaseCount * 2);
+        }
+        releaseIndex[releaseCount] = entry(release.getReleaseGroupId(), offset);
+        mbidMsb[releaseCount] = release.getReleaseGroupMbid().getMostSignificantBits();
+        mbidLsb[releaseCount] = release.getReleaseGroupMbid().getLeastSignificantBits();
+        releaseCount++;
+    }
+
+    void writeTracklist(long releaseId, List<Track> tracks) throws IOException {
+        int offset = tracklists.offset();
+        DataOutputStream out = tracklists.out;
+        out.writeInt(tracks.size());
+        for (Track track : tracks) {
+            out.writeInt((int) track.getTrackId());
+            out.writeInt(track.getLength() == null ? SnapshotGeneration.NO_LENGTH : track.getLength());
+            out.writeInt(track.getPosition());
+            out.writeInt(track.getDiscNumber());
+            tracklists.writeString(track.getTitle());
+        }
+
+        if (tracklistCount == tracklistIndex.length) {
+            tracklistIndex = Arrays.copyOf(tracklistIndex, tracklistCount * 2);
+        }
+        tracklistIndex[tracklistCount++] = entry(releaseId, offset);
+    }
+
+    int releaseGroups() {
+        return releaseCount;
+    }
+
+    int tracklists() {
+        return tracklistCount;
+    }
+
+    /**
+     * Writes the indexes and the headers; the files are complete once this returns.
+     */
+    void finish() throws IOException {
+        int idIndex = releases.offset();
+        writeIndex(releases.out, releaseIndex, releaseCount);
+        int mbidIndex = releases.offset();
+        int[] byMbid = IntStream.range(0, releaseCount).boxed()
+                .sorted(Comparator.<Integer>comparingLong(i -> mbidMsb[i]).thenComparingLong(i -> mbidLsb[i]))
+                .mapToInt(Integer::intValue).toArray();
+        for (int i : byMbid) {
+            releases.out.writeLong(mbidMsb[i]);
+            releases.out.writeLong(mbidLsb[i]);
+            releases.out.writeInt((int) releaseIndex[i]);
+        }
+        releases.finish(releaseCount, idIndex, mbidIndex);
+
+        int tracklistIndexOffset = tracklists.offset();
+        writeIndex(tracklists.out, tracklistIndex, tracklistCount);
+        tracklists.finish(tracklistCount, tracklistIndexOffset);
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            releases.close();
+        } finally {
+            tracklists.close();
+        }
+    }
+
+    /**
+     * @return id and offset packed so that entries sort by id
+     */
+    private static long entry(long id, int offset) {
+        if (id < 0 || id > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Id out of range: " + id);
+        }
+        return id << 32 | offset;
+    }
+
+    /**
+     * Sorts the packed entries and writes them as id and offset pairs.
+     */
+    private static void writeIndex(DataOutputStream out, long[] entries, int count) throws IOException {
+        long[] sorted = Arrays.copyOf(entries, count);
+        Arrays.sort(sorted);
+        for (int i = 0; i < count; i++) {
+            if (i > 0 && sorted[i] >>> 32 == sorted[i - 1] >>> 32) {
+                throw new IOException("Duplicate id in snapshot index: " + (sorted[i] >>> 32));
+            }
+            out.writeInt((int) (sorted[i] >>> 32));
+            out.writeInt((int) sorted[i]);
+        }
+    }
+
+    private static void writeUuid(DataOutputStream out, UUID uuid) throws IOException {
+        out.writeLong(uuid.getMostSignificantBits());
+        out.writeLong(uuid.getLeastSignificantBits());
+    }
+}
@@ -0,0 +1,73 @@
+package com.wavedroid.musicbrainz.suggest;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Settings of the {@code /suggest} typeahead index.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SuggestConfiguration {
+
+    private boolean enabled = false;
+
+    @Min(1)
+    private int maxEntries = 1000000;
+
+    @Min(1)
+    private int maxLimit = 20;
+
+    @NotNull
+    private Duration rebuildInterval = Duration.hours(6);
+
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Most artists, and most release groups, kept in the index; the most popular ones are kept.
+     */
+    @JsonProperty
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    @JsonProperty
+    public void setMaxEntries(int maxEntries) {
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * Most completions of each kind one request may ask for.
+     */
+    @JsonProperty
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    @JsonProperty
+    public void setMaxLimit(int maxLimit) {
+        this.maxLimit = maxLimit;
+    }
+
+    @JsonProperty
+    public Duration getRebuildInterval() {
+        return rebuildInterval;
+    }
+
+    @JsonProperty
+    public void setRebuildInterval(Duration rebuildInterval) {
+        this.rebuildInterval = rebuildInterval;
+    }
+}
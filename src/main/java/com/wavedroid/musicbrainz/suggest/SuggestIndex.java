@@ -0,0 +1,233 @@
+package com.wavedroid.musicbrainz.suggest;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.wavedroid.musicbrainz.model.Suggestion;
+import io.dropwizard.lifecycle.Managed;
+import org.apache.lucene.search.spell.TermFreqIterator;
+import org.apache.lucene.search.suggest.Lookup;
+import org.apache.lucene.search.suggest.fst.FSTLookup;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+/**
+ * In-memory typeahead index of artist and release group names: one FST per kind, mapping the
+ * normalized name to a popularity weight, so that the most popular completions of a prefix are
+ * found without touching the database. The id and display name ride along in the FST key behind
+ * the normalized name, which keeps the whole index in the automaton.
+ * <p>
+ * The index is built from the database in the background and replaced as a whole once a new one
+ * is ready; until the first build completes {@link #suggest} returns {@code null}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SuggestIndex implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(SuggestIndex.class);
+
+    private static final char SEPARATOR = '\u001f';
+    private static final Pattern MARKS = Pattern.compile("\\p{M}+");
+    private static final Pattern SEPARATORS = Pattern.compile("[\\p{Cntrl}\\s]+");
+    private static final int FETCH_SIZE = 10000;
+    private static final int BUCKETS = 32;
+
+    public enum Kind {
+        ARTIST("SELECT\n" +
+                "  a.id,\n" +
+                "  a.name,\n" +
+                "  count(r.id) AS popularity\n" +
+                "FROM artist a\n" +
+                "  LEFT OUTER JOIN artist_credit_name c ON c.artist = a.id\n" +
+                "  LEFT OUTER JOIN release_group r ON r.artist_credit = c.artist_credit\n" +
+                "GROUP BY a.id, a.name\n" +
+                "ORDER BY popularity DESC\n" +
+                "LIMIT ?"),
+        RELEASE_GROUP("SELECT\n" +
+                "  r.id,\n" +
+                "  r.name,\n" +
+                "  count(rel.id) AS popularity\n" +
+                "FROM release_group r\n" +
+                "  LEFT OUTER JOIN release rel ON rel.release_group = r.id\n" +
+                "GROUP BY r.id, r.name\n" +
+                "ORDER BY popularity DESC\n" +
+                "LIMIT ?");
+
+        private final String query;
+
+        Kind(String query) {
+            this.query = query;
+        }
+    }
+
+    private final DataSource dataSource;
+    private final SuggestConfiguration configuration;
+    private final ScheduledExecutorService executor;
+
+    private volatile Map<Kind, FSTLookup> lookups;
+
+    private final Timer suggestions;
+    private final Timer rebuilds;
+
+    public SuggestIndex(DataSource dataSource, SuggestConfiguration configuration,
+                        ScheduledExecutorService executor, MetricRegistry metrics) {
+        this.dataSource = dataSource;
+        this.configuration = configuration;
+        this.executor = executor;
+        this.suggestions = metrics.timer(MetricRegistry.name(SuggestIndex.class, "suggestions"));
+        this.rebuilds = metrics.timer(MetricRegistry.name(SuggestIndex.class, "rebuilds"));
+        metrics.register(MetricRegistry.name(SuggestIndex.class, "ready"), (Gauge<Boolean>) () -> lookups != null);
+    }
+
+    @Override
+    public void start() {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                rebuild();
+            } catch (IOException | SQLException | RuntimeException e) {
+                LOGGER.error("Error building suggest index", e);
+            }
+        }, 0, configuration.getRebuildInterval().toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    /**
+     * @return the most popular names starting with the prefix, or {@code null} if the index has not
+     * been built yet
+     */
+    public List<Suggestion> suggest(Kind kind, String prefix, int limit) {
+        Map<Kind, FSTLookup> current = lookups;
+        if (current == null) {
+            return null;
+        }
+        String key = normalize(prefix);
+        List<Suggestion> result = new ArrayList<>(limit);
+        if (key.isEmpty()) {
+            return result;
+        }
+        try (Timer.Context ignored = suggestions.time()) {
+            // Names shared by several ids take one slot, so ask for some spare completions
+            Set<String> names = new HashSet<>();
+            for (Lookup.LookupResult completion : current.get(kind).lookup(key, true, limit * 2)) {
+                int idStart = completion.key.indexOf(SEPARATOR, key.length());
+                int nameStart = completion.key.indexOf(SEPARATOR, idStart + 1);
+                String name = completion.key.substring(nameStart + 1);
+                if (names.add(completion.key.substring(0, idStart))) {
+                    result.add(new Suggestion(Long.parseLong(completion.key.substring(idStart + 1, nameStart)), name));
+                    if (result.size() == limit) {
+                        break;
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Builds a new index from the database and switches lookups over to it.
+     *
+     * @return number of indexed names
+     */
+    public synchronized int rebuild() throws IOException, SQLException {
+        LOGGER.info("Building suggest index");
+        Map<Kind, FSTLookup> built = new EnumMap<>(Kind.class);
+        int entries = 0;
+        try (Timer.Context ignored = rebuilds.time()) {
+            for (Kind kind : Kind.values()) {
+                List<String> keys = new ArrayList<>();
+                List<Float> weights = new ArrayList<>();
+                load(kind, keys, weights);
+                FSTLookup lookup = new FSTLookup(BUCKETS, true);
+                lookup.build(new ListTermFreqIterator(keys, weights));
+                built.put(kind, lookup);
+                entries += keys.size();
+            }
+        }
+        lookups = built;
+        LOGGER.info("Built suggest index with {} names", entries);
+        return entries;
+    }
+
+    private void load(Kind kind, List<String> keys, List<Float> weights) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try (PreparedStatement ps = conn.prepareStatement(kind.query)) {
+                ps.setInt(1, configuration.getMaxEntries());
+                ps.setFetchSize(FETCH_SIZE);
+                try (ResultSet rs = ps.executeQuery()) {
+                    while (rs.next()) {
+                        String name = rs.getString(2);
+                        String normalized = normalize(name);
+                        if (normalized.isEmpty()) {
+                            continue;
+                        }
+                        keys.add(normalized + SEPARATOR + rs.getLong(1) + SEPARATOR + name);
+                        weights.add((float) Math.log1p(rs.getLong(3)));
+                    }
+                }
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+
+    /**
+     * Lower case without diacritics and with runs of whitespace collapsed, so that "beyo" finds
+     * "Beyoncé".
+     */
+    static String normalize(String text) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFD);
+        String folded = MARKS.matcher(decomposed).replaceAll("").toLowerCase(Locale.ROOT);
+        return SEPARATORS.matcher(folded).replaceAll(" ").trim();
+    }
+
+    private static final class ListTermFreqIterator implements TermFreqIterator {
+
+        private final List<String> keys;
+        private final List<Float> weights;
+        private int index = -1;
+
+        private ListTermFreqIterator(List<String> keys, List<Float> weights) {
+            this.keys = keys;
+            this.weights = weights;
+        }
+
+        @Override
+        public float freq() {
+            return weights.get(index);
+        }
+
+        @Override
+        public boolean hasNext() {
+            return index + 1 < keys.size();
+        }
+
+        @Override
+        public String next() {
+            return keys.get(++index);
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package com.wavedroid.musicbrainz.suggest;
+
+import com.codahale.metrics.annotation.Timed;
+import com.google.common.base.Optional;
+import com.wavedroid.musicbrainz.api.Encoding;
+import com.wavedroid.musicbrainz.model.Suggestion;
+
+import javax.ws.rs.GET;
+import javax.ws.rs.Path;
+import javax.ws.rs.Produces;
+import javax.ws.rs.QueryParam;
+import javax.ws.rs.ServiceUnavailableException;
+import javax.ws.rs.core.Context;
+import javax.ws.rs.core.MediaType;
+import javax.ws.rs.core.Request;
+import javax.ws.rs.core.Response;
+import javax.ws.rs.core.StreamingOutput;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Search-as-you-type over artist and release group names:
+ * {@code /suggest?q=beat&limit=10} answers {@code {"artists": [..], "releases": [..]}}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+@Path("/suggest")
+@Produces({MediaType.APPLICATION_JSON, Encoding.SMILE_TYPE, Encoding.CBOR_TYPE})
+public class SuggestResource {
+
+    private static final int DEFAULT_LIMIT = 10;
+
+    private final SuggestIndex index;
+    private final int maxLimit;
+
+    public SuggestResource(SuggestIndex index, int maxLimit) {
+        this.index = index;
+        this.maxLimit = maxLimit;
+    }
+
+    @GET
+    @Timed
+    public Response suggest(@QueryParam("q") String prefix, @QueryParam("limit") Optional<Integer> limit,
+                            @Context Request request) {
+        Encoding encoding = Encoding.negotiate(request);
+        String query = prefix == null ? "" : prefix;
+        int count = Math.max(1, Math.min(limit.or(DEFAULT_LIMIT), maxLimit));
+        List<Suggestion> artists = index.suggest(SuggestIndex.Kind.ARTIST, query, count);
+        List<Suggestion> releases = index.suggest(SuggestIndex.Kind.RELEASE_GROUP, query, count);
+        if (artists == null || releases == null) {
+            throw new ServiceUnavailableException("Suggest index is being built");
+        }
+        Map<String, List<Suggestion>> result = new LinkedHashMap<>();
+        result.put("artists", artists);
+        result.put("releases", releases);
+        return Response.ok((StreamingOutput) out -> out.write(encoding.encode(result)), encoding.getMediaType()).build();
+    }
+}
@@ -0,0 +1,32 @@
+package com.wavedroid.musicbrainz.summary;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+/**
+ * Admin task bringing the release summary up to date: {@code POST /tasks/refresh-release-summary}.
+ * With {@code full=true} the table is rebuilt from scratch.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class RefreshReleaseSummaryTask extends Task {
+
+    private final ReleaseSummary summary;
+
+    public RefreshReleaseSummaryTask(ReleaseSummary summary) {
+        super("refresh-release-summary");
+        this.summary = summary;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        if (parameters.get("full").contains("true")) {
+            output.println("Rebuilt release summary with " + summary.rebuild() + " release groups");
+        } else {
+            output.println("Refreshed " + summary.refresh() + " release groups");
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.wavedroid.musicbrainz.summary;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Denormalized table with one row per release group: the earliest release with its total track
+ * count, the first release date, the first credited artist and the studio album flag. It is what
+ * every release query would otherwise derive on each call from artist credits, releases, release
+ * events and media.
+ * <p>
+ * A missing table is built in the background at startup, into a side table that replaces the
+ * live one in a single transaction. Afterwards it is refreshed incrementally: release groups whose
+ * release group, releases, media, secondary types, first credited artist or artist credit changed
+ * since the previous refresh are recomputed, and deleted release groups are dropped. Deleted
+ * releases and media, removed secondary types and artist credit names edited in place leave no
+ * trace to find them by, so the table is also built from scratch every {@code rebuildInterval}.
+ * Queries should only use the table while {@link #isReady()}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ReleaseSummary implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(ReleaseSummary.class);
+
+    public static final String TABLE = "mbz_release_summary";
+    private static final String BUILD_TABLE = TABLE + "_build";
+    private static final String STATE_TABLE = TABLE + "_state";
+
+    private static final String COLUMNS = "(\n" +
+            "  release_group_id   INTEGER PRIMARY KEY,\n" +
+            "  release_group_mbid UUID    NOT NULL,\n" +
+            "  release_name       VARCHAR NOT NULL,\n" +
+            "  artist_credit      INTEGER NOT NULL,\n" +
+            "  artist_id          INTEGER NOT NULL,\n" +
+            "  artist             VARCHAR NOT NULL,\n" +
+            "  release_id         INTEGER NOT NULL,\n" +
+            "  release_mbid       UUID    NOT NULL,\n" +
+            "  total_tracks       BIGINT  NOT NULL,\n" +
+            "  rg_year            SMALLINT,\n" +
+            "  rg_month           SMALLINT,\n" +
+            "  is_studio_album    INTEGER NOT NULL\n" +
+            ")";
+
+    /**
+     * Picks the earliest release of every release group that has a release event and a medium,
+     * the same releases the live queries choose from; %s narrows it down to some release groups.
+     */
+    private static final String SUMMARIZE = "" +
+            "SELECT DISTINCT ON (r.id)\n" +
+            "  r.id,\n" +
+            "  r.gid,\n" +
+            "  r.name,\n" +
+            "  r.artist_credit,\n" +
+            "  a.id,\n" +
+            "  a.name,\n" +
+            "  rel.id,\n" +
+            "  rel.gid,\n" +
+            "  (SELECT sum(md.track_count) FROM medium md WHERE md.release = rel.id),\n" +
+            "  m.first_release_date_year,\n" +
+            "  m.first_release_date_month,\n" +
+            "  CASE WHEN r.type = 1\n" +
+            "            AND NOT exists(SELECT 1\n" +
+            "                           FROM release_group_secondary_type_join j\n" +
+            "                           WHERE j.release_group = r.id)\n" +
+            "  THEN 1\n" +
+            "  ELSE 0\n" +
+            "  END\n" +
+            "FROM release_group r\n" +
+            "  INNER JOIN release_group_meta m ON m.id = r.id\n" +
+            "  INNER JOIN artist_credit_name c ON c.artist_credit = r.artist_credit AND c.position = 0\n" +
+            "  INNER JOIN artist a ON a.id = c.artist\n" +
+            "  INNER JOIN release rel ON rel.release_group = r.id\n" +
+            "  INNER JOIN release_event re ON re.release = rel.id\n" +
+            "WHERE exists(SELECT 1 FROM medium md WHERE md.release = rel.id)%s\n" +
+            "ORDER BY r.id, re.date_year, re.date_month, re.date_day, rel.id\n";
+
+    private static final String CHANGED_RELEASE_GROUPS = "" +
+            "SELECT id FROM release_group WHERE last_updated >= ?\n" +
+            "UNION\n" +
+            "SELECT release_group FROM release WHERE last_updated >= ?\n" +
+            "UNION\n" +
+            "SELECT rel.release_group FROM medium md INNER JOIN release rel ON rel.id = md.release\n" +
+            "WHERE md.last_updated >= ?\n" +
+            "UNION\n" +
+            "SELECT release_group FROM release_group_secondary_type_join WHERE created >= ?\n" +
+            "UNION\n" +
+            "SELECT r.id FROM artist a\n" +
+            "  INNER JOIN artist_credit_name c ON c.artist = a.id AND c.position = 0\n" +
+            "  INNER JOIN release_group r ON r.artist_credit = c.artist_credit\n" +
+            "WHERE a.last_updated >= ?\n" +
+            "UNION\n" +
+            "SELECT r.id FROM artist_credit ac INNER JOIN release_group r ON r.artist_credit = ac.id\n" +
+            "WHERE ac.created >= ?\n";
+
+    private final DataSource dataSource;
+    private final ReleaseSummaryConfiguration configuration;
+    private final ScheduledExecutorService executor;
+
+    private volatile boolean ready;
+    private long rebuiltAt;
+
+    private final Timer rebuilds;
+    private final Timer refreshes;
+    private final Meter refreshed;
+
+    public ReleaseSummary(DataSource dataSource, ReleaseSummaryConfiguration configuration,
+                          ScheduledExecutorService executor, MetricRegistry metrics) {
+        this.dataSource = dataSource;
+        this.configuration = configuration;
+        this.executor = executor;
+        this.rebuilds = metrics.timer(MetricRegistry.name(ReleaseSummary.class, "rebuilds"));
+        this.refreshes = metrics.timer(MetricRegistry.name(ReleaseSummary.class, "refreshes"));
+        this.refreshed = metrics.meter(MetricRegistry.name(ReleaseSummary.class, "refreshed-release-groups"));
+        metrics.register(MetricRegistry.name(ReleaseSummary.class, "ready"), (Gauge<Boolean>) this::isReady);
+    }
+
+    @Override
+    public void start() throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            ready = exists(conn, TABLE) && exists(conn, STATE_TABLE);
+        }
+        rebuiltAt = System.nanoTime();
+        if (!ready && configuration.isBuildOnStart()) {
+            executor.execute(() -> {
+                try {
+                    rebuild();
+                } catch (SQLException | RuntimeException e) {
+                    LOGGER.error("Error building release summary", e);
+                }
+            });
+        }
+        long interval = configuration.getRefreshInterval().toMilliseconds();
+        executor.scheduleWithFixedDelay(() -> {
+            if (!ready) {
+                return;
+            }
+            try {
+                refresh();
+            } catch (SQLException | RuntimeException e) {
+                LOGGER.error("Error refreshing release summary", e);
+            }
+        }, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    /**
+     * @return whether the table has been built and can answer queries
+     */
+    public boolean isReady() {
+        return ready;
+    }
+
+    /**
+     * Builds the table from scratch; queries keep using the previous table until it is replaced.
+     *
+     * @return number of release groups in the new table
+     */
+    public synchronized int rebuild() throws SQLException {
+        LOGGER.info("Building release summary");
+        int rows;
+        try (Timer.Context ignored = rebuilds.time()) {
+            rows = inTransaction((conn, st) -> {
+                Timestamp startedAt = now(st);
+                st.execute("DROP TABLE IF EXISTS " + BUILD_TABLE);
+                st.execute("CREATE TABLE " + BUILD_TABLE + " " + COLUMNS);
+                int inserted = st.executeUpdate("INSERT INTO " + BUILD_TABLE + "\n" + String.format(SUMMARIZE, ""));
+                st.execute("CREATE UNIQUE INDEX " + BUILD_TABLE + "_mbid ON " + BUILD_TABLE + " (release_group_mbid)");
+                st.execute("CREATE INDEX " + BUILD_TABLE + "_credit ON " + BUILD_TABLE
+                        + " (artist_credit, COALESCE(rg_year, 32767), COALESCE(rg_month, 13), release_group_id)");
+                st.execute("ANALYZE " + BUILD_TABLE);
+
+                st.execute("DROP TABLE IF EXISTS " + TABLE);
+                st.execute("ALTER TABLE " + BUILD_TABLE + " RENAME TO " + TABLE);
+                for (String suffix : new String[]{"_pkey", "_mbid", "_credit"}) {
+                    st.execute("ALTER INDEX " + BUILD_TABLE + suffix + " RENAME TO " + TABLE + suffix);
+                }
+                st.execute("CREATE TABLE IF NOT EXISTS " + STATE_TABLE + " (refreshed_at TIMESTAMP WITH TIME ZONE NOT NULL)");
+                st.execute("DELETE FROM " + STATE_TABLE);
+                try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + STATE_TABLE + " VALUES (?)")) {
+                    ps.setTimestamp(1, startedAt);
+                    ps.executeUpdate();
+                }
+                return inserted;
+            });
+        }
+        ready = true;
+        rebuiltAt = System.nanoTime();
+        LOGGER.info("Built release summary with {} release groups", rows);
+        return rows;
+    }
+
+    /**
+     * Recomputes the release groups changed since the previous refresh, building the table
+     * instead if there is none or a rebuild is due.
+     *
+     * @return number of recomputed release groups
+     */
+    public synchronized int refresh() throws SQLException {
+        if (!ready || System.nanoTime() - rebuiltAt >= configuration.getRebuildInterval().toNanoseconds()) {
+            return rebuild();
+        }
+        int count;
+        try (Timer.Context ignored = refreshes.time()) {
+            count = inTransaction((conn, st) -> {
+                Timestamp startedAt = now(st);
+                Timestamp since;
+                try (ResultSet rs = st.executeQuery("SELECT refreshed_at FROM " + STATE_TABLE + " FOR UPDATE")) {
+                    since = rs.next() ? rs.getTimestamp(1) : new Timestamp(0);
+                }
+                since = new Timestamp(since.getTime() - configuration.getLookBack().toMilliseconds());
+
+                List<Long> changed = new ArrayList<>();
+                try (PreparedStatement ps = conn.prepareStatement(CHANGED_RELEASE_GROUPS)) {
+                    for (int i = 1; i <= 6; i++) {
+                        ps.setTimestamp(i, since);
+                    }
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            changed.add(rs.getLong(1));
+                        }
+                    }
+                }
+                if (!changed.isEmpty()) {
+                    Object[] ids = changed.toArray();
+                    try (PreparedStatement ps = conn.prepareStatement(
+                            "DELETE FROM " + TABLE + " WHERE release_group_id = ANY (?)")) {
+                        ps.setArray(1, conn.createArrayOf("integer", ids));
+                        ps.executeUpdate();
+                    }
+                    try (PreparedStatement ps = conn.prepareStatement("INSERT INTO " + TABLE + "\n"
+                            + String.format(SUMMARIZE, "\n  AND r.id = ANY (?)"))) {
+                        ps.setArray(1, conn.createArrayOf("integer", ids));
+                        ps.executeUpdate();
+                    }
+                }
+                st.executeUpdate("DELETE FROM " + TABLE + " s\n" +
+                        "WHERE NOT exists(SELECT 1 FROM release_group r WHERE r.id = s.release_group_id)");
+                try (PreparedStatement ps = conn.prepareStatement("UPDATE " + STATE_TABLE + " SET refreshed_at = ?")) {
+                    ps.setTimestamp(1, startedAt);
+                    ps.executeUpdate();
+                }
+                return changed.size();
+            });
+        }
+        refreshed.mark(count);
+        LOGGER.debug("Refreshed {} release groups of the release summary", count);
+        return count;
+    }
+
+    @FunctionalInterface
+    private interface Work<T> {
+        T run(Connection conn, Statement st) throws SQLException;
+    }
+
+    /**
+     * Runs the work in one transaction. The pool hands out read-only connections and the summary
+     * is their one writer, so the connection is made writable for the duration.
+     */
+    private <T> T inTransaction(Work<T> work) throws SQLException {
+        try (Connection conn = dataSource.getConnection()) {
+            boolean readOnly = conn.isReadOnly();
+            conn.setReadOnly(false);
+            conn.setAutoCommit(false);
+            try (Statement st = conn.createStatement()) {
+                T result = work.run(conn, st);
+                conn.commit();
+                return result;
+            } catch (SQLException | RuntimeException e) {
+                conn.rollback();
+                throw e;
+            } finally {
+                conn.setAutoCommit(true);
+                conn.setReadOnly(readOnly);
+            }
+        }
+    }
+
+    private static Timestamp now(Statement st) throws SQLException {
+        try (ResultSet rs = st.executeQuery("SELECT now()")) {
+            rs.next();
+            return rs.getTimestamp(1);
+        }
+    }
+
+    private static boolean exists(Connection conn, String table) throws SQLException {
+        try (ResultSet rs = conn.getMetaData().getTables(null, null, table, new String[]{"TABLE"})) {
+            return rs.next();
+        }
+    }
+}
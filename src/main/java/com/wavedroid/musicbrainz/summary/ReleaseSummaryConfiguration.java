@@ -0,0 +1,93 @@
+package com.wavedroid.musicbrainz.summary;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.NotNull;
+
+/**
+ * Settings of the precomputed release summary table.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ReleaseSummaryConfiguration {
+
+    private boolean enabled = false;
+
+    private boolean buildOnStart = true;
+
+    @NotNull
+    private Duration refreshInterval = Duration.minutes(15);
+
+    @NotNull
+    private Duration rebuildInterval = Duration.days(1);
+
+    @NotNull
+    private Duration lookBack = Duration.minutes(5);
+
+    /**
+     * Whether release queries are answered from the summary table once it has been built.
+     */
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Whether a missing table is built in the background at startup; otherwise it is only built
+     * by the {@code refresh-release-summary} admin task.
+     */
+    @JsonProperty
+    public boolean isBuildOnStart() {
+        return buildOnStart;
+    }
+
+    @JsonProperty
+    public void setBuildOnStart(boolean buildOnStart) {
+        this.buildOnStart = buildOnStart;
+    }
+
+    @JsonProperty
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    @JsonProperty
+    public void setRefreshInterval(Duration refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * How often the table is built from scratch, which also catches what the incremental refresh
+     * cannot see: deleted releases and media, and removed secondary types.
+     */
+    @JsonProperty
+    public Duration getRebuildInterval() {
+        return rebuildInterval;
+    }
+
+    @JsonProperty
+    public void setRebuildInterval(Duration rebuildInterval) {
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    /**
+     * How far before the previous refresh changes are looked for, to catch rows written by
+     * transactions that were still running when it took place.
+     */
+    @JsonProperty
+    public Duration getLookBack() {
+        return lookBack;
+    }
+
+    @JsonProperty
+    public void setLookBack(Duration lookBack) {
+        this.lookBack = lookBack;
+    }
+}
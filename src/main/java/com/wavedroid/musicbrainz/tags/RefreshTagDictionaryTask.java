@@ -0,0 +1,32 @@
+package com.wavedroid.musicbrainz.tags;
+
+import com.google.common.collect.ImmutableMultimap;
+import io.dropwizard.servlets.tasks.Task;
+
+import java.io.PrintWriter;
+
+/**
+ * Admin task bringing the tag dictionary up to date: {@code POST /tasks/refresh-tag-dictionary}.
+ * With {@code full=true} it is loaded from scratch.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class RefreshTagDictionaryTask extends Task {
+
+    private final TagDictionary dictionary;
+
+    public RefreshTagDictionaryTask(TagDictionary dictionary) {
+        super("refresh-tag-dictionary");
+        this.dictionary = dictionary;
+    }
+
+    @Override
+    public void execute(ImmutableMultimap<String, String> parameters, PrintWriter output) throws Exception {
+        if (parameters.get("full").contains("true")) {
+            output.println("Loaded tags of " + dictionary.rebuild() + " release groups");
+        } else {
+            output.println("Reloaded tags of " + dictionary.refresh() + " release groups");
+        }
+    }
+}
@@ -0,0 +1,209 @@
+package com.wavedroid.musicbrainz.tags;
+
+import com.codahale.metrics.Gauge;
+import com.codahale.metrics.Meter;
+import com.codahale.metrics.MetricRegistry;
+import com.codahale.metrics.Timer;
+import com.wavedroid.musicbrainz.model.Tag;
+import io.dropwizard.lifecycle.Managed;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The top tags of every release group, held in memory so that answering with them costs neither
+ * a round trip nor ranking {@code release_group_tag} per request.
+ * <p>
+ * The dictionary is loaded in the background at startup. Afterwards the release groups whose tag
+ * rows changed since the previous load are reloaded every {@code refreshInterval}, into a new
+ * table that replaces the current one as a whole, so lookups always see one consistent version.
+ * Removed tag rows leave no trace to find them by, so the dictionary is also loaded from scratch
+ * every {@code rebuildInterval}. Lookups should only be made while {@link #isReady()}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class TagDictionary implements Managed {
+
+    private static final Logger LOGGER = LoggerFactory.getLogger(TagDictionary.class);
+
+    private static final int FETCH_SIZE = 10000;
+
+    private static final String LOAD = "" +
+            "SELECT\n" +
+            "  rt.release_group,\n" +
+            "  tag.name\n" +
+            "FROM release_group_tag rt\n" +
+            "  INNER JOIN tag ON tag.id = rt.tag\n" +
+            "%s" +
+            "ORDER BY rt.release_group, rt.count DESC, tag.name\n";
+
+    private static final String LOAD_ALL = String.format(LOAD, "");
+
+    private static final String LOAD_CHANGED = String.format(LOAD, "" +
+            "WHERE rt.release_group IN (SELECT release_group FROM release_group_tag WHERE last_updated >= ?)\n");
+
+    private final DataSource dataSource;
+    private final TagDictionaryConfiguration configuration;
+    private final ScheduledExecutorService executor;
+
+    private volatile TagTable table;
+    private Timestamp loadedAt;
+    private long rebuiltAt;
+
+    private final Timer rebuilds;
+    private final Timer refreshes;
+    private final Meter refreshed;
+
+    public TagDictionary(DataSource dataSource, TagDictionaryConfiguration configuration,
+                         ScheduledExecutorService executor, MetricRegistry metrics) {
+        this.dataSource = dataSource;
+        this.configuration = configuration;
+        this.executor = executor;
+        this.rebuilds = metrics.timer(MetricRegistry.name(TagDictionary.class, "rebuilds"));
+        this.refreshes = metrics.timer(MetricRegistry.name(TagDictionary.class, "refreshes"));
+        this.refreshed = metrics.meter(MetricRegistry.name(TagDictionary.class, "refreshed-release-groups"));
+        metrics.register(MetricRegistry.name(TagDictionary.class, "ready"), (Gauge<Boolean>) this::isReady);
+        metrics.register(MetricRegistry.name(TagDictionary.class, "release-groups"),
+                (Gauge<Integer>) () -> table == null ? 0 : table.size());
+        metrics.register(MetricRegistry.name(TagDictionary.class, "tag-names"),
+                (Gauge<Integer>) () -> table == null ? 0 : table.names());
+    }
+
+    @Override
+    public void start() {
+        executor.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (SQLException | RuntimeException e) {
+                LOGGER.error("Error refreshing tag dictionary", e);
+            }
+        }, 0, configuration.getRefreshInterval().toMilliseconds(), TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void stop() {
+    }
+
+    public boolean isReady() {
+        return table != null;
+    }
+
+    /**
+     * @return whether lookups of this many tags per release group can be answered
+     */
+    public boolean covers(int limit) {
+        return table != null && limit <= configuration.getTagsPerReleaseGroup();
+    }
+
+    /**
+     * @return up to {@code limit} tags of the release group, most used first
+     */
+    public List<String> getTags(long releaseGroupId, int limit) {
+        return table.get(releaseGroupId, limit);
+    }
+
+    /**
+     * @return up to {@code limit} tags of each release group, most used first, release group by release group
+     */
+    public List<Tag> getTags(Collection<Long> releaseGroupIds, int limit) {
+        TagTable current = table;
+        List<Tag> tags = new ArrayList<>();
+        for (Long releaseGroupId : releaseGroupIds) {
+            for (String name : current.get(releaseGroupId, limit)) {
+                tags.add(new Tag(releaseGroupId, name));
+            }
+        }
+        return tags;
+    }
+
+    /**
+     * Loads the dictionary from scratch and switches lookups over to it.
+     *
+     * @return number of release groups with tags
+     */
+    public synchronized int rebuild() throws SQLException {
+        LOGGER.info("Loading tag dictionary");
+        try (Timer.Context ignored = rebuilds.time()) {
+            TagTable.Builder builder = new TagTable.Builder();
+            loadedAt = load(LOAD_ALL, null, builder);
+            table = builder.build();
+            rebuiltAt = System.nanoTime();
+        }
+        LOGGER.info("Loaded tags of {} release groups, {} distinct tags", table.size(), table.names());
+        return table.size();
+    }
+
+    /**
+     * Reloads the release groups whose tags changed since the previous load, loading the whole
+     * dictionary instead if it is not there yet or a rebuild is due.
+     *
+     * @return number of release groups reloaded
+     */
+    public synchronized int refresh() throws SQLException {
+        if (table == null
+                || System.nanoTime() - rebuiltAt >= configuration.getRebuildInterval().toNanoseconds()) {
+            return rebuild();
+        }
+        TagTable current = table;
+        long[] changed;
+        try (Timer.Context ignored = refreshes.time()) {
+            TagTable.Builder builder = new TagTable.Builder(current);
+            Timestamp since = new Timestamp(loadedAt.getTime() - configuration.getLookBack().toMilliseconds());
+            Timestamp startedAt = load(LOAD_CHANGED, since, builder);
+            changed = builder.ids();
+            if (changed.length > 0) {
+                builder.copy(current, changed);
+                table = builder.build();
+            }
+            loadedAt = startedAt;
+        }
+        refreshed.mark(changed.length);
+        LOGGER.debug("Reloaded tags of {} release groups", changed.length);
+        return changed.length;
+    }
+
+    /**
+     * @return database time at the start of the load
+     */
+    private Timestamp load(String query, Timestamp since, TagTable.Builder builder) throws SQLException {
+        int max = configuration.getTagsPerReleaseGroup();
+        try (Connection conn = dataSource.getConnection()) {
+            conn.setAutoCommit(false);
+            try {
+                Timestamp startedAt;
+                try (Statement st = conn.createStatement(); ResultSet rs = st.executeQuery("SELECT now()")) {
+                    rs.next();
+                    startedAt = rs.getTimestamp(1);
+                }
+                try (PreparedStatement ps = conn.prepareStatement(query)) {
+                    if (since != null) {
+                        ps.setTimestamp(1, since);
+                    }
+                    ps.setFetchSize(FETCH_SIZE);
+                    try (ResultSet rs = ps.executeQuery()) {
+                        while (rs.next()) {
+                            builder.add(rs.getLong(1), rs.getString(2), max);
+                        }
+                    }
+                }
+                return startedAt;
+            } finally {
+                conn.rollback();
+                conn.setAutoCommit(true);
+            }
+        }
+    }
+}
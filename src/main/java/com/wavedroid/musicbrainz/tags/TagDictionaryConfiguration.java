@@ -0,0 +1,95 @@
+package com.wavedroid.musicbrainz.tags;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+import io.dropwizard.util.Duration;
+
+import javax.validation.constraints.Max;
+import javax.validation.constraints.Min;
+import javax.validation.constraints.NotNull;
+
+/**
+ * Settings of the in-memory release group tag dictionary.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class TagDictionaryConfiguration {
+
+    private boolean enabled = false;
+
+    @Min(1)
+    @Max(127)
+    private int tagsPerReleaseGroup = 10;
+
+    @NotNull
+    private Duration refreshInterval = Duration.minutes(5);
+
+    @NotNull
+    private Duration rebuildInterval = Duration.days(1);
+
+    @NotNull
+    private Duration lookBack = Duration.minutes(5);
+
+    @JsonProperty
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    @JsonProperty
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * Most tags kept per release group, the most used ones; asking for more falls back to the database.
+     */
+    @JsonProperty
+    public int getTagsPerReleaseGroup() {
+        return tagsPerReleaseGroup;
+    }
+
+    @JsonProperty
+    public void setTagsPerReleaseGroup(int tagsPerReleaseGroup) {
+        this.tagsPerReleaseGroup = tagsPerReleaseGroup;
+    }
+
+    /**
+     * How often the release groups whose tags changed are reloaded.
+     */
+    @JsonProperty
+    public Duration getRefreshInterval() {
+        return refreshInterval;
+    }
+
+    @JsonProperty
+    public void setRefreshInterval(Duration refreshInterval) {
+        this.refreshInterval = refreshInterval;
+    }
+
+    /**
+     * How often the dictionary is loaded from scratch, which also drops the tags removed since.
+     */
+    @JsonProperty
+    public Duration getRebuildInterval() {
+        return rebuildInterval;
+    }
+
+    @JsonProperty
+    public void setRebuildInterval(Duration rebuildInterval) {
+        this.rebuildInterval = rebuildInterval;
+    }
+
+    /**
+     * How far before the previous load changes are looked for, to catch rows written by
+     * transactions that were still running when it took place.
+     */
+    @JsonProperty
+    public Duration getLookBack() {
+        return lookBack;
+    }
+
+    @JsonProperty
+    public void setLookBack(Duration lookBack) {
+        this.lookBack = lookBack;
+    }
+}
@@ -0,0 +1,214 @@
+package com.wavedroid.musicbrainz.tags;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable map from release group id to its top tags, kept in flat primitive arrays: an
+ * open-addressing table of ids with, per slot, the offset and count of its tags in one shared
+ * array of tag ordinals, and every tag name stored once. A few arrays instead of a map entry, a
+ * boxed key and a list per release group keep millions of release groups to a small footprint
+ * that the collector hardly has to trace.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+final class TagTable {
+
+    /** Release group ids start at 1, so 0 marks a free slot. */
+    private static final long FREE = 0;
+
+    private final long[] keys;
+    private final int[] offsets;
+    private final byte[] lengths;
+    private final int[] ordinals;
+    private final String[] names;
+    private final int mask;
+    private final int size;
+
+    private TagTable(long[] keys, int[] offsets, byte[] lengths, int[] ordinals, String[] names, int size) {
+        this.keys = keys;
+        this.offsets = offsets;
+        this.lengths = lengths;
+        this.ordinals = ordinals;
+        this.names = names;
+        this.mask = keys.length - 1;
+        this.size = size;
+    }
+
+    /**
+     * @return number of release groups with tags
+     */
+    int size() {
+        return size;
+    }
+
+    /**
+     * @return number of distinct tag names
+     */
+    int names() {
+        return names.length;
+    }
+
+    /**
+     * @return up to {@code limit} tags of the release group, most used first
+     */
+    List<String> get(long releaseGroupId, int limit) {
+        int slot = find(releaseGroupId);
+        if (slot < 0) {
+            return Collections.emptyList();
+        }
+        int count = Math.min(lengths[slot], limit);
+        int offset = offsets[slot];
+        List<String> tags = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            tags.add(names[ordinals[offset + i]]);
+        }
+        return tags;
+    }
+
+    private int find(long releaseGroupId) {
+        for (int slot = hash(releaseGroupId) & mask; ; slot = (slot + 1) & mask) {
+            long key = keys[slot];
+            if (key == releaseGroupId) {
+                return slot;
+            }
+            if (key == FREE) {
+                return -1;
+            }
+        }
+    }
+
+    private static int hash(long key) {
+        return (int) ((key * 0x9E3779B97F4A7C15L) >>> 32);
+    }
+
+    /**
+     * Collects release groups with their tags, in any order, and lays them out into a table.
+     */
+    static final class Builder {
+
+        private final Map<String, Integer> nameOrdinals;
+        private final List<String> names;
+
+        private long[] ids = new long[1024];
+        private int[] starts = new int[1024];
+        private byte[] counts = new byte[1024];
+        private int size;
+        private int[] tagOrdinals = new int[4096];
+        private int tagCount;
+        private long current = FREE;
+
+        Builder() {
+            this.nameOrdinals = new HashMap<>();
+            this.names = new ArrayList<>();
+        }
+
+        /**
+         * Starts with the tag names of an existing table, so that its ordinals stay valid and
+         * {@link #copy} can carry its entries over as they are.
+         */
+        Builder(TagTable base) {
+            this.names = new ArrayList<>(Arrays.asList(base.names));
+            this.nameOrdinals = new HashMap<>(names.size() * 2);
+            for (int i = 0; i < names.size(); i++) {
+                nameOrdinals.put(names.get(i), i);
+            }
+        }
+
+        /**
+         * Adds the next tag of a release group; the tags of one release group must come in a row,
+         * most used first, and the ones beyond {@code max} are dropped.
+         */
+        void add(long releaseGroupId, String name, int max) {
+            if (releaseGroupId != current) {
+                begin(releaseGroupId, tagCount);
+                current = releaseGroupId;
+            }
+            if (counts[size - 1] >= max) {
+                return;
+            }
+            Integer ordinal = nameOrdinals.get(name);
+            if (ordinal == null) {
+                ordinal = names.size();
+                nameOrdinals.put(name, ordinal);
+                names.add(name);
+            }
+            append(ordinal);
+            counts[size - 1]++;
+        }
+
+        /**
+         * Adds every release group of the base table, which this builder must have been created
+         * from, except the ones in {@code replaced}.
+         *
+         * @param replaced sorted release group ids
+         */
+        void copy(TagTable base, long[] replaced) {
+            current = FREE;
+            for (int slot = 0; slot < base.keys.length; slot++) {
+                long key = base.keys[slot];
+                if (key == FREE || Arrays.binarySearch(replaced, key) >= 0) {
+                    continue;
+                }
+                begin(key, tagCount);
+                int offset = base.offsets[slot];
+                for (int i = 0; i < base.lengths[slot]; i++) {
+                    append(base.ordinals[offset + i]);
+                }
+                counts[size - 1] = base.lengths[slot];
+            }
+        }
+
+        /**
+         * @return the ids of the release groups added so far, sorted
+         */
+        long[] ids() {
+            long[] sorted = Arrays.copyOf(ids, size);
+            Arrays.sort(sorted);
+            return sorted;
+        }
+
+        TagTable build() {
+            int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+            long[] keys = new long[capacity];
+            int[] offsets = new int[capacity];
+            byte[] lengths = new byte[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < size; i++) {
+                int slot = hash(ids[i]) & mask;
+                while (keys[slot] != FREE) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = ids[i];
+                offsets[slot] = starts[i];
+                lengths[slot] = counts[i];
+            }
+            return new TagTable(keys, offsets, lengths, Arrays.copyOf(tagOrdinals, tagCount),
+                    names.toArray(new String[names.size()]), size);
+        }
+
+        private void begin(long releaseGroupId, int start) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size * 2);
+                starts = Arrays.copyOf(starts, size * 2);
+                counts = Arrays.copyOf(counts, size * 2);
+            }
+            ids[size] = releaseGroupId;
+            starts[size] = start;
+            counts[size] = 0;
+            size++;
+        }
+
+        private void append(int ordinal) {
+            if (tagCount == tagOrdinals.length) {
+                tagOrdinals = Arrays.copyOf(tagOrdinals, tagCount * 2);
+            }
+            tagOrdinals[tagCount++] = ordinal;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * State transitions of {@link CircuitBreaker}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class CircuitBreakerTest {
+
+    @Test
+    public void opensAfterConsecutiveFailuresOnly() {
+        CircuitBreaker breaker = new CircuitBreaker(3, 1, TimeUnit.MINUTES);
+        breaker.onFailure();
+        breaker.onFailure();
+        breaker.onSuccess();
+        breaker.onFailure();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest());
+    }
+
+    @Test
+    public void letsOneTrialThroughWhenHalfOpen() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, TimeUnit.MILLISECONDS);
+        breaker.onFailure();
+        Thread.sleep(80);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertFalse(breaker.allowRequest());
+
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        Thread.sleep(80);
+        assertTrue(breaker.allowRequest());
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelledTrialLetsTheNextOneThrough() throws InterruptedException {
+        CircuitBreaker breaker = new CircuitBreaker(1, 50, TimeUnit.MILLISECONDS);
+        breaker.onFailure();
+        Thread.sleep(80);
+        assertTrue(breaker.allowRequest());
+        breaker.onCancelled();
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertTrue(breaker.allowRequest());
+    }
+
+    @Test
+    public void cancelledCallLeavesAClosedCircuitAlone() {
+        CircuitBreaker breaker = new CircuitBreaker(2, 1, TimeUnit.MINUTES);
+        breaker.onFailure();
+        breaker.onCancelled();
+        breaker.onFailure();
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+    }
+}
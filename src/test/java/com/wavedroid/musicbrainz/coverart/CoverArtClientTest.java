@@ -0,0 +1,254 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import com.codahale.metrics.MetricRegistry;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.wavedroid.musicbrainz.concurrent.Bulkhead;
+import io.dropwizard.util.Duration;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+/**
+ * {@link CoverArtClient} against a local stub of coverartarchive.org.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class CoverArtClientTest {
+
+    private static final String FAILING = "2c6ea4d4-5d3e-4a44-a4a2-33aa2b3e3d00";
+    private static final String TRIAL = "7d2e1a5f-0a44-4a8e-9d73-1b8e3f5a4c01";
+    private static final String COVER = "b1a9c0e7-9d8f-4c3b-8a2e-6f1d2c3b4a02";
+    private static final String THUMBNAIL = "http://coverartarchive.org/release/1/2-250.jpg";
+
+    private final Map<String, HttpHandler> responses = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private HttpServer server;
+    private ThreadPoolExecutor workers;
+    private Bulkhead bulkhead;
+    private ScheduledExecutorService timeouts;
+    private MetricRegistry metrics;
+    private CoverArtClient client;
+
+    @Before
+    public void setUp() throws IOException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/release-group/", exchange -> {
+            requests.incrementAndGet();
+            String mbid = exchange.getRequestURI().getPath().substring("/release-group/".length());
+            responses.getOrDefault(mbid, e -> respond(e, 404, "")).handle(exchange);
+        });
+        server.setExecutor(Executors.newCachedThreadPool());
+        server.start();
+
+        BlockingQueue<Runnable> queue = new ArrayBlockingQueue<>(1);
+        workers = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, queue);
+        bulkhead = new Bulkhead("cover-art", workers, queue, Duration.seconds(10), new MetricRegistry());
+        timeouts = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (client != null) {
+            client.stop();
+        }
+        server.stop(0);
+        workers.shutdownNow();
+        timeouts.shutdownNow();
+    }
+
+    @Test
+    public void findsTheSmallThumbnail() throws Exception {
+        responses.put(COVER, exchange -> respond(exchange, 200, images(THUMBNAIL)));
+        client = client(5, Duration.seconds(30), Duration.seconds(5), true);
+
+        assertEquals(THUMBNAIL, client.getThumbnailAsync(COVER).get(5, TimeUnit.SECONDS));
+        assertEquals(THUMBNAIL, client.getThumbnailAsync(COVER).get(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+    }
+
+    @Test
+    public void remembersMissingCoverArt() throws Exception {
+        client = client(5, Duration.seconds(30), Duration.seconds(5), true);
+
+        assertEquals("", client.getThumbnailAsync(COVER).get(5, TimeUnit.SECONDS));
+        assertEquals("", client.getThumbnailAsync(COVER).get(5, TimeUnit.SECONDS));
+        assertEquals(1, requests.get());
+        assertEquals(CircuitBreaker.State.CLOSED, circuitState());
+    }
+
+    @Test
+    public void opensTheCircuitOnServerErrors() throws Exception {
+        responses.put(FAILING, exchange -> respond(exchange, 500, ""));
+        client = client(2, Duration.seconds(30), Duration.seconds(5), true);
+
+        assertNull(client.getThumbnailAsync(FAILING).get(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.CLOSED, circuitState());
+        assertNull(client.getThumbnailAsync(FAILING).get(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.OPEN, circuitState());
+
+        assertNull(client.getThumbnailAsync(COVER).get(5, TimeUnit.SECONDS));
+        assertEquals(2, requests.get());
+        assertEquals(1, meter("short-circuited"));
+        assertEquals(2, meter("failures"));
+    }
+
+    @Test
+    public void closesTheCircuitWhenTheTrialSucceeds() throws Exception {
+        responses.put(FAILING, exchange -> respond(exchange, 500, ""));
+        responses.put(COVER, exchange -> respond(exchange, 200, images(THUMBNAIL)));
+        client = client(1, Duration.milliseconds(100), Duration.seconds(5), false);
+
+        assertNull(client.getThumbnailAsync(FAILING).get(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.OPEN, circuitState());
+        Thread.sleep(150);
+        assertEquals(CircuitBreaker.State.HALF_OPEN, circuitState());
+        assertNull("a failed trial opens the circuit again", client.getThumbnailAsync(FAILING).get(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.OPEN, circuitState());
+        Thread.sleep(150);
+        assertEquals(THUMBNAIL, client.getThumbnailAsync(COVER).get(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.CLOSED, circuitState());
+    }
+
+    @Test
+    public void timesOutSlowLookups() throws Exception {
+        CountDownLatch answer = new CountDownLatch(1);
+        responses.put(TRIAL, exchange -> {
+            await(answer);
+            respond(exchange, 200, images(THUMBNAIL));
+        });
+        client = client(5, Duration.seconds(30), Duration.milliseconds(200), false);
+
+        long started = System.nanoTime();
+        assertNull(client.getThumbnailAsync(TRIAL).get(5, TimeUnit.SECONDS));
+        assertTrue(System.nanoTime() - started < TimeUnit.SECONDS.toNanos(2));
+        assertEquals(1, meter("failures"));
+        answer.countDown();
+    }
+
+    @Test
+    public void trialTurnedAwayByTheBulkheadLetsTheNextOneThrough() throws Exception {
+        CountDownLatch trialArrived = new CountDownLatch(1);
+        CountDownLatch answerTrial = new CountDownLatch(1);
+        responses.put(FAILING, exchange -> respond(exchange, 500, ""));
+        responses.put(TRIAL, exchange -> {
+            trialArrived.countDown();
+            await(answerTrial);
+            respond(exchange, 200, images(THUMBNAIL));
+        });
+        responses.put(COVER, exchange -> respond(exchange, 200, images(THUMBNAIL)));
+        client = client(1, Duration.milliseconds(100), Duration.seconds(5), false);
+
+        assertNull(client.getThumbnailAsync(FAILING).get(5, TimeUnit.SECONDS));
+        Thread.sleep(150);
+        CompletableFuture<String> trial = client.getThumbnailAsync(TRIAL);
+        assertTrue(trialArrived.await(5, TimeUnit.SECONDS));
+
+        CountDownLatch workerBusy = new CountDownLatch(1);
+        CountDownLatch freeWorker = new CountDownLatch(1);
+        bulkhead.execute(() -> {
+            workerBusy.countDown();
+            await(freeWorker);
+        }, e -> fail("worker taken"));
+        assertTrue(workerBusy.await(5, TimeUnit.SECONDS));
+        bulkhead.execute(() -> {
+        }, e -> fail("queue taken"));
+        answerTrial.countDown();
+        assertNull(trial.get(5, TimeUnit.SECONDS));
+        freeWorker.countDown();
+
+        awaitIdle();
+
+        assertEquals(THUMBNAIL, client.getThumbnailAsync(COVER).get(5, TimeUnit.SECONDS));
+        assertEquals(CircuitBreaker.State.CLOSED, circuitState());
+    }
+
+    @Test
+    public void tellsMissingCoverArtFromFailedLookups() throws Exception {
+        responses.put(FAILING, exchange -> respond(exchange, 503, ""));
+        responses.put(COVER, exchange -> respond(exchange, 200, "{\"images\":[]}"));
+        client = client(5, Duration.seconds(30), Duration.seconds(5), false);
+
+        assertEquals("", client.getThumbnailAsync(TRIAL).get(5, TimeUnit.SECONDS));
+        assertEquals("", client.getThumbnailAsync(COVER).get(5, TimeUnit.SECONDS));
+        assertNull(client.getThumbnailAsync(FAILING).get(5, TimeUnit.SECONDS));
+    }
+
+    private CoverArtClient client(int failureThreshold, Duration openDuration, Duration requestTimeout, boolean cache)
+            throws IOException {
+        CoverArtConfiguration configuration = new CoverArtConfiguration();
+        configuration.setBaseUrl("http://127.0.0.1:" + server.getAddress().getPort());
+        configuration.setFailureThreshold(failureThreshold);
+        configuration.setOpenDuration(openDuration);
+        configuration.setRequestTimeout(requestTimeout);
+        configuration.setSocketTimeout(Duration.seconds(10));
+        configuration.getCache().setEnabled(cache);
+        metrics = new MetricRegistry();
+        CoverArtClient client = new CoverArtClient(configuration, metrics, false, bulkhead, timeouts);
+        client.start();
+        return client;
+    }
+
+    private CircuitBreaker.State circuitState() {
+        return CircuitBreaker.State.valueOf((String) metrics.getGauges()
+                .get(MetricRegistry.name(CoverArtClient.class, "circuit-state")).getValue());
+    }
+
+    private long meter(String name) {
+        return metrics.meter(MetricRegistry.name(CoverArtClient.class, name)).getCount();
+    }
+
+    /**
+     * Waits for the bulkhead to run what it has queued, so that the next lookup gets a worker.
+     */
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (workers.getActiveCount() > 0 || !workers.getQueue().isEmpty()) {
+            assertTrue("bulkhead still busy", System.nanoTime() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static String images(String smallThumbnail) {
+        return "{\"images\":[{\"thumbnails\":{\"small\":\"" + smallThumbnail + "\"}}]}";
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.sendResponseHeaders(status, bytes.length == 0 ? -1 : bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
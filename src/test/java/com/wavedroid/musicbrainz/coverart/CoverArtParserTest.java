@@ -0,0 +1,68 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * {@link CoverArtParser} on coverartarchive.org documents.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class CoverArtParserTest {
+
+    @Test
+    public void findsTheSmallThumbnailOfTheFirstImage() throws IOException {
+        String json = "{\"release\":\"http://musicbrainz.org/release/1\",\"images\":["
+                + "{\"approved\":true,\"thumbnails\":{\"large\":\"http://a/1-500.jpg\",\"small\":\"http://a/1-250.jpg\"}},"
+                + "{\"thumbnails\":{\"small\":\"http://a/2-250.jpg\"}}]}";
+
+        assertEquals("http://a/1-250.jpg", parse(json));
+    }
+
+    @Test
+    public void answersEmptyWithoutImagesOrThumbnail() throws IOException {
+        assertEquals("", parse("{\"images\":[]}"));
+        assertEquals("", parse("{\"release\":\"http://musicbrainz.org/release/1\"}"));
+        assertEquals("", parse("{\"images\":[{\"thumbnails\":{\"large\":\"http://a/1-500.jpg\"}}]}"));
+        assertEquals("", parse("[]"));
+    }
+
+    @Test
+    public void stopsReadingOnceTheThumbnailIsFound() throws IOException {
+        byte[] head = "{\"images\":[{\"thumbnails\":{\"small\":\"http://a/1-250.jpg\",\"large\":"
+                .getBytes(StandardCharsets.UTF_8);
+        InputStream truncated = new InputStream() {
+            private int position;
+
+            @Override
+            public int read() throws IOException {
+                byte[] b = new byte[1];
+                return read(b, 0, 1) < 0 ? -1 : b[0];
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (position == head.length) {
+                    throw new IOException("read past the thumbnail");
+                }
+                int n = Math.min(len, head.length - position);
+                System.arraycopy(head, position, b, off, n);
+                position += n;
+                return n;
+            }
+        };
+
+        assertEquals("http://a/1-250.jpg", CoverArtParser.parseSmallThumbnail(truncated));
+    }
+
+    private static String parse(String json) throws IOException {
+        return CoverArtParser.parseSmallThumbnail(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+}
@@ -0,0 +1,59 @@
+package com.wavedroid.musicbrainz.coverart;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link DiskCoverArtStore} reopened from its file, intact or with a damaged slot.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class DiskCoverArtStoreTest {
+
+    private static final UUID MBID = UUID.fromString("b1a9c0e7-9d8f-4c3b-8a2e-6f1d2c3b4a02");
+    private static final String THUMBNAIL = "http://coverartarchive.org/release/1/2-250.jpg";
+    private static final long LENGTH_POSITION = DiskCoverArtStore.SLOT_SIZE + 2;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void keepsUrlsAcrossRestarts() throws IOException {
+        File file = folder.newFile();
+        try (DiskCoverArtStore store = new DiskCoverArtStore(file.getPath(), 1)) {
+            assertTrue(store.put(MBID, THUMBNAIL, 2000, 1000));
+        }
+        try (DiskCoverArtStore store = new DiskCoverArtStore(file.getPath(), 1)) {
+            assertEquals(THUMBNAIL, store.get(MBID, 1000).url);
+            assertNull(store.get(MBID, 2000));
+        }
+    }
+
+    @Test
+    public void missesOnACorruptUrlLength() throws IOException {
+        File file = folder.newFile();
+        for (short length : new short[]{-1, DiskCoverArtStore.MAX_URL_BYTES + 1, Short.MAX_VALUE}) {
+            try (DiskCoverArtStore store = new DiskCoverArtStore(file.getPath(), 1)) {
+                assertTrue(store.put(MBID, THUMBNAIL, 2000, 1000));
+            }
+            try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+                raw.seek(LENGTH_POSITION);
+                raw.writeShort(length);
+            }
+            try (DiskCoverArtStore store = new DiskCoverArtStore(file.getPath(), 1)) {
+                assertNull(store.get(MBID, 1000));
+            }
+        }
+    }
+}
@@ -0,0 +1,246 @@
+package com.wavedroid.musicbrainz.replicas;
+
+import com.codahale.metrics.MetricRegistry;
+import io.dropwizard.db.DataSourceFactory;
+import io.dropwizard.db.ManagedDataSource;
+import io.dropwizard.util.Duration;
+import org.junit.After;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * {@link ReplicaRouter} over stub data sources whose connections can be refused and whose lag can be set.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class ReplicaRouterTest {
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+    private final MetricRegistry metrics = new MetricRegistry();
+    private final Stub primary = new Stub("primary");
+    private final Stub first = new Stub("replica-0");
+    private final Stub second = new Stub("replica-1");
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    public void ejectsAReplicaFailingToConnect() throws SQLException {
+        ReplicaRouter router = start(ReplicaRouter.Policy.ROUND_ROBIN);
+        first.down = true;
+
+        for (int i = 0; i < 4; i++) {
+            router.getConnection().close();
+        }
+        assertEquals(0, first.opened.get() - first.checks.get());
+        assertEquals(4, second.opened.get() - second.checks.get());
+        assertEquals(Collections.singletonList(second.dataSource), router.getReadSources());
+        assertEquals(1, ejections("replica-0"));
+    }
+
+    @Test
+    public void ejectsALaggingReplica() throws SQLException {
+        ReplicaRouter router = start(ReplicaRouter.Policy.ROUND_ROBIN);
+        first.lag = 31;
+        router.checkReplicas();
+
+        assertEquals(Collections.singletonList(second.dataSource), router.getReadSources());
+        for (int i = 0; i < 4; i++) {
+            router.getConnection().close();
+        }
+        assertEquals(4, second.opened.get() - second.checks.get());
+    }
+
+    @Test
+    public void readmitsAReplicaOnceACheckPasses() throws SQLException {
+        ReplicaRouter router = start(ReplicaRouter.Policy.ROUND_ROBIN);
+        first.lag = 31;
+        second.down = true;
+        router.checkReplicas();
+        assertEquals(Collections.singletonList(primary.dataSource), router.getReadSources());
+
+        first.lag = 0;
+        router.checkReplicas();
+        assertEquals(Collections.singletonList(first.dataSource), router.getReadSources());
+
+        second.down = false;
+        router.checkReplicas();
+        assertEquals(Arrays.asList(first.dataSource, second.dataSource), router.getReadSources());
+        assertTrue(router.healthCheck().execute().isHealthy());
+    }
+
+    @Test
+    public void leastOutstandingPicksTheEmptierReplica() throws SQLException {
+        ReplicaRouter router = start(ReplicaRouter.Policy.LEAST_OUTSTANDING);
+        Connection held = router.getConnection();
+        router.getConnection().close();
+        Stub busy = first.open.get() == 1 ? first : second;
+        Stub idle = busy == first ? second : first;
+
+        int opened = idle.opened.get();
+        for (int i = 0; i < 4; i++) {
+            router.getConnection().close();
+        }
+        assertEquals(opened + 4, idle.opened.get());
+        held.close();
+        assertEquals(0, busy.open.get());
+    }
+
+    @Test
+    public void fallsBackToThePrimaryWithoutReplicas() throws SQLException {
+        first.down = true;
+        second.down = true;
+        ReplicaRouter router = start(ReplicaRouter.Policy.LEAST_OUTSTANDING);
+
+        router.getConnection().close();
+        assertEquals(1, primary.opened.get());
+        assertEquals(Collections.singletonList(primary.dataSource), router.getReadSources());
+        assertFalse(router.healthCheck().execute().isHealthy());
+        assertEquals(1, metrics.meter(MetricRegistry.name(ReplicaRouter.class, "primary-fallbacks")).getCount());
+    }
+
+    private ReplicaRouter start(ReplicaRouter.Policy policy) {
+        ReadReplicasConfiguration configuration = new ReadReplicasConfiguration();
+        List<DataSourceFactory> factories = new ArrayList<>();
+        for (Stub stub : Arrays.asList(first, second)) {
+            DataSourceFactory factory = new DataSourceFactory();
+            factory.setUrl("jdbc:postgresql://" + stub.name + "/musicbrainz_db");
+            factories.add(factory);
+        }
+        configuration.setReplicas(factories);
+        configuration.setPolicy(policy);
+        configuration.setMaxLag(Duration.seconds(30));
+        configuration.setHealthCheckInterval(Duration.hours(1));
+        ReplicaRouter router = new ReplicaRouter(primary.dataSource, Arrays.asList(first.dataSource, second.dataSource),
+                configuration, executor, metrics);
+        router.start();
+        return router;
+    }
+
+    private long ejections(String replica) {
+        return metrics.meter(MetricRegistry.name(ReplicaRouter.class, replica, "ejections")).getCount();
+    }
+
+    /**
+     * Data source handing out connections that answer the lag query with {@link #lag}, or refusing
+     * them while {@link #down}.
+     */
+    private static final class Stub {
+        private final String name;
+        private final ManagedDataSource dataSource;
+        private final AtomicInteger opened = new AtomicInteger();
+        private final AtomicInteger open = new AtomicInteger();
+        private final AtomicInteger checks = new AtomicInteger();
+        private volatile boolean down;
+        private volatile double lag;
+
+        private Stub(String name) {
+            this.name = name;
+            this.dataSource = proxy(ManagedDataSource.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "getConnection":
+                        return connect();
+                    case "start":
+                    case "stop":
+                        return null;
+                    default:
+                        return object(proxy, method.getName(), args);
+                }
+            });
+        }
+
+        private Connection connect() throws SQLException {
+            if (down) {
+                throw new SQLException("Connection to " + name + " refused", "08001");
+            }
+            opened.incrementAndGet();
+            open.incrementAndGet();
+            AtomicBoolean closed = new AtomicBoolean();
+            return proxy(Connection.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "createStatement":
+                        checks.incrementAndGet();
+                        return statement();
+                    case "close":
+                        if (closed.compareAndSet(false, true)) {
+                            open.decrementAndGet();
+                        }
+                        return null;
+                    case "isClosed":
+                        return closed.get();
+                    default:
+                        return object(proxy, method.getName(), args);
+                }
+            });
+        }
+
+        private Statement statement() {
+            return proxy(Statement.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "setQueryTimeout":
+                    case "close":
+                        return null;
+                    case "executeQuery":
+                        return lagResult(lag);
+                    default:
+                        return object(proxy, method.getName(), args);
+                }
+            });
+        }
+
+        private static ResultSet lagResult(double lag) {
+            AtomicBoolean read = new AtomicBoolean();
+            return proxy(ResultSet.class, (proxy, method, args) -> {
+                switch (method.getName()) {
+                    case "next":
+                        return read.compareAndSet(false, true);
+                    case "getDouble":
+                        return lag;
+                    case "close":
+                        return null;
+                    default:
+                        return object(proxy, method.getName(), args);
+                }
+            });
+        }
+
+        private static Object object(Object proxy, String method, Object[] args) {
+            switch (method) {
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return proxy.getClass().getName();
+                default:
+                    throw new UnsupportedOperationException(method);
+            }
+        }
+
+        private static <T> T proxy(Class<T> type, InvocationHandler handler) {
+            return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[]{type}, handler));
+        }
+    }
+}
@@ -0,0 +1,137 @@
+package com.wavedroid.musicbrainz.snapshot;
+
+import com.wavedroid.musicbrainz.model.Release;
+import com.wavedroid.musicbrainz.model.Track;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Round trip of the files {@link SnapshotWriter} writes through the lookups of {@link SnapshotGeneration}.
+ *
+ * @author Dmitriy Khvatov (<i>dimax4@gmail.com</i>)
+ * @version $Id$
+ */
+public class SnapshotWriterTest {
+
+    private static final UUID RG_1 = UUID.fromString("f8e92e0e-a9d4-ba53-896f-65d2d986857f");
+    private static final UUID RG_2 = UUID.fromString("3dc7118b-044e-5879-0321-b052c84a0469");
+    private static final UUID RG_3 = UUID.fromString("57f52a71-d0c3-af19-dbd6-61df1040f15e");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void readsReleasesByIdAndMbid() throws IOException {
+        Release first = new Release(1997, 5, "Radiohead", 11L, "OK Computer", 12, 3, 300, UUID.randomUUID(), RG_1,
+                null, Arrays.asList("rock", "alternative", "art rock"));
+        Release second = new Release(null, null, "Sigur Rós", 12L, "( )", 8, 4, 100, UUID.randomUUID(), RG_2,
+                null, null);
+        Release third = new Release(2001, null, "Björk", 13L, "Vespertine", 12, 5, 200, UUID.randomUUID(), RG_3,
+                null, Collections.singletonList("electronic"));
+        SnapshotGeneration generation = write(2, Arrays.asList(first, second, third), Collections.emptyMap());
+
+        assertEquals(3, generation.releaseGroups());
+        for (Release release : Arrays.asList(first, second, third)) {
+            assertRelease(release, null, generation.getReleaseById(release.getReleaseGroupId(), false));
+            assertRelease(release, release.getReleaseId(), generation.getReleaseById(release.getReleaseGroupId(), true));
+            assertRelease(release, release.getReleaseId(), generation.getReleaseByMbid(release.getReleaseGroupMbid()));
+        }
+        assertNull(generation.getReleaseById(150, false));
+        assertNull(generation.getReleaseByMbid(UUID.randomUUID()));
+    }
+
+    @Test
+    public void keepsTopTagsOnly() throws IOException {
+        Release release = new Release(1997, 5, "Radiohead", 11L, "OK Computer", 12, 3, 300, UUID.randomUUID(), RG_1,
+                null, Arrays.asList("rock", "alternative", "art rock"));
+        SnapshotGeneration generation = write(2, Collections.singletonList(release), Collections.emptyMap());
+
+        assertEquals(Arrays.asList("rock", "alternative"), generation.getTags(300, 10));
+        assertEquals(Collections.singletonList("rock"), generation.getTags(300, 1));
+        assertEquals(Collections.emptyList(), generation.getTags(301, 10));
+    }
+
+    @Test
+    public void readsTracklistsByPage() throws IOException {
+        List<Track> tracks = Arrays.asList(
+                new Track(1, "Airbag", 284000, 1, 1),
+                new Track(2, "Paranoid Android", null, 2, 1),
+                new Track(3, "Subterranean Homesick Alien", 267000, 3, 1),
+                new Track(4, "Exit Music (For a Film)", 264000, 1, 2));
+        Map<Long, List<Track>> tracklists = new LinkedHashMap<>();
+        tracklists.put(11L, tracks);
+        tracklists.put(7L, Collections.singletonList(new Track(9, "Intro", 60000, 1, 1)));
+        SnapshotGeneration generation = write(1, Collections.emptyList(), tracklists);
+
+        assertEquals(2, generation.tracklists());
+        assertTracks(tracks, generation.getTracklist(11, 0, Integer.MAX_VALUE));
+        assertTracks(tracks.subList(1, 3), generation.getTracklist(11, 1, 2));
+        assertTracks(tracks.subList(3, 4), generation.getTracklist(11, 3, 100));
+        assertTrue(generation.getTracklist(11, 4, 100).isEmpty());
+        assertEquals("Intro", generation.getTracklist(7, 0, 1).get(0).getTitle());
+        assertTrue(generation.getTracklist(8, 0, 100).isEmpty());
+    }
+
+    @Test(expected = IOException.class)
+    public void rejectsDuplicateIds() throws IOException {
+        Release release = new Release(1997, 5, "Radiohead", 11L, "OK Computer", 12, 3, 300, UUID.randomUUID(), RG_1,
+                null);
+        write(1, Arrays.asList(release, release), Collections.emptyMap());
+    }
+
+    /**
+     * Writes a generation of the releases and the tracklists, keyed by release id, and opens it.
+     */
+    private SnapshotGeneration write(int tagsPerReleaseGroup, List<Release> releases,
+                                     Map<Long, List<Track>> tracklists) throws IOException {
+        File directory = new File(folder.getRoot(), SnapshotGeneration.GENERATION_PREFIX + "1");
+        try (SnapshotWriter writer = new SnapshotWriter(directory, tagsPerReleaseGroup)) {
+            for (Release release : releases) {
+                writer.writeRelease(release);
+            }
+            for (Map.Entry<Long, List<Track>> tracklist : tracklists.entrySet()) {
+                writer.writeTracklist(tracklist.getKey(), tracklist.getValue());
+            }
+            writer.finish();
+        }
+        return new SnapshotGeneration(directory);
+    }
+
+    private static void assertRelease(Release expected, Long releaseId, Release actual) {
+        assertEquals(expected.getReleaseGroupId(), actual.getReleaseGroupId());
+        assertEquals(expected.getReleaseGroupMbid(), actual.getReleaseGroupMbid());
+        assertEquals(releaseId, actual.getReleaseId());
+        assertEquals(expected.getReleaseMbid(), actual.getReleaseMbid());
+        assertEquals(expected.getReleaseName(), actual.getReleaseName());
+        assertEquals(expected.getArtist(), actual.getArtist());
+        assertEquals(expected.getArtistId(), actual.getArtistId());
+        assertEquals(expected.getTotalTracks(), actual.getTotalTracks());
+        assertEquals(expected.getYear(), actual.getYear());
+        assertEquals(expected.getMonth(), actual.getMonth());
+    }
+
+    private static void assertTracks(List<Track> expected, List<Track> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getTrackId(), actual.get(i).getTrackId());
+            assertEquals(expected.get(i).getTitle(), actual.get(i).getTitle());
+            assertEquals(expected.get(i).getLength(), actual.get(i).getLength());
+            assertEquals(expected.get(i).getPosition(), actual.get(i).getPosition());
+            assertEquals(expected.get(i).getDiscNumber(), actual.get(i).getDiscNumber());
+        }
+    }
+}